@@ -385,6 +385,7 @@ public class AISMerge {
             newIndex.markSpatial(index.firstSpatialArgument(),
                                  index.lastSpatialArgument() - index.firstSpatialArgument() + 1);
         }
+        newIndex.setIncludedColumnCount(index.getIncludedColumnCount());
 
         if(curIndex != null) {
             throw new DuplicateIndexException(indexName);
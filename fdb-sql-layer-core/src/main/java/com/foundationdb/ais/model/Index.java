@@ -141,6 +141,33 @@ public abstract class Index extends HasStorage implements Visitable, Constraint
         return allColumns;
     }
 
+    /**
+     * Mark the last <code>includedColumns</code> declared columns as included:
+     * stored in the index, so that it covers them, but not part of uniqueness.
+     */
+    public void setIncludedColumnCount(int includedColumns)
+    {
+        checkMutability();
+        if (includedColumns < 0 || (includedColumns > 0 && (!isTableIndex() || isPrimaryKey()))) {
+            throw new IllegalArgumentException("Included columns not allowed: " + this);
+        }
+        this.includedColumns = includedColumns;
+    }
+
+    public int getIncludedColumnCount()
+    {
+        return includedColumns;
+    }
+
+    /**
+     * Return the number of leading declared columns that make the index unique.
+     * This is all of them unless some are included.
+     */
+    public int getUniqueColumnCount()
+    {
+        return getKeyColumns().size() - includedColumns;
+    }
+
     public IndexMethod getIndexMethod()
     {
         if (space != null)
@@ -390,6 +417,7 @@ public abstract class Index extends HasStorage implements Visitable, Constraint
     private Space space;
     private int firstSpatialArgument;
     private int lastSpatialArgument;
+    private int includedColumns;
 
     public enum JoinType {
         LEFT, RIGHT
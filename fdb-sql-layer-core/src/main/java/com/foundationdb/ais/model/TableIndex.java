@@ -70,6 +70,7 @@ public class TableIndex extends Index
         if (index.getIndexMethod() == IndexMethod.Z_ORDER_LAT_LON) {
             copy.markSpatial(index.firstSpatialArgument(), index.spatialColumns());
         }
+        copy.setIncludedColumnCount(index.getIncludedColumnCount());
         return copy;
     }
 
@@ -90,6 +91,9 @@ public class TableIndex extends Index
     public void computeFieldAssociations(Map<Table, Integer> ordinalMap)
     {
         freezeColumns();
+        if (getIncludedColumnCount() > 0 && getUniqueColumnCount() <= 0) {
+            throw new IllegalStateException("Index has only included columns: " + this);
+        }
         AssociationBuilder toIndexRowBuilder = new AssociationBuilder();
         AssociationBuilder toHKeyBuilder = new AssociationBuilder();
         List<Column> indexColumns = new ArrayList<>();
@@ -516,6 +516,14 @@ public class AISBBasedBuilder
             return this;
         }
 
+        @Override
+        public NewRoutineBuilder returnDouble(String name) {
+            TInstance type = typesTranslator.typeForJDBCType(Types.DOUBLE, true,
+                                                             schema, object, name);
+            aisb.parameter(schema, object, name, Parameter.Direction.RETURN, type);
+            return this;
+        }
+
         @Override
         public NewRoutineBuilder paramBooleanIn(String name) {
             TInstance type = typesTranslator.typeForJDBCType(Types.BOOLEAN, true,
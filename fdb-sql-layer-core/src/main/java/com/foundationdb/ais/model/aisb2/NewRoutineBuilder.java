@@ -28,6 +28,8 @@ public interface NewRoutineBuilder {
 
     NewRoutineBuilder returnString(String name, int length);
 
+    NewRoutineBuilder returnDouble(String name);
+
     NewRoutineBuilder paramBooleanIn(String name);
 
     NewRoutineBuilder paramLongIn(String name);
@@ -380,6 +380,9 @@ public class ProtobufReader {
             handleStorage(tableIndex, pbIndex);
             handleSpatial(tableIndex, pbIndex);
             loadIndexColumns(table, tableIndex, pbIndex.getColumnsList());
+            if (pbIndex.hasIncludedColumns()) {
+                tableIndex.setIncludedColumnCount(pbIndex.getIncludedColumns());
+            }
         }
     }
 
@@ -832,7 +835,8 @@ public class ProtobufReader {
                 AISProtobuf.Index.LASTSPATIALARG_FIELD_NUMBER,
                 AISProtobuf.Index.DIMENSIONS_FIELD_NUMBER,
                 AISProtobuf.Index.STORAGE_FIELD_NUMBER,
-                AISProtobuf.Index.CONSTRAINTNAME_FIELD_NUMBER
+                AISProtobuf.Index.CONSTRAINTNAME_FIELD_NUMBER,
+                AISProtobuf.Index.INCLUDEDCOLUMNS_FIELD_NUMBER
         );
     }
 
@@ -845,7 +849,8 @@ public class ProtobufReader {
                 AISProtobuf.Index.LASTSPATIALARG_FIELD_NUMBER,
                 AISProtobuf.Index.DIMENSIONS_FIELD_NUMBER,
                 AISProtobuf.Index.STORAGE_FIELD_NUMBER,
-                AISProtobuf.Index.CONSTRAINTNAME_FIELD_NUMBER
+                AISProtobuf.Index.CONSTRAINTNAME_FIELD_NUMBER,
+                AISProtobuf.Index.INCLUDEDCOLUMNS_FIELD_NUMBER
         );
     }
 
@@ -529,6 +529,9 @@ public class ProtobufWriter {
                     setDimensions(index.dimensions());
 
         }
+        if (index.getIncludedColumnCount() > 0) {
+            indexBuilder.setIncludedColumns(index.getIncludedColumnCount());
+        }
 
         for(IndexColumn indexColumn : index.getKeyColumns()) {
             writeIndexColumn(indexBuilder, indexColumn, withTableName);
@@ -29,6 +29,7 @@ import com.foundationdb.server.explain.Label;
 import com.foundationdb.server.explain.Type;
 import com.foundationdb.server.types.value.ValueRecord;
 import com.foundationdb.server.types.value.ValueSource;
+import com.foundationdb.server.types.texpressions.ExpressionCompiler;
 import com.foundationdb.server.types.texpressions.TPreparedExpression;
 
 import java.util.List;
@@ -36,7 +37,7 @@ import java.util.List;
 public final class RowBasedUnboundExpressions implements UnboundExpressions {
     @Override
     public ValueRecord get(QueryContext context, QueryBindings bindings) {
-        return new ExpressionsAndBindings(rowType, pExprs, context, bindings);
+        return new ExpressionsAndBindings(rowType, compiledExprs, context, bindings);
     }
 
     @Override
@@ -68,10 +69,12 @@ public final class RowBasedUnboundExpressions implements UnboundExpressions {
             }
         }
         this.pExprs = pExprs;
+        this.compiledExprs = ExpressionCompiler.compile(pExprs);
         this.rowType = rowType.schema().newProjectType(pExprs);
     }
 
     private final List<TPreparedExpression> pExprs;
+    private final List<TPreparedExpression> compiledExprs;
     private final RowType rowType;
 
     private static class ExpressionsAndBindings implements ValueRecord {
@@ -49,6 +49,17 @@ public class API
         return new Aggregate_Partial(inputOperator, rowType, inputsIndex, aggregatorFactories, aggregatorTypes, options);
     }
 
+    public static Operator aggregate_Hashed(Operator inputOperator,
+                                            RowType rowType,
+                                            int inputsIndex,
+                                            List<? extends TAggregator> aggregatorFactories,
+                                            List<? extends TInstance> aggregatorTypes,
+                                            List<Object> options
+                                            )
+    {
+        return new Aggregate_Hashed(inputOperator, rowType, inputsIndex, aggregatorFactories, aggregatorTypes, options);
+    }
+
     // Project
 
     public static Operator project_DefaultTest(Operator inputOperator,
@@ -259,7 +270,18 @@ public class API
                                                InputPreservationOption flag,
                                                int lookaheadQuantum)
     {
-        return new GroupLookup_Default(inputOperator, group, rowType, ancestorTypes, flag, lookaheadQuantum);
+        return groupLookup_Default(inputOperator, group, rowType, ancestorTypes, flag, lookaheadQuantum, lookaheadQuantum);
+    }
+
+    public static Operator groupLookup_Default(Operator inputOperator,
+                                               Group group,
+                                               RowType rowType,
+                                               Collection<TableRowType> ancestorTypes,
+                                               InputPreservationOption flag,
+                                               int lookaheadMin,
+                                               int lookaheadQuantum)
+    {
+        return new GroupLookup_Default(inputOperator, group, rowType, ancestorTypes, flag, lookaheadMin, lookaheadQuantum);
     }
 
     public static Operator ancestorLookup_Nested(Group group,
@@ -408,7 +430,17 @@ public class API
                                              IndexScanSelector indexScanSelector,
                                              int lookaheadQuantum)
     {
-        return new IndexScan_Default(indexType, indexKeyRange, ordering, indexScanSelector, lookaheadQuantum);
+        return indexScan_Default(indexType, indexKeyRange, ordering, indexScanSelector, lookaheadQuantum, lookaheadQuantum);
+    }
+
+    public static Operator indexScan_Default(IndexRowType indexType,
+                                             IndexKeyRange indexKeyRange,
+                                             Ordering ordering,
+                                             IndexScanSelector indexScanSelector,
+                                             int lookaheadMin,
+                                             int lookaheadQuantum)
+    {
+        return new IndexScan_Default(indexType, indexKeyRange, ordering, indexScanSelector, lookaheadMin, lookaheadQuantum);
     }
 
     // Select
@@ -519,6 +551,18 @@ public class API
         return new Distinct_Partial(input, distinctType, collators);
     }
 
+    public static Operator distinct_Hashed(Operator input, RowType distinctType)
+    {
+        return new Distinct_Hashed(input, distinctType, null);
+    }
+
+    public static Operator distinct_Hashed(Operator input,
+                                           RowType distinctType,
+                                           List<AkCollator> collators)
+    {
+        return new Distinct_Hashed(input, distinctType, collators);
+    }
+
     // Map
 
     public static Operator map_NestedLoops(Operator outerInput,
@@ -830,6 +874,15 @@ public class API
         return new Using_HashTable(hashInput, hashedRowType, comparisonFields, hashTableBindingPosition, joinedInput, tComparisons, collators);
     }
 
+    // partition_HashTable
+    public static Operator partition_HashTable(Operator inputOperator,
+                                               RowType probeRowType,
+                                               List<TPreparedExpression> probeFields,
+                                               int hashTableBindingPosition)
+    {
+        return new Partition_HashTable(inputOperator, probeRowType, probeFields, hashTableBindingPosition);
+    }
+
     // EmitBoundRow_Nested
 
     public static Operator emitBoundRow_Nested(Operator input,
@@ -0,0 +1,658 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.ImmutableRow;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.row.ValuesHolderRow;
+import com.foundationdb.qp.rowtype.AggregatedRowType;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.util.RowSpillFile;
+import com.foundationdb.qp.util.ValuesKey;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.collation.AkCollator;
+import com.foundationdb.server.explain.*;
+import com.foundationdb.server.types.TAggregator;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.value.*;
+import com.foundationdb.util.ArgumentValidation;
+import com.foundationdb.util.tap.InOutTap;
+import com.google.common.collect.Iterators;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+
+ <h1>Overview</h1>
+
+ Aggregate_Hashed applies a full aggregation to rows that are not
+ ordered by their GROUP BY columns, by accumulating each group's
+ aggregator states in a hash table keyed on the GROUP BY columns.
+
+ <h1>Arguments</h1>
+
+ The same as for {@link Aggregate_Partial}.
+
+ <h1>Behavior</h1>
+
+ Each input row of type <i>inputRowType</i> is looked up in the hash
+ table by its GROUP BY section and its inputs section is applied to
+ that group's aggregators. When the input is exhausted, one row is
+ output for each group, in no particular order.
+
+ If the estimated size of the hash table exceeds
+ <i>fdbsql.sort.memory</i>, groups already in the table continue to be
+ aggregated in memory, but rows for any new group are written to one
+ of several partition files, chosen by hashing the GROUP BY columns.
+ Since all rows of a group go to the same partition, each partition
+ can then be aggregated independently once the in-memory groups have
+ been output, partitioning again if necessary.
+
+ If there is a GROUP BY and the session's <i>parallelism</i> setting
+ is greater than 1, the groups are instead divided among that many
+ workers by hashing the GROUP BY columns. This thread only collects
+ input rows into batches, freezing any that depend on bindings. Tasks
+ on the shared {@link WorkerPool} hash each batch and apply its rows to
+ the workers that own their groups, each worker with its share of the
+ memory budget. Since no group is split between workers, their groups
+ are then simply output one after the other.
+
+ <h1>Output</h1>
+
+ All input rows are swallowed. All rows from the incoming operator
+ with a type other than <i>inputRowType</i> are passed through
+ unchanged, ahead of any aggregated rows. As with Aggregate_Partial,
+ if there is no GROUP BY and no input, a single row of empty values is
+ output.
+
+ <h1>Assumptions</h1>
+
+ None.
+
+ <h1>Performance</h1>
+
+ One hash probe per input row. No IO unless the groups do not fit in
+ memory, in which case rows for the overflow groups are written and
+ read back once per level of partitioning. With parallel workers, one
+ copy of each input row that depends on bindings as well.
+
+ <h1>Memory requirements</h1>
+
+ One set of GROUP BY values and aggregator states per group, up to
+ <i>fdbsql.sort.memory</i>.
+
+ */
+
+final class Aggregate_Hashed extends Operator
+{
+
+    // Operator interface
+
+    @Override
+    protected Cursor cursor(QueryContext context, QueryBindingsCursor bindingsCursor) {
+        return new AggregateCursor(context, bindingsCursor);
+    }
+
+    @Override
+    public void findDerivedTypes(Set<RowType> derivedTypes) {
+        inputOperator.findDerivedTypes(derivedTypes);
+        derivedTypes.add(outputType);
+    }
+
+    @Override
+    public List<Operator> getInputOperators() {
+        return Collections.singletonList(inputOperator);
+    }
+
+    @Override
+    public RowType rowType() {
+        return outputType;
+    }
+
+    // Aggregate_Hashed interface
+
+    public Aggregate_Hashed(Operator inputOperator,
+                            RowType inputRowType,
+                            int inputsIndex,
+                            List<? extends TAggregator> aggregatorFactories,
+                            List<? extends TInstance> pAggrTypes,
+                            List<Object> options) {
+        this.inputOperator = inputOperator;
+        this.inputRowType = inputRowType;
+        this.inputsIndex = inputsIndex;
+        this.outputType = inputRowType.schema().newAggregateType(inputRowType, inputsIndex, pAggrTypes);
+        this.pAggrs = aggregatorFactories;
+        this.pAggrTypes = pAggrTypes;
+        this.options = options;
+        validate();
+    }
+
+    // Object interface
+
+    @Override
+    public String toString() {
+        return String.format("%s(GROUP BY %d fields, then: %s)", getClass().getSimpleName(), inputsIndex, pAggrs);
+    }
+
+    // private methods
+
+    private void validate() {
+        if (inputOperator == null || inputRowType == null || outputType == null)
+            throw new NullPointerException();
+        ArgumentValidation.isBetween("inputsIndex", 0, inputsIndex, inputRowType.nFields()+1);
+        if (pAggrTypes.size() != pAggrs.size())
+            throw new IllegalArgumentException("aggregators and aggregator types mismatch in size");
+        if (inputsIndex + pAggrs.size() != inputRowType.nFields()) {
+            throw new IllegalArgumentException(
+                    String.format("inputsIndex(=%d) + aggregatorNames.size(=%d) != inputRowType.nFields(=%d)",
+                            inputsIndex, pAggrs.size(), inputRowType.nFields()
+            ));
+        }
+    }
+
+    // class state
+
+    private static final InOutTap TAP_OPEN = OPERATOR_TAP.createSubsidiaryTap("operator: Aggregate_Hashed open");
+    private static final InOutTap TAP_NEXT = OPERATOR_TAP.createSubsidiaryTap("operator: Aggregate_Hashed next");
+    private static final Logger LOG = LoggerFactory.getLogger(Aggregate_Hashed.class);
+
+    static final int NPARTITIONS = 16;
+    // Beyond this many levels of partitioning, give up and keep everything in memory.
+    static final int MAX_LEVEL = 8;
+    // Rough per-group overhead of the hash table entry and state array.
+    private static final int GROUP_OVERHEAD = 64;
+    // Rows handed to the pool at a time.
+    static final int BATCH_SIZE = 256;
+    // Batches that may be waiting per worker before the input stalls.
+    static final int MAX_QUEUED = 4;
+
+    // object state
+
+    private final Operator inputOperator;
+    private final RowType inputRowType;
+    private final AggregatedRowType outputType;
+    private final int inputsIndex;
+    private final List<? extends TInstance> pAggrTypes;
+    private final List<? extends TAggregator> pAggrs;
+    private final List<Object> options;
+
+    @Override
+    public CompoundExplainer getExplainer(ExplainContext context)
+    {
+        Attributes atts = new Attributes();
+        atts.put(Label.NAME, PrimitiveExplainer.getInstance(getName()));
+        for (TAggregator agg : pAggrs)
+            atts.put(Label.AGGREGATORS, PrimitiveExplainer.getInstance(agg.displayName().toUpperCase()));
+        atts.put(Label.GROUPING_OPTION, PrimitiveExplainer.getInstance(inputsIndex));
+        atts.put(Label.INPUT_OPERATOR, inputOperator.getExplainer(context));
+        atts.put(Label.INPUT_TYPE, inputRowType.getExplainer(context));
+        atts.put(Label.OUTPUT_TYPE, outputType.getExplainer(context));
+        return new CompoundExplainer(Type.AGGREGATE, atts);
+    }
+
+    // nested classes
+
+    private static class Partition
+    {
+        final RowSpillFile file;
+        final int level;
+
+        Partition(RowSpillFile file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+    }
+
+    private class AggregateCursor extends ChainedCursor
+    {
+
+        // Cursor interface
+
+        @Override
+        public void open() {
+            TAP_OPEN.in();
+            try {
+                super.open();
+                memoryLimit = RowSpillFile.memoryLimit(context);
+                startLevel(0);
+                loading = true;
+                everSawInput = false;
+                int parallelism = (inputsIndex > 0) ? WorkerPool.getParallelism(context) : 1;
+                if (parallelism > 1) {
+                    startWorkers(parallelism);
+                }
+            } finally {
+                TAP_OPEN.out();
+            }
+        }
+
+        @Override
+        public Row next() {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                checkQueryCancelation();
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                if (isIdle()) {
+                    return null;
+                }
+                Row output = null;
+                if (loading) {
+                    Row row;
+                    while ((row = input.next()) != null) {
+                        if (row.rowType() != inputRowType) {
+                            output = row; // pass through
+                            break;
+                        }
+                        everSawInput = true;
+                        if (workers != null) {
+                            distribute(row);
+                        }
+                        else {
+                            aggregate(row);
+                        }
+                    }
+                    if (output == null) {
+                        loading = false;
+                        if (workers != null) {
+                            finishWorkers();
+                        }
+                        else {
+                            finishLevel();
+                        }
+                        if (!everSawInput && (inputsIndex == 0)) {
+                            output = createEmptyOutput();
+                        }
+                    }
+                }
+                if (output == null) {
+                    output = nextGroup();
+                }
+                if (output == null) {
+                    setIdle();
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Aggregate_Hashed: yield {}", output);
+                }
+                return output;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                abandonWorkers();
+                discardPartitions();
+            } finally {
+                groups = null;
+                groupsIterator = null;
+                super.close();
+            }
+        }
+
+        // for use in this class
+
+        private void startLevel(int level) {
+            this.level = level;
+            groups = new HashMap<>();
+            groupsIterator = null;
+            memoryUsed = 0;
+            spills = null;
+        }
+
+        // Input for this level is complete: queue its spilled partitions
+        // and start returning its groups.
+        private void finishLevel() {
+            if (spills != null) {
+                for (RowSpillFile spill : spills) {
+                    if (spill.getRowCount() > 0) {
+                        pending.push(new Partition(spill, level + 1));
+                    }
+                    else {
+                        spill.close();
+                    }
+                }
+                spills = null;
+            }
+            groupsIterator = groups.entrySet().iterator();
+        }
+
+        private Row nextGroup() {
+            while (true) {
+                if (groupsIterator.hasNext()) {
+                    Map.Entry<ValuesKey,Value[]> entry = groupsIterator.next();
+                    groupsIterator.remove();
+                    return createOutput(entry.getKey(), entry.getValue());
+                }
+                if (pending.isEmpty()) {
+                    return null;
+                }
+                Partition partition = pending.pop();
+                try {
+                    startLevel(partition.level);
+                    Row row;
+                    while ((row = partition.file.read()) != null) {
+                        checkQueryCancelation();
+                        aggregate(row);
+                    }
+                } finally {
+                    partition.file.close();
+                }
+                finishLevel();
+            }
+        }
+
+        private void aggregate(Row input) {
+            ValuesKey key = new ValuesKey(input, inputsIndex, collators);
+            Value[] states = groups.get(key);
+            if (states == null) {
+                if (spills != null) {
+                    spills[RowSpillFile.partition(key.hashCode(), level, NPARTITIONS)].write(input);
+                    return;
+                }
+                states = newStates();
+                groups.put(key, states);
+                memoryUsed += groupSize(key, states);
+                if ((memoryUsed > memoryLimit) && (level < MAX_LEVEL)) {
+                    spills = new RowSpillFile[NPARTITIONS];
+                    for (int i = 0; i < NPARTITIONS; i++) {
+                        spills[i] = new RowSpillFile(context, inputRowType, "aggregate-");
+                    }
+                }
+            }
+            accumulate(states, input);
+        }
+
+        private Value[] newStates() {
+            Value[] states = new Value[pAggrs.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = new Value(pAggrTypes.get(i));
+            }
+            return states;
+        }
+
+        private long groupSize(ValuesKey key, Value[] states) {
+            return key.estimateSize() + GROUP_OVERHEAD + states.length * 16;
+        }
+
+        private void accumulate(Value[] states, Row input) {
+            for (int i = 0; i < states.length; ++i) {
+                int inputIndex = i + inputsIndex;
+                TInstance inputType = input.rowType().typeAt(inputIndex);
+                ValueSource inputSource = input.value(inputIndex);
+                pAggrs.get(i).input(inputType, inputSource, pAggrTypes.get(i), states[i], options.get(i));
+            }
+        }
+
+        private void startWorkers(int parallelism) {
+            batch.clear();
+            workers = new Worker[parallelism];
+            for (int i = 0; i < parallelism; i++) {
+                workers[i] = new Worker(memoryLimit / parallelism);
+            }
+        }
+
+        // Only collect the row here, so that the input is not held up by
+        // anything the pool can do. A row that is evaluated lazily from
+        // the bindings has to be frozen before the next one is read.
+        private void distribute(Row input) {
+            if (input.isBindingsSensitive()) {
+                input = ImmutableRow.buildImmutableRow(input);
+            }
+            batch.add(input);
+            if (batch.size() >= BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            final List<Row> rows = batch;
+            final Worker[] toWorkers = workers;
+            batch = new ArrayList<>(BATCH_SIZE);
+            QueuedBatch queuedBatch = new QueuedBatch(rows, toWorkers);
+            queuedBatch.future = WorkerPool.getPool().submit(queuedBatch);
+            queued.add(queuedBatch);
+            while (queued.size() > MAX_QUEUED * workers.length) {
+                awaitFirst();
+            }
+        }
+
+        // Only dequeued once finished, so that a failed wait still leaves
+        // it for abandonWorkers.
+        private void awaitFirst() {
+            WorkerPool.await(context, queued.peekFirst().future);
+            queued.removeFirst();
+        }
+
+        // On a pool thread: hash the batch's rows and give each worker
+        // its share of them.
+        private void partition(List<Row> rows, Worker[] toWorkers) {
+            List<List<ValuesKey>> keys = new ArrayList<>(toWorkers.length);
+            List<List<Row>> shares = new ArrayList<>(toWorkers.length);
+            for (int i = 0; i < toWorkers.length; i++) {
+                keys.add(new ArrayList<ValuesKey>());
+                shares.add(new ArrayList<Row>());
+            }
+            for (Row row : rows) {
+                ValuesKey key = new ValuesKey(row, inputsIndex, collators);
+                int i = RowSpillFile.partition(key.hashCode(), 0, toWorkers.length);
+                keys.get(i).add(key);
+                shares.get(i).add(row);
+            }
+            for (int i = 0; i < toWorkers.length; i++) {
+                if (!shares.get(i).isEmpty()) {
+                    toWorkers[i].aggregate(keys.get(i), shares.get(i));
+                }
+            }
+        }
+
+        // Input is complete: wait for the workers and start returning
+        // their groups, followed by anything they spilled.
+        private void finishWorkers() {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            while (!queued.isEmpty()) {
+                awaitFirst();
+            }
+            List<Iterator<Map.Entry<ValuesKey,Value[]>>> iterators = new ArrayList<>(workers.length);
+            for (Worker worker : workers) {
+                iterators.add(worker.groups.entrySet().iterator());
+                if (worker.spill != null) {
+                    pending.push(new Partition(worker.spill, level + 1));
+                    worker.spill = null;
+                }
+            }
+            groupsIterator = Iterators.concat(iterators.iterator());
+            workers = null;
+        }
+
+        // Closed before the input was complete: make sure no worker is
+        // still running before discarding what they spilled.
+        private void abandonWorkers() {
+            while (!queued.isEmpty()) {
+                queued.removeFirst().abandon();
+            }
+            batch.clear();
+            if (workers != null) {
+                for (Worker worker : workers) {
+                    if (worker.spill != null) {
+                        worker.spill.close();
+                    }
+                }
+                workers = null;
+            }
+        }
+
+        private Row createOutput(ValuesKey key, Value[] states) {
+            ValuesHolderRow outputRow = new ValuesHolderRow(outputType);
+            for (int i = 0; i < inputsIndex; ++i) {
+                ValueTargets.copyFrom(key.value(i), outputRow.valueAt(i));
+            }
+            for (int i = 0; i < states.length; ++i) {
+                Value value = outputRow.valueAt(i + inputsIndex);
+                if (states[i].hasAnyValue())
+                    ValueTargets.copyFrom(states[i], value);
+                else
+                    pAggrs.get(i).emptyValue(value);
+            }
+            return outputRow;
+        }
+
+        private Row createEmptyOutput() {
+            ValuesHolderRow outputRow = new ValuesHolderRow(outputType);
+            for (int i = 0; i < outputRow.rowType().nFields(); ++i) {
+                pAggrs.get(i).emptyValue(outputRow.valueAt(i));
+            }
+            return outputRow;
+        }
+
+        private void discardPartitions() {
+            if (spills != null) {
+                for (RowSpillFile spill : spills) {
+                    spill.close();
+                }
+                spills = null;
+            }
+            while (!pending.isEmpty()) {
+                pending.pop().file.close();
+            }
+        }
+
+        // A batch of rows for the pool. A pool task that has been
+        // canceled can still be running, so whether it runs at all is
+        // settled here instead: either the pool thread claims it first and
+        // finishes it, or abandon() does and it never starts.
+        private class QueuedBatch implements Runnable
+        {
+            final List<Row> rows;
+            final Worker[] toWorkers;
+            final AtomicBoolean claimed = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(1);
+            Future<?> future;
+
+            QueuedBatch(List<Row> rows, Worker[] toWorkers) {
+                this.rows = rows;
+                this.toWorkers = toWorkers;
+            }
+
+            @Override
+            public void run() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    partition(rows, toWorkers);
+                }
+                finally {
+                    done.countDown();
+                }
+            }
+
+            // Keep it from starting, or else wait until it has finished.
+            void abandon() {
+                if (claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        done.await();
+                        break;
+                    }
+                    catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        // One worker's share of the groups. Only ever aggregated by one
+        // pool thread at a time.
+        private class Worker
+        {
+            final Map<ValuesKey,Value[]> groups = new HashMap<>();
+            final long memoryLimit;
+            long memoryUsed;
+            RowSpillFile spill;
+
+            Worker(long memoryLimit) {
+                this.memoryLimit = memoryLimit;
+            }
+
+            synchronized void aggregate(List<ValuesKey> keys, List<Row> rows) {
+                for (int i = 0; i < rows.size(); i++) {
+                    ValuesKey key = keys.get(i);
+                    Row row = rows.get(i);
+                    Value[] states = groups.get(key);
+                    if (states == null) {
+                        if (spill != null) {
+                            spill.write(row);
+                            continue;
+                        }
+                        states = newStates();
+                        groups.put(key, states);
+                        memoryUsed += groupSize(key, states);
+                        if (memoryUsed > memoryLimit) {
+                            spill = new RowSpillFile(context, inputRowType, "aggregate-");
+                        }
+                    }
+                    accumulate(states, row);
+                }
+            }
+        }
+
+        // AggregateCursor interface
+
+        private AggregateCursor(QueryContext context, QueryBindingsCursor bindingsCursor) {
+            super(context, inputOperator.cursor(context, bindingsCursor));
+            collators = ValuesKey.collators(inputRowType, inputsIndex);
+        }
+
+        // object state
+
+        private final AkCollator[] collators;
+        private final Deque<Partition> pending = new ArrayDeque<>();
+        private final Deque<QueuedBatch> queued = new ArrayDeque<>();
+        private Worker[] workers;
+        private List<Row> batch = new ArrayList<>(BATCH_SIZE);
+        private Map<ValuesKey,Value[]> groups;
+        private Iterator<Map.Entry<ValuesKey,Value[]>> groupsIterator;
+        private RowSpillFile[] spills;
+        private int level;
+        private long memoryUsed, memoryLimit;
+        private boolean loading, everSawInput;
+    }
+
+}
@@ -149,7 +149,8 @@ import java.util.*;
 
  <h1>Memory requirements</h1>
 
- One row and one set of grouping column values.
+ One batch of input rows ({@link RowBatch#DEFAULT_CAPACITY}) and one set
+ of grouping column values.
 
  */
 
@@ -288,6 +289,9 @@ final class Aggregate_Partial extends Operator
             TAP_OPEN.in();
             try {
                 super.open();
+                inputBatch.clear();
+                inputPosition = 0;
+                inputExhausted = false;
             } finally {
                 TAP_OPEN.out();
             }
@@ -436,7 +440,19 @@ final class Aggregate_Partial extends Operator
                 holder = null;
             }
             else {
-                result = input.next();
+                // Read the input a batch at a time.
+                if (inputPosition >= inputBatch.size()) {
+                    inputBatch.clear();
+                    inputPosition = 0;
+                    if (!inputExhausted) {
+                        inputBatch.fill(input);
+                        inputExhausted = !inputBatch.isFull();
+                    }
+                    if (inputBatch.isEmpty()) {
+                        return null;
+                    }
+                }
+                result = inputBatch.get(inputPosition++);
             }
             return result;
         }
@@ -472,6 +488,9 @@ final class Aggregate_Partial extends Operator
         private final List<Value> keyValues;
         private final List<Value> pAggrsStates;
         private Row holder;
+        private final RowBatch inputBatch = new RowBatch();
+        private int inputPosition;
+        private boolean inputExhausted;
         private boolean everSawInput = false;
         private boolean gatheringRows = true;
     }
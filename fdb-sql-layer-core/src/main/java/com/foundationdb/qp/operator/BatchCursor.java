@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+/**
+ * A RowCursor which can also deliver a block of rows per call, saving the
+ * per-row overhead of {@link #next} in scan-heavy pipelines. A consumer
+ * should not call this directly, but use {@link RowBatch#fill}, which falls
+ * back to <code>next</code> for cursors that do not implement it.
+ *
+ * Used by
+ * @see Filter_Default$Execution
+ * @see GroupScan_Default$Execution
+ * @see IndexScan_Default$Execution
+ * @see Project_Default$Execution
+ * @see Select_HKeyOrdered$Execution
+ */
+public interface BatchCursor extends RowCursor
+{
+    /**
+     * Append at least one row to <code>batch</code>, unless there are no
+     * more, in which case the cursor becomes idle. Must not be called with
+     * a full batch.
+     *
+     * @return the number of rows appended, 0 at end of input
+     */
+    public int nextBatch(RowBatch batch);
+}
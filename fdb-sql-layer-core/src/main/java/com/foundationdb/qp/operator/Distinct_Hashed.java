@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.util.RowSpillFile;
+import com.foundationdb.qp.util.ValuesKey;
+import com.foundationdb.server.collation.AkCollator;
+import com.foundationdb.server.explain.CompoundExplainer;
+import com.foundationdb.server.explain.ExplainContext;
+import com.foundationdb.server.explain.std.DistinctExplainer;
+import com.foundationdb.util.ArgumentValidation;
+import com.foundationdb.util.tap.InOutTap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+
+ <h1>Overview</h1>
+
+ Distinct_Hashed eliminates all duplicate rows from the input stream,
+ whatever their order, by remembering the rows it has already output.
+
+ <h1>Arguments</h1>
+
+ <ul>
+
+ <li><b>Operator input:</b> the input operator
+
+ <li><b>RowType distinctType:</b> Specifies the type of rows from the input stream.
+
+ <li><b>List&lt;AkCollator&gt; collators:</b> Collators used to hash
+ string fields, or <i>null</i> to take them from <i>distinctType</i>.
+
+ </ul>
+
+ <h1>Behavior</h1>
+
+ The RowType of each input row must match the specified distinctType.
+
+ The first row with a given set of values is written to output as soon
+ as it is read. Later rows that match it in all columns are discarded.
+
+ If the estimated size of the rows seen so far exceeds
+ <i>fdbsql.sort.memory</i>, a row not already seen is no longer output
+ immediately, but written to one of several partition files, chosen by
+ hashing all of its columns. Once the input is exhausted, each
+ partition is made distinct in turn in the same way.
+
+ <h1>Output</h1>
+
+ A subset of the input rows, in which no two rows match in all columns.
+ Rows are output in input order until the memory budget is reached.
+
+ <h1>Assumptions</h1>
+
+ The input type of every input row is the specified distinctType.
+
+ <h1>Performance</h1>
+
+ One hash probe per input row. No IO unless the distinct rows do not
+ fit in memory.
+
+ <h1>Memory requirements</h1>
+
+ A copy of each distinct row, up to <i>fdbsql.sort.memory</i>.
+
+ */
+
+class Distinct_Hashed extends Operator
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s(%s)", getClass().getSimpleName(), distinctType);
+    }
+
+    // Operator interface
+
+    @Override
+    public List<Operator> getInputOperators()
+    {
+        return Collections.singletonList(inputOperator);
+    }
+
+    @Override
+    protected Cursor cursor(QueryContext context, QueryBindingsCursor bindingsCursor)
+    {
+        return new Execution(context, inputOperator.cursor(context, bindingsCursor));
+    }
+
+    @Override
+    public RowType rowType()
+    {
+        return distinctType;
+    }
+
+    @Override
+    public void findDerivedTypes(Set<RowType> derivedTypes)
+    {
+        inputOperator.findDerivedTypes(derivedTypes);
+        derivedTypes.add(distinctType);
+    }
+
+    @Override
+    public String describePlan()
+    {
+        return describePlan(inputOperator);
+    }
+
+    // Distinct_Hashed interface
+
+    public Distinct_Hashed(Operator inputOperator, RowType distinctType, List<AkCollator> collators)
+    {
+        ArgumentValidation.notNull("distinctType", distinctType);
+        this.inputOperator = inputOperator;
+        this.distinctType = distinctType;
+        int nfields = distinctType.nFields();
+        if (collators == null) {
+            this.collators = ValuesKey.collators(distinctType, nfields);
+        }
+        else {
+            ArgumentValidation.isEQ("collators", collators.size(), "distinctType.nFields()", nfields);
+            this.collators = collators.toArray(new AkCollator[nfields]);
+        }
+    }
+
+    // Class state
+
+    private static final InOutTap TAP_OPEN = OPERATOR_TAP.createSubsidiaryTap("operator: Distinct_Hashed open");
+    private static final InOutTap TAP_NEXT = OPERATOR_TAP.createSubsidiaryTap("operator: Distinct_Hashed next");
+    private static final Logger LOG = LoggerFactory.getLogger(Distinct_Hashed.class);
+
+    static final int NPARTITIONS = 16;
+    static final int MAX_LEVEL = 8;
+
+    // Object state
+
+    private final Operator inputOperator;
+    private final RowType distinctType;
+    private final AkCollator[] collators;
+
+    @Override
+    public CompoundExplainer getExplainer(ExplainContext context)
+    {
+        return new DistinctExplainer(getName(), distinctType, inputOperator, context);
+    }
+
+    // Inner classes
+
+    private class Execution extends ChainedCursor
+    {
+        // Cursor interface
+
+        @Override
+        public void open()
+        {
+            TAP_OPEN.in();
+            try {
+                super.open();
+                memoryLimit = RowSpillFile.memoryLimit(context);
+                startLevel(0);
+                current = null;
+            } finally {
+                TAP_OPEN.out();
+            }
+        }
+
+        @Override
+        public Row next()
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                checkQueryCancelation();
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                if (isIdle()) {
+                    return null;
+                }
+                Row row;
+                while (true) {
+                    row = (current == null) ? input.next() : current.read();
+                    if (row == null) {
+                        if (!nextPartition()) {
+                            setIdle();
+                            break;
+                        }
+                        continue;
+                    }
+                    assert row.rowType() == distinctType : row;
+                    if (isDistinct(row)) break;
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Distinct_Hashed: yield {}", row);
+                }
+                return row;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            try {
+                discardPartitions();
+            } finally {
+                seen = null;
+                super.close();
+            }
+        }
+
+        // Execution interface
+
+        Execution(QueryContext context, Cursor input)
+        {
+            super(context, input);
+        }
+
+        // For use by this class
+
+        private void startLevel(int level) {
+            this.level = level;
+            seen = new HashSet<>();
+            memoryUsed = 0;
+            spills = null;
+        }
+
+        // Current input (original or partition) is exhausted: queue any
+        // partitions it spilled and switch to the next one, if any.
+        private boolean nextPartition() {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (spills != null) {
+                for (RowSpillFile spill : spills) {
+                    if (spill.getRowCount() > 0) {
+                        pending.push(spill);
+                        pendingLevels.push(level + 1);
+                    }
+                    else {
+                        spill.close();
+                    }
+                }
+                spills = null;
+            }
+            if (pending.isEmpty()) {
+                seen = null;
+                return false;
+            }
+            current = pending.pop();
+            startLevel(pendingLevels.pop());
+            return true;
+        }
+
+        private boolean isDistinct(Row row) {
+            ValuesKey key = new ValuesKey(row, collators.length, collators);
+            if (seen.contains(key)) {
+                return false;
+            }
+            if (spills != null) {
+                spills[RowSpillFile.partition(key.hashCode(), level, NPARTITIONS)].write(row);
+                return false;
+            }
+            seen.add(key);
+            memoryUsed += key.estimateSize();
+            if ((memoryUsed > memoryLimit) && (level < MAX_LEVEL)) {
+                spills = new RowSpillFile[NPARTITIONS];
+                for (int i = 0; i < NPARTITIONS; i++) {
+                    spills[i] = new RowSpillFile(context, distinctType, "distinct-");
+                }
+            }
+            return true;
+        }
+
+        private void discardPartitions() {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+            if (spills != null) {
+                for (RowSpillFile spill : spills) {
+                    spill.close();
+                }
+                spills = null;
+            }
+            while (!pending.isEmpty()) {
+                pending.pop().close();
+            }
+            pendingLevels.clear();
+        }
+
+        // Object state
+
+        private final Deque<RowSpillFile> pending = new ArrayDeque<>();
+        private final Deque<Integer> pendingLevels = new ArrayDeque<>();
+        private Set<ValuesKey> seen;
+        private RowSpillFile[] spills;
+        private RowSpillFile current;
+        private int level;
+        private long memoryUsed, memoryLimit;
+    }
+}
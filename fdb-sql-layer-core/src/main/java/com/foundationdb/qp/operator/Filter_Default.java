@@ -132,7 +132,7 @@ class Filter_Default extends Operator
 
     // Inner classes
 
-    private class Execution extends ChainedCursor
+    private class Execution extends ChainedCursor implements BatchCursor
     {
         // Cursor interface
 
@@ -178,6 +178,46 @@ class Filter_Default extends Operator
             }
         }
 
+        // BatchCursor interface
+
+        @Override
+        public int nextBatch(RowBatch batch)
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                checkQueryCancelation();
+                int start = batch.size();
+                int kept = start;
+                while ((kept == start) && isActive()) {
+                    batch.fill(input);
+                    // Compact the rows being kept in place.
+                    for (int i = kept; i < batch.size(); i++) {
+                        Row row = batch.get(i);
+                        if (keepTypes.contains(row.rowType())) {
+                            batch.set(kept++, row);
+                        }
+                    }
+                    if (!batch.isFull()) {
+                        setIdle(); // Input exhausted.
+                    }
+                    batch.truncate(kept);
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Filter_Default: yield {} rows", kept - start);
+                }
+                return kept - start;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
         // Execution interface
 
         Execution(QueryContext context, Cursor input)
@@ -68,6 +68,10 @@ import static java.lang.Math.min;
  will be preserved in the output stream (flag = KEEP_INPUT), or
  discarded (flag = DISCARD_INPUT).
 
+ <li><b>int lookaheadMin:</b> Number of cursors to keep open at first.
+  Whenever a lookup has to wait for its row, this doubles, up to
+  lookaheadQuantum.
+
  <li><b>int lookaheadQuantum:</b> Number of cursors to try to keep open by looking
   ahead in input stream, possibly across multiple outer loops.
 
@@ -136,7 +140,7 @@ class GroupLookup_Default extends Operator
             return new Execution(context, inputOperator.cursor(context, bindingsCursor));
         }
         else {
-            return new LookaheadExecution(context, inputOperator.cursor(context, bindingsCursor), lookaheadQuantum);
+            return new LookaheadExecution(context, inputOperator.cursor(context, bindingsCursor), lookaheadMin, lookaheadQuantum);
         }
     }
 
@@ -161,12 +165,14 @@ class GroupLookup_Default extends Operator
                                RowType inputRowType,
                                Collection<TableRowType> outputRowTypes,
                                API.InputPreservationOption flag,
+                               int lookaheadMin,
                                int lookaheadQuantum)
     {
         this.inputOperator = inputOperator;
         this.group = group;
         this.inputRowType = inputRowType;
         this.keepInput = flag == API.InputPreservationOption.KEEP_INPUT;
+        this.lookaheadMin = lookaheadMin;
         this.lookaheadQuantum = lookaheadQuantum;
 
         ArgumentValidation.notEmpty("outputRowTypes", outputRowTypes);
@@ -315,7 +321,7 @@ class GroupLookup_Default extends Operator
     private final List<TableRowType> branchOutputRowTypes;
     private final boolean keepInput;
     private final int branchRootOrdinal;
-    private final int lookaheadQuantum;
+    private final int lookaheadMin, lookaheadQuantum;
 
     @Override
     public CompoundExplainer getExplainer(ExplainContext context)
@@ -573,7 +579,7 @@ class GroupLookup_Default extends Operator
                         cursorIndex++;
                     }
                     else {
-                        outputRow = inputs[currentIndex].cursors[cursorIndex].next();
+                        outputRow = lookup(inputs[currentIndex].cursors[cursorIndex]);
                         if (cursorIndex == branchCursorIndex) {
                             // Get all matching rows from branch.
                             if (outputRow == null) {
@@ -615,6 +621,9 @@ class GroupLookup_Default extends Operator
                     inputs[currentIndex].clearState();
                     currentIndex = (currentIndex + 1) % quantum;
                 }
+                if (LOG_EXECUTION) {
+                    LOG.debug("GroupLookup: lookahead {}", window);
+                }
                 if (inputs[nextIndex].inputRow == null && !input.isClosed()) {
                     input.close();
                     nextBindings = null;
@@ -680,7 +689,7 @@ class GroupLookup_Default extends Operator
 
         // LookaheadExecution interface
 
-        LookaheadExecution(QueryContext context, Cursor input, int quantum) {
+        LookaheadExecution(QueryContext context, Cursor input, int min, int quantum) {
             super(context);
             this.input = input;
             this.pendingBindings = new ArrayDeque<>(quantum+1);
@@ -703,6 +712,7 @@ class GroupLookup_Default extends Operator
             // Convert from number of cursors to number of input rows, rounding up.
             quantum = (quantum + ncursors - 1) / ncursors;
             this.quantum = quantum;
+            this.window = new LookaheadWindow((min + ncursors - 1) / ncursors, quantum);
             this.ncursors = nindex;
             this.inputs = new InputState[quantum];
             for (int j = 0; j < quantum; j++) {
@@ -725,7 +735,7 @@ class GroupLookup_Default extends Operator
         private void fillPipeline() {
             // Get some more input rows, crossing bindings boundaries as
             // necessary, and open cursors for them.
-            while (!bindingsExhausted && inputs[nextIndex].inputRow == null) {
+            while (!bindingsExhausted && (pipelined() < window.size())) {
                 if (nextBindings == null) {
                     if (newBindings) {
                         nextBindings = currentBindings;
@@ -777,6 +787,25 @@ class GroupLookup_Default extends Operator
             }
         }
 
+        /** Number of input rows with lookups open, including the current one. */
+        private int pipelined() {
+            if (inputs[nextIndex].inputRow != null) {
+                return quantum; // Full.
+            }
+            return (nextIndex - currentIndex + quantum) % quantum;
+        }
+
+        private Row lookup(GroupCursor cursor) {
+            if (!window.isAdapting()) {
+                return cursor.next();
+            }
+            // Waiting here means the window was too small to hide the read.
+            long start = System.nanoTime();
+            Row row = cursor.next();
+            window.waited(System.nanoTime() - start);
+            return row;
+        }
+
         private class InputState 
         {
             public Row inputRow;
@@ -814,6 +843,7 @@ class GroupLookup_Default extends Operator
         private final Cursor input;
         private final Queue<QueryBindings> pendingBindings;
         private final int quantum;
+        private final LookaheadWindow window;
         private final InputState[] inputs;
         
         
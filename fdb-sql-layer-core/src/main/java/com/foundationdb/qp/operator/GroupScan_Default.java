@@ -128,7 +128,7 @@ class GroupScan_Default extends Operator
 
     // Inner classes
 
-    private static class Execution extends LeafCursor implements Rebindable
+    private static class Execution extends LeafCursor implements Rebindable, BatchCursor
     {
 
         // Cursor interface
@@ -168,6 +168,36 @@ class GroupScan_Default extends Operator
             }
         }
 
+        // BatchCursor interface
+
+        @Override
+        public int nextBatch(RowBatch batch)
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                checkQueryCancelation();
+                int start = batch.size();
+                while (!batch.isFull()) {
+                    Row row = cursor.next();
+                    if (row == null) {
+                        setIdle();
+                        break;
+                    }
+                    batch.add(row);
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("GroupScan_Default: yield {} rows", batch.size() - start);
+                }
+                return batch.size() - start;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
         @Override
         public void close()
         {
@@ -91,10 +91,12 @@ class HashTableLookup_Default extends Operator
             TAP_OPEN.in();
             try {
                 super.open();
-                hashTable = bindings.getHashTable(hashTableBindingPosition);
+                HashTable hashTable = bindings.getHashTable(hashTableBindingPosition);
                 assert (hashedRowType == hashTable.getRowType()) : hashTable;
-                innerRowList = hashTable.getMatchingRows(null, evaluatableComparisonFields, bindings);
-                innerRowListPosition = 0;
+                if ((probe == null) || (probe.getHashTable() != hashTable)) {
+                    probe = hashTable.newProbe();
+                }
+                probe.find(null, evaluatableComparisonFields, bindings);
             } finally {
                 TAP_OPEN.out();
             }
@@ -110,11 +112,8 @@ class HashTableLookup_Default extends Operator
                 if (CURSOR_LIFECYCLE_ENABLED) {
                     CursorLifecycle.checkIdleOrActive(this);
                 }
-                Row next = null;
-                if(innerRowListPosition < innerRowList.size()) {
-                    next = innerRowList.get(innerRowListPosition++);
-                    assert(next.rowType() == hashedRowType);
-                }
+                Row next = probe.next();
+                assert (next == null) || (next.rowType() == hashedRowType) : next;
                 if (LOG_EXECUTION) {
                     LOG.debug("HashJoin: yield {}", next);
                 }
@@ -134,9 +133,7 @@ class HashTableLookup_Default extends Operator
             }
         }
         // Cursor interface
-        protected HashTable hashTable;
-        private List<Row> innerRowList;
-        private int innerRowListPosition = 0;
+        private HashTable.Probe probe;
         private final List<TEvaluatableExpression> evaluatableComparisonFields = new ArrayList<>();
 
     }
@@ -62,6 +62,10 @@ import java.util.List;
  <li><b>int lookaheadQuantum:</b> Number of cursors to try to keep open by looking
   ahead in bindings stream.
 
+ <li><b>int lookaheadMin:</b> Number of cursors to keep open at first.
+  Whenever the first row for some bindings has to be waited for, this
+  doubles, up to lookaheadQuantum.
+
  </ul>
 
  <h1>Behavior</h1>
@@ -171,7 +175,7 @@ class IndexScan_Default extends Operator
         else {
             return new LookaheadExecution(context, bindingsCursor, 
                                           context.getStore(index.rootMostTable()),
-                                          lookaheadQuantum);
+                                          lookaheadMin, lookaheadQuantum);
         }
     }
 
@@ -181,6 +185,7 @@ class IndexScan_Default extends Operator
                              IndexKeyRange indexKeyRange,
                              API.Ordering ordering,
                              IndexScanSelector scanSelector,
+                             int lookaheadMin,
                              int lookaheadQuantum)
     {
         ArgumentValidation.notNull("indexType", indexType);
@@ -189,6 +194,7 @@ class IndexScan_Default extends Operator
         this.ordering = ordering;
         this.indexKeyRange = indexKeyRange;
         this.scanSelector = scanSelector;
+        this.lookaheadMin = lookaheadMin;
         this.lookaheadQuantum = lookaheadQuantum;
     }
 
@@ -205,7 +211,7 @@ class IndexScan_Default extends Operator
     private final API.Ordering ordering;
     private final IndexKeyRange indexKeyRange;
     private final IndexScanSelector scanSelector;
-    private final int lookaheadQuantum;
+    private final int lookaheadMin, lookaheadQuantum;
 
     @Override
     public CompoundExplainer getExplainer(ExplainContext context)
@@ -286,7 +292,7 @@ class IndexScan_Default extends Operator
 
     // Inner classes
 
-    private class Execution extends LeafCursor
+    private class Execution extends LeafCursor implements BatchCursor
     {
         // Cursor interface
 
@@ -325,6 +331,36 @@ class IndexScan_Default extends Operator
             }
         }
 
+        // BatchCursor interface
+
+        @Override
+        public int nextBatch(RowBatch batch)
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                checkQueryCancelation();
+                int start = batch.size();
+                while (!batch.isFull()) {
+                    Row row = cursor.next();
+                    if (row == null) {
+                        setIdle();
+                        break;
+                    }
+                    batch.add(row);
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("IndexScan_Default$Execution: yield {} rows", batch.size() - start);
+                }
+                return batch.size() - start;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
         @Override
         public void jump(Row row, ColumnSelector columnSelector)
         {
@@ -398,6 +434,14 @@ class IndexScan_Default extends Operator
             }
         }
 
+        @Override
+        public void close() {
+            if (LOG_EXECUTION) {
+                LOG.debug(IndexScan_Default.this.toString() + ": lookahead {}", window);
+            }
+            super.close();
+        }
+
         // LookaheadLeafCursor interface
 
         @Override
@@ -416,8 +460,8 @@ class IndexScan_Default extends Operator
         // LookaheadExecution interface
 
         LookaheadExecution(QueryContext context, QueryBindingsCursor bindingsCursor, 
-                           StoreAdapter adapter, int quantum) {
-            super(context, bindingsCursor, adapter, quantum);
+                           StoreAdapter adapter, int min, int quantum) {
+            super(context, bindingsCursor, adapter, min, quantum);
         }
         
         @Override
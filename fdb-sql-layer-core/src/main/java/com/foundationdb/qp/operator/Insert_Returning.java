@@ -16,9 +16,11 @@
  */
 package com.foundationdb.qp.operator;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.foundationdb.qp.row.ImmutableRow;
 import com.foundationdb.qp.row.Row;
 import com.foundationdb.server.explain.Attributes;
 import com.foundationdb.server.explain.CompoundExplainer;
@@ -50,8 +52,11 @@ table. In practice, this is currently done via
 <i>PersistitAdapater#insertRow</i>, which invokes
 <i>PersistitStore#insertRow</i>
 
-As next is called, each row is inserted as a side effect of pulling
-rows through the InsertReturning operator. Rows are returned unchanged. 
+As next is called, rows are inserted as a side effect of pulling
+rows through the InsertReturning operator. Up to
+<i>WRITE_BATCH_ROWS</i> input rows are read and written together,
+with <i>StoreAdapter#writeRows</i>, before the first of them is
+returned. Rows are returned unchanged and in order.
 
 <h1>Output</h1>
 
@@ -69,13 +74,13 @@ Insertion assumes the data store needs to alter the underlying storage
 system, including any system change log. This requires multiple IOs
 per operation.
 
-Insert may be slow because because indexes are also updated. Insert
-may be able to be improved in performance by batching the index
-updates, but there is no current API to so.
+Insert may be slow because because indexes are also updated. Writing
+rows in batches lets the store overlap the reads needed to check
+uniqueness and foreign keys for all the rows in the batch.
 
 <h1>Memory Requirements</h1>
 
-None.
+One batch of rows.
 
 */
 
@@ -117,6 +122,7 @@ public class Insert_Returning extends Operator {
     private static final InOutTap TAP_OPEN = OPERATOR_TAP.createSubsidiaryTap("operator: InsertReturning open");
     private static final InOutTap TAP_NEXT = OPERATOR_TAP.createSubsidiaryTap("operator: InsertReturning next");
     private static final Logger LOG = LoggerFactory.getLogger(Insert_Returning.class);
+    static final int WRITE_BATCH_ROWS = 100;
 
     // Object state
 
@@ -151,21 +157,42 @@ public class Insert_Returning extends Operator {
                 }
                 checkQueryCancelation();
                 
-                Row inputRow;
-                if ((inputRow = input.next()) != null) {
-                    // Do the real work of inserting the row
-                    adapter().writeRow(inputRow);
-                    if (LOG_EXECUTION) {
-                        LOG.debug("Insert_Returning: inserting {}", inputRow);
+                if (position >= batch.size()) {
+                    batch.clear();
+                    position = 0;
+                    Row inputRow;
+                    while ((batch.size() < WRITE_BATCH_ROWS) &&
+                           ((inputRow = input.next()) != null)) {
+                        // A lazy row, such as a projection, would take the
+                        // values of the next one while it waits in the batch.
+                        if (inputRow.isBindingsSensitive()) {
+                            inputRow = ImmutableRow.buildImmutableRow(inputRow);
+                        }
+                        batch.add(inputRow);
+                    }
+                    if (!batch.isEmpty()) {
+                        // Do the real work of inserting the rows
+                        adapter().writeRows(batch);
+                        if (LOG_EXECUTION) {
+                            LOG.debug("Insert_Returning: inserting {}", batch);
+                        }
                     }
                 }
-                return inputRow; 
+                return (position < batch.size()) ? batch.get(position++) : null;
             } finally {
                 if (TAP_NEXT_ENABLED) {
                     TAP_NEXT.out();
                 }
             }
         }
+
+        @Override
+        public void close()
+        {
+            batch.clear();
+            position = 0;
+            super.close();
+        }
     
         // Execution interface
     
@@ -175,5 +202,8 @@ public class Insert_Returning extends Operator {
         }
     
         // Object state
+
+        private final List<Row> batch = new ArrayList<>();
+        private int position;
     }
 }
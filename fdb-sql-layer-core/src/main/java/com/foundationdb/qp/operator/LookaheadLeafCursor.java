@@ -44,7 +44,8 @@ public abstract class LookaheadLeafCursor<C extends BindingsAwareCursor> extends
             // At the very beginning, the pipeline isn't started.
             currentCursor = openACursor(currentBindings, false);
         }
-        while (!cursorPool.isEmpty() && !bindingsExhausted) {
+        firstRow = true;
+        while ((openCursors() < window.size()) && !bindingsExhausted) {
             QueryBindings bindings = bindingsCursor.nextBindings();
             if (bindings == null) {
                 bindingsExhausted = true;
@@ -64,7 +65,17 @@ public abstract class LookaheadLeafCursor<C extends BindingsAwareCursor> extends
             CursorLifecycle.checkIdleOrActive(this);
         }
         checkQueryCancelation();
-        Row row = currentCursor.next();
+        Row row;
+        if (firstRow && window.isAdapting()) {
+            // Waiting for the first row means it was not looked ahead far enough.
+            long start = System.nanoTime();
+            row = currentCursor.next();
+            window.waited(System.nanoTime() - start);
+        }
+        else {
+            row = currentCursor.next();
+        }
+        firstRow = false;
         if (row == null) {
             currentCursor.setIdle();
         }
@@ -164,8 +175,15 @@ public abstract class LookaheadLeafCursor<C extends BindingsAwareCursor> extends
 
     LookaheadLeafCursor(QueryContext context, QueryBindingsCursor bindingsCursor, 
                         StoreAdapter adapter, int quantum) {
+        this(context, bindingsCursor, adapter, quantum, quantum);
+    }
+
+    LookaheadLeafCursor(QueryContext context, QueryBindingsCursor bindingsCursor, 
+                        StoreAdapter adapter, int min, int quantum) {
         super(context);
         this.bindingsCursor = bindingsCursor;
+        this.quantum = quantum;
+        this.window = new LookaheadWindow(min, quantum);
         this.pendingBindings = new ArrayDeque<>(quantum+1);
         this.cursorPool = new ArrayDeque<>(quantum);
         for (int i = 0; i < quantum; i++) {
@@ -195,6 +213,11 @@ public abstract class LookaheadLeafCursor<C extends BindingsAwareCursor> extends
 
     // For use by this class
 
+    /** Number of cursors out of the pool, including the current one. */
+    protected int openCursors() {
+        return quantum - cursorPool.size();
+    }
+
     protected void resetActiveCursors() {
         if (currentCursor != null) {
             try {
@@ -241,7 +264,9 @@ public abstract class LookaheadLeafCursor<C extends BindingsAwareCursor> extends
     protected final QueryBindingsCursor bindingsCursor;
     protected final Queue<BindingsAndCursor<C>> pendingBindings;
     protected final Queue<C> cursorPool;
+    protected final int quantum;
+    protected final LookaheadWindow window;
     protected QueryBindings currentBindings;
     protected C pendingCursor, currentCursor;
-    protected boolean bindingsExhausted;// destroyed;
+    protected boolean bindingsExhausted, firstRow;// destroyed;
 }
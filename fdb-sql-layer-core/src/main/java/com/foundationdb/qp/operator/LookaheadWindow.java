@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+/** How many lookups a lookahead cursor keeps in flight.
+ *
+ * The window starts small, so that a lookup that only ever sees a few
+ * input rows does not issue reads nobody will use, and doubles each
+ * time the consumer has to wait for a read that lookahead should
+ * already have started, up to the plan's quantum. It never shrinks:
+ * once the store has shown it is slow, it stays slow for the rest of
+ * the query.
+ */
+final class LookaheadWindow
+{
+    // A read that was already complete comes back in a few microseconds.
+    static final long STALL_NANOS = 100000;
+
+    public LookaheadWindow(int min, int max) {
+        this.max = Math.max(1, max);
+        this.size = Math.max(1, Math.min(min, this.max));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Whether waits are still worth timing. */
+    public boolean isAdapting() {
+        return size < max;
+    }
+
+    /** The consumer waited <code>nanos</code> for a row. */
+    public void waited(long nanos) {
+        if ((nanos > STALL_NANOS) && (size < max)) {
+            size = Math.min(max, size * 2);
+            stalls++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("window %d of %d after %d stalls", size, max, stalls);
+    }
+
+    private final int max;
+    private int size, stalls;
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.util.HashTable;
+import com.foundationdb.server.explain.*;
+import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
+import com.foundationdb.server.types.texpressions.TPreparedExpression;
+import com.foundationdb.util.ArgumentValidation;
+import com.foundationdb.util.tap.InOutTap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <h1>Overview</h1>
+ *
+ * Partition_HashTable passes on the probe side of a hash join, holding back
+ * the rows that would probe a partition of the hash table that has been
+ * spilled, so that each such partition is read back once for all of them.
+ *
+ * <h1>Arguments</h1>
+ *
+ * <ul>
+ * <li><b>Operator input:</b> Operator providing the probe rows, usually the
+ * outer input of the Map_NestedLoops under Using_HashTable.
+ * <li><b>RowType probeRowType:</b> Type of the input rows.
+ * <li><b>List<TPreparedExpression> probeFields:</b> The same keys as the
+ * HashTableLookup_Default that is probed, but applied to the input row
+ * rather than to its binding.
+ * <li><b>int hashTableBindingPosition:</b> Location of the hash table loaded
+ * by Using_HashTable.
+ * </ul>
+ *
+ * <h1>Behavior</h1>
+ *
+ * Input rows whose key falls in a partition that is in memory, or that will
+ * match nothing, are passed on at once. The others are held back, by
+ * partition. Once the input is used up, the held back rows are passed on one
+ * partition at a time, each after that partition has been read back in.
+ *
+ * <h1>Output</h1>
+ *
+ * The input rows, in the same order if the hash table did not spill.
+ *
+ * <h1>Assumptions</h1>
+ *
+ * Nothing downstream relies on the order of the input.
+ *
+ * <h1>Performance</h1>
+ *
+ * Held back rows that have no hKey are written to temporary files.
+ *
+ * <h1>Memory Requirements</h1>
+ *
+ * Held back rows that have an hKey, which a file would lose, are kept in
+ * memory, up to the same limit as the hash table. Rows past that are passed
+ * on at once.
+ */
+
+class Partition_HashTable extends Operator
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName();
+    }
+
+    // Operator interface
+
+    @Override
+    public void findDerivedTypes(Set<RowType> derivedTypes)
+    {
+        inputOperator.findDerivedTypes(derivedTypes);
+    }
+
+    @Override
+    public List<Operator> getInputOperators()
+    {
+        return Collections.singletonList(inputOperator);
+    }
+
+    @Override
+    protected Cursor cursor(QueryContext context, QueryBindingsCursor bindingsCursor)
+    {
+        return new Execution(context, inputOperator.cursor(context, bindingsCursor));
+    }
+
+    @Override
+    public String describePlan()
+    {
+        return describePlan(inputOperator);
+    }
+
+    // Partition_HashTable interface
+
+    public Partition_HashTable(Operator inputOperator,
+                               RowType probeRowType,
+                               List<TPreparedExpression> probeFields,
+                               int hashTableBindingPosition)
+    {
+        ArgumentValidation.notNull("inputOperator", inputOperator);
+        ArgumentValidation.notNull("probeRowType", probeRowType);
+        ArgumentValidation.notNull("probeFields", probeFields);
+        ArgumentValidation.isGTE("probeFields", probeFields.size(), 1);
+        this.inputOperator = inputOperator;
+        this.probeRowType = probeRowType;
+        this.probeFields = probeFields;
+        this.hashTableBindingPosition = hashTableBindingPosition;
+    }
+
+    // Class state
+
+    private static final InOutTap TAP_OPEN = OPERATOR_TAP.createSubsidiaryTap("operator: Partition_HashTable open");
+    private static final InOutTap TAP_NEXT = OPERATOR_TAP.createSubsidiaryTap("operator: Partition_HashTable next");
+    private static final Logger LOG = LoggerFactory.getLogger(Partition_HashTable.class);
+
+    // Object state
+
+    private final Operator inputOperator;
+    private final RowType probeRowType;
+    private final List<TPreparedExpression> probeFields;
+    private final int hashTableBindingPosition;
+
+    @Override
+    public CompoundExplainer getExplainer(ExplainContext context)
+    {
+        Attributes atts = new Attributes();
+        atts.put(Label.NAME, PrimitiveExplainer.getInstance(getName()));
+        atts.put(Label.BINDING_POSITION, PrimitiveExplainer.getInstance(hashTableBindingPosition));
+        atts.put(Label.INPUT_OPERATOR, inputOperator.getExplainer(context));
+        for (TPreparedExpression field : probeFields) {
+            atts.put(Label.EXPRESSIONS, field.getExplainer(context));
+        }
+        return new CompoundExplainer(Type.HASH_JOIN, atts);
+    }
+
+    // Inner classes
+
+    private class Execution extends ChainedCursor
+    {
+        // Cursor interface
+
+        @Override
+        public void open()
+        {
+            TAP_OPEN.in();
+            try {
+                super.open();
+                HashTable hashTable = bindings.getHashTable(hashTableBindingPosition);
+                deferred = hashTable.newDeferredProbes(probeRowType, evaluatableProbeFields, bindings);
+                inputDone = false;
+            } finally {
+                TAP_OPEN.out();
+            }
+        }
+
+        @Override
+        public Row next()
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                checkQueryCancelation();
+                Row row = null;
+                while (!inputDone) {
+                    row = input.next();
+                    if (row == null) {
+                        inputDone = true;
+                    }
+                    else if (!deferred.defer(row)) {
+                        break;
+                    }
+                }
+                if (inputDone) {
+                    row = deferred.next();
+                    if (row == null) {
+                        setIdle();
+                    }
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Partition_HashTable: yield {}", row);
+                }
+                return row;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
+        @Override
+        public void close()
+        {
+            try {
+                if (deferred != null) {
+                    deferred.close();
+                    deferred = null;
+                }
+            } finally {
+                super.close();
+            }
+        }
+
+        // Execution interface
+
+        Execution(QueryContext context, Cursor input)
+        {
+            super(context, input);
+            for (TPreparedExpression probeField : probeFields) {
+                evaluatableProbeFields.add(probeField.build());
+            }
+        }
+
+        // Object state
+
+        private final List<TEvaluatableExpression> evaluatableProbeFields = new ArrayList<>();
+        private HashTable.DeferredProbes deferred;
+        private boolean inputDone;
+    }
+}
@@ -19,13 +19,16 @@ package com.foundationdb.qp.operator;
 
 import com.foundationdb.qp.row.ProjectedRow;
 import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.row.ValuesHolderRow;
 import com.foundationdb.qp.rowtype.ProjectedRowType;
 import com.foundationdb.qp.rowtype.ProjectedTableRowType;
 import com.foundationdb.qp.rowtype.RowType;
 import com.foundationdb.server.explain.*;
 import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.texpressions.ExpressionCompiler;
 import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
 import com.foundationdb.server.types.texpressions.TPreparedExpression;
+import com.foundationdb.server.types.value.ValueTargets;
 import com.foundationdb.util.ArgumentValidation;
 import com.foundationdb.util.tap.InOutTap;
 import org.slf4j.Logger;
@@ -63,6 +66,9 @@ import java.util.*;
   <h1>Performance</h1>
 
   Project_Default does no IO. For each input row, the type is checked and each output field is computed.
+  When every expression is a field, a literal, or some other expression that can neither fail nor have a side
+  effect, a batch of input rows is projected one expression at a time; otherwise fields are computed as the
+  projected row is read.
 
   <h1>Memory Requirements</h1>
 
@@ -89,7 +95,14 @@ class Project_Default extends Operator
     @Override
     protected Cursor cursor(QueryContext context, QueryBindingsCursor bindingsCursor)
     {
-        return new Execution(context, inputOperator.cursor(context, bindingsCursor));
+        Cursor input = inputOperator.cursor(context, bindingsCursor);
+        if (projectType.hasTable() || !batchable) {
+            // Table projections keep the lazy ProjectedRow, and so does any projection
+            // that could fail or have a side effect, which must then only be evaluated
+            // for the rows and columns actually read, in the order they are read.
+            return new Execution(context, input);
+        }
+        return new BatchExecution(context, input);
     }
 
     @Override
@@ -127,6 +140,8 @@ class Project_Default extends Operator
         this.inputOperator = inputOperator;
         this.rowType = rowType;
         this.pExpressions = pExpressions;
+        this.compiledExpressions = ExpressionCompiler.compile(pExpressions);
+        this.batchable = isBatchable(compiledExpressions);
         this.projectType = rowType.schema().newProjectType(pExpressions);
     }
 
@@ -146,8 +161,24 @@ class Project_Default extends Operator
                                                     projectTableRowType.table(),
                                                     pExpressions, true);
         this.pExpressions = pExpressions; // TODO defensively copy once the old expressions are gone (until then, this may NPE)
+        this.compiledExpressions = ExpressionCompiler.compile(pExpressions);
+        this.batchable = isBatchable(compiledExpressions);
     }
 
+    // For internal use
+
+    // A whole batch is projected one column at a time, so every expression must be safe to
+    // evaluate for every row, ahead of the rows before it and whether or not it is read.
+    private static boolean isBatchable(List<? extends TPreparedExpression> expressions)
+    {
+        if (expressions == null)
+            return false;
+        for (TPreparedExpression expression : expressions) {
+            if (!ExpressionCompiler.isPureAndTotal(expression))
+                return false;
+        }
+        return true;
+    }
 
     // Class state
     
@@ -160,6 +191,8 @@ class Project_Default extends Operator
     protected final Operator inputOperator;
     protected final RowType rowType;
     private final List<? extends TPreparedExpression> pExpressions;
+    private final List<? extends TPreparedExpression> compiledExpressions;
+    private final boolean batchable;
     protected ProjectedRowType projectType;
 
     @Override
@@ -235,13 +268,84 @@ class Project_Default extends Operator
         {
             super(context, input);
             // one list of evaluatables per execution    
-            if (pExpressions != null)
-                pEvalExpr = ProjectedRow.createTEvaluatableExpressions(pExpressions);
+            if (compiledExpressions != null)
+                pEvalExpr = ProjectedRow.createTEvaluatableExpressions(compiledExpressions);
             else
                 pEvalExpr = null;
         }
 
         // Object state
-        private List<TEvaluatableExpression> pEvalExpr = null;
+        protected List<TEvaluatableExpression> pEvalExpr = null;
+    }
+
+    // Projects a batch one expression at a time, into rows of its own,
+    // since a ProjectedRow shares the expressions' result values.
+    private class BatchExecution extends Execution implements BatchCursor
+    {
+        // BatchCursor interface
+
+        @Override
+        public int nextBatch(RowBatch batch)
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                checkQueryCancelation();
+                int start = batch.size();
+                batch.fill(input);
+                int end = batch.size();
+                if (!batch.isFull()) {
+                    setIdle();
+                }
+                List<ValuesHolderRow> projected = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    if (batch.get(i).rowType() == rowType) {
+                        ValuesHolderRow projectedRow = new ValuesHolderRow(projectType);
+                        projected.add(projectedRow);
+                    }
+                    else {
+                        projected.add(null);
+                    }
+                }
+                for (int j = 0; j < pEvalExpr.size(); j++) {
+                    TEvaluatableExpression evaluation = pEvalExpr.get(j);
+                    evaluation.with(context);
+                    evaluation.with(bindings);
+                    for (int i = start; i < end; i++) {
+                        ValuesHolderRow projectedRow = projected.get(i - start);
+                        if (projectedRow != null) {
+                            evaluation.with(batch.get(i));
+                            evaluation.evaluate();
+                            ValueTargets.copyFrom(evaluation.resultValue(), projectedRow.valueAt(j));
+                        }
+                    }
+                }
+                for (int i = start; i < end; i++) {
+                    ValuesHolderRow projectedRow = projected.get(i - start);
+                    if (projectedRow != null) {
+                        batch.set(i, projectedRow);
+                    }
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Project_Default: yield {} rows", end - start);
+                }
+                return end - start;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
+        // BatchExecution interface
+
+        BatchExecution(QueryContext context, Cursor input)
+        {
+            super(context, input);
+        }
     }
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.ImmutableRow;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.util.ArgumentValidation;
+
+import java.util.Arrays;
+
+/**
+ * A reusable block of rows, passed between {@link BatchCursor}s.
+ *
+ * Unlike a row returned by <code>next</code>, which need only stay valid
+ * until the following call, every row in a batch stays valid until the
+ * batch is cleared. Rows whose values are computed on demand from shared
+ * state (see {@link Row#isBindingsSensitive}) are therefore copied when
+ * read from a cursor that does not support batches.
+ */
+public class RowBatch
+{
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public RowBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RowBatch(int capacity) {
+        ArgumentValidation.isGT("capacity", capacity, 0);
+        rows = new Row[capacity];
+    }
+
+    public int capacity() {
+        return rows.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return (size == 0);
+    }
+
+    public boolean isFull() {
+        return (size == rows.length);
+    }
+
+    public Row get(int index) {
+        assert (index < size) : index;
+        return rows[index];
+    }
+
+    public void set(int index, Row row) {
+        assert (index < size) : index;
+        rows[index] = row;
+    }
+
+    public void add(Row row) {
+        assert !isFull();
+        rows[size++] = row;
+    }
+
+    /** Discard all rows from <code>newSize</code> on. */
+    public void truncate(int newSize) {
+        assert (newSize <= size) : newSize;
+        Arrays.fill(rows, newSize, size, null);
+        size = newSize;
+    }
+
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Append rows from <code>cursor</code> until this batch is full or the
+     * cursor is exhausted, which is the case exactly when the batch is then
+     * not full.
+     *
+     * @return the number of rows appended
+     */
+    public int fill(RowCursor cursor) {
+        int start = size;
+        if (cursor instanceof BatchCursor) {
+            BatchCursor batchCursor = (BatchCursor)cursor;
+            while (!isFull()) {
+                if (batchCursor.nextBatch(this) == 0) {
+                    break;
+                }
+            }
+        }
+        else {
+            while (!isFull()) {
+                Row row = cursor.next();
+                if (row == null) {
+                    break;
+                }
+                if (row.isBindingsSensitive()) {
+                    row = ImmutableRow.buildImmutableRow(row);
+                }
+                add(row);
+            }
+        }
+        return size - start;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(rows, size));
+    }
+
+    private final Row[] rows;
+    private int size;
+}
@@ -22,6 +22,8 @@ import com.foundationdb.qp.rowtype.IndexRowType;
 import com.foundationdb.qp.rowtype.RowType;
 import com.foundationdb.server.explain.*;
 import com.foundationdb.server.types.aksql.aktypes.AkBool;
+import com.foundationdb.server.types.texpressions.BatchPredicate;
+import com.foundationdb.server.types.texpressions.ExpressionCompiler;
 import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
 import com.foundationdb.server.types.texpressions.TPreparedExpression;
 import com.foundationdb.util.ArgumentValidation;
@@ -30,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -70,7 +73,9 @@ import java.util.Set;
 
  <h1>Performance</h1>
 
- Project_Default does no IO. For each input row, the type is checked and each output field is computed.
+ Select_HKeyOrdered does no IO. For each input row, the type is checked and the predicate may be evaluated.
+ When rows are read in batches, a predicate made of integer comparisons is evaluated over all the rows of
+ predicateRowType in the batch at once (see {@link ExpressionCompiler#compileBatch}).
 
  <h1>Memory Requirements</h1>
 
@@ -130,6 +135,7 @@ class Select_HKeyOrdered extends Operator
         ArgumentValidation.notNull("predicate", pPredicate);
         if (pPredicate.resultType().typeClass() != AkBool.INSTANCE)
             throw new IllegalArgumentException("predicate must return type " + AkBool.INSTANCE);
+        this.compiledPredicate = ExpressionCompiler.compile(pPredicate);
     }
 
     // Class state
@@ -144,6 +150,7 @@ class Select_HKeyOrdered extends Operator
     private final RowType predicateRowType;
     private final boolean groupScanInput;
     private final TPreparedExpression pPredicate;
+    private final TPreparedExpression compiledPredicate;
 
     @Override
     public CompoundExplainer getExplainer(ExplainContext context)
@@ -157,7 +164,7 @@ class Select_HKeyOrdered extends Operator
 
     // Inner classes
 
-    private class Execution extends ChainedCursor
+    private class Execution extends ChainedCursor implements BatchCursor
     {
         // Cursor interface
 
@@ -169,6 +176,10 @@ class Select_HKeyOrdered extends Operator
                 super.open();
                 pEvaluation.with(context);
                 pEvaluation.with(bindings);
+                if (batchPredicate != null) {
+                    batchPredicate.with(context);
+                    batchPredicate.with(bindings);
+                }
             } finally {
                 TAP_OPEN.out();
             }
@@ -230,17 +241,105 @@ class Select_HKeyOrdered extends Operator
             selectedRow = null;
         }
 
+        // BatchCursor interface
+
+        @Override
+        public int nextBatch(RowBatch batch)
+        {
+            if (TAP_NEXT_ENABLED) {
+                TAP_NEXT.in();
+            }
+            try {
+                if (CURSOR_LIFECYCLE_ENABLED) {
+                    CursorLifecycle.checkIdleOrActive(this);
+                }
+                checkQueryCancelation();
+                if ((candidates == null) || (candidates.length < batch.capacity())) {
+                    candidates = new Row[batch.capacity()];
+                    selected = new boolean[batch.capacity()];
+                }
+                int start = batch.size();
+                int kept = start;
+                while ((kept == start) && isActive()) {
+                    batch.fill(input);
+                    // Evaluate the predicate for all the rows of predicateRowType first.
+                    int n = 0;
+                    for (int i = kept; i < batch.size(); i++) {
+                        Row row = batch.get(i);
+                        if (row.rowType() == predicateRowType) {
+                            candidates[n++] = row;
+                        }
+                    }
+                    select(n);
+                    // Then compact the rows being kept in place, in order.
+                    int candidate = 0;
+                    for (int i = kept; i < batch.size(); i++) {
+                        Row inputRow = batch.get(i);
+                        if (inputRow.rowType() == predicateRowType) {
+                            if (selected[candidate++]) {
+                                if (groupScanInput) {
+                                    selectedRow = inputRow;
+                                }
+                                batch.set(kept++, inputRow);
+                            }
+                        } else if (predicateRowType.ancestorOf(inputRow.rowType())) {
+                            if (selectedRow != null && selectedRow.ancestorOf(inputRow)) {
+                                batch.set(kept++, inputRow);
+                            } else {
+                                selectedRow = null;
+                            }
+                        } else {
+                            batch.set(kept++, inputRow);
+                        }
+                    }
+                    Arrays.fill(candidates, 0, n, null);
+                    if (!batch.isFull()) {
+                        setIdle(); // Input exhausted.
+                    }
+                    batch.truncate(kept);
+                }
+                if (LOG_EXECUTION) {
+                    LOG.debug("Select_HKeyOrdered: yield {} rows", kept - start);
+                }
+                return kept - start;
+            } finally {
+                if (TAP_NEXT_ENABLED) {
+                    TAP_NEXT.out();
+                }
+            }
+        }
+
         // Execution interface
 
         Execution(QueryContext context, Cursor input)
         {
             super(context, input);
-            this.pEvaluation = pPredicate.build();
+            this.pEvaluation = compiledPredicate.build();
+            this.batchPredicate = ExpressionCompiler.compileBatch(compiledPredicate);
+        }
+
+        // For internal use
+
+        private void select(int n)
+        {
+            Arrays.fill(selected, 0, n, true);
+            if (batchPredicate != null) {
+                batchPredicate.select(candidates, n, selected);
+            } else {
+                for (int i = 0; i < n; i++) {
+                    pEvaluation.with(candidates[i]);
+                    pEvaluation.evaluate();
+                    selected[i] = pEvaluation.resultValue().getBoolean(false);
+                }
+            }
         }
 
         // Object state
 
         private Row selectedRow; // The last input row with type = predicateRowType.
         private final TEvaluatableExpression pEvaluation;
+        private final BatchPredicate batchPredicate; // null if the predicate has no batch form
+        private Row[] candidates;
+        private boolean[] selected;
     }
 }
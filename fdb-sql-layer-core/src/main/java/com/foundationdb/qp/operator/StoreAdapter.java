@@ -38,6 +38,7 @@ import com.foundationdb.server.store.Store;
 import com.foundationdb.util.tap.InOutTap;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class StoreAdapter
@@ -64,6 +65,13 @@ public abstract class StoreAdapter
     }
 
     public abstract void writeRow(Row newRow, Collection<TableIndex> tableIndexes, Collection<GroupIndex> groupIndexes);
+
+    /** Write all of <code>rows</code>, in order, as though by {@link #writeRow(Row)}. */
+    public void writeRows(List<? extends Row> rows) {
+        for (Row row : rows) {
+            writeRow(row);
+        }
+    }
     
     public abstract void deleteRow (Row oldRow, boolean cascadeDelete);
 
@@ -26,6 +26,7 @@ import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
 import com.foundationdb.server.types.texpressions.TPreparedExpression;
 import com.foundationdb.util.ArgumentValidation;
 import com.foundationdb.qp.util.HashTable;
+import com.foundationdb.qp.util.RowSpillFile;
 import com.foundationdb.util.tap.InOutTap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -115,7 +116,6 @@ class Using_HashTable extends Operator
     private final List<TComparison> tComparisons;
     private final List<TPreparedExpression> comparisonFields;
 
-
     @Override
     public CompoundExplainer getExplainer(ExplainContext context) {
         Attributes atts = new Attributes();
@@ -144,7 +144,7 @@ class Using_HashTable extends Operator
                 // Usually super.open called first, but needs to be done
                 // opposite order here to allow Using_HashFilter access
                 // to the filled HashTable in the bindings. 
-                HashTable hashTable = buildHashTable();
+                hashTable = buildHashTable();
                 bindings.setHashTable(tableBindingPosition, hashTable);
                 super.open();
             } finally {
@@ -178,6 +178,19 @@ class Using_HashTable extends Operator
                 if (bindings != null) {
                     bindings.setHashTable(tableBindingPosition, null);
                 }
+                if (hashTable != null) {
+                    if (hashTable.getSpillCount() > 0) {
+                        spillCount += hashTable.getSpillCount();
+                        spillBytes += hashTable.getSpillBytes();
+                        reloadCount += hashTable.getReloadCount();
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Using_HashTable: spilled {} partitions, {} bytes, reloaded {} times",
+                                      new Object[] { spillCount, spillBytes, reloadCount });
+                        }
+                    }
+                    hashTable.close();
+                    hashTable = null;
+                }
             } finally {
                 super.close();
             }
@@ -195,7 +208,7 @@ class Using_HashTable extends Operator
 
         // For use by this class
 
-        private HashTable  buildHashTable() {
+        private HashTable buildHashTable() {
             QueryBindingsCursor bindingsCursor = new SingletonQueryBindingsCursor(bindings);
             Cursor loadCursor = hashInput.cursor(context, bindingsCursor);
             loadCursor.openTopLevel();
@@ -204,6 +217,7 @@ class Using_HashTable extends Operator
             hashTable.setRowType(hashedRowType);
             hashTable.setTComparisons(tComparisons);
             hashTable.setCollators(collators);
+            hashTable.setMemoryLimit(context, RowSpillFile.memoryLimit(context));
             while ((row = loadCursor.next()) != null) {
                 assert(row.rowType() == hashedRowType) : row;
                 hashTable.put(row, evaluatableComparisonFields, bindings);
@@ -211,5 +225,9 @@ class Using_HashTable extends Operator
             loadCursor.closeTopLevel();
             return hashTable;
         }
+
+        private HashTable hashTable;
+        // Totals over every set of bindings this execution has opened for.
+        private long spillCount, spillBytes, reloadCount;
      }
 }
@@ -57,6 +57,7 @@ import com.foundationdb.FDBException;
 
 import java.io.InterruptedIOException;
 import java.util.Collection;
+import java.util.List;
 
 public class FDBAdapter extends StoreAdapter {
     private static final IndexRowPool indexRowPool = new IndexRowPool();
@@ -134,6 +135,16 @@ public class FDBAdapter extends StoreAdapter {
         }
     }
 
+    @Override
+    public void writeRows(List<? extends Row> rows) {
+        try {
+            store.writeRows(getSession(), rows);
+        } catch(InvalidOperationException e) {
+            rollbackIfNeeded(getSession(), e);
+            throw e;
+        }
+    }
+
     @Override
     public void deleteRow(Row oldRow, boolean cascadeDelete) {
         try {
@@ -18,44 +18,170 @@
 package com.foundationdb.qp.util;
 
 import com.foundationdb.qp.operator.QueryBindings;
+import com.foundationdb.qp.operator.QueryContext;
 import com.foundationdb.qp.row.Row;
 import com.foundationdb.qp.rowtype.RowType;
 import com.foundationdb.server.collation.AkCollator;
 import com.foundationdb.server.types.TClass;
 import com.foundationdb.server.types.TComparison;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
 import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
 import com.foundationdb.server.types.value.Value;
 import com.foundationdb.server.types.value.ValueSource;
 import com.foundationdb.server.types.value.ValueSources;
 import com.foundationdb.server.types.value.ValueTargets;
+import com.foundationdb.util.tap.PointTap;
+import com.foundationdb.util.tap.Tap;
 import com.google.common.collect.ArrayListMultimap;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * The build side of a hash join, keyed on the join columns.
+ *
+ * When every key column is a fixed-width integer type (INT, BIGINT, DATE
+ * and the like) with no special comparison, keys are held as
+ * <code>long</code>s in a {@link LongKeyHashTable}, and a {@link Probe} looks
+ * them up without allocating. Otherwise, or as soon as a key turns out not to
+ * fit, keys are held as {@link KeyWrapper}s in a multimap.
+ *
+ * Rows are held in memory until their estimated size passes the limit given
+ * to {@link #setMemoryLimit}. The table is then split into partitions by
+ * hash, and the largest partitions are written to temporary files, as in a
+ * hybrid hash join, until the rest fits. Rows for a partition that has been
+ * spilled go straight to its file.
+ *
+ * A probe into a spilled partition reads that partition back in, dropping
+ * other partitions read back earlier, and then spilling partitions still in
+ * memory, if need be. A spilled partition that is itself too big is split
+ * again, with a different hash, when first read back. So that this happens
+ * once per partition rather than once per probe, the probe side can be
+ * partitioned too, as in a grace hash join: {@link DeferredProbes} holds
+ * back the probes into spilled partitions until all the others are done,
+ * and then hands them back one partition at a time.
+ */
 public class HashTable {
+    private static final int NPARTITIONS = 16;
+    private static final int MAX_LEVEL = 8;
+    /** Nominal overhead of a multimap entry in addition to the row itself. */
+    private static final int ENTRY_OVERHEAD = 48;
+    private static final int LONG_ENTRY_OVERHEAD = 16;
+
+    private enum LongKeyResult { FOUND, NULL, MISMATCH }
+
+    private static final PointTap SPILL_TAP = Tap.createCount("hash table: spill partition");
+    private static final PointTap RELOAD_TAP = Tap.createCount("hash table: reload partition");
+
     private ArrayListMultimap<KeyWrapper, Row> hashTable = ArrayListMultimap.create();
+    private LongKeyHashTable longKeys;
+    private TClass[] longKeyClasses;
+    private long[] putKey;
 
     private RowType hashedRowType;
     private List<TComparison> tComparisons;
     private List<AkCollator> collators;
     private boolean matchNulls;
 
+    private QueryContext context;
+    private long memoryLimit = Long.MAX_VALUE, memoryUsed;
+    private Partition[] partitions;
+    // Needed to recompute the keys of rows read back from a spill file
+    // or moved out of longKeys.
+    private List<TEvaluatableExpression> keyExpressions;
+    private QueryBindings keyBindings;
+    // Spilled partitions that have been read back, least recently probed first.
+    private final LinkedHashSet<Partition> reloaded = new LinkedHashSet<>();
+    private long spillCount, spillBytes, reloadCount;
+
     public List<Row> getMatchingRows(Row row, List<TEvaluatableExpression> evaluatableComparisonFields, QueryBindings bindings){
+        if (longKeys != null) {
+            long[] longKey = new long[longKeys.getKeyCount()];
+            switch (evaluateLongKey(row, evaluatableComparisonFields, bindings, longKey, false)) {
+            case NULL:
+                return Collections.emptyList();
+            case FOUND:
+                List<Row> result = new ArrayList<>();
+                for (int i = longKeys.first(longKey); i >= 0; i = longKeys.next(i)) {
+                    result.add(longKeys.getRow(i));
+                }
+                return result;
+            case MISMATCH:
+                convertLongKeys();
+                break;
+            }
+        }
         KeyWrapper key = new KeyWrapper(row, evaluatableComparisonFields, bindings);
         if (!matchNulls && key.isNull())
             return Collections.emptyList();
-        return hashTable.get(key);
+        if (partitions == null)
+            return hashTable.get(key);
+        return findPartition(partitions, key).getMatchingRows(key);
     }
 
     public void put(Row row, List<TEvaluatableExpression> evaluatableComparisonFields, QueryBindings bindings){
+        if (keyExpressions == null) {
+            keyExpressions = evaluatableComparisonFields;
+            keyBindings = bindings;
+            if (longKeysPossible()) {
+                int nkeys = evaluatableComparisonFields.size();
+                longKeys = new LongKeyHashTable(nkeys);
+                longKeyClasses = new TClass[nkeys];
+                putKey = new long[nkeys];
+            }
+        }
+        if (longKeys != null) {
+            switch (evaluateLongKey(row, evaluatableComparisonFields, bindings, putKey, true)) {
+            case NULL:
+                return;
+            case FOUND:
+                longKeys.put(putKey, row);
+                memoryUsed += RowSpillFile.estimateSize(row) + LONG_ENTRY_OVERHEAD;
+                if (memoryUsed > memoryLimit) {
+                    partitionTable();
+                }
+                return;
+            case MISMATCH:
+                convertLongKeys();
+                break;
+            }
+        }
         KeyWrapper key = new KeyWrapper(row, evaluatableComparisonFields, bindings);
         if (matchNulls || !key.isNull()) {
-            hashTable.put(key, row);
+            long size = RowSpillFile.estimateSize(row) + ENTRY_OVERHEAD;
+            if (partitions == null) {
+                hashTable.put(key, row);
+                memoryUsed += size;
+                if (memoryUsed > memoryLimit) {
+                    partitionTable();
+                }
+            }
+            else {
+                partitions[key.partition(0)].put(key, row, size);
+            }
         }
     }
 
+    /** Release any memory and temporary files. */
+    public void close() {
+        if (partitions != null) {
+            for (Partition partition : partitions) {
+                partition.close();
+            }
+            partitions = null;
+        }
+        reloaded.clear();
+        hashTable = null;
+        longKeys = null;
+        memoryUsed = 0;
+    }
+
     public RowType getRowType() {
         return hashedRowType;
     }
@@ -74,6 +200,521 @@ public class HashTable {
         this.matchNulls = matchNulls;
     }
 
+    /** Spill to temporary files for <code>context</code> rather than hold
+     * more than about <code>memoryLimit</code> bytes of rows in memory.
+     */
+    public void setMemoryLimit(QueryContext context, long memoryLimit) {
+        this.context = context;
+        this.memoryLimit = memoryLimit;
+    }
+
+    /** The number of partitions written to temporary files, including those
+     * written again when a partition was split.
+     */
+    public long getSpillCount() {
+        return spillCount;
+    }
+
+    public long getSpillBytes() {
+        return spillBytes;
+    }
+
+    /** The number of times a spilled partition was read back for a probe. */
+    public long getReloadCount() {
+        return reloadCount;
+    }
+
+    /** A lookup for the use of a single cursor. */
+    public Probe newProbe() {
+        return new Probe();
+    }
+
+    /** Probe side partitioning for the use of a single cursor, whose rows
+     * are of type <code>probeRowType</code> and have keys
+     * <code>evaluatableComparisonFields</code>.
+     */
+    public DeferredProbes newDeferredProbes(RowType probeRowType,
+                                            List<TEvaluatableExpression> evaluatableComparisonFields,
+                                            QueryBindings bindings) {
+        return new DeferredProbes(probeRowType, evaluatableComparisonFields, bindings);
+    }
+
+    private boolean longKeysPossible() {
+        if (matchNulls)
+            return false;
+        if (tComparisons != null) {
+            for (TComparison comparison : tComparisons) {
+                if (comparison != null)
+                    return false;
+            }
+        }
+        if (collators != null) {
+            for (AkCollator collator : collators) {
+                if (collator != null)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    // Evaluate a key into longs. While building, the first non-null value of
+    // each column fixes its type class; any other class, on either side, is
+    // left for the general comparison in KeyWrapper, unless both are
+    // integers that compare the same as longs.
+    private LongKeyResult evaluateLongKey(Row row, List<TEvaluatableExpression> comparisonExpressions,
+                                          QueryBindings bindings, long[] key, boolean build) {
+        for (int i = 0; i < key.length; i++) {
+            TEvaluatableExpression expression = comparisonExpressions.get(i);
+            if (row != null)
+                expression.with(row);
+            if (bindings != null)
+                expression.with(bindings);
+            expression.evaluate();
+            ValueSource value = expression.resultValue();
+            if (value.isNull())
+                return LongKeyResult.NULL;
+            TClass tclass = value.getType().typeClass();
+            TClass keyClass = longKeyClasses[i];
+            if (keyClass != tclass) {
+                if (keyClass == null) {
+                    if (!build)
+                        return LongKeyResult.NULL; // Nothing put yet.
+                    longKeyClasses[i] = tclass;
+                }
+                else if (!sameIntegers(keyClass, tclass)) {
+                    return LongKeyResult.MISMATCH;
+                }
+            }
+            switch (TInstance.underlyingType(value.getType())) {
+            case INT_8:
+                key[i] = value.getInt8();
+                break;
+            case INT_16:
+                key[i] = value.getInt16();
+                break;
+            case UINT_16:
+                key[i] = value.getUInt16();
+                break;
+            case INT_32:
+                key[i] = value.getInt32();
+                break;
+            case INT_64:
+                key[i] = value.getInt64();
+                break;
+            default:
+                return LongKeyResult.MISMATCH;
+            }
+        }
+        return LongKeyResult.FOUND;
+    }
+
+    // Integers of different widths have the same value as longs, except
+    // for BIGINT UNSIGNED, whose top half is held as negative.
+    private static boolean sameIntegers(TClass class1, TClass class2) {
+        return ((class1 instanceof MNumeric) && (class1 != MNumeric.BIGINT_UNSIGNED) &&
+                (class2 instanceof MNumeric) && (class2 != MNumeric.BIGINT_UNSIGNED));
+    }
+
+    // Give up on long keys and move everything into the multimap.
+    private void convertLongKeys() {
+        LongKeyHashTable table = longKeys;
+        longKeys = null;
+        for (int i = 0; i < table.getRowCount(); i++) {
+            Row row = table.getRow(i);
+            hashTable.put(new KeyWrapper(row, keyExpressions, keyBindings), row);
+        }
+        memoryUsed += (long)table.getRowCount() * (ENTRY_OVERHEAD - LONG_ENTRY_OVERHEAD);
+    }
+
+    // Memory has run out for the first time: spread what there is so far
+    // over partitions and spill some of them.
+    private void partitionTable() {
+        if (longKeys != null) {
+            convertLongKeys();
+        }
+        partitions = newPartitions(0);
+        for (Map.Entry<KeyWrapper, Row> entry : hashTable.entries()) {
+            Partition partition = partitions[entry.getKey().partition(0)];
+            partition.rows.put(entry.getKey(), entry.getValue());
+            partition.memory += RowSpillFile.estimateSize(entry.getValue()) + ENTRY_OVERHEAD;
+        }
+        hashTable = null;
+        spillLargest();
+    }
+
+    private Partition[] newPartitions(int level) {
+        Partition[] result = new Partition[NPARTITIONS];
+        for (int i = 0; i < NPARTITIONS; i++) {
+            result[i] = new Partition(level);
+        }
+        return result;
+    }
+
+    // Spill resident partitions, biggest first, until the rest fit.
+    private void spillLargest() {
+        spillLargest(0);
+    }
+
+    // Spill resident partitions, biggest first, until there is room for
+    // another <code>needed</code> bytes.
+    private void spillLargest(long needed) {
+        while (memoryUsed + needed > memoryLimit) {
+            Partition largest = null;
+            for (Partition partition : partitions) {
+                if ((partition.file == null) &&
+                    ((largest == null) || (partition.memory > largest.memory))) {
+                    largest = partition;
+                }
+            }
+            if ((largest == null) || (largest.memory == 0)) {
+                break;
+            }
+            largest.spill();
+        }
+    }
+
+    private Partition findPartition(Partition[] partitions, KeyWrapper key) {
+        Partition partition = partitions[key.partition(partitions[0].level)];
+        if (partition.children != null) {
+            return findPartition(partition.children, key);
+        }
+        return partition;
+    }
+
+    class Partition {
+        final int level;
+        // Rows in memory: all of them if not spilled, else as read back.
+        ArrayListMultimap<KeyWrapper, Row> rows = ArrayListMultimap.create();
+        long memory;
+        RowSpillFile file;
+        Partition[] children;
+
+        Partition(int level) {
+            this.level = level;
+        }
+
+        void put(KeyWrapper key, Row row, long size) {
+            if (file != null) {
+                write(row, size);
+            }
+            else {
+                rows.put(key, row);
+                memory += size;
+                memoryUsed += size;
+                spillLargest();
+            }
+        }
+
+        List<Row> getMatchingRows(KeyWrapper key) {
+            if (file == null) {
+                return rows.get(key);
+            }
+            readBack();
+            // May have been split rather than read.
+            if (children != null) {
+                return findPartition(children, key).getMatchingRows(key);
+            }
+            return rows.get(key);
+        }
+
+        // Make sure that a spilled partition is in memory, or else split.
+        void readBack() {
+            if (children != null) {
+                // Split already, by a probe that was not held back.
+                return;
+            }
+            if (rows == null) {
+                reload();
+            }
+            else {
+                reloaded.remove(this);
+                reloaded.add(this);
+            }
+        }
+
+        void spill() {
+            // memory is kept as the size to expect when read back.
+            file = new RowSpillFile(context, hashedRowType, "hashtable-");
+            memoryUsed -= memory;
+            for (Row row : rows.values()) {
+                write(row, 0);
+            }
+            rows = null;
+            spillCount++;
+            SPILL_TAP.hit();
+        }
+
+        void write(Row row, long size) {
+            long before = file.getBytesWritten();
+            file.write(row);
+            spillBytes += file.getBytesWritten() - before;
+            memory += size;
+        }
+
+        void reload() {
+            if ((memory > memoryLimit) && (level < MAX_LEVEL)) {
+                split();
+                return;
+            }
+            // Partitions read back earlier are cheapest to drop, since
+            // their files are still there. If that is not enough, the
+            // partitions that never spilled have to go too.
+            Iterator<Partition> iter = reloaded.iterator();
+            while ((memoryUsed + memory > memoryLimit) && iter.hasNext()) {
+                Partition other = iter.next();
+                other.rows = null;
+                memoryUsed -= other.memory;
+                iter.remove();
+            }
+            spillLargest(memory);
+            rows = ArrayListMultimap.create();
+            Row row;
+            while ((row = file.read()) != null) {
+                KeyWrapper key = new KeyWrapper(row, keyExpressions, keyBindings);
+                rows.put(key, row);
+            }
+            file.rewind();
+            memoryUsed += memory;
+            reloaded.add(this);
+            reloadCount++;
+            RELOAD_TAP.hit();
+        }
+
+        // Too big to read back in: distribute over smaller partitions
+        // that are spilled from the start.
+        void split() {
+            children = newPartitions(level + 1);
+            for (Partition child : children) {
+                child.rows = null;
+                child.file = new RowSpillFile(context, hashedRowType, "hashtable-");
+            }
+            Row row;
+            while ((row = file.read()) != null) {
+                KeyWrapper key = new KeyWrapper(row, keyExpressions, keyBindings);
+                children[key.partition(level + 1)].write(row, RowSpillFile.estimateSize(row) + ENTRY_OVERHEAD);
+            }
+            file.close();
+            for (Partition child : children) {
+                if (child.file.getRowCount() > 0) {
+                    spillCount++;
+                    SPILL_TAP.hit();
+                }
+            }
+        }
+
+        void close() {
+            if (file != null) {
+                file.close();
+            }
+            if (children != null) {
+                for (Partition child : children) {
+                    child.close();
+                }
+            }
+            rows = null;
+        }
+    }
+
+    /** Iterates over the rows matching a key. With long keys, finding them
+     * reuses the same key array every time.
+     */
+    public class Probe {
+        private long[] key;
+        private LongKeyHashTable table;
+        private int index;
+        private List<Row> matches;
+        private int position;
+
+        public HashTable getHashTable() {
+            return HashTable.this;
+        }
+
+        public void find(Row row, List<TEvaluatableExpression> evaluatableComparisonFields, QueryBindings bindings) {
+            table = null;
+            index = -1;
+            matches = null;
+            position = 0;
+            if (longKeys != null) {
+                if ((key == null) || (key.length != longKeys.getKeyCount())) {
+                    key = new long[longKeys.getKeyCount()];
+                }
+                switch (evaluateLongKey(row, evaluatableComparisonFields, bindings, key, false)) {
+                case NULL:
+                    return;
+                case FOUND:
+                    table = longKeys;
+                    index = table.first(key);
+                    return;
+                case MISMATCH:
+                    convertLongKeys();
+                    break;
+                }
+            }
+            matches = getMatchingRows(row, evaluatableComparisonFields, bindings);
+        }
+
+        public Row next() {
+            if (table != null) {
+                if (index < 0)
+                    return null;
+                Row row = table.getRow(index);
+                index = table.next(index);
+                return row;
+            }
+            if ((matches != null) && (position < matches.size()))
+                return matches.get(position++);
+            return null;
+        }
+    }
+
+    /** Holds back the probes into partitions that have been spilled. Rows
+     * that carry nothing but values are written to a file per partition.
+     * Others, such as table rows, whose hKey something after the join may
+     * need, are held in memory, for as long as there is room, and are
+     * otherwise left to be probed at once.
+     */
+    public class DeferredProbes {
+        private final RowType rowType;
+        private final List<TEvaluatableExpression> comparisonFields;
+        private final QueryBindings bindings;
+        private final boolean spill;
+        // Least recently started first, which is as good an order as any.
+        private final Map<Partition,Held> held = new LinkedHashMap<>();
+        private long heldMemory;
+        private Held replaying;
+
+        private DeferredProbes(RowType rowType, List<TEvaluatableExpression> comparisonFields,
+                               QueryBindings bindings) {
+            this.rowType = rowType;
+            this.comparisonFields = comparisonFields;
+            this.bindings = bindings;
+            this.spill = (rowType.hKey() == null);
+        }
+
+        /** Hold back <code>row</code> if the partition it would probe has
+         * been spilled.
+         * @return whether it was held back, to come out of {@link #next}
+         */
+        public boolean defer(Row row) {
+            if (partitions == null)
+                return false;
+            KeyWrapper key = new KeyWrapper(row, comparisonFields, bindings);
+            if (!matchNulls && key.isNull())
+                return false;
+            Partition partition = findPartition(partitions, key);
+            if (partition.file == null)
+                return false;
+            if (!spill && (heldMemory + RowSpillFile.estimateSize(row) > memoryLimit))
+                return false;
+            hold(partition, row);
+            return true;
+        }
+
+        /** Once there is nothing more to {@link #defer}, the next row held
+         * back, after reading its partition back in, or <code>null</code>
+         * when there are none left.
+         */
+        public Row next() {
+            while (true) {
+                if (replaying != null) {
+                    Row row = replaying.take();
+                    if (row != null)
+                        return row;
+                    replaying.close();
+                    replaying = null;
+                }
+                Iterator<Held> iter = held.values().iterator();
+                if (!iter.hasNext())
+                    return null;
+                Held next = iter.next();
+                iter.remove();
+                next.partition.readBack();
+                if (next.partition.children == null) {
+                    replaying = next;
+                }
+                else {
+                    // Split rather than read: hold its probes back again,
+                    // for the smaller partitions.
+                    Row row;
+                    while ((row = next.take()) != null) {
+                        KeyWrapper key = new KeyWrapper(row, comparisonFields, bindings);
+                        hold(findPartition(next.partition.children, key), row);
+                    }
+                    next.close();
+                }
+            }
+        }
+
+        public void close() {
+            if (replaying != null) {
+                replaying.close();
+                replaying = null;
+            }
+            for (Held probes : held.values()) {
+                probes.close();
+            }
+            held.clear();
+        }
+
+        private void hold(Partition partition, Row row) {
+            Held probes = held.get(partition);
+            if (probes == null) {
+                probes = new Held(partition);
+                held.put(partition, probes);
+            }
+            probes.add(row);
+        }
+
+        // The probes held back for one partition.
+        private class Held {
+            final Partition partition;
+            RowSpillFile file;
+            List<Row> rows;
+            int position;
+            long memory;
+
+            Held(Partition partition) {
+                this.partition = partition;
+                if (spill)
+                    file = new RowSpillFile(context, rowType, "hashprobe-");
+                else
+                    rows = new ArrayList<>();
+            }
+
+            void add(Row row) {
+                if (file != null) {
+                    long before = file.getBytesWritten();
+                    file.write(row);
+                    spillBytes += file.getBytesWritten() - before;
+                }
+                else {
+                    long size = RowSpillFile.estimateSize(row);
+                    rows.add(row);
+                    memory += size;
+                    heldMemory += size;
+                }
+            }
+
+            Row take() {
+                if (file != null)
+                    return file.read();
+                if (position < rows.size())
+                    return rows.get(position++);
+                return null;
+            }
+
+            void close() {
+                if (file != null) {
+                    file.close();
+                }
+                else {
+                    rows = null;
+                    heldMemory -= memory;
+                }
+            }
+        }
+    }
+
     public class KeyWrapper implements Comparable<KeyWrapper> {
         List<ValueSource> values = new ArrayList<>();
         int hashKey = 0;
@@ -112,6 +753,10 @@ public class HashTable {
             return isNull;
         }
 
+        int partition(int level) {
+            return RowSpillFile.partition(hashKey, level, NPARTITIONS);
+        }
+
         public KeyWrapper(Row row, List<TEvaluatableExpression> comparisonExpressions, QueryBindings bindings){
             int i = 0;
             for (TEvaluatableExpression expression : comparisonExpressions) {
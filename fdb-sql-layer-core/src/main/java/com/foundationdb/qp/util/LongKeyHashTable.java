@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.row.Row;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash table from keys made of one or more
+ * <code>long</code>s to the rows with that key, in insertion order.
+ *
+ * Keys are stored inline in a <code>long[]</code> and rows in parallel
+ * arrays chained by index, so that neither a put nor a lookup allocates
+ * anything once the arrays are big enough.
+ */
+class LongKeyHashTable
+{
+    private static final int INITIAL_SLOTS = 64;
+    private static final int INITIAL_ROWS = 64;
+
+    private final int nkeys;
+    // Per slot: the key, and the first and last row with it, plus one (0 = empty).
+    private long[] keys;
+    private int[] heads, tails;
+    private int mask, nslotsUsed;
+    // Per row: the row and the next row with the same key, or -1.
+    private Row[] rows;
+    private int[] next;
+    private int nrows;
+
+    public LongKeyHashTable(int nkeys) {
+        this.nkeys = nkeys;
+        allocateSlots(INITIAL_SLOTS);
+        rows = new Row[INITIAL_ROWS];
+        next = new int[INITIAL_ROWS];
+    }
+
+    public int getKeyCount() {
+        return nkeys;
+    }
+
+    public int getRowCount() {
+        return nrows;
+    }
+
+    /** The <code>i</code>'th row put, for iterating over all of them. */
+    public Row getRow(int i) {
+        return rows[i];
+    }
+
+    public void put(long[] key, Row row) {
+        if (nrows == rows.length) {
+            rows = Arrays.copyOf(rows, nrows * 2);
+            next = Arrays.copyOf(next, nrows * 2);
+        }
+        int index = nrows++;
+        rows[index] = row;
+        next[index] = -1;
+        int slot = findSlot(key);
+        if (heads[slot] == 0) {
+            System.arraycopy(key, 0, keys, slot * nkeys, nkeys);
+            heads[slot] = index + 1;
+            tails[slot] = index + 1;
+            if (++nslotsUsed * 2 > heads.length) {
+                rehash();
+            }
+        }
+        else {
+            next[tails[slot] - 1] = index;
+            tails[slot] = index + 1;
+        }
+    }
+
+    /** The index of the first row with the given key, or -1 if none. */
+    public int first(long[] key) {
+        return heads[findSlot(key)] - 1;
+    }
+
+    /** The index of the row after <code>index</code> with the same key, or -1 if none. */
+    public int next(int index) {
+        return next[index];
+    }
+
+    // The slot holding key, or the empty slot where it would go.
+    private int findSlot(long[] key) {
+        int slot = hash(key, 0, nkeys) & mask;
+        while (heads[slot] != 0) {
+            if (keyEquals(key, slot)) {
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(long[] key, int slot) {
+        int offset = slot * nkeys;
+        for (int i = 0; i < nkeys; i++) {
+            if (keys[offset + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads, oldTails = tails;
+        allocateSlots(oldHeads.length * 2);
+        for (int i = 0; i < oldHeads.length; i++) {
+            if (oldHeads[i] != 0) {
+                int slot = hash(oldKeys, i * nkeys, nkeys) & mask;
+                while (heads[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                System.arraycopy(oldKeys, i * nkeys, keys, slot * nkeys, nkeys);
+                heads[slot] = oldHeads[i];
+                tails[slot] = oldTails[i];
+            }
+        }
+    }
+
+    private void allocateSlots(int nslots) {
+        keys = new long[nslots * nkeys];
+        heads = new int[nslots];
+        tails = new int[nslots];
+        mask = nslots - 1;
+    }
+
+    private static int hash(long[] key, int offset, int length) {
+        long h = 0;
+        for (int i = 0; i < length; i++) {
+            h = (h + key[offset + i]) * 0x9E3779B97F4A7C15L;
+            h ^= (h >>> 32);
+        }
+        h ^= (h >>> 29);
+        return (int)h;
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.operator.StoreAdapter;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.row.ValuesHolderRow;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.server.PersistitValueValueSource;
+import com.foundationdb.server.PersistitValueValueTarget;
+import com.foundationdb.server.error.SpillIOException;
+import com.foundationdb.server.service.config.ConfigurationService;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.value.ValueSource;
+import com.persistit.Persistit;
+import com.persistit.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A temporary file of rows of a single type, written once and then read back
+ * in the same order, as many times as needed. Used by the hashing operators
+ * to hold partitions that do not fit in memory.
+ *
+ * Rows are encoded the same way as {@link com.foundationdb.qp.storeadapter.indexcursor.MergeJoinSorter}
+ * encodes them: the canonical form of each field in a stream mode Persistit
+ * <code>Value</code>, prefixed by its length. The file is created in
+ * <code>fdbsql.tmp_dir</code> on the first write and deleted by {@link #close}.
+ */
+public class RowSpillFile
+{
+    public static final String MEMORY_PROPERTY = "fdbsql.sort.memory";
+    public static final String TMP_DIR_PROPERTY = "fdbsql.tmp_dir";
+
+    /** Nominal overhead of holding a single value in memory. */
+    private static final int VALUE_OVERHEAD = 16;
+
+    private final QueryContext context;
+    private final RowType rowType;
+    private final String prefix;
+    private final PersistitValueValueTarget valueTarget = new PersistitValueValueTarget();
+    private final PersistitValueValueSource valueSource = new PersistitValueValueSource();
+    private final Value value = new Value((Persistit)null, Value.INITIAL_SIZE, Value.MAXIMUM_SIZE);
+    private File file;
+    private DataOutputStream output;
+    private DataInputStream input;
+    private long rowCount, bytesWritten;
+
+    public RowSpillFile(QueryContext context, RowType rowType, String prefix) {
+        this.context = context;
+        this.rowType = rowType;
+        this.prefix = prefix;
+    }
+
+    public RowType getRowType() {
+        return rowType;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void write(Row row) {
+        assert (input == null) : "already reading";
+        value.clear();
+        value.setStreamMode(true);
+        valueTarget.attach(value);
+        for (int i = 0; i < rowType.nFields(); i++) {
+            ValueSource field = row.value(i);
+            if (field.isNull()) {
+                valueTarget.putNull();
+            }
+            else {
+                rowType.typeAt(i).writeCanonical(field, valueTarget);
+            }
+        }
+        int size = value.getEncodedSize();
+        try {
+            if (output == null) {
+                file = File.createTempFile(prefix, ".tmp", tmpDirectory(context));
+                file.deleteOnExit();
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            }
+            output.writeInt(size);
+            output.write(value.getEncodedBytes(), 0, size);
+        }
+        catch (IOException ex) {
+            throw new SpillIOException(ex);
+        }
+        rowCount++;
+        bytesWritten += size + 4;
+    }
+
+    /** Read the next row back, or <code>null</code> at the end of the file.
+     * No more rows may be written once reading has started.
+     */
+    public Row read() {
+        if (file == null) {
+            return null;
+        }
+        int size;
+        try {
+            if (input == null) {
+                if (output != null) {
+                    output.close();
+                    output = null;
+                }
+                input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            }
+            try {
+                size = input.readInt();
+            }
+            catch (EOFException ex) {
+                return null;
+            }
+            value.ensureFit(size);
+            input.readFully(value.getEncodedBytes(), 0, size);
+        }
+        catch (IOException ex) {
+            throw new SpillIOException(ex);
+        }
+        value.setEncodedSize(size);
+        valueSource.attach(value);
+        ValuesHolderRow row = new ValuesHolderRow(rowType);
+        for (int i = 0; i < rowType.nFields(); i++) {
+            TInstance type = rowType.typeAt(i);
+            valueSource.getReady(type);
+            if (valueSource.isNull()) {
+                row.valueAt(i).putNull();
+            }
+            else {
+                type.writeCanonical(valueSource, row.valueAt(i));
+            }
+        }
+        return row;
+    }
+
+    /** Read the rows again from the beginning on the next {@link #read}. */
+    public void rewind() {
+        try {
+            if (input != null) {
+                input.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new SpillIOException(ex);
+        }
+        finally {
+            input = null;
+        }
+    }
+
+    public void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (input != null) {
+                input.close();
+            }
+        }
+        catch (IOException ex) {
+            throw new SpillIOException(ex);
+        }
+        finally {
+            output = null;
+            input = null;
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+        }
+    }
+
+    /** The number of bytes of row data that an operator may hold in
+     * memory before it needs to spill.
+     */
+    public static long memoryLimit(QueryContext context) {
+        ConfigurationService config = config(context);
+        if (config == null) {
+            return Long.MAX_VALUE;
+        }
+        return Long.parseLong(config.getProperty(MEMORY_PROPERTY));
+    }
+
+    public static File tmpDirectory(QueryContext context) {
+        ConfigurationService config = config(context);
+        if (config == null) {
+            return new File(System.getProperty("java.io.tmpdir"));
+        }
+        return new File(config.getProperty(TMP_DIR_PROPERTY));
+    }
+
+    /** A rough estimate of the memory needed to hold a copy of <code>source</code>. */
+    public static long estimateSize(ValueSource source) {
+        TInstance type = source.getType();
+        if ((type == null) || source.isNull()) {
+            return VALUE_OVERHEAD;
+        }
+        if (type.typeClass().hasFixedSerializationSize()) {
+            return VALUE_OVERHEAD + type.typeClass().fixedSerializationSize();
+        }
+        switch (TInstance.underlyingType(type)) {
+        case STRING:
+            return VALUE_OVERHEAD + source.getString().length() * 2;
+        case BYTES:
+            return VALUE_OVERHEAD + source.getBytes().length;
+        default:
+            return VALUE_OVERHEAD + 8;
+        }
+    }
+
+    public static long estimateSize(Row row) {
+        long size = VALUE_OVERHEAD;
+        for (int i = 0; i < row.rowType().nFields(); i++) {
+            size += estimateSize(row.value(i));
+        }
+        return size;
+    }
+
+    /** Choose one of <code>npartitions</code> partitions for a hash code. Each
+     * recursion <code>level</code> remixes the hash so that a partition that
+     * has to be split again spreads over all of the next level's partitions.
+     */
+    public static int partition(int hash, int level, int npartitions) {
+        int h = hash + level * 0x9E3779B9;
+        h ^= (h >>> 16);
+        h *= 0x85EBCA6B;
+        h ^= (h >>> 13);
+        return (h & 0x7FFFFFFF) % npartitions;
+    }
+
+    private static ConfigurationService config(QueryContext context) {
+        StoreAdapter store = context.getStore();
+        return (store == null) ? null : store.getConfig();
+    }
+}
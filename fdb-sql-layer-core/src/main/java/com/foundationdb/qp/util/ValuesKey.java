@@ -0,0 +1,117 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.server.collation.AkCollator;
+import com.foundationdb.server.types.TClass;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.common.types.TString;
+import com.foundationdb.server.types.value.Value;
+import com.foundationdb.server.types.value.ValueSource;
+import com.foundationdb.server.types.value.ValueSources;
+import com.foundationdb.server.types.value.ValueTargets;
+
+import java.util.Arrays;
+
+/**
+ * A hash key made from copies of the leading fields of a row. Hashing
+ * follows {@link HashTable.KeyWrapper}, so that strings that are equal under
+ * their collation hash the same, and equality uses {@link TClass#compare}.
+ * NULLs are equal to each other, which is what GROUP BY and DISTINCT want.
+ */
+public class ValuesKey
+{
+    private final Value[] values;
+    private final int hash;
+
+    public ValuesKey(Row row, int nfields, AkCollator[] collators) {
+        values = new Value[nfields];
+        int h = 0;
+        for (int i = 0; i < nfields; i++) {
+            ValueSource source = row.value(i);
+            Value copy = new Value(source.getType());
+            ValueTargets.copyFrom(source, copy);
+            values[i] = copy;
+            h = h * 31 + ValueSources.hash(copy, collators[i]);
+        }
+        hash = h;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    public ValueSource value(int i) {
+        return values[i];
+    }
+
+    /** A rough estimate of the memory this key occupies. */
+    public long estimateSize() {
+        long size = 0;
+        for (Value value : values) {
+            size += RowSpillFile.estimateSize(value);
+        }
+        return size;
+    }
+
+    /** The collators to hash the first <code>nfields</code> of <code>rowType</code> with. */
+    public static AkCollator[] collators(RowType rowType, int nfields) {
+        AkCollator[] collators = new AkCollator[nfields];
+        for (int i = 0; i < nfields; i++) {
+            TInstance type = rowType.typeAt(i);
+            if ((type != null) && (type.typeClass() instanceof TString)) {
+                collators[i] = TString.getCollator(type);
+            }
+        }
+        return collators;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ValuesKey))
+            return false;
+        ValuesKey other = (ValuesKey)obj;
+        if ((hash != other.hash) || (values.length != other.values.length))
+            return false;
+        for (int i = 0; i < values.length; i++) {
+            Value mine = values[i], theirs = other.values[i];
+            if (mine.isNull() || theirs.isNull()) {
+                if (mine.isNull() != theirs.isNull())
+                    return false;
+            }
+            else if (!TClass.areEqual(mine, theirs)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
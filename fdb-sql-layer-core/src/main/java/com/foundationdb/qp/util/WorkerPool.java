@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.server.error.AkibanInternalException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads shared by all operators that split their work within a single
+ * query, and the per-session limit on how many of them one query may use.
+ *
+ * The limit is the <code>parallelism</code> session setting, whose default
+ * comes from <code>fdbsql.sql.parallelism</code>. A value of 1, the default,
+ * means that queries run entirely on their own connection thread.
+ *
+ * The shared pool has one thread per processor, so its tasks must not
+ * block. Work that waits on storage, such as reading a key or committing
+ * a transaction, goes to {@link #getIOPool} instead.
+ */
+public class WorkerPool
+{
+    public static final String PARALLELISM_SETTING = "parallelism";
+
+    private static class PoolHolder {
+        // Worker threads are daemons and the pool is never shut down.
+        static final ForkJoinPool POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                             ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                             null, true);
+    }
+
+    private static class IOPoolHolder {
+        static final ExecutorService POOL =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "fdbsql-io-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    public static ForkJoinPool getPool() {
+        return PoolHolder.POOL;
+    }
+
+    /** Threads for tasks that block on storage. There are as many as
+     * there are such tasks, so callers must bound how many they submit.
+     */
+    public static ExecutorService getIOPool() {
+        return IOPoolHolder.POOL;
+    }
+
+    /** The number of workers that a query in <code>context</code> may use
+     * for one operator: at least 1 and at most the number of processors.
+     */
+    public static int getParallelism(QueryContext context) {
+        String setting = context.getCurrentSetting(PARALLELISM_SETTING);
+        if (setting == null) {
+            return 1;
+        }
+        int parallelism;
+        try {
+            parallelism = Integer.parseInt(setting.trim());
+        }
+        catch (NumberFormatException ex) {
+            return 1;
+        }
+        return Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Wait for <code>future</code>, rethrowing any exception from the
+     * worker on this thread.
+     */
+    public static <T> T await(QueryContext context, Future<T> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            context.checkQueryCancelation();
+            throw new AkibanInternalException("Interrupted waiting for worker", ex);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new AkibanInternalException("Worker failed", cause);
+        }
+    }
+
+    private WorkerPool() {
+    }
+}
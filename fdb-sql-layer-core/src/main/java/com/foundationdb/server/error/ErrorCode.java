@@ -475,6 +475,7 @@ public enum ErrorCode {
     NOT_ALLOWED_BY_CONFIG   ("53", "00G", Importance.ERROR, NotAllowedByConfigException.class),
     JOIN_GRAPH_FAILURE      ("53", "00H", Importance.ERROR, FailedJoinGraphCreationException.class),
     CORRUPTED_PLAN          ("53", "00I", Importance.ERROR, CorruptedPlanException.class),
+    SPILL_IO                ("53", "00J", Importance.ERROR, SpillIOException.class),
     
     // Class 55 - Type conversion errors
     UNKNOWN_TYPE            ("55", "001", Importance.DEBUG, UnknownDataTypeException.class),
@@ -74,5 +74,14 @@ public interface ExternalDataService {
                                 Table toTable, List<Column> toColumns,
                                 long commitFrequency, int maxRetries,
                                 QueryContext context) throws IOException;
+
+    /**
+     * Load rows in a format this service does not itself know about,
+     * as read from <code>inputStream</code> by <code>reader</code>.
+     */
+    long loadTableFromRowReader(Session session, InputStream inputStream,
+                                RowReader reader,
+                                long commitFrequency, int maxRetries,
+                                QueryContext context) throws IOException;
     
 }
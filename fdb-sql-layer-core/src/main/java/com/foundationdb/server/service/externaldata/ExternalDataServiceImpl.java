@@ -31,6 +31,8 @@ import com.foundationdb.qp.operator.SimpleQueryContext;
 import com.foundationdb.qp.operator.StoreAdapter;
 import com.foundationdb.qp.row.Row;
 import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.error.AkibanInternalException;
 import com.foundationdb.server.error.InvalidOperationException;
 import com.foundationdb.server.error.NoSuchTableException;
 import com.foundationdb.server.service.Service;
@@ -39,6 +41,7 @@ import com.foundationdb.server.service.config.ConfigurationService;
 import com.foundationdb.server.service.dxl.DXLService;
 import com.foundationdb.server.service.externaldata.JsonRowWriter.WriteTableRow;
 import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.service.session.SessionService;
 import com.foundationdb.server.service.transaction.TransactionService;
 import com.foundationdb.server.store.Store;
 import com.foundationdb.server.types.FormatOptions;
@@ -54,9 +57,16 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ExternalDataServiceImpl implements ExternalDataService, Service {
     protected final ConfigurationService configService;
@@ -67,6 +77,10 @@ public class ExternalDataServiceImpl implements ExternalDataService, Service {
     
     private static final Logger logger = LoggerFactory.getLogger(ExternalDataServiceImpl.class);
 
+    // Rows per transaction in bulk mode when committing periodically.
+    static final int BULK_BATCH_ROWS = 1000;
+    static final long BULK_PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
     public static final CacheValueGenerator<PlanGenerator> CACHED_PLAN_GENERATOR =
             new CacheValueGenerator<PlanGenerator>() {
                 @Override
@@ -217,7 +231,7 @@ public class ExternalDataServiceImpl implements ExternalDataService, Service {
         if (skipRows > 0)
             reader.skipRows(skipRows);
         return loadTableFromRowReader(session, inputStream, reader, 
-                                      commitFrequency, maxRetries);
+                                      commitFrequency, maxRetries, context);
     }
 
     @Override
@@ -231,6 +245,24 @@ public class ExternalDataServiceImpl implements ExternalDataService, Service {
                                                            inputStream, encoding, 
                                                            context, getTypesTranslator());
         return loadTableFromRowReader(session, inputStream, reader, 
+                                      commitFrequency, maxRetries, context);
+    }
+
+    @Override
+    public long loadTableFromRowReader(Session session, 
+                                       InputStream inputStream, RowReader reader, 
+                                       long commitFrequency, int maxRetries,
+                                       QueryContext context)
+            throws IOException {
+        if ((context != null) && (commitFrequency != COMMIT_FREQUENCY_NEVER)) {
+            int parallelism = WorkerPool.getParallelism(context);
+            if (parallelism > 1) {
+                long batchSize = (commitFrequency > 0) ? commitFrequency : BULK_BATCH_ROWS;
+                return bulkLoadFromRowReader(session, reader, batchSize, maxRetries,
+                                             parallelism, context);
+            }
+        }
+        return loadTableFromRowReader(session, inputStream, reader,
                                       commitFrequency, maxRetries);
     }
 
@@ -299,9 +331,7 @@ public class ExternalDataServiceImpl implements ExternalDataService, Service {
                             retryException = null;
                             // And errors before another commit cannot be spurious.
                             sessionCounter = -1;
-                            for (Row aRow : rows) {
-                                store.writeRow(session, aRow, null, null);
-                            }
+                            store.writeRows(session, rows);
                         }
                         if (commit) {
                             if (i == 0) {
@@ -341,7 +371,263 @@ public class ExternalDataServiceImpl implements ExternalDataService, Service {
         return total;
     }
 
-    
+
+    /** Load with up to <code>parallelism</code> transactions writing
+     * at once, each in its own session.
+     *
+     * Rows are still parsed in order on this thread, since neither
+     * format can be split safely without parsing it (quoted newlines)
+     * and identity columns need this session. Each batch is a run of
+     * consecutive input rows, which for a dump in primary key order
+     * means a separate key range, so concurrent batches rarely
+     * conflict. This thread only waits when all the writers are busy.
+     *
+     * Batches are written concurrently but commit in the order they were
+     * read. Whatever has committed when the load fails is then always a
+     * prefix of the input, which a retry can skip with
+     * <code>skipRows</code>.
+     *
+     * The writer sessions belong to this thread, not to the batches, and
+     * are only closed once every batch submitted has finished, however
+     * it and the load ended.
+     */
+    protected long bulkLoadFromRowReader(Session session, RowReader reader,
+                                         long batchSize, final int maxRetries,
+                                         int parallelism, QueryContext context)
+            throws IOException {
+        SessionService sessionService = serviceManager.getServiceByClass(SessionService.class);
+        final BulkLoadProgress progress = new BulkLoadProgress();
+        final CommitOrder order = new CommitOrder();
+        long batches = 0;
+        List<Session> writers = new ArrayList<>(parallelism);
+        Deque<Session> idle = new ArrayDeque<>(parallelism);
+        Deque<Future<?>> writing = new ArrayDeque<>(parallelism);
+        // Each batch hands back its session here when it is done.
+        final BlockingQueue<Session> finished = new LinkedBlockingQueue<>();
+        int running = 0;
+        long total = 0;
+        boolean transaction = false;
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                Session writer = sessionService.createSession();
+                writers.add(writer);
+                idle.add(writer);
+            }
+            while (true) {
+                context.checkQueryCancelation();
+                final List<Row> rows = new ArrayList<>();
+                // As above, reading rows may need a transaction for auto increment.
+                transactionService.beginTransaction(session);
+                transaction = true;
+                while (rows.size() < batchSize) {
+                    Row row = reader.nextRow();
+                    logger.trace("Read row: {}", row);
+                    if (row == null) break;
+                    rows.add(row);
+                }
+                transaction = false;
+                transactionService.commitTransaction(session);
+                if (rows.isEmpty()) break;
+                total += rows.size();
+                if (idle.isEmpty()) {
+                    // Surfaces the oldest batch's failure; any finished session will do.
+                    WorkerPool.await(context, writing.removeFirst());
+                    idle.add(takeUninterruptibly(finished));
+                    running--;
+                }
+                final Session writer = idle.removeFirst();
+                final long batch = batches++;
+                running++;
+                writing.addLast(WorkerPool.getIOPool().submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                writeBatch(writer, rows, maxRetries, progress, order, batch);
+                            }
+                            finally {
+                                finished.add(writer);
+                            }
+                        }
+                    }));
+                progress.report(false);
+            }
+            while (!writing.isEmpty()) {
+                WorkerPool.await(context, writing.removeFirst());
+            }
+            progress.report(true);
+        }
+        finally {
+            if (transaction) {
+                transactionService.rollbackTransaction(session);
+            }
+            // A canceled future is done before its task is, so wait for
+            // the task itself before closing the session it is using.
+            while (running > 0) {
+                takeUninterruptibly(finished);
+                running--;
+            }
+            for (Session writer : writers) {
+                writer.close();
+            }
+        }
+        return total;
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Write <code>rows</code> in a single transaction, retrying it
+     * from the beginning as {@link #loadTableFromRowReader} does, and
+     * commit it once every earlier batch has. */
+    protected void writeBatch(Session session, List<Row> rows, int maxRetries,
+                              BulkLoadProgress progress, CommitOrder order, long batch) {
+        boolean committed = false;
+        try {
+            Exception retryException = null;
+            int sessionCounter = -1;
+            for (int i = 0; ; i++) {
+                boolean transaction = false;
+                try {
+                    retryHook(session, i, maxRetries, retryException);
+                    if (i > 0) {
+                        // So that waiting cannot make the retry too old as well.
+                        order.awaitTurn(batch);
+                    }
+                    transactionService.beginTransaction(session);
+                    transaction = true;
+                    if (i > 0) {
+                        logger.debug("retry #{} from {}", i, retryException);
+                        progress.retried();
+                        if (transactionService.checkSucceeded(session,
+                                                              retryException,
+                                                              sessionCounter)) {
+                            logger.debug("transaction had succeeded");
+                            break;
+                        }
+                        retryException = null;
+                        sessionCounter = -1;
+                    }
+                    store.writeRows(session, rows);
+                    order.awaitTurn(batch);
+                    sessionCounter = transactionService.markForCheck(session);
+                    transaction = false;
+                    transactionService.commitTransaction(session);
+                    break;
+                }
+                catch (InvalidOperationException ex) {
+                    if ((i >= maxRetries) ||
+                        !ex.getCode().isRollbackClass()) {
+                        throw ex;
+                    }
+                    if (retryException == null) {
+                        retryException = ex;
+                    }
+                }
+                finally {
+                    if (transaction) {
+                        transactionService.rollbackTransaction(session);
+                    }
+                }
+            }
+            committed = true;
+        }
+        finally {
+            if (committed) {
+                order.committed(batch);
+            }
+            else {
+                order.failed();
+            }
+        }
+        progress.loaded(rows.size());
+    }
+
+    /** The next batch of a bulk load allowed to commit. Once one fails,
+     * none after it may commit. */
+    protected static class CommitOrder {
+        private long next = 0;
+        private boolean failed = false;
+
+        /** Wait until every batch before <code>batch</code> has committed. */
+        public synchronized void awaitTurn(long batch) {
+            while (!failed && (next < batch)) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AkibanInternalException("Interrupted waiting to commit batch " + batch, ex);
+                }
+            }
+            if (failed) {
+                throw new AkibanInternalException("Batch before " + batch + " failed to load");
+            }
+        }
+
+        public synchronized void committed(long batch) {
+            next = batch + 1;
+            notifyAll();
+        }
+
+        public synchronized void failed() {
+            failed = true;
+            notifyAll();
+        }
+    }
+
+    /** Rows written so far by a bulk load, logged periodically. */
+    protected static class BulkLoadProgress {
+        private final long start = System.nanoTime();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private long lastReport = start;
+
+        public void loaded(int count) {
+            rows.addAndGet(count);
+        }
+
+        public void retried() {
+            retries.incrementAndGet();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /** Called on the loading thread only. */
+        public void report(boolean done) {
+            long now = System.nanoTime();
+            if (!done && (now - lastReport < BULK_PROGRESS_INTERVAL))
+                return;
+            lastReport = now;
+            long nrows = rows.get();
+            long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(now - start));
+            logger.info("{} {} rows, {} rows/sec, {} retries",
+                        new Object[] { done ? "Loaded" : "Loading", nrows,
+                                       nrows * 1000 / elapsed, retries.get() });
+        }
+    }
+
     // For testing by failure injection.
     protected void retryHook(Session session, int i, int maxRetries,
                              Exception retryException) {
@@ -65,6 +65,10 @@ public abstract class RowReader
     private final Value[] values; // indexed by column index
     private final TExecutionContext[] executionContexts; // indexed by column index
     private final TEvaluatableExpression[] expressions; // indexed by field index
+    private final QueryContext queryContext;
+    private TypesRegistryService registry;
+    private TCast[] fieldCasts; // indexed by field index
+    private TExecutionContext[] fieldCastContexts; // indexed by field index
     private ValuesHolderRow row;
     private byte[] fieldBuffer = new byte[128];
     private int fieldIndex, fieldLength;
@@ -184,6 +188,8 @@ public abstract class RowReader
         this.inputStream = inputStream;
         this.encoding = encoding;
         this.nullBytes = nullBytes;
+        this.queryContext = queryContext;
+        this.registry = registry;
     }
 
     protected ValuesHolderRow row() {
@@ -245,6 +251,54 @@ public abstract class RowReader
         fieldLength = 0;
     }
 
+    /** Add the next field from a value that already has a type, such
+     * as one decoded from a binary format, casting it to the column's
+     * type if it is not already of the same class.
+     * @param source the value or <code>null</code> for SQL NULL.
+     */
+    protected void addField(ValueSource source) {
+        int columnIndex = fieldColumns[fieldIndex];
+        if ((source == null) || source.isNull()) {
+            row.valueAt(columnIndex).putNull();
+        }
+        else {
+            Value value = values[columnIndex];
+            TInstance sourceType = source.getType();
+            if (sourceType.typeClass() == value.getType().typeClass()) {
+                ValueTargets.copyFrom(source, row.valueAt(columnIndex));
+            }
+            else {
+                if (fieldCasts == null) {
+                    fieldCasts = new TCast[fieldColumns.length];
+                    fieldCastContexts = new TExecutionContext[fieldColumns.length];
+                }
+                TCast cast = fieldCasts[fieldIndex];
+                TExecutionContext context = fieldCastContexts[fieldIndex];
+                // Types decoded for a column normally stay the same
+                // from row to row, so remember the last cast.
+                if ((cast == null) || 
+                    (context.inputTypeAt(0).typeClass() != sourceType.typeClass())) {
+                    if (registry == null) {
+                        registry = queryContext.getServiceManager().getServiceByClass(TypesRegistryService.class);
+                    }
+                    cast = registry.getCastsResolver().cast(sourceType, value.getType());
+                    context = new TExecutionContext(null,
+                                                    Collections.singletonList(sourceType),
+                                                    value.getType(), queryContext,
+                                                    ErrorHandlingMode.WARN,
+                                                    ErrorHandlingMode.WARN,
+                                                    ErrorHandlingMode.WARN);
+                    fieldCasts[fieldIndex] = cast;
+                    fieldCastContexts[fieldIndex] = context;
+                }
+                cast.evaluate(context, source, value);
+                ValueTargets.copyFrom(value, row.valueAt(columnIndex));
+            }
+        }
+        fieldIndex++;
+        fieldLength = 0;
+    }
+
     protected void clearField() {
         fieldLength = 0;
     }
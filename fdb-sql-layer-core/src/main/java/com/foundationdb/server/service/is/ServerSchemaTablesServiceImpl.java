@@ -53,6 +53,7 @@ import com.foundationdb.server.service.monitor.UserMonitor;
 import com.foundationdb.server.service.monitor.SessionMonitor.StatementTypes;
 import com.foundationdb.server.service.security.SecurityService;
 import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.store.OnlineHelper.IndexBuildProgress;
 import com.foundationdb.server.store.SchemaManager;
 import com.foundationdb.server.store.Store;
 import com.foundationdb.server.types.common.types.TypesTranslator;
@@ -77,6 +78,7 @@ public class ServerSchemaTablesServiceImpl
     static final TableName SERVER_PREPARED_STATEMENTS = new TableName (SCHEMA_NAME, "server_prepared_statements");
     static final TableName SERVER_CURSORS = new TableName (SCHEMA_NAME, "server_cursors");
     static final TableName SERVER_USERS = new TableName (SCHEMA_NAME, "server_users");
+    static final TableName SERVER_INDEX_BUILDS = new TableName (SCHEMA_NAME, "server_index_builds");
 
     private final MonitorService monitor;
     private final ConfigurationService configService;
@@ -128,6 +130,8 @@ public class ServerSchemaTablesServiceImpl
         attach (ais, SERVER_CURSORS, Cursors.class);
         //SERVER_USERS
         attach(ais, SERVER_USERS, Users.class);
+        //SERVER_INDEX_BUILDS
+        attach(ais, SERVER_INDEX_BUILDS, IndexBuilds.class);
     }
 
     @Override
@@ -718,7 +722,50 @@ public class ServerSchemaTablesServiceImpl
         }
     }
 
-    
+    private class IndexBuilds extends BasicFactoryBase {
+        public IndexBuilds(TableName sourceTable) {
+            super(sourceTable);
+        }
+
+        @Override
+        public GroupScan getGroupScan(MemoryAdapter adapter, Group group) {
+            return new Scan(adapter.getSession(), getRowType(group.getAIS()));
+        }
+
+        @Override
+        public long rowCount(Session session) {
+            return store.getOnlineHelper().getIndexBuilds().size();
+        }
+
+        private class Scan extends BaseScan {
+            final Iterator<IndexBuildProgress> builds = store.getOnlineHelper().getIndexBuilds().iterator();
+
+            public Scan(Session session, RowType rowType) {
+                super(rowType);
+            }
+
+            @Override
+            public Row next() {
+                if (!builds.hasNext()) {
+                    return null;
+                }
+                IndexBuildProgress build = builds.next();
+                long lastRange = build.getLastRangeRowsPerSecond();
+                return new ValuesHolderRow(rowType,
+                                            build.getGroupName(),
+                                            build.getIndexNames(),
+                                            build.getStartTimeMillis()/1000,
+                                            build.getRowCount(),
+                                            build.getRowsPerSecond(),
+                                            build.getRangesFinished(),
+                                            build.getRangesInProgress(),
+                                            (lastRange < 0) ? null : Long.valueOf(lastRange),
+                                            build.getRetryCount(),
+                                            ++rowCounter);
+            }
+        }
+    }
+
     static AkibanInformationSchema createTablesToRegister(TypesTranslator typesTranslator) {
         NewAISBuilder builder = AISBBasedBuilder.create(typesTranslator);
         
@@ -821,6 +868,17 @@ public class ServerSchemaTablesServiceImpl
         builder.table(SERVER_USERS)
             .colString("user_name", IDENT_MAX, false)
             .colBigInt("statement_count", false);
+
+        builder.table(SERVER_INDEX_BUILDS)
+            .colString("group_name", PATH_MAX, false)
+            .colString("index_names", PATH_MAX, false)
+            .colSystemTimestamp("start_time", false)
+            .colBigInt("row_count", false)
+            .colBigInt("rows_per_second", false)
+            .colBigInt("ranges_finished", false)
+            .colBigInt("ranges_in_progress", false)
+            .colBigInt("last_range_rows_per_second", true)
+            .colBigInt("retry_count", false);
             
         return builder.ais(false);
     }
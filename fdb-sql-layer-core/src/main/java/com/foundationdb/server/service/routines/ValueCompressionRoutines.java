@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.service.routines;
+
+import com.foundationdb.ais.model.Table;
+import com.foundationdb.server.error.NoSuchTableException;
+import com.foundationdb.server.store.FDBStore;
+import com.foundationdb.sql.server.ServerCallContextStack;
+import com.foundationdb.sql.server.ServerSession;
+
+@SuppressWarnings("unused") // reflection
+public class ValueCompressionRoutines
+{
+    private ValueCompressionRoutines() {
+    }
+
+    /** The ratio of raw to stored row value bytes for a table's group
+     * since startup, or <code>null</code> if it is not compressed. */
+    public static Double ratio(String schemaName, String tableName) {
+        ServerSession server = ServerCallContextStack.getCallingContext().getServer();
+        if(schemaName == null) {
+            schemaName = server.getDefaultSchemaName();
+        }
+        Table table = server.getAIS().getTable(schemaName, tableName);
+        if(table == null) {
+            throw new NoSuchTableException(schemaName, tableName);
+        }
+        return ((FDBStore)server.getServiceManager().getStore()).getValueCompressionRatio(table);
+    }
+}
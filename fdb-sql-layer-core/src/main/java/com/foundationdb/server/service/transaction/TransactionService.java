@@ -59,6 +59,12 @@ public interface TransactionService extends Service {
     /** Begin a new transaction. */
     void beginTransaction(Session session);
 
+    /**
+     * Begin a new transaction for a single statement that only reads. It may
+     * see data that is slightly out of date, if the implementation is so configured.
+     */
+    void beginReadOnlyTransaction(Session session);
+
     /** Begin a new transaction that will rollback upon close if not committed. */
     CloseableTransaction beginCloseableTransaction(Session session);
 
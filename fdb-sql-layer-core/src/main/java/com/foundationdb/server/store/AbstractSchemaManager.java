@@ -342,6 +342,12 @@ public abstract class AbstractSchemaManager implements Service, SchemaManager {
         txnService.addCallback(session, CallbackType.ROLLBACK, REMOVE_ONLINE_SESSION_KEY_CALLBACK);
     }
 
+    @Override
+    public void joinOnline(Session helper, Session owner) {
+        getOnlineSession(helper, false);
+        helper.put(ONLINE_SESSION_KEY, new OnlineSession(getOnlineSession(owner, true)));
+    }
+
     @Override
     public AkibanInformationSchema getOnlineAIS(Session session) {
         OnlineSession onlineSession = getOnlineSession(session, true);
@@ -1192,6 +1198,13 @@ public abstract class AbstractSchemaManager implements Service, SchemaManager {
             this.schemaNames = new HashSet<>();
             this.tableIDs = new HashSet<>();
         }
+
+        /** A read-only copy, for a session helping {@code owner}. */
+        public OnlineSession(OnlineSession owner) {
+            this.id = owner.id;
+            this.schemaNames = Collections.unmodifiableSet(new HashSet<>(owner.schemaNames));
+            this.tableIDs = Collections.unmodifiableSet(new HashSet<>(owner.tableIDs));
+        }
     }
 
     protected static class OnlineCache
@@ -90,6 +90,7 @@ public abstract class AbstractStore<SType extends AbstractStore,SDType,SSDType e
     private static final InOutTap PROPAGATE_REPLACE_TAP = Tap.createTimer("write: propagate_hkey_change_row_replace");
 
     protected static final String FEATURE_DDL_WITH_DML_PROP = "fdbsql.feature.ddl_with_dml_on";
+    protected static final String ONLINE_BUILD_THREADS_PROP = "fdbsql.online.build_threads";
 
     protected final TransactionService txnService;
     protected final SchemaManager schemaManager;
@@ -204,7 +205,7 @@ public abstract class AbstractStore<SType extends AbstractStore,SDType,SSDType e
     }
 
     protected boolean hasNullIndexSegments(Row row, Index index) {
-        int nkeys = index.getKeyColumns().size();
+        int nkeys = index.getUniqueColumnCount();
         IndexRowComposition indexRowComposition = index.indexRowComposition();
         for (int i = 0; i < nkeys; i++) {
             int fi = indexRowComposition.getFieldPosition(i);
@@ -379,6 +380,13 @@ public abstract class AbstractStore<SType extends AbstractStore,SDType,SSDType e
         }
         
     }
+
+    @Override
+    public void writeRows(Session session, List<? extends Row> rows) {
+        for(Row row : rows) {
+            writeRow(session, row, null, null);
+        }
+    }
     
     
  
@@ -494,12 +494,17 @@ public abstract class ConstraintHandler<SType extends AbstractStore,SDType,SSDTy
    
     protected void notReferencing(Session session, Index index, SDType storeData,
             Row row, ForeignKey foreignKey, String operation) {
+        throw notReferencingException(session, row, foreignKey, operation);
+    }
+
+    protected RuntimeException notReferencingException(Session session, Row row,
+                                                       ForeignKey foreignKey, String operation) {
         String key = formatKey(session, row, foreignKey.getReferencingColumns());
-        throw new ForeignKeyReferencingViolationException(operation,
-                                                          foreignKey.getReferencingTable().getName(),
-                                                          key,
-                                                          foreignKey.getConstraintName().getTableName(),
-                                                          foreignKey.getReferencedTable().getName());
+        return new ForeignKeyReferencingViolationException(operation,
+                                                           foreignKey.getReferencingTable().getName(),
+                                                           key,
+                                                           foreignKey.getConstraintName().getTableName(),
+                                                           foreignKey.getReferencedTable().getName());
     }
     
     @SuppressWarnings("unchecked")
@@ -38,7 +38,7 @@ public class FDBConstraintHandler extends ConstraintHandler<FDBStore,FDBStoreDat
 
     @Override
     protected void checkReferencing(Session session, Index index, FDBStoreData storeData,
-            Row row, ForeignKey foreignKey, String operation) {
+            final Row row, final ForeignKey foreignKey, final String operation) {
         assert index.isUnique() : index;
         TransactionState txn = txnService.getTransaction(session);
         FDBPendingIndexChecks.CheckPass finalPass =
@@ -48,7 +48,18 @@ public class FDBConstraintHandler extends ConstraintHandler<FDBStore,FDBStoreDat
         FDBPendingIndexChecks.PendingCheck<?> check =
             FDBPendingIndexChecks.foreignKeyReferencingCheck(session, txn, index, storeData.persistitKey,
                                                              foreignKey, finalPass, operation);
-        if (txn.getForceImmediateForeignKeyCheck() ||
+        if (!txn.getForceImmediateForeignKeyCheck() &&
+            (finalPass == FDBPendingIndexChecks.CheckPass.ROW) &&
+            (txn.getIndexChecks(false) == null) &&
+            (txn.getRowBatch() != null)) {
+            txn.getRowBatch().add(new FDBRowBatch.RowCheck(index, check) {
+                @Override
+                protected RuntimeException createException(Session session) {
+                    return notReferencingException(session, row, foreignKey, operation);
+                }
+            });
+        }
+        else if (txn.getForceImmediateForeignKeyCheck() ||
             ((finalPass == FDBPendingIndexChecks.CheckPass.ROW) &&
             ((txn.getIndexChecks(false) == null) || !txn.getIndexChecks(false).isDelayed()))) {
             check.blockUntilReady(txn);
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store;
+
+import com.foundationdb.ais.model.Index;
+import com.foundationdb.qp.storeadapter.FDBAdapter;
+import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.store.FDBPendingIndexChecks.PendingCheck;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that would have been waited for one row at a time while
+ * writing a batch of rows, so that their reads all proceed at once
+ * instead. They are resolved in the order made, which is row order, so
+ * that the error is the same one that writing each row in turn would
+ * have given.
+ */
+class FDBRowBatch
+{
+    static abstract class RowCheck {
+        final Index index;
+        final PendingCheck<?> check;
+
+        RowCheck(Index index, PendingCheck<?> check) {
+            this.index = index;
+            this.check = check;
+        }
+
+        /** Create the exception for this row failing the check. */
+        protected abstract RuntimeException createException(Session session);
+    }
+
+    private final List<RowCheck> checks = new ArrayList<>();
+
+    public void add(RowCheck check) {
+        checks.add(check);
+    }
+
+    public int size() {
+        return checks.size();
+    }
+
+    public void performChecks(Session session, TransactionState txn) {
+        try {
+            for (RowCheck rowCheck : checks) {
+                rowCheck.check.blockUntilReady(txn);
+                boolean ok;
+                try {
+                    ok = rowCheck.check.check(session, txn, rowCheck.index);
+                }
+                catch (RuntimeException ex) {
+                    throw FDBAdapter.wrapFDBException(session, ex);
+                }
+                if (!ok) {
+                    throw rowCheck.createException(session);
+                }
+            }
+        }
+        finally {
+            checks.clear();
+        }
+    }
+}
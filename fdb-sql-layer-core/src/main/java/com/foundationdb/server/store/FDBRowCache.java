@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store;
+
+import com.foundationdb.KeyValue;
+import com.foundationdb.MutationType;
+import com.foundationdb.ais.model.Group;
+import com.foundationdb.qp.storeadapter.FDBAdapter;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+import com.foundationdb.server.store.format.FDBStorageDescription;
+import com.foundationdb.tuple.ByteArrayUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copies of the trees of groups whose storage description asks
+ * for a row cache: the group itself and its indexes.
+ *
+ * Every transaction that writes to such a group atomically adds one to
+ * the group's version key, stored under {@link #VERSIONS_DIR_PATH}. A
+ * cached tree is loaded by a transaction that has not itself written the
+ * group and is labelled with the version that transaction saw, so it is
+ * exactly the committed contents as of that version. Another transaction
+ * can use it when it sees the same version.
+ *
+ * Reading the version key is what stands in for reading the rows. Unless
+ * the scan is a snapshot one, it is added to the read conflicts, so any
+ * concurrent write to the group makes the transaction conflict, just as
+ * if it had read the rows it was served.
+ *
+ * Trees with more than <code>maxRows</code> entries are not cached.
+ */
+public class FDBRowCache
+{
+    public static final List<String> VERSIONS_DIR_PATH = Arrays.asList("rowCacheVersions");
+
+    static final long WRITTEN = -1;
+
+    private static final byte[] ONE = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(1).array();
+
+    static final Comparator<byte[]> KEY_COMPARATOR = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] k1, byte[] k2) {
+            return ByteArrayUtil.compareUnsigned(k1, k2);
+        }
+    };
+
+    private final byte[] packedPrefix;
+    private final int maxRows;
+    private final ConcurrentMap<ByteBuffer,CachedGroup> groups = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount = new AtomicLong(), loadCount = new AtomicLong();
+
+    /** The version of a group as seen by one transaction. */
+    static class GroupVersion {
+        final long version;
+        boolean conflicting;
+
+        GroupVersion(long version) {
+            this.version = version;
+        }
+    }
+
+    static class CachedGroup {
+        final long generation, version;
+        final ConcurrentMap<ByteBuffer,NavigableMap<byte[],byte[]>> trees = new ConcurrentHashMap<>();
+        final Set<ByteBuffer> tooLarge = Collections.newSetFromMap(new ConcurrentHashMap<ByteBuffer,Boolean>());
+
+        CachedGroup(long generation, long version) {
+            this.generation = generation;
+            this.version = version;
+        }
+
+        boolean isOlderThan(long generation, long version) {
+            return (this.generation < generation) ||
+                ((this.generation == generation) && (this.version < version));
+        }
+    }
+
+    public FDBRowCache(FDBHolder holder, int maxRows) {
+        this.packedPrefix = holder.getRootDirectory().createOrOpen(holder.getTransactionContext(),
+                                                                   VERSIONS_DIR_PATH).get().pack();
+        this.maxRows = maxRows;
+    }
+
+    /** Note that <code>txn</code> is changing <code>group</code>. */
+    public void noteWrite(TransactionState txn, Group group) {
+        Map<Group,GroupVersion> versions = txn.getRowCacheVersions();
+        GroupVersion current = versions.get(group);
+        if ((current != null) && (current.version == WRITTEN)) {
+            return;
+        }
+        txn.mutate(MutationType.ADD, versionKey(group), ONE);
+        versions.put(group, new GroupVersion(WRITTEN));
+    }
+
+    /**
+     * Get the cached contents of the tree with <code>treePrefix</code> in
+     * <code>group</code>, loading it if need be, or <code>null</code> if
+     * <code>txn</code> needs to read it from storage.
+     */
+    public NavigableMap<byte[],byte[]> getTree(TransactionState txn, Group group, byte[] treePrefix, boolean snapshot) {
+        long version = transactionVersion(txn, group, snapshot);
+        if (version == WRITTEN) {
+            return null;
+        }
+        long generation = group.getAIS().getGeneration();
+        ByteBuffer groupKey = ByteBuffer.wrap(groupPrefix(group));
+        CachedGroup cached = groups.get(groupKey);
+        while ((cached == null) || cached.isOlderThan(generation, version)) {
+            CachedGroup fresh = new CachedGroup(generation, version);
+            boolean replaced = (cached == null) ?
+                (groups.putIfAbsent(groupKey, fresh) == null) :
+                groups.replace(groupKey, cached, fresh);
+            if (replaced) {
+                cached = fresh;
+            }
+            else {
+                cached = groups.get(groupKey);
+            }
+        }
+        if ((cached.generation != generation) || (cached.version != version)) {
+            // Cache has moved past what this transaction can see.
+            return null;
+        }
+        ByteBuffer treeKey = ByteBuffer.wrap(treePrefix);
+        NavigableMap<byte[],byte[]> tree = cached.trees.get(treeKey);
+        if (tree != null) {
+            hitCount.incrementAndGet();
+            return tree;
+        }
+        if (cached.tooLarge.contains(treeKey)) {
+            return null;
+        }
+        tree = loadTree(txn, treePrefix);
+        if (tree == null) {
+            cached.tooLarge.add(treeKey);
+            return null;
+        }
+        NavigableMap<byte[],byte[]> existing = cached.trees.putIfAbsent(treeKey, tree);
+        return (existing != null) ? existing : tree;
+    }
+
+    /** Forget <code>group</code>, which is being dropped. */
+    public void removeGroup(TransactionState txn, Group group) {
+        groups.remove(ByteBuffer.wrap(groupPrefix(group)));
+        txn.clearKey(versionKey(group));
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    protected long transactionVersion(TransactionState txn, Group group, boolean snapshot) {
+        Map<Group,GroupVersion> versions = txn.getRowCacheVersions();
+        GroupVersion groupVersion = versions.get(group);
+        byte[] key = null;
+        if (groupVersion == null) {
+            key = versionKey(group);
+            groupVersion = new GroupVersion(decodeVersion(txn.getSnapshotValue(key)));
+            versions.put(group, groupVersion);
+        }
+        if (!snapshot && !groupVersion.conflicting && (groupVersion.version != WRITTEN)) {
+            if (key == null) {
+                key = versionKey(group);
+            }
+            try {
+                txn.getTransaction().addReadConflictKey(key);
+            }
+            catch (RuntimeException e) {
+                throw FDBAdapter.wrapFDBException(txn.getSession(), e);
+            }
+            groupVersion.conflicting = true;
+        }
+        return groupVersion.version;
+    }
+
+    protected NavigableMap<byte[],byte[]> loadTree(TransactionState txn, byte[] treePrefix) {
+        List<KeyValue> kvs;
+        try {
+            kvs = txn.getSnapshotRangeAsFutureList(treePrefix, ByteArrayUtil.strinc(treePrefix),
+                                                   maxRows + 1, false).get();
+        }
+        catch (RuntimeException e) {
+            throw FDBAdapter.wrapFDBException(txn.getSession(), e);
+        }
+        if (kvs.size() > maxRows) {
+            return null;
+        }
+        NavigableMap<byte[],byte[]> tree = new TreeMap<>(KEY_COMPARATOR);
+        for (KeyValue kv : kvs) {
+            tree.put(kv.getKey(), kv.getValue());
+        }
+        loadCount.incrementAndGet();
+        return tree;
+    }
+
+    protected byte[] versionKey(Group group) {
+        return ByteArrayUtil.join(packedPrefix, groupPrefix(group));
+    }
+
+    protected static byte[] groupPrefix(Group group) {
+        return ((FDBStorageDescription)group.getStorageDescription()).getPrefixBytes();
+    }
+
+    static long decodeVersion(byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+        return ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).getLong();
+    }
+}
@@ -22,11 +22,14 @@ import com.foundationdb.ais.model.Column;
 import com.foundationdb.ais.model.Group;
 import com.foundationdb.ais.model.HasStorage;
 import com.foundationdb.ais.model.Index;
+import com.foundationdb.ais.model.Routine;
 import com.foundationdb.ais.model.Sequence;
 import com.foundationdb.ais.model.StorageDescription;
 import com.foundationdb.ais.model.Table;
 import com.foundationdb.ais.model.TableIndex;
 import com.foundationdb.ais.model.TableName;
+import com.foundationdb.ais.model.aisb2.AISBBasedBuilder;
+import com.foundationdb.ais.model.aisb2.NewAISBuilder;
 import com.foundationdb.ais.util.TableChange.ChangeType;
 import com.foundationdb.ais.util.TableChangeValidator.ChangeLevel;
 import com.foundationdb.directory.DirectorySubspace;
@@ -39,6 +42,7 @@ import com.foundationdb.qp.storeadapter.FDBAdapter;
 import com.foundationdb.qp.storeadapter.indexrow.FDBIndexRow;
 import com.foundationdb.qp.storeadapter.indexrow.SpatialColumnHandler;
 import com.foundationdb.qp.util.SchemaCache;
+import com.foundationdb.qp.util.WorkerPool;
 import com.foundationdb.server.error.DuplicateKeyException;
 import com.foundationdb.server.error.FDBNotCommittedException;
 import com.foundationdb.server.error.QueryCanceledException;
@@ -48,12 +52,15 @@ import com.foundationdb.server.service.config.ConfigurationService;
 import com.foundationdb.server.service.listener.ListenerService;
 import com.foundationdb.server.service.metrics.LongMetric;
 import com.foundationdb.server.service.metrics.MetricsService;
+import com.foundationdb.server.service.routines.RoutineLoaderImpl;
+import com.foundationdb.server.service.routines.ValueCompressionRoutines;
 import com.foundationdb.server.service.session.Session;
 import com.foundationdb.server.service.transaction.TransactionService;
 import com.foundationdb.server.store.FDBTransactionService.TransactionState;
 import com.foundationdb.server.store.TableChanges.Change;
 import com.foundationdb.server.store.TableChanges.ChangeSet;
 import com.foundationdb.server.store.format.FDBStorageDescription;
+import com.foundationdb.server.store.format.tuple.TupleStorageDescription;
 import com.foundationdb.server.types.service.TypesRegistryService;
 import com.foundationdb.server.util.ReadWriteMap;
 import com.foundationdb.Range;
@@ -64,6 +71,8 @@ import com.google.inject.Inject;
 import com.persistit.Key;
 import com.persistit.Persistit;
 import com.persistit.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -79,6 +88,7 @@ import java.util.TreeSet;
 import static com.foundationdb.server.store.FDBStoreDataHelper.*;
 
 public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDescription> implements Service {
+    private static final Logger LOG = LoggerFactory.getLogger(FDBStore.class);
     private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
     private static final Session.MapKey<Object, SequenceCache> SEQ_UPDATES_KEY = Session.MapKey.mapNamed("SEQ_UPDATE");
 
@@ -87,16 +97,26 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
     private final FDBSchemaManager schemaManager;
     private final FDBTransactionService txnService;
     private final MetricsService metricsService;
-    private final ReadWriteMap<Object, SequenceCache> sequenceCache;
+    private final ReadWriteMap<Object, SequenceBlocks> sequenceCache;
 
     private static final String ROWS_FETCHED_METRIC = "SQLLayerRowsFetched";
     private static final String ROWS_STORED_METRIC = "SQLLayerRowsStored";
     private static final String ROWS_CLEARED_METRIC = "SQLLayerRowsCleared";
+    private static final String SEQUENCE_REFILL_STALLS_METRIC = "SQLLayerSequenceRefillStalls";
+    private static final String VALUE_BYTES_RAW_METRIC = "SQLLayerValueBytesRaw";
+    private static final String VALUE_BYTES_STORED_METRIC = "SQLLayerValueBytesStored";
     private static final String CONFIG_SEQUENCE_CACHE_SIZE = "fdbsql.fdb.sequence_cache_size";
+    private static final String CONFIG_SEQUENCE_CACHE_MAX_SIZE = "fdbsql.fdb.sequence_cache_max_size";
+    private static final String CONFIG_SEQUENCE_CACHE_STRIPES = "fdbsql.fdb.sequence_cache_stripes";
+    private static final String CONFIG_VALUE_COMPRESSION_SAMPLE_ROWS = "fdbsql.fdb.value_compression_sample_rows";
+    private static final String CONFIG_VALUE_COMPRESSION_DICTIONARY_SIZE = "fdbsql.fdb.value_compression_dictionary_size";
+    private static final String CONFIG_ROW_CACHE_MAX_ROWS = "fdbsql.fdb.row_cache_max_rows";
 
-    private LongMetric rowsFetchedMetric, rowsStoredMetric, rowsClearedMetric;
+    private LongMetric rowsFetchedMetric, rowsStoredMetric, rowsClearedMetric, sequenceRefillStallsMetric;
     private DirectorySubspace rootDir;
-    private int sequenceCacheSize;
+    private int sequenceCacheSize, sequenceCacheMaxSize, sequenceCacheStripes;
+    private FDBValueCompression valueCompression;
+    private FDBRowCache rowCache;
 
 
     @Inject
@@ -122,7 +142,7 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
             throw new IllegalStateException("Only usable with FDBTransactionService, found: " + txnService);
         }
         this.metricsService = metricsService;
-        this.sequenceCache = ReadWriteMap.wrapFair(new HashMap<Object, SequenceCache>());
+        this.sequenceCache = ReadWriteMap.wrapFair(new HashMap<Object, SequenceBlocks>());
     }
 
     @Override
@@ -132,14 +152,21 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
         if(sessionMap != null) {
             cache = sessionMap.get(SequenceCache.cacheKey(sequence));
         }
-        if(cache == null) {
-            cache = sequenceCache.getOrCreateAndPut(SequenceCache.cacheKey(sequence), SEQUENCE_CACHE_VALUE_CREATOR);
-            long readTimestamp = txnService.getTransactionStartTimestamp(session);
-            if(readTimestamp < cache.getTimestamp()) {
-                cache = null;
+        long rawValue = -1;
+        if(cache != null) {
+            rawValue = cache.nextCacheValue();
+        } else {
+            SequenceBlocks blocks = sequenceCache.getOrCreateAndPut(SequenceCache.cacheKey(sequence), sequenceBlocksCreator);
+            SequenceBlocks.Stripe stripe = blocks.getStripe();
+            rawValue = blocks.nextValue(stripe, txnService.getTransactionStartTimestamp(session));
+            if(rawValue >= 0) {
+                if(blocks.startPrefetch(stripe)) {
+                    prefetchSequenceBlock(sequence, blocks, stripe);
+                }
+            } else {
+                sequenceRefillStallsMetric.increment();
             }
         }
-        long rawValue = (cache != null) ? cache.nextCacheValue() : -1;
         if(rawValue < 0) {
             rawValue = updateSequenceCache(session, sequence);
         }
@@ -148,14 +175,18 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
 
     @Override
     public long curSequenceValue(Session session, Sequence sequence) {
-        long rawValue = 0;
-        SequenceCache cache = sequenceCache.get(sequence.getStorageUniqueKey());
-        if(cache == null) {
-            cache = session.get(SEQ_UPDATES_KEY, sequence.getStorageUniqueKey());
-        }
-        if (cache != null) {
+        long rawValue = -1;
+        SequenceCache cache = session.get(SEQ_UPDATES_KEY, sequence.getStorageUniqueKey());
+        if(cache != null) {
             rawValue = cache.getCurrentValue();
         } else {
+            SequenceBlocks blocks = sequenceCache.get(sequence.getStorageUniqueKey());
+            if(blocks != null) {
+                rawValue = blocks.getCurrentValue();
+            }
+        }
+        if(rawValue < 0) {
+            rawValue = 0;
             // TODO: Allow FDBStorageDescription to intervene?
             TransactionState txn = txnService.getTransaction(session);
             byte[] byteValue = txn.getValue(prefixBytes(sequence));
@@ -183,14 +214,40 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
         rowsFetchedMetric = metricsService.addLongMetric(ROWS_FETCHED_METRIC);
         rowsStoredMetric = metricsService.addLongMetric(ROWS_STORED_METRIC);
         rowsClearedMetric = metricsService.addLongMetric(ROWS_CLEARED_METRIC);
+        sequenceRefillStallsMetric = metricsService.addLongMetric(SEQUENCE_REFILL_STALLS_METRIC);
 
         rootDir = holder.getRootDirectory();
 
         boolean withConcurrentDML = Boolean.parseBoolean(configService.getProperty(FEATURE_DDL_WITH_DML_PROP));
         this.sequenceCacheSize = Integer.parseInt(configService.getProperty(CONFIG_SEQUENCE_CACHE_SIZE));
+        this.sequenceCacheMaxSize = Integer.parseInt(configService.getProperty(CONFIG_SEQUENCE_CACHE_MAX_SIZE));
+        this.sequenceCacheStripes = Integer.parseInt(configService.getProperty(CONFIG_SEQUENCE_CACHE_STRIPES));
+        if(sequenceCacheStripes <= 0) {
+            sequenceCacheStripes = Runtime.getRuntime().availableProcessors();
+        }
+        this.valueCompression = new FDBValueCompression(holder,
+                                                        Integer.parseInt(configService.getProperty(CONFIG_VALUE_COMPRESSION_SAMPLE_ROWS)),
+                                                        Integer.parseInt(configService.getProperty(CONFIG_VALUE_COMPRESSION_DICTIONARY_SIZE)),
+                                                        metricsService.addLongMetric(VALUE_BYTES_RAW_METRIC),
+                                                        metricsService.addLongMetric(VALUE_BYTES_STORED_METRIC));
+        this.rowCache = new FDBRowCache(holder, Integer.parseInt(configService.getProperty(CONFIG_ROW_CACHE_MAX_ROWS)));
         this.constraintHandler = new FDBConstraintHandler(this, configService, typesRegistryService, serviceManager, txnService);
-        this.onlineHelper = new OnlineHelper(txnService, schemaManager, this, typesRegistryService, constraintHandler, withConcurrentDML);
+        int onlineBuildThreads = Integer.parseInt(configService.getProperty(ONLINE_BUILD_THREADS_PROP));
+        this.onlineHelper = new OnlineHelper(txnService, schemaManager, this, typesRegistryService, constraintHandler, withConcurrentDML,
+                                             serviceManager, onlineBuildThreads);
         listenerService.registerRowListener(onlineHelper);
+
+        // System routine
+        NewAISBuilder aisb = AISBBasedBuilder.create(schemaManager.getTypesTranslator());
+        aisb.procedure(TableName.SYS_SCHEMA, "value_compression_ratio")
+            .language("java", Routine.CallingConvention.JAVA)
+            .paramStringIn("schema_name", RoutineLoaderImpl.IDENT_MAX)
+            .paramStringIn("table_name", RoutineLoaderImpl.IDENT_MAX)
+            .returnDouble("ratio")
+            .externalName(ValueCompressionRoutines.class.getCanonicalName(), "ratio");
+        for(Routine proc : aisb.ais().getRoutines().values()) {
+            schemaManager.registerSystemRoutine(proc);
+        }
     }
 
     @Override
@@ -248,6 +305,42 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
         rowsClearedMetric.increment();
     }
 
+    @Override
+    public void writeRows(Session session, List<? extends Row> rows) {
+        TransactionState txn = txnService.getTransaction(session);
+        if((rows.size() < 2) || (txn.getRowBatch() != null)) {
+            super.writeRows(session, rows);
+            return;
+        }
+        // Uniqueness and parent checks that would block each row are
+        // collected and waited for together at the end.
+        FDBRowBatch batch = new FDBRowBatch();
+        txn.setRowBatch(batch);
+        try {
+            for(Row row : rows) {
+                writeRow(session, row, null, null);
+            }
+        } catch(RuntimeException e) {
+            // A row before this one might have failed a check first.
+            txn.setRowBatch(null);
+            performBatchChecks(session, txn, batch);
+            throw e;
+        } finally {
+            txn.setRowBatch(null);
+        }
+        performBatchChecks(session, txn, batch);
+    }
+
+    private void performBatchChecks(Session session, TransactionState txn, FDBRowBatch batch) {
+        try {
+            batch.performChecks(session, txn);
+        } catch(RuntimeException e) {
+            // Unlike when checked right away, the failing row has been written.
+            setRollbackPending(session);
+            throw e;
+        }
+    }
+
     @Override
     void resetForWrite(FDBStoreData storeData, Index index, WriteIndexRow indexRowBuffer) {
         if(storeData.persistitValue == null) {
@@ -346,12 +439,26 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
     
     @Override
     protected void trackTableWrite(Session session, Table table) {
-        // None
+        noteRowCacheWrite(session, table.getGroup());
+    }
+
+    private void noteRowCacheWrite(Session session, Group group) {
+        if(isRowCache(group)) {
+            rowCache.noteWrite(txnService.getTransaction(session), group);
+        }
+    }
+
+    private static boolean isRowCache(Group group) {
+        StorageDescription sd = group.getStorageDescription();
+        return (sd instanceof FDBStorageDescription) && ((FDBStorageDescription)sd).isRowCache();
     }
 
 
     @Override
     public void truncateTree(Session session, HasStorage object) {
+        if(object instanceof Group) {
+            noteRowCacheWrite(session, (Group)object);
+        }
         TransactionState txn = txnService.getTransaction(session);
         txn.clearRange(Range.startsWith(prefixBytes(object)));
     }
@@ -367,6 +474,8 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
     public void removeTrees(Session session, Table table) {
         // Table and indexes (and group and group indexes if root table)
         removeIfExists(session, rootDir, FDBNameGenerator.dataPath(table.getName()));
+        removeValueDictionaries(session, table);
+        removeRowCache(session, table);
         // Sequence
         if(table.getIdentityColumn() != null) {
             deleteSequences(session, Collections.singleton(table.getIdentityColumn().getIdentityGenerator()));
@@ -377,6 +486,45 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
     public void removeTrees(Session session, com.foundationdb.ais.model.Schema schema) {
         removeIfExists(session, rootDir, FDBNameGenerator.dataPathSchemaTable(schema.getName()));
         removeIfExists(session, rootDir, FDBNameGenerator.dataPathSchemaSequence(schema.getName()));
+        for(Table table : schema.getTables().values()) {
+            removeValueDictionaries(session, table);
+            removeRowCache(session, table);
+        }
+    }
+
+    private void removeValueDictionaries(Session session, Table table) {
+        if(table.isRoot() && isValueCompressed(table.getGroup())) {
+            valueCompression.removeTree(txnService.getTransaction(session),
+                                        ((FDBStorageDescription)table.getGroup().getStorageDescription()).getPrefixBytes());
+        }
+    }
+
+    private static boolean isValueCompressed(Group group) {
+        StorageDescription sd = group.getStorageDescription();
+        return (sd instanceof TupleStorageDescription) && (((TupleStorageDescription)sd).getValueCompression() != null);
+    }
+
+    public FDBValueCompression getValueCompression() {
+        return valueCompression;
+    }
+
+    /** The ratio of raw to stored row value bytes written to <code>table</code>'s
+     * group since startup, or <code>null</code> if the group is not compressed. */
+    public Double getValueCompressionRatio(Table table) {
+        if(!isValueCompressed(table.getGroup())) {
+            return null;
+        }
+        return valueCompression.getCompressionRatio(((FDBStorageDescription)table.getGroup().getStorageDescription()).getPrefixBytes());
+    }
+
+    private void removeRowCache(Session session, Table table) {
+        if(table.isRoot() && isRowCache(table.getGroup())) {
+            rowCache.removeGroup(txnService.getTransaction(session), table.getGroup());
+        }
+    }
+
+    public FDBRowCache getRowCache() {
+        return rowCache;
     }
 
     @Override
@@ -707,7 +855,7 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
     private void checkUniqueness(Session session, TransactionState txn, Index index, Row row, Key key) {
         if(index.isUnique() && !hasNullIndexSegments(row, index)) {
             int realSize = key.getEncodedSize();
-            key.setDepth(index.getKeyColumns().size());
+            key.setDepth(index.getUniqueColumnCount());
             try {
                 checkKeyDoesNotExistInIndex(session, txn, row, index, key);
             } finally {
@@ -717,11 +865,22 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
         
     }
 
-    private void checkKeyDoesNotExistInIndex(Session session, TransactionState txn, Row row, Index index, Key key) {
+    private void checkKeyDoesNotExistInIndex(Session session, TransactionState txn, final Row row, final Index index, Key key) {
         assert index.isUnique() : index;
         FDBPendingIndexChecks.PendingCheck<?> check =
             FDBPendingIndexChecks.keyDoesNotExistInIndexCheck(session, txn, index, key);
-        if (txn.getForceImmediateForeignKeyCheck() ||
+        if (!txn.getForceImmediateForeignKeyCheck() &&
+            (txn.getIndexChecks(false) == null) &&
+            (txn.getRowBatch() != null)) {
+            txn.getRowBatch().add(new FDBRowBatch.RowCheck(index, check) {
+                @Override
+                protected RuntimeException createException(Session session) {
+                    String msg = formatIndexRowString(session, row, index);
+                    return new DuplicateKeyException(index.getIndexName(), msg);
+                }
+            });
+        }
+        else if (txn.getForceImmediateForeignKeyCheck() ||
             txn.getIndexChecks(false) == null) {
             check.blockUntilReady(txn);
             if (!check.check(session, txn, index)) {
@@ -765,23 +924,62 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
         } else {
             rawValue = 1;
         }
-        tr.set(prefixBytes, Tuple2.from(rawValue + sequenceCacheSize).pack());
+        SequenceBlocks blocks = sequenceCache.getOrCreateAndPut(SequenceCache.cacheKey(s), sequenceBlocksCreator);
+        int blockSize = blocks.getBlockSize();
+        tr.set(prefixBytes, Tuple2.from(rawValue + blockSize).pack());
 
         Map<Object, SequenceCache> sessionMap = session.get(SEQ_UPDATES_KEY);
         if(sessionMap == null) {
             txnService.addCallback(session, TransactionService.CallbackType.COMMIT, SEQUENCE_UPDATES_PUT_CALLBACK);
             txnService.addCallback(session, TransactionService.CallbackType.END, SEQUENCE_UPDATES_CLEAR_CALLBACK);
         }
-        SequenceCache newCache = SequenceCache.newLocal(rawValue, sequenceCacheSize);
+        SequenceCache newCache = SequenceCache.newLocal(rawValue, blockSize);
         session.put(SEQ_UPDATES_KEY, SequenceCache.cacheKey(s), newCache);
         return rawValue;
     }
 
 
-    private static final ReadWriteMap.ValueCreator<Object, SequenceCache> SEQUENCE_CACHE_VALUE_CREATOR =
-        new ReadWriteMap.ValueCreator<Object, SequenceCache>() {
-            public SequenceCache createValueForKey (Object key) {
-                return SequenceCache.newEmpty();
+    /** Reserve the next block for <code>stripe</code> in a transaction of its own,
+     * so that sessions only wait for the sequence k/v when this falls behind. */
+    private void prefetchSequenceBlock(final Sequence s, final SequenceBlocks blocks, final SequenceBlocks.Stripe stripe) {
+        final byte[] prefixBytes = prefixBytes(s);
+        WorkerPool.getIOPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                SequenceCache block = null;
+                Transaction tr = holder.getDatabase().createTransaction();
+                try {
+                    while(true) {
+                        try {
+                            byte[] byteValue = tr.get(prefixBytes).get();
+                            if(byteValue == null) {
+                                // Dropped, or never allocated: leave it to updateSequenceCache.
+                                break;
+                            }
+                            long rawValue = Tuple2.fromBytes(byteValue).getLong(0);
+                            int blockSize = blocks.getBlockSize();
+                            tr.set(prefixBytes, Tuple2.from(rawValue + blockSize).pack());
+                            tr.commit().get();
+                            block = SequenceCache.newBlock(tr.getCommittedVersion(), rawValue, blockSize);
+                            break;
+                        } catch(RuntimeException e) {
+                            tr.onError(e).get();
+                        }
+                    }
+                } catch(RuntimeException e) {
+                    LOG.warn("Sequence prefetch failed for {}", s.getSequenceName(), e);
+                } finally {
+                    tr.dispose();
+                    blocks.finishPrefetch(stripe, block);
+                }
+            }
+        });
+    }
+
+    private final ReadWriteMap.ValueCreator<Object, SequenceBlocks> sequenceBlocksCreator =
+        new ReadWriteMap.ValueCreator<Object, SequenceBlocks>() {
+            public SequenceBlocks createValueForKey (Object key) {
+                return new SequenceBlocks(sequenceCacheStripes, sequenceCacheSize, sequenceCacheMaxSize);
             }
         };
 
@@ -798,7 +996,8 @@ public class FDBStore extends AbstractStore<FDBStore,FDBStoreData,FDBStorageDesc
             Map<Object, SequenceCache> map = session.get(SEQ_UPDATES_KEY);
             for(Entry<Object, SequenceCache> entry : map.entrySet()) {
                 SequenceCache global = SequenceCache.newGlobal(timestamp, entry.getValue());
-                sequenceCache.put(entry.getKey(), global);
+                SequenceBlocks blocks = sequenceCache.getOrCreateAndPut(entry.getKey(), sequenceBlocksCreator);
+                blocks.install(blocks.getStripe(), global);
             }
         }
     };
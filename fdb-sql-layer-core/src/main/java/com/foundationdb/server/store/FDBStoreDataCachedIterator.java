@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store;
+
+import com.foundationdb.Transaction;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+
+/**
+ * Substitute for {@link FDBStoreDataKeyValueIterator} that emits key-value pairs
+ * from a tree cached by {@link FDBRowCache} instead of from storage.
+ */
+public class FDBStoreDataCachedIterator extends FDBStoreDataIterator
+{
+    private final Iterator<Map.Entry<byte[],byte[]>> underlying;
+    private int remaining;
+
+    /** Iterate over the part of <code>tree</code> within the given bounds. */
+    public FDBStoreDataCachedIterator(FDBStoreData storeData,
+                                      NavigableMap<byte[],byte[]> tree,
+                                      byte[] left, boolean leftInclusive,
+                                      byte[] right, boolean rightInclusive,
+                                      int limit, boolean reverse) {
+        super(storeData);
+        NavigableMap<byte[],byte[]> range;
+        if (FDBRowCache.KEY_COMPARATOR.compare(left, right) > 0) {
+            range = tree.subMap(left, true, left, false);
+        }
+        else {
+            range = tree.subMap(left, leftInclusive, right, rightInclusive);
+        }
+        if (reverse) {
+            range = range.descendingMap();
+        }
+        this.underlying = range.entrySet().iterator();
+        this.remaining = (limit == Transaction.ROW_LIMIT_UNLIMITED) ? Integer.MAX_VALUE : limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (remaining > 0) && underlying.hasNext();
+    }
+
+    @Override
+    public Void next() {
+        Map.Entry<byte[],byte[]> entry = underlying.next();
+        storeData.rawKey = entry.getKey();
+        storeData.rawValue = entry.getValue();
+        remaining--;
+        return null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -18,6 +18,7 @@
 package com.foundationdb.server.store;
 
 import com.foundationdb.ais.model.ForeignKey;
+import com.foundationdb.ais.model.Group;
 import com.foundationdb.qp.storeadapter.FDBAdapter;
 import com.foundationdb.server.error.AkibanInternalException;
 import com.foundationdb.server.error.FDBCommitUnknownResultException;
@@ -49,6 +50,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -87,6 +89,7 @@ public class FDBTransactionService implements TransactionService {
     protected static final String CONFIG_COMMIT_SCAN_LIMIT = "fdbsql.fdb.periodically_commit.scan_limit";
     protected static final String CONFIG_READ_AHEAD_DISABLE = "fdbsql.fdb.xact.read_ahead_disable";
     protected static final String CONFIG_READ_YOUR_WRITES_DISABLE = "fdbsql.fdb.xact.read_your_writes_disable";
+    protected static final String CONFIG_READ_VERSION_MAX_STALENESS = "fdbsql.fdb.xact.read_version_max_staleness_ms";
     protected static final String UNIQUENESS_CHECKS_METRIC = "SQLLayerUniquenessPending";
 
     protected static final List<String> TRANSACTION_CHECK_DIR_PATH = Arrays.asList("transactionCheck");
@@ -100,6 +103,7 @@ public class FDBTransactionService implements TransactionService {
     private boolean readAheadDisable, readYourWritesDisable;
     private LongMetric uniquenessChecksMetric;
     private byte[] packedTransactionCheckPrefix;
+    private ReadVersionCache readVersionCache;
 
     @Inject
     public FDBTransactionService(FDBHolder fdbHolder,
@@ -121,6 +125,8 @@ public class FDBTransactionService implements TransactionService {
         boolean forceImmediateForeignKeyCheck;
         int resetCount;
         FDBScanTransactionOptions scanOptions = FDBScanTransactionOptions.NORMAL;
+        FDBRowBatch rowBatch;
+        Map<Group,FDBRowCache.GroupVersion> rowCacheVersions;
 
         public TransactionState(FDBPendingIndexChecks.CheckTime checkTime, Session session) {
             this.transaction = createTransaction();
@@ -296,10 +302,27 @@ public class FDBTransactionService implements TransactionService {
             return indexChecks;
         }
 
+        /** Checks being collected for a batch of rows, if one is being written. */
+        FDBRowBatch getRowBatch() {
+            return rowBatch;
+        }
+
+        void setRowBatch(FDBRowBatch rowBatch) {
+            this.rowBatch = rowBatch;
+        }
+
+        /** Versions of cached groups as seen by this transaction. */
+        Map<Group,FDBRowCache.GroupVersion> getRowCacheVersions() {
+            if (rowCacheVersions == null)
+                rowCacheVersions = new HashMap<>();
+            return rowCacheVersions;
+        }
+
         public void reset() {
             this.startTime = System.currentTimeMillis();
             this.bytesSet = 0;
             this.forceImmediateForeignKeyCheck = false;
+            this.rowCacheVersions = null;
             if (indexChecks != null)
                 indexChecks.clear();
             resetCount++;
@@ -385,6 +408,24 @@ public class FDBTransactionService implements TransactionService {
         readYourWritesDisable = Boolean.parseBoolean(configService.getProperty(CONFIG_READ_YOUR_WRITES_DISABLE));
         uniquenessChecksMetric = metricsService.addLongMetric(UNIQUENESS_CHECKS_METRIC);
         packedTransactionCheckPrefix = dirPathPrefix(TRANSACTION_CHECK_DIR_PATH);
+        long maxStaleness = Long.parseLong(configService.getProperty(CONFIG_READ_VERSION_MAX_STALENESS));
+        if (maxStaleness > 0) {
+            readVersionCache = new ReadVersionCache(maxStaleness * 1000000) {
+                @Override
+                protected long fetchReadVersion() {
+                    Transaction tr = fdbHolder.getDatabase().createTransaction();
+                    try {
+                        return tr.getReadVersion().get();
+                    }
+                    finally {
+                        tr.dispose();
+                    }
+                }
+            };
+        }
+        else {
+            readVersionCache = null;
+        }
     }
 
     @Override
@@ -427,6 +468,21 @@ public class FDBTransactionService implements TransactionService {
         session.put(TXN_KEY, txn);
     }
 
+    @Override
+    public void beginReadOnlyTransaction(Session session) {
+        beginTransaction(session);
+        if (readVersionCache != null) {
+            TransactionState txn = getTransactionInternal(session);
+            try {
+                txn.transaction.setReadVersion(readVersionCache.getReadVersion());
+            }
+            catch (RuntimeException ex) {
+                rollbackTransaction(session);
+                throw FDBAdapter.wrapFDBException(session, ex);
+            }
+        }
+    }
+
     @Override
     public CloseableTransaction beginCloseableTransaction(final Session session) {
         beginTransaction(session);
@@ -482,6 +538,9 @@ public class FDBTransactionService implements TransactionService {
             runCallbacks(session, PRE_COMMIT_KEY, startTime, null);
             txn.getTransaction().commit().get();
             long commitTime = txn.getTransaction().getCommittedVersion();
+            if (readVersionCache != null) {
+                readVersionCache.noteCommitted(commitTime);
+            }
             runCallbacks(session, AFTER_COMMIT_KEY, commitTime, null);
         } catch(RuntimeException e1) {
             if (retry) {
@@ -0,0 +1,534 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store;
+
+import com.foundationdb.KeyValue;
+import com.foundationdb.Range;
+import com.foundationdb.Transaction;
+import com.foundationdb.qp.storeadapter.FDBAdapter;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.error.AkibanInternalException;
+import com.foundationdb.server.service.metrics.LongMetric;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+import com.foundationdb.tuple.ByteArrayUtil;
+import com.foundationdb.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of row values for storage descriptions that ask for it.
+ *
+ * Each value starts with a byte saying how the rest is stored: as is,
+ * deflated, or deflated with a preset dictionary, whose id follows.
+ * Deflated values then have their original length.
+ *
+ * Small rows do not have enough in them to compress well by themselves,
+ * so the first rows stored in each tree are also sampled and, in the
+ * background, used to train a dictionary of the byte strings they most
+ * often have in common. That is stored under {@link #DICTIONARIES_DIR_PATH},
+ * keyed by the tree's prefix and an id, and used for rows stored after
+ * it has been committed. Dictionaries are never changed, so they can be
+ * cached for as long as the tree exists.
+ */
+public class FDBValueCompression
+{
+    private static final Logger LOG = LoggerFactory.getLogger(FDBValueCompression.class);
+
+    public static final List<String> DICTIONARIES_DIR_PATH = Arrays.asList("valueDictionaries");
+
+    public static final byte STORED = 0;
+    public static final byte DEFLATED = 1;
+    public static final byte DICTIONARY_DEFLATED = 2;
+
+    // Byte strings shorter than this are not worth a dictionary entry.
+    static final int GRAM_LENGTH = 8;
+
+    private final FDBHolder holder;
+    private final byte[] packedPrefix;
+    private final int sampleRows, dictionarySize;
+    private final LongMetric rawBytesMetric, storedBytesMetric;
+    private final ConcurrentMap<ByteBuffer,TreeDictionaries> trees = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    static class TreeDictionaries {
+        final ConcurrentMap<Integer,byte[]> byId = new ConcurrentHashMap<>();
+        // -1 until looked up, then 0 if there is none yet.
+        volatile int currentId = -1;
+        // Guarded by this.
+        final List<byte[]> samples = new ArrayList<>();
+        boolean training, untrainable;
+        // Since startup, for this tree's ratio.
+        final AtomicLong rawBytes = new AtomicLong(), storedBytes = new AtomicLong();
+    }
+
+    public FDBValueCompression(FDBHolder holder, int sampleRows, int dictionarySize,
+                               LongMetric rawBytesMetric, LongMetric storedBytesMetric) {
+        this.holder = holder;
+        this.packedPrefix = holder.getRootDirectory().createOrOpen(holder.getTransactionContext(),
+                                                                   DICTIONARIES_DIR_PATH).get().pack();
+        this.sampleRows = sampleRows;
+        this.dictionarySize = dictionarySize;
+        this.rawBytesMetric = rawBytesMetric;
+        this.storedBytesMetric = storedBytesMetric;
+    }
+
+    /** Compress <code>value</code>, to be stored in the tree with <code>prefix</code>. */
+    public byte[] compress(TransactionState txn, byte[] prefix, byte[] value) {
+        TreeDictionaries dictionaries = getTreeDictionaries(prefix);
+        int id = dictionaries.currentId;
+        if (id < 0) {
+            id = loadCurrentDictionary(txn, prefix, dictionaries);
+        }
+        if (id == 0) {
+            sample(prefix, dictionaries, value);
+        }
+        byte[] compressed = compress(value, id, (id > 0) ? dictionaries.byId.get(id) : null);
+        rawBytesMetric.increment(value.length);
+        storedBytesMetric.increment(compressed.length);
+        dictionaries.rawBytes.addAndGet(value.length);
+        dictionaries.storedBytes.addAndGet(compressed.length);
+        return compressed;
+    }
+
+    /** Reverse {@link #compress}. */
+    public byte[] expand(TransactionState txn, byte[] prefix, byte[] value) {
+        if (value[0] == DICTIONARY_DEFLATED) {
+            int[] pos = { 1 };
+            int id = (int)readVarLong(value, pos);
+            return expand(value, getDictionary(txn, prefix, id));
+        }
+        return expand(value, null);
+    }
+
+    /** Forget the dictionaries for a tree that is being removed. */
+    public void removeTree(TransactionState txn, byte[] prefix) {
+        txn.clearRange(dictionariesRange(prefix));
+        trees.remove(ByteBuffer.wrap(prefix));
+    }
+
+    /** The ratio of raw bytes to those stored since startup. */
+    public double getCompressionRatio() {
+        return ratio(rawBytesMetric.get(), storedBytesMetric.get());
+    }
+
+    /** The ratio of raw bytes to those stored in the tree with
+     * <code>prefix</code> since startup. */
+    public double getCompressionRatio(byte[] prefix) {
+        TreeDictionaries dictionaries = trees.get(ByteBuffer.wrap(prefix));
+        if (dictionaries == null) {
+            return 1.0;
+        }
+        return ratio(dictionaries.rawBytes.get(), dictionaries.storedBytes.get());
+    }
+
+    private static double ratio(long raw, long stored) {
+        return (stored == 0) ? 1.0 : (double)raw / stored;
+    }
+
+    protected TreeDictionaries getTreeDictionaries(byte[] prefix) {
+        ByteBuffer key = ByteBuffer.wrap(prefix);
+        TreeDictionaries dictionaries = trees.get(key);
+        if (dictionaries == null) {
+            dictionaries = new TreeDictionaries();
+            TreeDictionaries existing = trees.putIfAbsent(key, dictionaries);
+            if (existing != null) {
+                dictionaries = existing;
+            }
+        }
+        return dictionaries;
+    }
+
+    protected Range dictionariesRange(byte[] prefix) {
+        return Range.startsWith(ByteArrayUtil.join(packedPrefix, Tuple2.from(prefix).pack()));
+    }
+
+    protected byte[] dictionaryKey(byte[] prefix, int id) {
+        return ByteArrayUtil.join(packedPrefix, Tuple2.from(prefix, id).pack());
+    }
+
+    protected int loadCurrentDictionary(TransactionState txn, byte[] prefix, TreeDictionaries dictionaries) {
+        Range range = dictionariesRange(prefix);
+        List<KeyValue> kvs;
+        try {
+            kvs = txn.getSnapshotRangeAsFutureList(range.begin, range.end, 1, true).get();
+        } catch (RuntimeException e) {
+            throw FDBAdapter.wrapFDBException(txn.getSession(), e);
+        }
+        int id = 0;
+        if (!kvs.isEmpty()) {
+            id = installDictionary(dictionaries, kvs.get(0));
+        }
+        dictionaries.currentId = id;
+        return id;
+    }
+
+    protected int installDictionary(TreeDictionaries dictionaries, KeyValue kv) {
+        byte[] key = kv.getKey();
+        Tuple2 t = Tuple2.fromBytes(Arrays.copyOfRange(key, packedPrefix.length, key.length));
+        int id = (int)t.getLong(1);
+        dictionaries.byId.put(id, kv.getValue());
+        return id;
+    }
+
+    protected byte[] getDictionary(TransactionState txn, byte[] prefix, int id) {
+        TreeDictionaries dictionaries = getTreeDictionaries(prefix);
+        byte[] dictionary = dictionaries.byId.get(id);
+        if (dictionary == null) {
+            dictionary = txn.getSnapshotValue(dictionaryKey(prefix, id));
+            if (dictionary == null) {
+                throw new AkibanInternalException("Missing value dictionary " + id + " for " + ByteArrayUtil.printable(prefix));
+            }
+            dictionaries.byId.put(id, dictionary);
+        }
+        return dictionary;
+    }
+
+    protected void sample(byte[] prefix, TreeDictionaries dictionaries, byte[] value) {
+        List<byte[]> samples;
+        synchronized (dictionaries) {
+            if (dictionaries.training || dictionaries.untrainable) {
+                return;
+            }
+            dictionaries.samples.add(value);
+            if (dictionaries.samples.size() < sampleRows) {
+                return;
+            }
+            samples = new ArrayList<>(dictionaries.samples);
+            dictionaries.samples.clear();
+            dictionaries.training = true;
+        }
+        trainInBackground(prefix, dictionaries, samples);
+    }
+
+    /** Train on the shared workers, which are for computation, and
+     * only then store the dictionary from an I/O thread. */
+    protected void trainInBackground(final byte[] prefix, final TreeDictionaries dictionaries,
+                                     final List<byte[]> samples) {
+        WorkerPool.getPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                byte[] dictionary;
+                try {
+                    dictionary = trainDictionary(samples, dictionarySize);
+                } catch (RuntimeException e) {
+                    LOG.warn("Value dictionary training failed for {}", ByteArrayUtil.printable(prefix), e);
+                    finishTraining(dictionaries, false);
+                    return;
+                }
+                if (dictionary.length < GRAM_LENGTH * 4) {
+                    finishTraining(dictionaries, true);
+                    return;
+                }
+                installInBackground(prefix, dictionaries, samples, dictionary);
+            }
+        });
+    }
+
+    protected void installInBackground(final byte[] prefix, final TreeDictionaries dictionaries,
+                                       final List<byte[]> samples, final byte[] dictionary) {
+        WorkerPool.getIOPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                Transaction tr = null;
+                try {
+                    Range range = dictionariesRange(prefix);
+                    tr = holder.getDatabase().createTransaction();
+                    while (true) {
+                        try {
+                            List<KeyValue> existing = tr.getRange(range, 1, true).asList().get();
+                            if (!existing.isEmpty()) {
+                                // Another layer got there first.
+                                dictionaries.currentId = installDictionary(dictionaries, existing.get(0));
+                                break;
+                            }
+                            // Only if the tree still exists, and has rows committed.
+                            if (tr.getRange(Range.startsWith(prefix), 1).asList().get().isEmpty()) {
+                                break;
+                            }
+                            int id = 1;
+                            tr.set(dictionaryKey(prefix, id), dictionary);
+                            tr.commit().get();
+                            dictionaries.byId.put(id, dictionary);
+                            dictionaries.currentId = id;
+                            LOG.debug("Trained value dictionary for {} of {} bytes, compressing samples {}x",
+                                      new Object[] { ByteArrayUtil.printable(prefix), dictionary.length,
+                                                     String.format("%.1f", sampleRatio(samples, id, dictionary)) });
+                            break;
+                        } catch (RuntimeException e) {
+                            tr.onError(e).get();
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    LOG.warn("Value dictionary training failed for {}", ByteArrayUtil.printable(prefix), e);
+                } finally {
+                    if (tr != null) {
+                        tr.dispose();
+                    }
+                    finishTraining(dictionaries, false);
+                }
+            }
+        });
+    }
+
+    private static void finishTraining(TreeDictionaries dictionaries, boolean untrainable) {
+        synchronized (dictionaries) {
+            dictionaries.training = false;
+            dictionaries.untrainable |= untrainable;
+        }
+    }
+
+    static double sampleRatio(List<byte[]> samples, int id, byte[] dictionary) {
+        long raw = 0, stored = 0;
+        for (byte[] sample : samples) {
+            raw += sample.length;
+            stored += compress(sample, id, dictionary).length;
+        }
+        return (double)raw / stored;
+    }
+
+    /* Encoding */
+
+    static byte[] compress(byte[] value, int id, byte[] dictionary) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(value);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length + 8);
+        if (dictionary != null) {
+            out.write(DICTIONARY_DEFLATED);
+            writeVarLong(out, id);
+        }
+        else {
+            out.write(DEFLATED);
+        }
+        writeVarLong(out, value.length);
+        byte[] buffer = new byte[Math.max(64, value.length)];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+            if (out.size() > value.length) {
+                break;
+            }
+        }
+        if (out.size() > value.length) {
+            byte[] stored = new byte[value.length + 1];
+            stored[0] = STORED;
+            System.arraycopy(value, 0, stored, 1, value.length);
+            return stored;
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] expand(byte[] value, byte[] dictionary) {
+        int[] pos = { 1 };
+        switch (value[0]) {
+        case STORED:
+            return Arrays.copyOfRange(value, 1, value.length);
+        case DICTIONARY_DEFLATED:
+            readVarLong(value, pos);
+            /* falls through */
+        case DEFLATED:
+            break;
+        default:
+            throw new AkibanInternalException("Unknown value compression: " + value[0]);
+        }
+        int length = (int)readVarLong(value, pos);
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(value, pos[0], value.length - pos[0]);
+        byte[] result = new byte[length];
+        try {
+            int n = 0;
+            while (n < length) {
+                int m = inflater.inflate(result, n, length - n);
+                if ((m == 0) && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += m;
+            }
+            if (n != length) {
+                throw new AkibanInternalException("Truncated compressed value");
+            }
+        }
+        catch (DataFormatException ex) {
+            throw new AkibanInternalException("Corrupt compressed value", ex);
+        }
+        return result;
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long n) {
+        while ((n & ~0x7FL) != 0) {
+            out.write((int)((n & 0x7F) | 0x80));
+            n >>>= 7;
+        }
+        out.write((int)n);
+    }
+
+    static long readVarLong(byte[] bytes, int[] pos) {
+        long n = 0;
+        int shift = 0;
+        while (true) {
+            byte b = bytes[pos[0]++];
+            n |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+            shift += 7;
+        }
+    }
+
+    /* Training */
+
+    static class Segment {
+        final byte[] sample;
+        final int start, end;
+        final long score;
+
+        Segment(byte[] sample, int start, int end, long score) {
+            this.sample = sample;
+            this.start = start;
+            this.end = end;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Build a dictionary of up to <code>maxSize</code> bytes from the
+     * runs of each sample made up of byte strings that also appear in
+     * other samples, best first, where best is those most often
+     * shared. Since nearer matches are cheaper, the best go at the end.
+     */
+    static byte[] trainDictionary(List<byte[]> samples, int maxSize) {
+        Map<Long,Integer> counts = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM_LENGTH <= sample.length; i++) {
+                Long gram = gram(sample, i);
+                if (seen.add(gram)) {
+                    Integer count = counts.get(gram);
+                    counts.put(gram, (count == null) ? 1 : count + 1);
+                }
+            }
+        }
+        List<Segment> segments = new ArrayList<>();
+        for (byte[] sample : samples) {
+            int start = -1;
+            long score = 0;
+            for (int i = 0; i + GRAM_LENGTH <= sample.length; i++) {
+                int count = counts.get(gram(sample, i));
+                if (count > 1) {
+                    if (start < 0) {
+                        start = i;
+                        score = 0;
+                    }
+                    score += count;
+                }
+                else if (start >= 0) {
+                    segments.add(new Segment(sample, start, i - 1 + GRAM_LENGTH, score));
+                    start = -1;
+                }
+            }
+            if (start >= 0) {
+                segments.add(new Segment(sample, start, sample.length, score));
+            }
+        }
+        Collections.sort(segments, new Comparator<Segment>() {
+            @Override
+            public int compare(Segment s1, Segment s2) {
+                return Long.compare(s2.score, s1.score);
+            }
+        });
+        Set<Long> covered = new HashSet<>();
+        List<Segment> chosen = new ArrayList<>();
+        int size = 0;
+        for (Segment segment : segments) {
+            int length = segment.end - segment.start;
+            if (size + length > maxSize) {
+                continue;
+            }
+            int uncovered = 0, total = 0;
+            for (int i = segment.start; i + GRAM_LENGTH <= segment.end; i++) {
+                total++;
+                if (!covered.contains(gram(segment.sample, i))) {
+                    uncovered++;
+                }
+            }
+            if (uncovered * 2 <= total) {
+                continue;
+            }
+            for (int i = segment.start; i + GRAM_LENGTH <= segment.end; i++) {
+                covered.add(gram(segment.sample, i));
+            }
+            chosen.add(segment);
+            size += length;
+        }
+        byte[] dictionary = new byte[size];
+        int pos = 0;
+        for (int i = chosen.size() - 1; i >= 0; i--) {
+            Segment segment = chosen.get(i);
+            System.arraycopy(segment.sample, segment.start, dictionary, pos, segment.end - segment.start);
+            pos += segment.end - segment.start;
+        }
+        return dictionary;
+    }
+
+    static long gram(byte[] bytes, int offset) {
+        long gram = 0;
+        for (int i = 0; i < GRAM_LENGTH; i++) {
+            gram = (gram << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return gram;
+    }
+}
@@ -49,6 +49,8 @@ import com.foundationdb.qp.rowtype.Schema;
 import com.foundationdb.qp.rowtype.TableRowType;
 import com.foundationdb.qp.storeadapter.indexrow.SpatialColumnHandler;
 import com.foundationdb.qp.util.SchemaCache;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.error.AkibanInternalException;
 import com.foundationdb.server.error.ConcurrentViolationException;
 import com.foundationdb.server.error.ConstraintViolationException;
 import com.foundationdb.server.error.InvalidOperationException;
@@ -59,7 +61,9 @@ import com.foundationdb.server.types.common.types.TypesTranslator;
 import com.foundationdb.server.types.service.TypesRegistryService;
 import com.foundationdb.server.service.dxl.DelegatingContext;
 import com.foundationdb.server.service.listener.RowListener;
+import com.foundationdb.server.service.ServiceManager;
 import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.service.session.SessionService;
 import com.foundationdb.server.service.transaction.TransactionService;
 import com.foundationdb.server.store.SchemaManager.OnlineChangeState;
 import com.foundationdb.server.store.TableChanges.Change;
@@ -89,9 +93,11 @@ import com.persistit.KeyState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -99,11 +105,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OnlineHelper implements RowListener
 {
     private static final Logger LOG = LoggerFactory.getLogger(OnlineHelper.class);
     private static final Object TRANSFORM_CACHE_KEY = new Object();
+    // Rows of the group scan given to each worker transaction in a parallel build.
+    static final int BUILD_RANGE_ROWS = 5000;
+    static final int BUILD_RANGE_RETRIES = 10;
 
     private final TransactionService txnService;
     private final SchemaManager schemaManager;
@@ -111,6 +124,10 @@ public class OnlineHelper implements RowListener
     private final TypesRegistryService typesRegistry;
     private final ConstraintHandler constraintHandler;
     private final boolean withConcurrentDML;
+    private final ServiceManager serviceManager;
+    private final int buildThreads;
+    private final Set<IndexBuildProgress> indexBuilds =
+        Collections.newSetFromMap(new ConcurrentHashMap<IndexBuildProgress,Boolean>());
 
     public OnlineHelper(TransactionService txnService,
                         SchemaManager schemaManager,
@@ -118,12 +135,34 @@ public class OnlineHelper implements RowListener
                         TypesRegistryService typesRegistry,
                         ConstraintHandler constraintHandler,
                         boolean withConcurrentDML) {
+        this(txnService, schemaManager, store, typesRegistry, constraintHandler, withConcurrentDML, null, 1);
+    }
+
+    /**
+     * @param buildThreads How many transactions may write index rows at
+     * once while building table indexes. 1 builds on the DDL session alone.
+     */
+    public OnlineHelper(TransactionService txnService,
+                        SchemaManager schemaManager,
+                        Store store,
+                        TypesRegistryService typesRegistry,
+                        ConstraintHandler constraintHandler,
+                        boolean withConcurrentDML,
+                        ServiceManager serviceManager,
+                        int buildThreads) {
         this.txnService = txnService;
         this.schemaManager = schemaManager;
         this.store = store;
         this.typesRegistry = typesRegistry;
         this.constraintHandler = constraintHandler;
         this.withConcurrentDML = withConcurrentDML;
+        this.serviceManager = serviceManager;
+        this.buildThreads = (serviceManager == null) ? 1 : Math.max(1, buildThreads);
+    }
+
+    /** Index builds now in progress. */
+    public Collection<IndexBuildProgress> getIndexBuilds() {
+        return Collections.unmodifiableSet(indexBuilds);
     }
 
     public void buildIndexes(Session session, QueryContext context) {
@@ -435,33 +474,193 @@ public class OnlineHelper implements RowListener
                     API.groupScan_Default(entry.getKey()),
                     entry.getValue()
             );
-            runPlan(session, contextIfNull(context, adapter), schemaManager, txnService, plan, new RowHandler() {
-                @Override
-                public void handleRow(final Row row) {
-                    TableTransform transform = transformCache.get(row.rowType().typeId());
-                    simpleCheckConstraints(session, transformCache, row);
-                    for(final TableIndex index : transform.tableIndexes) {
-                        final Key hKey = store.createKey();
-                        row.hKey().copyTo(hKey);
-                        if (index.isSpatial()) {
-                            final SpatialColumnHandler spatialColumnHandler = new SpatialColumnHandler(index);
-                            spatialColumnHandler.processSpatialObject(
-                                row,
-                                new SpatialColumnHandler.Operation()
-                                {
-                                    @Override
-                                    public void handleZValue(long z)
-                                    {
-                                        store.writeIndexRow(session, index, row, hKey, buffer,
-                                                            spatialColumnHandler, z, true);
-                                    }
-                                });
-                        } else {
-                            store.writeIndexRow(session, index, row, hKey, buffer, null, -1L, true);
+            final IndexBuildProgress progress = new IndexBuildProgress(entry.getKey(), transformCache, entry.getValue());
+            indexBuilds.add(progress);
+            try {
+                if((buildThreads > 1) && !checksConstraints(transformCache, entry.getValue())) {
+                    buildTableIndexesInRanges(session, contextIfNull(context, adapter), transformCache, plan, progress);
+                    continue;
+                }
+                runPlan(session, contextIfNull(context, adapter), schemaManager, txnService, plan, new RowHandler() {
+                    @Override
+                    public void handleRow(final Row row) {
+                        TableTransform transform = transformCache.get(row.rowType().typeId());
+                        simpleCheckConstraints(session, transformCache, row);
+                        writeTableIndexes(session, transform, row, buffer);
+                        progress.rowsBuilt(1);
+                    }
+                });
+            } finally {
+                indexBuilds.remove(progress);
+            }
+        }
+    }
+
+    private void writeTableIndexes(final Session session, TableTransform transform, final Row row,
+                                   final WriteIndexRow buffer) {
+        for(final TableIndex index : transform.tableIndexes) {
+            final Key hKey = store.createKey();
+            row.hKey().copyTo(hKey);
+            if (index.isSpatial()) {
+                final SpatialColumnHandler spatialColumnHandler = new SpatialColumnHandler(index);
+                spatialColumnHandler.processSpatialObject(
+                    row,
+                    new SpatialColumnHandler.Operation()
+                    {
+                        @Override
+                        public void handleZValue(long z)
+                        {
+                            store.writeIndexRow(session, index, row, hKey, buffer,
+                                                spatialColumnHandler, z, true);
                         }
+                    });
+            } else {
+                store.writeIndexRow(session, index, row, hKey, buffer, null, -1L, true);
+            }
+        }
+    }
+
+    private static boolean checksConstraints(TransformCache transformCache, Collection<RowType> rowTypes) {
+        for(RowType rowType : rowTypes) {
+            if(transformCache.get(rowType.typeId()).checkConstraints) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scan the group on the DDL session, as {@link #runPlan} does, but hand
+     * each run of {@link #BUILD_RANGE_ROWS} rows, which is a range of hKeys, to
+     * a worker that writes its index rows in a transaction of its own.
+     *
+     * Each worker checks the rows against those handled by concurrent DML in
+     * its own transaction, so that DML committing after that check conflicts
+     * with it and the range is retried. The scan's check only saves work.
+     */
+    private void buildTableIndexesInRanges(Session session,
+                                           QueryContext context,
+                                           final TransformCache transformCache,
+                                           Operator plan,
+                                           final IndexBuildProgress progress) {
+        SessionService sessionService = serviceManager.getServiceByClass(SessionService.class);
+        final Deque<Session> idle = new ArrayDeque<>(buildThreads);
+        final Deque<Future<Session>> building = new ArrayDeque<>(buildThreads);
+        try {
+            for(int i = 0; i < buildThreads; i++) {
+                Session helper = sessionService.createSession();
+                idle.add(helper);
+                schemaManager.joinOnline(helper, session);
+            }
+            final QueryContext awaitContext = context;
+            final List<List<Row>> range = new ArrayList<>(1);
+            range.add(new ArrayList<Row>(BUILD_RANGE_ROWS));
+            final Key lastQueued = store.createKey();
+            final Key hKey = store.createKey();
+            RowHandler queueRow = new RowHandler() {
+                @Override
+                public void handleRow(Row row) {
+                    row.hKey().copyTo(hKey);
+                    // After a rollback, the scan goes back over rows already queued.
+                    if((lastQueued.getEncodedSize() > 0) && (hKey.compareTo(lastQueued) <= 0)) {
+                        return;
+                    }
+                    hKey.copyTo(lastQueued);
+                    List<Row> rows = range.get(0);
+                    rows.add(row);
+                    if(rows.size() >= BUILD_RANGE_ROWS) {
+                        submitRange(awaitContext, transformCache, rows, progress, idle, building);
+                        range.set(0, new ArrayList<Row>(BUILD_RANGE_ROWS));
                     }
                 }
-            });
+            };
+            runPlan(session, context, schemaManager, txnService, plan, queueRow);
+            if(!range.get(0).isEmpty()) {
+                submitRange(context, transformCache, range.get(0), progress, idle, building);
+            }
+            while(!building.isEmpty()) {
+                idle.add(awaitRange(context, building.removeFirst()));
+            }
+        } finally {
+            for(Future<Session> future : building) {
+                try {
+                    idle.add(future.get());
+                } catch(Exception e) {
+                    LOG.debug("Abandoned index build range failed", e);
+                }
+            }
+            for(Session helper : idle) {
+                helper.close();
+            }
+        }
+    }
+
+    private void submitRange(QueryContext context,
+                             final TransformCache transformCache,
+                             final List<Row> rows,
+                             final IndexBuildProgress progress,
+                             Deque<Session> idle,
+                             Deque<Future<Session>> building) {
+        if(idle.isEmpty()) {
+            idle.add(awaitRange(context, building.removeFirst()));
+        }
+        final Session helper = idle.removeFirst();
+        progress.rangeStarted();
+        building.addLast(WorkerPool.getIOPool().submit(new Callable<Session>() {
+            @Override
+            public Session call() {
+                buildRange(helper, transformCache, rows, progress);
+                return helper;
+            }
+        }));
+    }
+
+    private static Session awaitRange(QueryContext context, Future<Session> future) {
+        try {
+            return WorkerPool.await(context, future);
+        } catch(InvalidOperationException e) {
+            // Must not look like a rollback of the scan, which would not queue these rows again.
+            if(e.getCode().isRollbackClass()) {
+                throw new AkibanInternalException("Index build range failed", e);
+            }
+            throw e;
+        }
+    }
+
+    private void buildRange(Session session, TransformCache transformCache, List<Row> rows,
+                            IndexBuildProgress progress) {
+        WriteIndexRow buffer = new WriteIndexRow();
+        Key hKey = store.createKey();
+        for(int i = 0; ; i++) {
+            long start = System.nanoTime();
+            txnService.beginTransaction(session);
+            try {
+                // Checkers only go forward and are good for one transaction.
+                Map<RowType,HKeyChecker> checkers = new HashMap<>();
+                for(Row row : rows) {
+                    HKeyChecker checker = checkers.get(row.rowType());
+                    if(checker == null) {
+                        checker = new SchemaManagerChecker(row.rowType().table().getTableId());
+                        checkers.put(row.rowType(), checker);
+                    }
+                    row.hKey().copyTo(hKey);
+                    if(!checker.contains(schemaManager, session, hKey)) {
+                        writeTableIndexes(session, transformCache.get(row.rowType().typeId()), row, buffer);
+                    }
+                }
+                txnService.commitTransaction(session);
+                progress.rangeFinished(rows.size(), System.nanoTime() - start);
+                return;
+            } catch(InvalidOperationException e) {
+                if((i >= BUILD_RANGE_RETRIES) || !e.getCode().isRollbackClass()) {
+                    progress.rangeFinished(0, 0);
+                    throw e;
+                }
+                LOG.debug("Retrying index build range of {} rows", rows.size(), e);
+                progress.retried();
+            } finally {
+                txnService.rollbackTransactionIfOpen(session);
+            }
         }
     }
     
@@ -1212,4 +1411,90 @@ public class OnlineHelper implements RowListener
     private static class TransformCache extends HashMap<Integer,TableTransform>
     {
     }
+
+    /** Where an online build of table indexes for one group has got to. */
+    public static class IndexBuildProgress
+    {
+        private final String groupName;
+        private final String indexNames;
+        private final long startTimeMillis = System.currentTimeMillis();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong rangesStarted = new AtomicLong();
+        private final AtomicLong rangesFinished = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private volatile long lastRangeRowsPerSecond = -1;
+
+        private IndexBuildProgress(Group group, TransformCache transformCache, Collection<RowType> rowTypes) {
+            this.groupName = group.getName().toString();
+            StringBuilder str = new StringBuilder();
+            for(RowType rowType : rowTypes) {
+                for(TableIndex index : transformCache.get(rowType.typeId()).tableIndexes) {
+                    if(str.length() > 0) {
+                        str.append(", ");
+                    }
+                    str.append(index.getIndexName());
+                }
+            }
+            this.indexNames = str.toString();
+        }
+
+        void rowsBuilt(int count) {
+            rows.addAndGet(count);
+        }
+
+        void rangeStarted() {
+            rangesStarted.incrementAndGet();
+        }
+
+        void rangeFinished(int count, long nanos) {
+            rangesFinished.incrementAndGet();
+            if(count > 0) {
+                rows.addAndGet(count);
+                lastRangeRowsPerSecond = count * 1000000000L / Math.max(1, nanos);
+            }
+        }
+
+        void retried() {
+            retries.incrementAndGet();
+        }
+
+        public String getGroupName() {
+            return groupName;
+        }
+
+        public String getIndexNames() {
+            return indexNames;
+        }
+
+        public long getStartTimeMillis() {
+            return startTimeMillis;
+        }
+
+        /** Rows whose index entries have been written. */
+        public long getRowCount() {
+            return rows.get();
+        }
+
+        public long getRangesFinished() {
+            return rangesFinished.get();
+        }
+
+        public long getRangesInProgress() {
+            return rangesStarted.get() - rangesFinished.get();
+        }
+
+        public long getRetryCount() {
+            return retries.get();
+        }
+
+        public long getRowsPerSecond() {
+            long millis = Math.max(1, System.currentTimeMillis() - startTimeMillis);
+            return rows.get() * 1000 / millis;
+        }
+
+        /** Throughput of the range that finished most recently, or -1 if none has. */
+        public long getLastRangeRowsPerSecond() {
+            return lastRangeRowsPerSecond;
+        }
+    }
 }
@@ -102,12 +102,15 @@ public class PersistitStore extends AbstractStore<PersistitStore,Exchange,Persis
         cm.registerValueCoder(AbstractRow.class, rowValueCoder = new RowValueCoder());
         cm.registerValueCoder(ImmutableRow.class, rowValueCoder);
         boolean withConcurrentDML = false;
+        int onlineBuildThreads = 1;
         if (config != null) {
             writeLockEnabled = Boolean.parseBoolean(config.getProperty(WRITE_LOCK_ENABLED_CONFIG));
             withConcurrentDML = Boolean.parseBoolean(config.getProperty(FEATURE_DDL_WITH_DML_PROP));
+            onlineBuildThreads = Integer.parseInt(config.getProperty(ONLINE_BUILD_THREADS_PROP));
         }
         this.constraintHandler = new PersistitConstraintHandler(this, config, typesRegistryService, serviceManager, (PersistitTransactionService)txnService);
-        this.onlineHelper = new OnlineHelper(txnService, schemaManager, this, typesRegistryService, constraintHandler, withConcurrentDML);
+        this.onlineHelper = new OnlineHelper(txnService, schemaManager, this, typesRegistryService, constraintHandler, withConcurrentDML,
+                                             serviceManager, onlineBuildThreads);
         listenerService.registerRowListener(onlineHelper);
 
         // System routine
@@ -252,7 +255,7 @@ public class PersistitStore extends AbstractStore<PersistitStore,Exchange,Persis
     {
         if (index.isUnique() && !hasNullIndexSegments(row, index)) {
             Key key = iEx.getKey();
-            int nColumns = index.getKeyColumns().size();
+            int nColumns = index.getUniqueColumnCount();
             final boolean existed;
             if (nColumns < key.getDepth()) {
                 KeyState orig = new KeyState(key);
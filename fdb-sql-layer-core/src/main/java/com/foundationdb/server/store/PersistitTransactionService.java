@@ -99,6 +99,11 @@ public class PersistitTransactionService implements TransactionService {
         }
     }
 
+    @Override
+    public void beginReadOnlyTransaction(Session session) {
+        beginTransaction(session);
+    }
+
     @Override
     public CloseableTransaction beginCloseableTransaction(final Session session) {
         beginTransaction(session);
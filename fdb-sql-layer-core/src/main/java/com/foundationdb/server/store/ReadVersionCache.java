@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store;
+
+/**
+ * A layer wide read version, shared by read only transactions that
+ * can accept one up to {@link #maxStalenessNanos} old.
+ *
+ * When the version has gone stale, the first session to need one
+ * fetches a new one and any others that arrive meanwhile wait for the
+ * same result, so that many small statements at once only cost one
+ * request to the database. Staleness is counted from when that request
+ * was started, so it is never underestimated.
+ *
+ * The version is never older than {@link #noteCommitted} has been told
+ * of, so that a session sees anything that committed in this layer
+ * before it started, even if in another session.
+ */
+abstract class ReadVersionCache
+{
+    static class Fetch {
+        final long startNanos;
+        long version = -1;
+        RuntimeException error;
+        boolean done;
+
+        Fetch(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        synchronized long await() {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return version;
+        }
+
+        synchronized void finish(long version, RuntimeException error) {
+            this.version = version;
+            this.error = error;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    private final long maxStalenessNanos;
+    // All guarded by this.
+    private long version = -1, versionNanos, minVersion = -1;
+    private Fetch pending;
+    private long fetches, shared;
+
+    protected ReadVersionCache(long maxStalenessNanos) {
+        this.maxStalenessNanos = maxStalenessNanos;
+    }
+
+    /** Get a new read version from the database. */
+    protected abstract long fetchReadVersion();
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public long getReadVersion() {
+        while (true) {
+            Fetch fetch;
+            boolean leader = false;
+            synchronized (this) {
+                long now = nanoTime();
+                if ((version >= 0) && (version >= minVersion) &&
+                    (now - versionNanos <= maxStalenessNanos)) {
+                    shared++;
+                    return version;
+                }
+                fetch = pending;
+                if (fetch == null) {
+                    fetch = pending = new Fetch(now);
+                    leader = true;
+                    fetches++;
+                }
+            }
+            if (leader) {
+                long result = -1;
+                RuntimeException error = null;
+                try {
+                    result = fetchReadVersion();
+                }
+                catch (RuntimeException ex) {
+                    error = ex;
+                }
+                synchronized (this) {
+                    if (result > version) {
+                        version = result;
+                        versionNanos = fetch.startNanos;
+                    }
+                    pending = null;
+                }
+                fetch.finish(result, error);
+            }
+            long result = fetch.await();
+            synchronized (this) {
+                // A request started before a commit that has since been
+                // noted may not see it: go around for a newer one.
+                if (result >= minVersion) {
+                    if (!leader) {
+                        shared++;
+                    }
+                    return result;
+                }
+            }
+        }
+    }
+
+    /** Note that a transaction committed at <code>committedVersion</code>. */
+    public synchronized void noteCommitted(long committedVersion) {
+        if (committedVersion > minVersion) {
+            minVersion = committedVersion;
+        }
+    }
+
+    /** Number of versions gotten from the database. */
+    public synchronized long getFetchCount() {
+        return fetches;
+    }
+
+    /** Number of versions shared instead of gotten. */
+    public synchronized long getSharedCount() {
+        return shared;
+    }
+}
@@ -119,6 +119,14 @@ public interface SchemaManager {
      */
     void startOnline(Session session);
 
+    /**
+     * Let {@code helper} act for the online DDL that {@code owner} is performing, so
+     * that it can share the work of building. Only valid until {@code owner} finishes.
+     * The helper gets its own read-only copy of the owner's online state, so it cannot
+     * change what the owner will finish or discard.
+     */
+    void joinOnline(Session helper, Session owner);
+
     /** Mark the online session associated with {@code tableID} with an error. */
     void setOnlineDMLError(Session session, int tableID, String message);
 
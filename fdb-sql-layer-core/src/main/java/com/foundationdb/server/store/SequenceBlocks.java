@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The layer wide cache for one sequence, see {@link SequenceCache}.
+ *
+ * Threads are spread over a number of stripes, each with its own block
+ * of values, so that sessions allocating at the same time do not all
+ * contend for one counter. Each stripe can also hold the next block,
+ * fetched ahead by {@link #startPrefetch} once the current one is half
+ * used.
+ *
+ * The size of new blocks adapts to how fast they are used: one used up
+ * within {@link #FAST_BLOCK_NANOS}, or before the next was ready,
+ * doubles it; one that lasted beyond {@link #SLOW_BLOCK_NANOS} halves it.
+ */
+class SequenceBlocks
+{
+    static final long FAST_BLOCK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    static final long SLOW_BLOCK_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    static final class Stripe {
+        final AtomicReference<SequenceCache> current = new AtomicReference<>(SequenceCache.newEmpty());
+        final AtomicReference<SequenceCache> next = new AtomicReference<>();
+        final AtomicBoolean prefetching = new AtomicBoolean();
+        volatile long installedNanos;
+    }
+
+    private final Stripe[] stripes;
+    private final int minBlockSize, maxBlockSize;
+    private volatile int blockSize;
+
+    public SequenceBlocks(int nstripes, int minBlockSize, int maxBlockSize) {
+        this.stripes = new Stripe[Math.max(1, nstripes)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.minBlockSize = Math.max(1, minBlockSize);
+        this.maxBlockSize = Math.max(this.minBlockSize, maxBlockSize);
+        this.blockSize = this.minBlockSize;
+    }
+
+    /** The stripe for the current thread. */
+    public Stripe getStripe() {
+        return stripes[(int)(Thread.currentThread().getId() % stripes.length)];
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Take the next value from <code>stripe</code>, moving on to a
+     * prefetched block if need be, or return <code>-1</code> if there is
+     * none visible at <code>readTimestamp</code>.
+     */
+    public long nextValue(Stripe stripe, long readTimestamp) {
+        while (true) {
+            SequenceCache cache = stripe.current.get();
+            if (readTimestamp >= cache.getTimestamp()) {
+                long value = cache.nextCacheValue();
+                if (value >= 0) {
+                    return value;
+                }
+            }
+            SequenceCache next = stripe.next.get();
+            if ((next == null) || (readTimestamp < next.getTimestamp())) {
+                return -1;
+            }
+            if (stripe.current.compareAndSet(cache, next)) {
+                stripe.next.compareAndSet(next, null);
+                blockUsed(stripe, false);
+            }
+        }
+    }
+
+    /** Should a prefetch be started for <code>stripe</code>? If so, the caller must call
+     * {@link #finishPrefetch} when done, whether it succeeded or not. */
+    public boolean startPrefetch(Stripe stripe) {
+        SequenceCache cache = stripe.current.get();
+        if ((stripe.next.get() != null) ||
+            (cache.getRemaining() * 2 > blockSize)) {
+            return false;
+        }
+        return stripe.prefetching.compareAndSet(false, true);
+    }
+
+    /** Make <code>block</code>, if any, the next for <code>stripe</code>. */
+    public void finishPrefetch(Stripe stripe, SequenceCache block) {
+        if (block != null) {
+            stripe.next.set(block);
+        }
+        stripe.prefetching.set(false);
+    }
+
+    /** Install a block fetched synchronously, after a stall. */
+    public void install(Stripe stripe, SequenceCache block) {
+        stripe.current.set(block);
+        blockUsed(stripe, true);
+    }
+
+    /** A value for <code>currval</code>: from the current thread's stripe
+     * if it has a block, else the highest of any, else <code>-1</code>. */
+    public long getCurrentValue() {
+        Stripe mine = getStripe();
+        if (mine.installedNanos != 0) {
+            return mine.current.get().getCurrentValue();
+        }
+        long value = -1;
+        for (Stripe stripe : stripes) {
+            if (stripe.installedNanos != 0) {
+                value = Math.max(value, stripe.current.get().getCurrentValue());
+            }
+        }
+        return value;
+    }
+
+    private void blockUsed(Stripe stripe, boolean stalled) {
+        long now = System.nanoTime();
+        long lasted = now - stripe.installedNanos;
+        boolean first = (stripe.installedNanos == 0);
+        stripe.installedNanos = now;
+        if (first) {
+            return;
+        }
+        int size = blockSize;
+        if (stalled || (lasted < FAST_BLOCK_NANOS)) {
+            size = Math.min(size * 2, maxBlockSize);
+        }
+        else if (lasted > SLOW_BLOCK_NANOS) {
+            size = Math.max(size / 2, minBlockSize);
+        }
+        blockSize = size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SequenceBlocks(%d stripes, block %d)", stripes.length, blockSize);
+    }
+}
@@ -20,29 +20,35 @@ package com.foundationdb.server.store;
 
 import com.foundationdb.ais.model.Sequence;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Sequence storage, cache lifetime:
  * - Each sequence gets a directory, prefix used to store a single k/v pair
  *   - key: Allocated directory prefix
  *   - value: Largest value allocated (i.e. considered consumed) for the sequence
- * - Each SQL Layer keeps a local cache of pre-allocated values (class below, configurable size)
- * - When a transaction needs a value it looks in the local cache
- *   - If the cache is empty or from a future timestamp, read + write of current_value+cache_size
- *     is made on the sequence k/v
- *   - A session post-commit hook is scheduled to update the layer wide cache
- *   - Further values will come out of the session cache
+ * - Each SQL Layer keeps local caches of pre-allocated values (class below), striped by
+ *   thread, see {@link SequenceBlocks}
+ * - When a transaction needs a value it looks in its stripe's cache
+ *   - Once half of that is used, the next block is read + written (current_value+block_size)
+ *     in a background transaction of its own
+ *   - If the cache is empty and the next block is not ready, or is from a future timestamp,
+ *     read + write of current_value+block_size is made on the sequence k/v in the transaction
+ *     - A session post-commit hook is scheduled to update the layer wide cache
+ *     - Further values will come out of the session cache
  * - Note:
- *   - The cost of updating the cache is amortized across cache_size many allocations
- *   - As there is a single k/v, updating the cache is currently serial
+ *   - The cost of updating the cache is amortized across block_size many allocations, which
+ *     grows with the allocation rate
+ *   - As there is a single k/v, updating the cache is serial, but seldom waited for
  *   - The layer wide cache update is a post-commit hook so it is possible to lose blocks if
  *     one connection sneaks in past a previous completed one. This only leads to gaps, not
- *     duplication.
+ *     duplication. Blocks still cached on shutdown are also lost.
  */
 class SequenceCache
 {
     private final long timestamp;
     private final long maxValue;
-    private long value;
+    private final AtomicLong value;
 
     public static Object cacheKey(Sequence s) {
         return s.getStorageUniqueKey();
@@ -57,27 +63,39 @@ class SequenceCache
     }
 
     public static SequenceCache newGlobal(long timestamp, SequenceCache prevLocal) {
-        return new SequenceCache(timestamp, prevLocal.value, prevLocal.maxValue);
+        return new SequenceCache(timestamp, prevLocal.value.get(), prevLocal.maxValue);
+    }
+
+    public static SequenceCache newBlock(long timestamp, long startValue, long cacheSize) {
+        return new SequenceCache(timestamp, startValue - 1, startValue + cacheSize);
     }
 
 
     private SequenceCache(long timestamp, long startValue, long maxValue) {
         this.timestamp = timestamp;
-        this.value = startValue;
+        this.value = new AtomicLong(startValue);
         this.maxValue = maxValue;
     }
 
-    public synchronized long nextCacheValue() {
-        if (++value == maxValue) {
-            // ensure the next call to nextCacheValue also fails
-            --value;
-            return -1;
+    public long nextCacheValue() {
+        while (true) {
+            long current = value.get();
+            if (current + 1 >= maxValue) {
+                return -1;
+            }
+            if (value.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
         }
-        return value;
     }
 
-    public synchronized long getCurrentValue() {
-        return value;
+    public long getCurrentValue() {
+        return value.get();
+    }
+
+    /** Number of values left, which may already be out of date. */
+    public long getRemaining() {
+        return Math.max(0, maxValue - value.get() - 1);
     }
 
     public long getTimestamp() {
@@ -86,6 +104,6 @@ class SequenceCache
 
     @Override
     public String toString() {
-        return String.format("SequenceCache(@%s, %d, %d, %d)", Integer.toHexString(hashCode()), timestamp, value, maxValue);
+        return String.format("SequenceCache(@%s, %d, %d, %d)", Integer.toHexString(hashCode()), timestamp, value.get(), maxValue);
     }
 }
@@ -37,6 +37,7 @@ import com.persistit.Key;
 import com.persistit.Value;
 
 import java.util.Collection;
+import java.util.List;
 
 public interface Store extends KeyCreator {
 
@@ -46,6 +47,9 @@ public interface Store extends KeyCreator {
     /**  If not {@code null}, only maintain the given {@code tableIndexes} and {@code groupIndexes}. */
     void writeRow(Session session, Row row, Collection<TableIndex> tableIndexes, Collection<GroupIndex> groupIndexes);
 
+    /** Write each of {@code rows}, in order, as {@link #writeRow} would, but possibly overlapping their checks. */
+    void writeRows(Session session, List<? extends Row> rows);
+
     void deleteRow(Session session, Row row, boolean cascadeDelete);
 
     /** newRow can be partial, as specified by selector, but oldRow must be fully present. */
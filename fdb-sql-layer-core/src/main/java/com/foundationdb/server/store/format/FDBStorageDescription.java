@@ -17,7 +17,9 @@
 
 package com.foundationdb.server.store.format;
 
+import com.foundationdb.ais.model.Group;
 import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.model.Index;
 import com.foundationdb.ais.model.StorageDescription;
 import com.foundationdb.ais.model.validation.AISValidationFailure;
 import com.foundationdb.ais.model.validation.AISValidationOutput;
@@ -29,6 +31,7 @@ import com.foundationdb.server.error.StorageDescriptionInvalidException;
 import com.foundationdb.server.service.session.Session;
 import com.foundationdb.server.store.FDBScanTransactionOptions;
 import com.foundationdb.server.store.FDBStore;
+import com.foundationdb.server.store.FDBStoreDataCachedIterator;
 import com.foundationdb.server.store.FDBStoreData;
 import com.foundationdb.server.store.FDBStoreDataHelper;
 import com.foundationdb.server.store.FDBStoreDataKeyValueIterator;
@@ -44,6 +47,7 @@ import com.google.protobuf.ByteString;
 import com.persistit.Key;
 
 import java.util.Arrays;
+import java.util.NavigableMap;
 
 import static com.foundationdb.server.store.FDBStoreDataHelper.*;
 
@@ -54,6 +58,7 @@ import static com.foundationdb.server.store.FDBStoreDataHelper.*;
 public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBStoreData>
 {
     private byte[] prefixBytes;
+    private boolean rowCache;
 
     public FDBStorageDescription(HasStorage forObject, String storageFormat) {
         super(forObject, storageFormat);
@@ -67,6 +72,7 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
     public FDBStorageDescription(HasStorage forObject, FDBStorageDescription other, String storageFormat) {
         super(forObject, other, storageFormat);
         this.prefixBytes = other.prefixBytes;
+        this.rowCache = other.rowCache;
     }
 
     @Override
@@ -76,7 +82,9 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
     
     @Override
     public StorageDescription cloneForObjectWithoutState(HasStorage forObject) {
-        return new FDBStorageDescription(forObject, storageFormat);
+        FDBStorageDescription sd = new FDBStorageDescription(forObject, storageFormat);
+        sd.setRowCache(this.isRowCache());
+        return sd;
     }
 
     @Override
@@ -84,6 +92,9 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
         if(prefixBytes != null) {
             builder.setExtension(FDBProtobuf.prefixBytes, ByteString.copyFrom(prefixBytes));
         }
+        if (rowCache) {
+            builder.setExtension(FDBProtobuf.rowCache, FDBProtobuf.RowCache.CACHED);
+        }
         writeUnknownFields(builder);
     }
 
@@ -95,6 +106,15 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
         this.prefixBytes = prefixBytes;
     }
 
+    /** Whether the group's rows and index entries are kept in {@link FDBRowCache}. */
+    public boolean isRowCache() {
+        return rowCache;
+    }
+
+    public void setRowCache(boolean rowCache) {
+        this.rowCache = rowCache;
+    }
+
     /** Compare prefix byte-by-byte for uniqueness. */
     final class UniqueKey {
         byte[] getPrefixBytes() {
@@ -135,6 +155,9 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
         if (prefixBytes == null) {
             output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "is missing prefix bytes")));
         }
+        if (rowCache && !(object instanceof Group)) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "is not a Group and cannot have a row cache")));
+        }
     }
     
     @Override
@@ -207,44 +230,60 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
                               FDBStore.GroupIteratorBoundary left, FDBStore.GroupIteratorBoundary right,
                               int limit, FDBScanTransactionOptions transactionOptions) {
         TransactionState txnState = store.getTransaction(session, storeData);
+        NavigableMap<byte[],byte[]> cached = cachedTree(store, txnState, transactionOptions);
         if ((left == FDBStore.GroupIteratorBoundary.KEY) &&
             (right == FDBStore.GroupIteratorBoundary.NEXT_KEY) &&
             (limit == 1)) {
             byte[] key = packKey(storeData);
+            if (cached != null) {
+                storeData.iterator = new FDBStoreDataCachedIterator(storeData, cached,
+                                                                    key, true, key, true,
+                                                                    limit, false);
+                return;
+            }
             Future<byte[]> future = txnState.getFuture(key, transactionOptions);
             storeData.iterator = new FDBStoreDataSingleKeyValueIterator(storeData, key,
                                                                         future);
             return;
         }
-        KeySelector ksLeft, ksRight;
+        byte[] leftKey, rightKey;
+        boolean leftInclusive = true;
         switch (left) {
         case START:
-            ksLeft = KeySelector.firstGreaterOrEqual(prefixBytes(storeData));
+            leftKey = prefixBytes(storeData);
             break;
         case KEY:
-            ksLeft = KeySelector.firstGreaterOrEqual(packKey(storeData));
+            leftKey = packKey(storeData);
             break;
         case NEXT_KEY:
-            ksLeft = KeySelector.firstGreaterThan(packKey(storeData));
+            leftKey = packKey(storeData);
+            leftInclusive = false;
             break;
         case FIRST_DESCENDANT:
-            ksLeft = KeySelector.firstGreaterOrEqual(packKey(storeData, Key.BEFORE));
+            leftKey = packKey(storeData, Key.BEFORE);
             break;
         default:
             throw new IllegalArgumentException(left.toString());
         }
         switch (right) {
         case END:
-            ksRight = KeySelector.firstGreaterOrEqual(ByteArrayUtil.strinc(prefixBytes(storeData)));
+            rightKey = ByteArrayUtil.strinc(prefixBytes(storeData));
             break;
         case LAST_DESCENDANT:
-            ksRight = KeySelector.firstGreaterOrEqual(packKey(storeData, Key.AFTER));
+            rightKey = packKey(storeData, Key.AFTER);
             break;
         default:
             throw new IllegalArgumentException(right.toString());
         }
+        if (cached != null) {
+            storeData.iterator = new FDBStoreDataCachedIterator(storeData, cached,
+                                                                leftKey, leftInclusive, rightKey, false,
+                                                                limit, false);
+            return;
+        }
         storeData.iterator = new FDBStoreDataKeyValueIterator(storeData,
-            txnState.getRangeIterator(ksLeft, ksRight, limit, false, transactionOptions));
+            txnState.getRangeIterator(leftSelector(leftKey, leftInclusive), rightSelector(rightKey, false),
+                                      limit, false, transactionOptions));
     }
 
     /** Set up <code>storeData.iterator</code> to iterate over index.
@@ -256,34 +295,69 @@ public class FDBStorageDescription extends StoreStorageDescription<FDBStore,FDBS
     public void indexIterator(FDBStore store, Session session, FDBStoreData storeData,
                               boolean key, boolean inclusive, boolean reverse,
                               FDBScanTransactionOptions transactionOptions) {
-        KeySelector ksLeft, ksRight;
+        byte[] leftKey, rightKey;
+        boolean leftInclusive, rightInclusive;
         byte[] prefixBytes = prefixBytes(storeData);
         if (!key) {
-            ksLeft = KeySelector.firstGreaterOrEqual(prefixBytes);
-            ksRight = KeySelector.firstGreaterOrEqual(ByteArrayUtil.strinc(prefixBytes));
+            leftKey = prefixBytes;
+            leftInclusive = true;
+            rightKey = ByteArrayUtil.strinc(prefixBytes);
+            rightInclusive = false;
         }
-        else if (inclusive) {
-            if (reverse) {
-                ksLeft = KeySelector.firstGreaterThan(prefixBytes);
-                ksRight = KeySelector.firstGreaterThan(packKey(storeData));
-            } 
-            else {
-                ksLeft = KeySelector.firstGreaterOrEqual(packKey(storeData));
-                ksRight = KeySelector.firstGreaterOrEqual(ByteArrayUtil.strinc(prefixBytes));
-            }
+        else if (reverse) {
+            leftKey = prefixBytes;
+            leftInclusive = false;
+            rightKey = packKey(storeData);
+            rightInclusive = inclusive;
         }
         else {
-            if (reverse) {
-                ksLeft = KeySelector.firstGreaterThan(prefixBytes);
-                ksRight = KeySelector.firstGreaterOrEqual(packKey(storeData));
-            } 
-            else {
-                ksLeft = KeySelector.firstGreaterThan(packKey(storeData));
-                ksRight = KeySelector.firstGreaterOrEqual(ByteArrayUtil.strinc(prefixBytes));
-            }
+            leftKey = packKey(storeData);
+            leftInclusive = inclusive;
+            rightKey = ByteArrayUtil.strinc(prefixBytes);
+            rightInclusive = false;
         }
         TransactionState txnState = store.getTransaction(session, storeData);
+        NavigableMap<byte[],byte[]> cached = cachedTree(store, txnState, transactionOptions);
+        if (cached != null) {
+            storeData.iterator = new FDBStoreDataCachedIterator(storeData, cached,
+                                                                leftKey, leftInclusive, rightKey, rightInclusive,
+                                                                Transaction.ROW_LIMIT_UNLIMITED, reverse);
+            return;
+        }
         storeData.iterator = new FDBStoreDataKeyValueIterator(storeData,
-            txnState.getRangeIterator(ksLeft, ksRight, Transaction.ROW_LIMIT_UNLIMITED, reverse, transactionOptions));
+            txnState.getRangeIterator(leftSelector(leftKey, leftInclusive), rightSelector(rightKey, rightInclusive),
+                                      Transaction.ROW_LIMIT_UNLIMITED, reverse, transactionOptions));
+    }
+
+    protected static KeySelector leftSelector(byte[] key, boolean inclusive) {
+        return inclusive ? KeySelector.firstGreaterOrEqual(key) : KeySelector.firstGreaterThan(key);
+    }
+
+    protected static KeySelector rightSelector(byte[] key, boolean inclusive) {
+        return inclusive ? KeySelector.firstGreaterThan(key) : KeySelector.firstGreaterOrEqual(key);
+    }
+
+    /** Get this tree from the row cache, if its group has one and
+     * it can be used by <code>txnState</code>.
+     */
+    protected NavigableMap<byte[],byte[]> cachedTree(FDBStore store, TransactionState txnState,
+                                                     FDBScanTransactionOptions transactionOptions) {
+        Group group;
+        if (object instanceof Group) {
+            group = (Group)object;
+        }
+        else if (object instanceof Index) {
+            group = ((Index)object).rootMostTable().getGroup();
+        }
+        else {
+            return null;
+        }
+        StorageDescription groupStorage = group.getStorageDescription();
+        if (!(groupStorage instanceof FDBStorageDescription) ||
+            !((FDBStorageDescription)groupStorage).isRowCache() ||
+            transactionOptions.isCommitting()) {
+            return null;
+        }
+        return store.getRowCache().getTree(txnState, group, prefixBytes, transactionOptions.isSnapshot());
     }
 }
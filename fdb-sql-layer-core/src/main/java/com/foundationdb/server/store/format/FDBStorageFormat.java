@@ -44,6 +44,7 @@ public class FDBStorageFormat extends StorageFormat<FDBStorageDescription>
     @Override
     public  FDBStorageDescription parseSQL(StorageFormatNode node, HasStorage forObject) {
         FDBStorageDescription storageDescription = new FDBStorageDescription(forObject, identifier);
+        storageDescription.setRowCache(RowCacheStorageFormat.parseOption(node.getOptions().get("cache")));
         return storageDescription;
     }
 
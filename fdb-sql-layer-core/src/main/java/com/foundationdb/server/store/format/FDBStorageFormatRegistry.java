@@ -27,10 +27,12 @@ import com.foundationdb.ais.model.TableName;
 import com.foundationdb.ais.protobuf.FDBProtobuf.TupleUsage;
 import com.foundationdb.server.service.config.ConfigurationService;
 import com.foundationdb.server.store.FDBNameGenerator;
+import com.foundationdb.server.store.format.columnchunks.ColumnChunksStorageFormat;
 import com.foundationdb.server.store.format.columnkeys.ColumnKeysStorageFormat;
 import com.foundationdb.server.store.format.protobuf.FDBProtobufStorageFormat;
 import com.foundationdb.server.store.format.tuple.TupleStorageDescription;
 import com.foundationdb.server.store.format.tuple.TupleStorageFormat;
+import com.foundationdb.server.store.format.tuple.ValueCompressionStorageFormat;
 
 public class FDBStorageFormatRegistry extends StorageFormatRegistry
 {
@@ -43,7 +45,10 @@ public class FDBStorageFormatRegistry extends StorageFormatRegistry
         FDBStorageFormat.register(this);
         TupleStorageFormat.register(this);
         FDBProtobufStorageFormat.register(this);
+        ValueCompressionStorageFormat.register(this);
+        RowCacheStorageFormat.register(this);
         ColumnKeysStorageFormat.register(this);
+        ColumnChunksStorageFormat.register(this);
         super.registerStandardFormats();
     }
 
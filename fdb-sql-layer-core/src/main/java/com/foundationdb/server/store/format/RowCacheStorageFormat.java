@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store.format;
+
+import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
+import com.foundationdb.ais.protobuf.FDBProtobuf;
+
+/** Not a format in itself, but an option to the rowdata, tuple and
+ * protobuf formats, which keeps the group's rows in memory.
+ *
+ * A read served from the cache conflicts on a single key for the whole
+ * group, not on the rows it read. So a transaction that reads the group
+ * and then writes anything conflicts with every transaction that wrote
+ * to the group in the meantime, even to rows it never read. Only use it
+ * for groups that are read far more often than they are written.
+ */
+public class RowCacheStorageFormat extends StorageFormat<FDBStorageDescription>
+{
+    private RowCacheStorageFormat() {
+    }
+
+    public static void register(StorageFormatRegistry registry) {
+        registry.registerStorageFormat(FDBProtobuf.rowCache, null, FDBStorageDescription.class, new RowCacheStorageFormat());
+    }
+
+    public FDBStorageDescription readProtobuf(Storage pbStorage, HasStorage forObject, FDBStorageDescription storageDescription) {
+        if (storageDescription == null) {
+            storageDescription = new FDBStorageDescription(forObject, FDBStorageFormat.identifier);
+        }
+        storageDescription.setRowCache(pbStorage.hasExtension(FDBProtobuf.rowCache));
+        return storageDescription;
+    }
+
+    /** The value of the <code>cache</code> option in SQL. */
+    public static boolean parseOption(String option) {
+        return (option != null) && Boolean.valueOf(option);
+    }
+}
@@ -0,0 +1,558 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.server.error.AkibanInternalException;
+import com.foundationdb.tuple.ByteArrayUtil;
+import com.foundationdb.tuple.Tuple2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A run of consecutive rows, stored column by column in a single value.
+ *
+ * The value starts with a header giving the number of rows and
+ * columns. Then come the row keys, front coded since neighbours share
+ * most of their bytes, and then each column, prefixed by its length so
+ * that it can be skipped. Columns are only decoded when first asked
+ * for, so a scan that needs just a few pays for just those.
+ *
+ * Each column has a bitmap of its nulls and then the other values in
+ * whichever of these encodings is smallest:<ul>
+ * <li>{@link #PLAIN}: a <code>Tuple</code> of the values.</li>
+ * <li>{@link #RUN_LENGTH}: a <code>Tuple</code> of the distinct
+ * values of each run and then their lengths.</li>
+ * <li>{@link #DICTIONARY}: a <code>Tuple</code> of the distinct
+ * values and then each value's index into it, bit packed.</li>
+ * <li>{@link #DELTA}: for integers, the first value and then the
+ * differences from the previous one, bit packed.</li></ul>
+ *
+ * Like a <code>Tuple</code>, a chunk does not preserve integer types:
+ * they all come back as <code>Long</code>.
+ */
+public class ColumnChunk
+{
+    public static final byte VERSION = 1;
+
+    public static final byte PLAIN = 0;
+    public static final byte RUN_LENGTH = 1;
+    public static final byte DICTIONARY = 2;
+    public static final byte DELTA = 3;
+
+    private final byte[] bytes;
+    private final int nrows;
+    private final byte[][] keys;
+    private final int[] columnOffsets, columnLengths;
+    private final Object[][] columns;
+
+    public ColumnChunk(byte[] bytes) {
+        this.bytes = bytes;
+        Reader reader = new Reader(bytes, 0);
+        byte version = reader.readByte();
+        if (version != VERSION) {
+            throw new AkibanInternalException("Unknown column chunk version: " + version);
+        }
+        nrows = reader.readVarInt();
+        int ncolumns = reader.readVarInt();
+        int keysLength = reader.readVarInt();
+        keys = decodeKeys(bytes, reader.pos, nrows);
+        reader.pos += keysLength;
+        columnOffsets = new int[ncolumns];
+        columnLengths = new int[ncolumns];
+        for (int i = 0; i < ncolumns; i++) {
+            columnLengths[i] = reader.readVarInt();
+            columnOffsets[i] = reader.pos;
+            reader.pos += columnLengths[i];
+        }
+        columns = new Object[ncolumns][];
+    }
+
+    public int getRowCount() {
+        return nrows;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public int getEncodedSize() {
+        return bytes.length;
+    }
+
+    /** The key of <code>row</code>, without any prefix. */
+    public byte[] getKey(int row) {
+        return keys[row];
+    }
+
+    /** Find the row with <code>key</code>, returning, as for
+     * {@link Arrays#binarySearch}, <code>-(insertion point) - 1</code>
+     * if there is none. */
+    public int findKey(byte[] key) {
+        return findKey(Arrays.asList(keys), key);
+    }
+
+    public static int findKey(List<byte[]> keys, byte[] key) {
+        int lo = 0, hi = keys.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = ByteArrayUtil.compareUnsigned(keys.get(mid), key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            }
+            else if (cmp > 0) {
+                hi = mid - 1;
+            }
+            else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    public Object getValue(int row, int column) {
+        return getColumn(column)[row];
+    }
+
+    public Object[] getRow(int row) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getValue(row, i);
+        }
+        return values;
+    }
+
+    public List<byte[]> getKeys() {
+        return new ArrayList<>(Arrays.asList(keys));
+    }
+
+    public List<Object[]> getRows() {
+        List<Object[]> rows = new ArrayList<>(nrows);
+        for (int i = 0; i < nrows; i++) {
+            rows.add(getRow(i));
+        }
+        return rows;
+    }
+
+    protected Object[] getColumn(int column) {
+        Object[] values = columns[column];
+        if (values == null) {
+            values = decodeColumn(bytes, columnOffsets[column], columnLengths[column], nrows);
+            columns[column] = values;
+        }
+        return values;
+    }
+
+    /** Encode parallel lists of ordered keys and rows of <code>ncolumns</code> values. */
+    public static byte[] encode(List<byte[]> keys, List<Object[]> rows, int ncolumns) {
+        int nrows = keys.size();
+        assert rows.size() == nrows : rows;
+        Writer out = new Writer();
+        out.write(VERSION);
+        out.writeVarInt(nrows);
+        out.writeVarInt(ncolumns);
+        byte[] encodedKeys = encodeKeys(keys);
+        out.writeVarInt(encodedKeys.length);
+        out.write(encodedKeys);
+        Object[] column = new Object[nrows];
+        for (int i = 0; i < ncolumns; i++) {
+            for (int j = 0; j < nrows; j++) {
+                column[j] = rows.get(j)[i];
+            }
+            byte[] encodedColumn = encodeColumn(column);
+            out.writeVarInt(encodedColumn.length);
+            out.write(encodedColumn);
+        }
+        return out.toByteArray();
+    }
+
+    /* Keys */
+
+    protected static byte[] encodeKeys(List<byte[]> keys) {
+        Writer out = new Writer();
+        byte[] prev = new byte[0];
+        for (byte[] key : keys) {
+            int shared = 0;
+            int max = Math.min(prev.length, key.length);
+            while ((shared < max) && (prev[shared] == key[shared])) {
+                shared++;
+            }
+            out.writeVarInt(shared);
+            out.writeVarInt(key.length - shared);
+            out.write(key, shared, key.length - shared);
+            prev = key;
+        }
+        return out.toByteArray();
+    }
+
+    protected static byte[][] decodeKeys(byte[] bytes, int offset, int nrows) {
+        Reader reader = new Reader(bytes, offset);
+        byte[][] keys = new byte[nrows][];
+        byte[] prev = new byte[0];
+        for (int i = 0; i < nrows; i++) {
+            int shared = reader.readVarInt();
+            int length = reader.readVarInt();
+            byte[] key = Arrays.copyOf(prev, shared + length);
+            System.arraycopy(bytes, reader.pos, key, shared, length);
+            reader.pos += length;
+            keys[i] = key;
+            prev = key;
+        }
+        return keys;
+    }
+
+    /* Columns */
+
+    protected static byte[] encodeColumn(Object[] column) {
+        Writer out = new Writer();
+        List<Object> values = new ArrayList<>(column.length);
+        byte[] nulls = new byte[(column.length + 7) / 8];
+        for (int i = 0; i < column.length; i++) {
+            if (column[i] == null) {
+                nulls[i / 8] |= (1 << (i % 8));
+            }
+            else {
+                values.add(column[i]);
+            }
+        }
+        int nnulls = column.length - values.size();
+        out.writeVarInt(nnulls);
+        if (nnulls > 0) {
+            out.write(nulls);
+        }
+        byte[] best = encodePlain(values);
+        byte[] other = encodeRunLength(values);
+        if ((other != null) && (other.length < best.length)) {
+            best = other;
+        }
+        other = encodeDictionary(values);
+        if ((other != null) && (other.length < best.length)) {
+            best = other;
+        }
+        other = encodeDelta(values);
+        if ((other != null) && (other.length < best.length)) {
+            best = other;
+        }
+        out.write(best);
+        return out.toByteArray();
+    }
+
+    protected static Object[] decodeColumn(byte[] bytes, int offset, int length, int nrows) {
+        Reader reader = new Reader(bytes, offset);
+        int end = offset + length;
+        Object[] column = new Object[nrows];
+        int nnulls = reader.readVarInt();
+        int nullsOffset = -1;
+        if (nnulls > 0) {
+            nullsOffset = reader.pos;
+            reader.pos += (nrows + 7) / 8;
+        }
+        int count = nrows - nnulls;
+        List<Object> values;
+        byte encoding = reader.readByte();
+        switch (encoding) {
+        case PLAIN:
+            values = unpack(bytes, reader.pos, end - reader.pos);
+            break;
+        case RUN_LENGTH:
+            values = decodeRunLength(reader, count);
+            break;
+        case DICTIONARY:
+            values = decodeDictionary(reader, count);
+            break;
+        case DELTA:
+            values = decodeDelta(reader, count);
+            break;
+        default:
+            throw new AkibanInternalException("Unknown column chunk encoding: " + encoding);
+        }
+        int next = 0;
+        for (int i = 0; i < nrows; i++) {
+            if ((nullsOffset < 0) ||
+                ((bytes[nullsOffset + i / 8] & (1 << (i % 8))) == 0)) {
+                column[i] = values.get(next++);
+            }
+        }
+        return column;
+    }
+
+    protected static byte[] encodePlain(List<Object> values) {
+        Writer out = new Writer();
+        out.write(PLAIN);
+        out.write(Tuple2.fromList(values).pack());
+        return out.toByteArray();
+    }
+
+    protected static byte[] encodeRunLength(List<Object> values) {
+        List<Object> runValues = new ArrayList<>();
+        List<Integer> runLengths = new ArrayList<>();
+        Object prev = null;
+        for (Object value : values) {
+            if (!runValues.isEmpty() && sameValue(prev, value)) {
+                int last = runLengths.size() - 1;
+                runLengths.set(last, runLengths.get(last) + 1);
+            }
+            else {
+                runValues.add(value);
+                runLengths.add(1);
+            }
+            prev = value;
+        }
+        if (runValues.size() * 2 > values.size()) {
+            return null;        // Cannot win.
+        }
+        Writer out = new Writer();
+        out.write(RUN_LENGTH);
+        out.writeVarInt(runValues.size());
+        byte[] packed = Tuple2.fromList(runValues).pack();
+        out.writeVarInt(packed.length);
+        out.write(packed);
+        for (Integer runLength : runLengths) {
+            out.writeVarInt(runLength);
+        }
+        return out.toByteArray();
+    }
+
+    protected static List<Object> decodeRunLength(Reader reader, int count) {
+        int nruns = reader.readVarInt();
+        int length = reader.readVarInt();
+        List<Object> runValues = unpack(reader.bytes, reader.pos, length);
+        reader.pos += length;
+        List<Object> values = new ArrayList<>(count);
+        for (int i = 0; i < nruns; i++) {
+            int runLength = reader.readVarInt();
+            Object value = runValues.get(i);
+            for (int j = 0; j < runLength; j++) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    protected static byte[] encodeDictionary(List<Object> values) {
+        Map<Object,Integer> codes = new HashMap<>();
+        List<Object> dictionary = new ArrayList<>();
+        long[] indexes = new long[values.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            Object value = values.get(i);
+            if (value instanceof byte[]) {
+                return null;    // No value equality.
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                codes.put(value, code);
+                dictionary.add(value);
+                if (dictionary.size() * 2 > indexes.length) {
+                    return null;
+                }
+            }
+            indexes[i] = code;
+        }
+        Writer out = new Writer();
+        out.write(DICTIONARY);
+        byte[] packed = Tuple2.fromList(dictionary).pack();
+        out.writeVarInt(packed.length);
+        out.write(packed);
+        int width = bitWidth(dictionary.size() - 1);
+        out.write((byte)width);
+        out.writePacked(indexes, indexes.length, width);
+        return out.toByteArray();
+    }
+
+    protected static List<Object> decodeDictionary(Reader reader, int count) {
+        int length = reader.readVarInt();
+        List<Object> dictionary = unpack(reader.bytes, reader.pos, length);
+        reader.pos += length;
+        int width = reader.readByte();
+        List<Object> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(dictionary.get((int)reader.readPacked(width)));
+        }
+        return values;
+    }
+
+    protected static byte[] encodeDelta(List<Object> values) {
+        if (values.isEmpty()) {
+            return null;
+        }
+        long[] deltas = new long[values.size() - 1];
+        long max = 0;
+        long prev = 0;
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (!((value instanceof Long) || (value instanceof Integer) ||
+                  (value instanceof Short) || (value instanceof Byte))) {
+                return null;
+            }
+            long n = ((Number)value).longValue();
+            if (i > 0) {
+                long delta = n - prev;
+                if (((n ^ prev) & (n ^ delta)) < 0) {
+                    return null;    // Overflow.
+                }
+                deltas[i - 1] = zigZag(delta);
+                max |= deltas[i - 1];
+            }
+            prev = n;
+        }
+        Writer out = new Writer();
+        out.write(DELTA);
+        out.writeVarLong(zigZag(((Number)values.get(0)).longValue()));
+        int width = bitWidth(max);
+        out.write((byte)width);
+        out.writePacked(deltas, deltas.length, width);
+        return out.toByteArray();
+    }
+
+    protected static List<Object> decodeDelta(Reader reader, int count) {
+        List<Object> values = new ArrayList<>(count);
+        long value = unZigZag(reader.readVarLong());
+        int width = reader.readByte();
+        values.add(value);
+        for (int i = 1; i < count; i++) {
+            value += unZigZag(reader.readPacked(width));
+            values.add(value);
+        }
+        return values;
+    }
+
+    protected static List<Object> unpack(byte[] bytes, int offset, int length) {
+        // TODO: Use fromBytes(byte[],int,int) when it handles an offset.
+        return Tuple2.fromBytes(Arrays.copyOfRange(bytes, offset, offset + length)).getItems();
+    }
+
+    protected static boolean sameValue(Object v1, Object v2) {
+        if ((v1 instanceof byte[]) && (v2 instanceof byte[])) {
+            return Arrays.equals((byte[])v1, (byte[])v2);
+        }
+        return v1.equals(v2);
+    }
+
+    protected static long zigZag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    protected static long unZigZag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    protected static int bitWidth(long max) {
+        return 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    static class Writer extends ByteArrayOutputStream {
+        private int bitBuffer, bitCount;
+
+        public void write(byte b) {
+            write((int)b);
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        public void writeVarInt(int n) {
+            writeVarLong(n & 0xFFFFFFFFL);
+        }
+
+        public void writeVarLong(long n) {
+            while ((n & ~0x7FL) != 0) {
+                write((int)((n & 0x7F) | 0x80));
+                n >>>= 7;
+            }
+            write((int)n);
+        }
+
+        /** Write the low <code>width</code> bits of each value, least significant first. */
+        public void writePacked(long[] values, int count, int width) {
+            for (int i = 0; i < count; i++) {
+                long n = values[i];
+                int remaining = width;
+                while (remaining > 0) {
+                    int take = Math.min(remaining, 8 - bitCount);
+                    bitBuffer |= (int)(n & ((1L << take) - 1)) << bitCount;
+                    n >>>= take;
+                    remaining -= take;
+                    bitCount += take;
+                    if (bitCount == 8) {
+                        write(bitBuffer);
+                        bitBuffer = bitCount = 0;
+                    }
+                }
+            }
+            if (bitCount > 0) {
+                write(bitBuffer);
+                bitBuffer = bitCount = 0;
+            }
+        }
+    }
+
+    static class Reader {
+        final byte[] bytes;
+        int pos, bit;
+
+        public Reader(byte[] bytes, int pos) {
+            this.bytes = bytes;
+            this.pos = pos;
+        }
+
+        public byte readByte() {
+            return bytes[pos++];
+        }
+
+        public int readVarInt() {
+            return (int)readVarLong();
+        }
+
+        public long readVarLong() {
+            long n = 0;
+            int shift = 0;
+            while (true) {
+                byte b = bytes[pos++];
+                n |= (long)(b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return n;
+                }
+                shift += 7;
+            }
+        }
+
+        public long readPacked(int width) {
+            long n = 0;
+            int got = 0;
+            while (got < width) {
+                int take = Math.min(8 - bit, width - got);
+                long bits = ((bytes[pos] & 0xFF) >>> bit) & ((1 << take) - 1);
+                n |= bits << got;
+                got += take;
+                bit += take;
+                if (bit == 8) {
+                    bit = 0;
+                    pos++;
+                }
+            }
+            return n;
+        }
+    }
+}
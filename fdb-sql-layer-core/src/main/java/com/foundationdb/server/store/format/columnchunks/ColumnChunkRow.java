@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.qp.row.AbstractRow;
+import com.foundationdb.qp.row.HKey;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.server.types.value.Value;
+import com.foundationdb.server.types.value.ValueSource;
+import com.foundationdb.server.types.value.ValueSources;
+
+/**
+ * One row of a {@link ColumnChunk}, whose fields are only decoded
+ * when asked for.
+ */
+public class ColumnChunkRow extends AbstractRow
+{
+    private final RowType rowType;
+    private final ColumnChunk chunk;
+    private final int index;
+    private final Value[] values;
+
+    public ColumnChunkRow(RowType rowType, ColumnChunk chunk, int index) {
+        assert rowType.nFields() == chunk.getColumnCount() : rowType;
+        this.rowType = rowType;
+        this.chunk = chunk;
+        this.index = index;
+        this.values = new Value[rowType.nFields()];
+    }
+
+    @Override
+    public RowType rowType() {
+        return rowType;
+    }
+
+    @Override
+    public HKey hKey() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected ValueSource uncheckedValue(int i) {
+        Value value = values[i];
+        if (value == null) {
+            value = ValueSources.valuefromObject(chunk.getValue(index, i), rowType.typeAt(i));
+            values[i] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public boolean isBindingsSensitive() {
+        return false;
+    }
+}
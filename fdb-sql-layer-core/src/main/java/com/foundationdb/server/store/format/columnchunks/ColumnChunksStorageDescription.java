@@ -0,0 +1,370 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.KeySelector;
+import com.foundationdb.KeyValue;
+import com.foundationdb.ais.model.Group;
+import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.model.StorageDescription;
+import com.foundationdb.ais.model.validation.AISValidationFailure;
+import com.foundationdb.ais.model.validation.AISValidationOutput;
+import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
+import com.foundationdb.ais.protobuf.FDBProtobuf;
+import com.foundationdb.ais.protobuf.FDBProtobuf.ColumnChunks;
+import com.foundationdb.ais.protobuf.FDBProtobuf.TupleUsage;
+import com.foundationdb.async.AsyncIterator;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.row.ValuesHolderRow;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.rowtype.Schema;
+import com.foundationdb.qp.storeadapter.FDBAdapter;
+import com.foundationdb.server.error.StorageDescriptionInvalidException;
+import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.store.FDBScanTransactionOptions;
+import com.foundationdb.server.store.FDBStore;
+import com.foundationdb.server.store.FDBStoreData;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+import com.foundationdb.server.store.format.FDBStorageDescription;
+import com.foundationdb.server.store.format.tuple.TupleRowDataConverter;
+import com.foundationdb.server.store.format.tuple.TupleStorageDescription;
+import com.foundationdb.server.types.value.ValueSources;
+import com.foundationdb.tuple.ByteArrayUtil;
+import com.foundationdb.tuple.Tuple2;
+import com.persistit.Key;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.foundationdb.server.store.FDBStoreDataHelper.*;
+
+/**
+ * Store the rows of a single table group in chunks of consecutive rows,
+ * each encoded column by column in one value (see {@link ColumnChunk}).
+ * The key of a chunk is the same as for {@link TupleStorageDescription}
+ * for its first row.
+ *
+ * This suits tables that are mostly appended to and then scanned:
+ * similar values in a column compress well and a scan only decodes the
+ * columns it uses. Changing a row means rewriting its whole chunk, and
+ * writers to the same chunk conflict with one another.
+ */
+public class ColumnChunksStorageDescription extends FDBStorageDescription
+{
+    public static final int DEFAULT_CHUNK_ROWS = 1000;
+    // Leave room under the 100,000 byte value limit.
+    public static final int MAX_CHUNK_BYTES = 90000;
+
+    private int chunkRows = DEFAULT_CHUNK_ROWS;
+
+    /** The position of a row read by {@link #fetch} or an iterator. */
+    public static class ChunkRow {
+        final ColumnChunk chunk;
+        final int index;
+
+        public ChunkRow(ColumnChunk chunk, int index) {
+            this.chunk = chunk;
+            this.index = index;
+        }
+    }
+
+    public ColumnChunksStorageDescription(HasStorage forObject, String storageFormat) {
+        super(forObject, storageFormat);
+    }
+
+    public ColumnChunksStorageDescription(HasStorage forObject, ColumnChunksStorageDescription other, String storageFormat) {
+        super(forObject, other, storageFormat);
+        this.chunkRows = other.chunkRows;
+    }
+
+    @Override
+    public StorageDescription cloneForObject(HasStorage forObject) {
+        return new ColumnChunksStorageDescription(forObject, this, storageFormat);
+    }
+
+    @Override
+    public StorageDescription cloneForObjectWithoutState(HasStorage forObject) {
+        ColumnChunksStorageDescription sd = new ColumnChunksStorageDescription(forObject, storageFormat);
+        sd.setChunkRows(this.getChunkRows());
+        return sd;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    public void setChunkRows(int chunkRows) {
+        this.chunkRows = chunkRows;
+    }
+
+    @Override
+    public void writeProtobuf(Storage.Builder builder) {
+        super.writeProtobuf(builder);
+        builder.setExtension(FDBProtobuf.columnChunks,
+                             ColumnChunks.newBuilder().setChunkRows(chunkRows).build());
+        writeUnknownFields(builder);
+    }
+
+    @Override
+    public void validate(AISValidationOutput output) {
+        super.validate(output);
+        if (!(object instanceof Group)) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "is not a Group")));
+            return;
+        }
+        if (!((Group)object).getRoot().getChildJoins().isEmpty()) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "has more than one table")));
+        }
+        if (chunkRows <= 0) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "has chunk_rows that is not positive: " + chunkRows)));
+        }
+        List<String> illegal = TupleRowDataConverter.checkTypes((Group)object, TupleUsage.KEY_AND_ROW);
+        if (!illegal.isEmpty()) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "has some types that cannot be stored in a Tuple: " + illegal)));
+        }
+    }
+
+    @Override
+    public byte[] getKeyBytes(Key key, FDBStoreData.NudgeDir nudged) {
+        assert nudged == null : "Nudge only expected during mixed mode index iteration";
+        return getKeyBytes(key);
+    }
+
+    @Override
+    public byte[] getKeyBytes(Key key) {
+        return TupleStorageDescription.getKeyBytesInternal(key, null);
+    }
+
+    @Override
+    public void getTupleKey(Tuple2 t, Key key) {
+        key.clear();
+        TupleStorageDescription.appendHKeySegments(t, key, ((Group)object));
+    }
+
+    @Override
+    public void packRow(FDBStore store, Session session,
+                        FDBStoreData storeData, Row row) {
+        int nfields = row.rowType().nFields();
+        Object[] values = new Object[nfields];
+        for (int i = 0; i < nfields; i++) {
+            values[i] = ValueSources.toObject(row.value(i));
+        }
+        storeData.otherValue = values;
+    }
+
+    @Override
+    public Row expandRow(FDBStore store, Session session,
+                         FDBStoreData storeData, Schema schema) {
+        RowType rowType = schema.tableRowType(((Group)object).getRoot());
+        if (storeData.otherValue instanceof ChunkRow) {
+            ChunkRow chunkRow = (ChunkRow)storeData.otherValue;
+            return new ColumnChunkRow(rowType, chunkRow.chunk, chunkRow.index);
+        }
+        else {
+            return new ValuesHolderRow(rowType, (Object[])storeData.otherValue);
+        }
+    }
+
+    @Override
+    public void store(FDBStore store, Session session, FDBStoreData storeData) {
+        TransactionState txn = store.getTransaction(session, storeData);
+        byte[] prefix = prefixBytes(storeData);
+        byte[] rowKey = rowKey(prefix, storeData.rawKey);
+        Object[] values = (Object[])storeData.otherValue;
+        KeyValue kv = containingChunk(storeData, txn, prefix, storeData.rawKey);
+        if (kv == null) {
+            kv = firstKeyValue(storeData,
+                               txn.getRangeIterator(KeySelector.firstGreaterThan(storeData.rawKey),
+                                                    KeySelector.firstGreaterOrEqual(ByteArrayUtil.strinc(prefix)),
+                                                    1, false));
+        }
+        List<byte[]> keys;
+        List<Object[]> rows;
+        if (kv == null) {
+            keys = new ArrayList<>();
+            rows = new ArrayList<>();
+        }
+        else {
+            ColumnChunk chunk = new ColumnChunk(kv.getValue());
+            keys = chunk.getKeys();
+            rows = chunk.getRows();
+        }
+        int index = ColumnChunk.findKey(keys, rowKey);
+        boolean appended = false;
+        if (index >= 0) {
+            rows.set(index, values);
+        }
+        else {
+            index = -(index + 1);
+            appended = (index == keys.size());
+            keys.add(index, rowKey);
+            rows.add(index, values);
+        }
+        writeChunks(txn, prefix, (kv == null) ? null : kv.getKey(), keys, rows, appended);
+    }
+
+    @Override
+    public boolean fetch(FDBStore store, Session session, FDBStoreData storeData) {
+        TransactionState txn = store.getTransaction(session, storeData);
+        byte[] prefix = prefixBytes(storeData);
+        KeyValue kv = containingChunk(storeData, txn, prefix, storeData.rawKey);
+        if (kv == null) {
+            return false;
+        }
+        ColumnChunk chunk = new ColumnChunk(kv.getValue());
+        int index = chunk.findKey(rowKey(prefix, storeData.rawKey));
+        if (index < 0) {
+            return false;
+        }
+        storeData.otherValue = new ChunkRow(chunk, index);
+        return true;
+    }
+
+    @Override
+    public void clear(FDBStore store, Session session, FDBStoreData storeData) {
+        TransactionState txn = store.getTransaction(session, storeData);
+        byte[] prefix = prefixBytes(storeData);
+        KeyValue kv = containingChunk(storeData, txn, prefix, storeData.rawKey);
+        if (kv == null) {
+            return;
+        }
+        ColumnChunk chunk = new ColumnChunk(kv.getValue());
+        int index = chunk.findKey(rowKey(prefix, storeData.rawKey));
+        if (index < 0) {
+            return;
+        }
+        List<byte[]> keys = chunk.getKeys();
+        List<Object[]> rows = chunk.getRows();
+        keys.remove(index);
+        rows.remove(index);
+        writeChunks(txn, prefix, kv.getKey(), keys, rows, false);
+    }
+
+    @Override
+    public void groupIterator(FDBStore store, Session session, FDBStoreData storeData,
+                              FDBStore.GroupIteratorBoundary left, FDBStore.GroupIteratorBoundary right,
+                              int limit, FDBScanTransactionOptions transactionOptions) {
+        byte[] prefix = prefixBytes(storeData);
+        byte[] lo, hi;
+        boolean loInclusive = true;
+        switch (left) {
+        case START:
+            lo = new byte[0];
+            break;
+        case KEY:
+            lo = rowKey(prefix, packKey(storeData));
+            break;
+        case NEXT_KEY:
+            lo = rowKey(prefix, packKey(storeData));
+            loInclusive = false;
+            break;
+        case FIRST_DESCENDANT:
+            lo = rowKey(prefix, packKey(storeData, Key.BEFORE));
+            break;
+        default:
+            throw new IllegalArgumentException(left.toString());
+        }
+        switch (right) {
+        case END:
+            hi = null;
+            break;
+        case NEXT_KEY:
+            // Just the key itself.
+        case FIRST_DESCENDANT:
+            hi = ByteArrayUtil.join(rowKey(prefix, packKey(storeData)), new byte[1]);
+            break;
+        case LAST_DESCENDANT:
+            hi = rowKey(prefix, packKey(storeData, Key.AFTER));
+            break;
+        default:
+            throw new IllegalArgumentException(right.toString());
+        }
+        storeData.iterator =
+            new ColumnChunksStorageIterator(storeData,
+                                            store.getTransaction(session, storeData),
+                                            transactionOptions,
+                                            prefix, lo, loInclusive, hi, limit);
+    }
+
+    @Override
+    public void indexIterator(FDBStore store, Session session, FDBStoreData storeData,
+                              boolean key, boolean inclusive, boolean reverse,
+                              FDBScanTransactionOptions transactionOptions) {
+        throw new UnsupportedOperationException();
+    }
+
+    /** The chunk whose first key is the last at or before <code>rawKey</code>, if any. */
+    protected static KeyValue containingChunk(FDBStoreData storeData, TransactionState txn,
+                                              byte[] prefix, byte[] rawKey) {
+        return firstKeyValue(storeData,
+                             txn.getRangeIterator(KeySelector.firstGreaterOrEqual(prefix),
+                                                  KeySelector.firstGreaterThan(rawKey),
+                                                  1, true));
+    }
+
+    protected static KeyValue firstKeyValue(FDBStoreData storeData, AsyncIterator<KeyValue> iterator) {
+        try {
+            return iterator.hasNext() ? iterator.next() : null;
+        } catch (RuntimeException e) {
+            throw FDBAdapter.wrapFDBException(storeData.session, e);
+        }
+        finally {
+            iterator.dispose();
+        }
+    }
+
+    protected static byte[] rowKey(byte[] prefix, byte[] rawKey) {
+        return Arrays.copyOfRange(rawKey, prefix.length, rawKey.length);
+    }
+
+    /** Write back the rows of a changed chunk, splitting it if it has
+     * grown too large. When the change was to append a row, the earlier
+     * chunk is left full, since more will likely follow. */
+    protected void writeChunks(TransactionState txn, byte[] prefix, byte[] oldChunkKey,
+                               List<byte[]> keys, List<Object[]> rows, boolean appended) {
+        if ((oldChunkKey != null) &&
+            (keys.isEmpty() ||
+             !Arrays.equals(oldChunkKey, ByteArrayUtil.join(prefix, keys.get(0))))) {
+            txn.clearKey(oldChunkKey);
+        }
+        if (!keys.isEmpty()) {
+            writeChunk(txn, prefix, keys, rows, rows.get(0).length, appended);
+        }
+    }
+
+    protected void writeChunk(TransactionState txn, byte[] prefix,
+                              List<byte[]> keys, List<Object[]> rows, int ncolumns,
+                              boolean appended) {
+        int nrows = keys.size();
+        int split = -1;
+        if (nrows > chunkRows) {
+            split = appended ? chunkRows : nrows / 2;
+        }
+        else {
+            byte[] value = ColumnChunk.encode(keys, rows, ncolumns);
+            if ((value.length <= MAX_CHUNK_BYTES) || (nrows == 1)) {
+                txn.setBytes(ByteArrayUtil.join(prefix, keys.get(0)), value);
+                return;
+            }
+            split = nrows / 2;
+        }
+        writeChunk(txn, prefix, keys.subList(0, split), rows.subList(0, split), ncolumns, false);
+        writeChunk(txn, prefix, keys.subList(split, nrows), rows.subList(split, nrows), ncolumns, appended);
+    }
+}
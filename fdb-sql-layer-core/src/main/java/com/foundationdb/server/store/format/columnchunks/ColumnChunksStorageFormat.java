@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
+import com.foundationdb.ais.protobuf.FDBProtobuf;
+import com.foundationdb.ais.protobuf.FDBProtobuf.ColumnChunks;
+import com.foundationdb.server.error.StorageDescriptionInvalidException;
+import com.foundationdb.server.store.format.StorageFormat;
+import com.foundationdb.server.store.format.StorageFormatRegistry;
+import com.foundationdb.sql.parser.StorageFormatNode;
+
+public class ColumnChunksStorageFormat extends StorageFormat<ColumnChunksStorageDescription>
+{
+    public final static String storageFormat = "column_chunks";
+
+    private ColumnChunksStorageFormat() {
+    }
+
+    public static void register(StorageFormatRegistry registry) {
+        registry.registerStorageFormat(FDBProtobuf.columnChunks, storageFormat, ColumnChunksStorageDescription.class, new ColumnChunksStorageFormat());
+    }
+
+    public ColumnChunksStorageDescription readProtobuf(Storage pbStorage, HasStorage forObject, ColumnChunksStorageDescription storageDescription) {
+        if (storageDescription == null) {
+            storageDescription = new ColumnChunksStorageDescription(forObject, storageFormat);
+        }
+        ColumnChunks pbChunks = pbStorage.getExtension(FDBProtobuf.columnChunks);
+        if (pbChunks.hasChunkRows()) {
+            storageDescription.setChunkRows(pbChunks.getChunkRows());
+        }
+        return storageDescription;
+    }
+
+    public ColumnChunksStorageDescription parseSQL(StorageFormatNode node, HasStorage forObject) {
+        ColumnChunksStorageDescription storageDescription = new ColumnChunksStorageDescription(forObject, storageFormat);
+        String chunkRows = node.getOptions().get("chunk_rows");
+        if (chunkRows != null) {
+            try {
+                storageDescription.setChunkRows(Integer.parseInt(chunkRows));
+            }
+            catch (NumberFormatException ex) {
+                throw new StorageDescriptionInvalidException(forObject, "chunk_rows is not a number: " + chunkRows);
+            }
+        }
+        return storageDescription;
+    }
+}
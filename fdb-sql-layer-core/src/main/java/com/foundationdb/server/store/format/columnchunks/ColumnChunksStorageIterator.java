@@ -0,0 +1,161 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.KeySelector;
+import com.foundationdb.KeyValue;
+import com.foundationdb.Transaction;
+import com.foundationdb.async.AsyncIterator;
+import com.foundationdb.qp.storeadapter.FDBAdapter;
+import com.foundationdb.server.store.FDBScanTransactionOptions;
+import com.foundationdb.server.store.FDBStoreData;
+import com.foundationdb.server.store.FDBStoreDataIterator;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+import com.foundationdb.tuple.ByteArrayUtil;
+
+/**
+ * Iterate over the rows with keys in a range, chunk by chunk.
+ * The first chunk is the one whose first key is the last at or before
+ * the start of the range, since it may hold rows after that, too.
+ */
+public class ColumnChunksStorageIterator extends FDBStoreDataIterator
+{
+    private final TransactionState txn;
+    private final FDBScanTransactionOptions transactionOptions;
+    private final byte[] prefix, lo, hi;
+    private final boolean loInclusive;
+    private final int limit;
+    private AsyncIterator<KeyValue> underlying;
+    private ColumnChunk chunk;
+    private int position, count;
+    private boolean exhausted;
+
+    /**
+     * @param lo the first key, without <code>prefix</code>
+     * @param hi the key after the last one, or <code>null</code> for the end
+     */
+    public ColumnChunksStorageIterator(FDBStoreData storeData,
+                                       TransactionState txn,
+                                       FDBScanTransactionOptions transactionOptions,
+                                       byte[] prefix,
+                                       byte[] lo, boolean loInclusive, byte[] hi,
+                                       int limit) {
+        super(storeData);
+        this.txn = txn;
+        this.transactionOptions = transactionOptions;
+        this.prefix = prefix;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (exhausted || ((limit > 0) && (count >= limit))) {
+            return false;
+        }
+        try {
+            while ((chunk == null) || (position >= chunk.getRowCount())) {
+                if (!nextChunk()) {
+                    exhausted = true;
+                    return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            throw FDBAdapter.wrapFDBException(storeData.session, e);
+        }
+        return ((hi == null) ||
+                (ByteArrayUtil.compareUnsigned(chunk.getKey(position), hi) < 0));
+    }
+
+    @Override
+    public Void next() {
+        storeData.rawKey = ByteArrayUtil.join(prefix, chunk.getKey(position));
+        storeData.otherValue = new ColumnChunksStorageDescription.ChunkRow(chunk, position);
+        position++;
+        count++;
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (underlying != null) {
+            underlying.dispose();
+        }
+    }
+
+    private boolean nextChunk() {
+        if (underlying == null) {
+            byte[] begin = firstChunkKey();
+            byte[] end = endChunkKey();
+            if (ByteArrayUtil.compareUnsigned(begin, end) >= 0) {
+                return false;
+            }
+            underlying = txn.getRangeIterator(KeySelector.firstGreaterOrEqual(begin),
+                                              KeySelector.firstGreaterOrEqual(end),
+                                              Transaction.ROW_LIMIT_UNLIMITED, false,
+                                              transactionOptions);
+        }
+        if (!underlying.hasNext()) {
+            return false;
+        }
+        chunk = new ColumnChunk(underlying.next().getValue());
+        position = chunk.findKey(lo);
+        if (position < 0) {
+            position = -(position + 1);
+        }
+        else if (!loInclusive) {
+            position++;
+        }
+        return true;
+    }
+
+    private byte[] firstChunkKey() {
+        byte[] start = ByteArrayUtil.join(prefix, lo);
+        AsyncIterator<KeyValue> containing =
+            txn.getRangeIterator(KeySelector.firstGreaterOrEqual(prefix),
+                                 KeySelector.firstGreaterThan(start),
+                                 1, true, transactionOptions);
+        try {
+            if (containing.hasNext()) {
+                return containing.next().getKey();
+            }
+        }
+        finally {
+            containing.dispose();
+        }
+        return start;
+    }
+
+    private byte[] endChunkKey() {
+        if (hi == null) {
+            return ByteArrayUtil.strinc(prefix);
+        }
+        else {
+            return ByteArrayUtil.join(prefix, hi);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ColumnChunksStorageIterator(%s, %s)",
+                             ByteArrayUtil.printable(lo),
+                             (hi == null) ? null : ByteArrayUtil.printable(hi));
+    }
+}
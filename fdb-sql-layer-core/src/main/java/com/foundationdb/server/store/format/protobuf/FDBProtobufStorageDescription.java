@@ -61,6 +61,8 @@ public class FDBProtobufStorageDescription extends TupleStorageDescription imple
     public StorageDescription cloneForObjectWithoutState(HasStorage forObject) {
         FDBProtobufStorageDescription sd = new FDBProtobufStorageDescription(forObject, storageFormat);
         sd.setUsage(this.getUsage());
+        sd.setValueCompression(this.getValueCompression());
+        sd.setRowCache(this.isRowCache());
         sd.setFormatType(this.formatType);
         return sd;
     }
@@ -116,6 +118,7 @@ public class FDBProtobufStorageDescription extends TupleStorageDescription imple
         ensureRowConverter();
         DynamicMessage msg = rowConverter.encode(row);
         storeData.rawValue = msg.toByteArray();
+        compressValue(store, session, storeData);
     }
     
     @Override 
@@ -124,7 +127,7 @@ public class FDBProtobufStorageDescription extends TupleStorageDescription imple
         ensureRowConverter();
         DynamicMessage msg;
         try {
-            msg = DynamicMessage.parseFrom(rowConverter.getMessageType(), storeData.rawValue);
+            msg = DynamicMessage.parseFrom(rowConverter.getMessageType(), expandValue(store, session, storeData));
         } catch (InvalidProtocolBufferException ex) {
             ProtobufReadException nex = new ProtobufReadException(rowDataConverter.getMessageType().getName(), ex.getMessage());
             nex.initCause(ex);
@@ -21,8 +21,10 @@ import com.foundationdb.ais.model.HasStorage;
 import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
 import com.foundationdb.ais.protobuf.CommonProtobuf;
 import com.foundationdb.ais.protobuf.FDBProtobuf;
+import com.foundationdb.server.store.format.RowCacheStorageFormat;
 import com.foundationdb.server.store.format.StorageFormat;
 import com.foundationdb.server.store.format.StorageFormatRegistry;
+import com.foundationdb.server.store.format.tuple.ValueCompressionStorageFormat;
 import com.foundationdb.sql.parser.StorageFormatNode;
 
 public class FDBProtobufStorageFormat extends StorageFormat<FDBProtobufStorageDescription>
@@ -56,6 +58,8 @@ public class FDBProtobufStorageFormat extends StorageFormat<FDBProtobufStorageDe
         storageDescription.setUsage(noTuple ?
                                     null :
                                     FDBProtobuf.TupleUsage.KEY_ONLY);
+        storageDescription.setValueCompression(ValueCompressionStorageFormat.parseOption(node.getOptions().get("compress")));
+        storageDescription.setRowCache(RowCacheStorageFormat.parseOption(node.getOptions().get("cache")));
         return storageDescription;
     }
 
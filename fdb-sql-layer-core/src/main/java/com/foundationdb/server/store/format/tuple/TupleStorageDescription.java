@@ -28,6 +28,7 @@ import com.foundationdb.ais.model.validation.AISValidationFailure;
 import com.foundationdb.ais.model.validation.AISValidationOutput;
 import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
 import com.foundationdb.ais.protobuf.FDBProtobuf.TupleUsage;
+import com.foundationdb.ais.protobuf.FDBProtobuf.ValueCompression;
 import com.foundationdb.ais.protobuf.FDBProtobuf;
 import com.foundationdb.qp.row.Row;
 import com.foundationdb.qp.rowtype.RowType;
@@ -54,6 +55,7 @@ public class TupleStorageDescription extends FDBStorageDescription
     private static final Logger LOG = LoggerFactory.getLogger(TupleStorageDescription.class);
 
     private TupleUsage usage;
+    private ValueCompression valueCompression;
 
     public TupleStorageDescription(HasStorage forObject, String storageFormat) {
         super(forObject, storageFormat);
@@ -62,6 +64,7 @@ public class TupleStorageDescription extends FDBStorageDescription
     public TupleStorageDescription(HasStorage forObject, TupleStorageDescription other, String storageFormat) {
         super(forObject, other, storageFormat);
         this.usage = other.usage;
+        this.valueCompression = other.valueCompression;
     }
 
     @Override
@@ -73,6 +76,8 @@ public class TupleStorageDescription extends FDBStorageDescription
     public StorageDescription cloneForObjectWithoutState(HasStorage forObject) {
         TupleStorageDescription sd = new TupleStorageDescription(forObject, storageFormat);
         sd.setUsage(this.getUsage());
+        sd.setValueCompression(this.getValueCompression());
+        sd.setRowCache(this.isRowCache());
         return sd;
     }
 
@@ -83,18 +88,32 @@ public class TupleStorageDescription extends FDBStorageDescription
         this.usage = usage;
     }
 
+    public ValueCompression getValueCompression() {
+        return valueCompression;
+    }
+    public void setValueCompression(ValueCompression valueCompression) {
+        this.valueCompression = valueCompression;
+    }
+
     @Override
     public void writeProtobuf(Storage.Builder builder) {
         super.writeProtobuf(builder);
         if (usage != null) {
             builder.setExtension(FDBProtobuf.tupleUsage, usage);
         }
+        if (valueCompression != null) {
+            builder.setExtension(FDBProtobuf.valueCompression, valueCompression);
+        }
         writeUnknownFields(builder);
     }
 
     @Override
     public void validate(AISValidationOutput output) {
         super.validate(output);
+        if ((valueCompression != null) && !(object instanceof Group)) {
+            output.reportFailure(new AISValidationFailure(new StorageDescriptionInvalidException(object, "is not a Group and has no row to compress")));
+            return;
+        }
         if (usage == null) {
             return;
         }
@@ -255,22 +274,52 @@ public class TupleStorageDescription extends FDBStorageDescription
         } else {
             super.packRow(store, session, storeData, row);
         }
+        compressValue(store, session, storeData);
     }
     
     @Override
     public Row expandRow(FDBStore store, Session session, 
                             FDBStoreData storeData, Schema schema) {
         if (usage == TupleUsage.KEY_AND_ROW) {
-            Tuple2 tuple = Tuple2.fromBytes(storeData.rawValue);
+            Tuple2 tuple = Tuple2.fromBytes(expandValue(store, session, storeData));
             Table table = tableFromOrdinals((Group)object, storeData.persistitKey);
             RowType rowType = schema.tableRowType(table);
             
             Row row = TupleRowDataConverter.tupleToRow(tuple, rowType);
             return row; 
+        } else if (valueCompression != null) {
+            // RowData value, which is expected in place.
+            byte[] storedValue = storeData.rawValue;
+            storeData.rawValue = expandValue(store, session, storeData);
+            try {
+                return super.expandRow(store, session, storeData, schema);
+            }
+            finally {
+                storeData.rawValue = storedValue;
+            }
         } else {
             return super.expandRow(store, session, storeData, schema);
         }
     }
+
+    /** Replace the packed <code>rawValue</code> with its compressed form, if enabled. */
+    protected void compressValue(FDBStore store, Session session, FDBStoreData storeData) {
+        if (valueCompression != null) {
+            storeData.rawValue = store.getValueCompression()
+                .compress(store.getTransaction(session, storeData), getPrefixBytes(), storeData.rawValue);
+        }
+    }
+
+    /** Get the packed value from a possibly compressed <code>rawValue</code>. */
+    protected byte[] expandValue(FDBStore store, Session session, FDBStoreData storeData) {
+        if (valueCompression != null) {
+            return store.getValueCompression()
+                .expand(store.getTransaction(session, storeData), getPrefixBytes(), storeData.rawValue);
+        }
+        else {
+            return storeData.rawValue;
+        }
+    }
     
     public static Table tableFromOrdinals(Group group, Key hkey) {
         Table root = group.getRoot();
@@ -21,13 +21,14 @@ import com.foundationdb.ais.model.Group;
 import com.foundationdb.ais.model.HasStorage;
 import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
 import com.foundationdb.ais.protobuf.FDBProtobuf;
+import com.foundationdb.server.store.format.RowCacheStorageFormat;
 import com.foundationdb.server.store.format.StorageFormat;
 import com.foundationdb.server.store.format.StorageFormatRegistry;
 import com.foundationdb.sql.parser.StorageFormatNode;
 
 public class TupleStorageFormat extends StorageFormat<TupleStorageDescription>
 {
-    private final static String storageFormat = "tuple";
+    final static String storageFormat = "tuple";
 
     private TupleStorageFormat() {
     }
@@ -54,6 +55,8 @@ public class TupleStorageFormat extends StorageFormat<TupleStorageDescription>
         storageDescription.setUsage(keyOnly ?
                                     FDBProtobuf.TupleUsage.KEY_ONLY :
                                     FDBProtobuf.TupleUsage.KEY_AND_ROW);
+        storageDescription.setValueCompression(ValueCompressionStorageFormat.parseOption(node.getOptions().get("compress")));
+        storageDescription.setRowCache(RowCacheStorageFormat.parseOption(node.getOptions().get("cache")));
         return storageDescription;
     }
 
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store.format.tuple;
+
+import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.protobuf.AISProtobuf.Storage;
+import com.foundationdb.ais.protobuf.FDBProtobuf;
+import com.foundationdb.server.store.format.StorageFormat;
+import com.foundationdb.server.store.format.StorageFormatRegistry;
+
+/** Not a format in itself, but an option to the tuple and protobuf
+ * formats, which compresses the row values they store.
+ */
+public class ValueCompressionStorageFormat extends StorageFormat<TupleStorageDescription>
+{
+    private ValueCompressionStorageFormat() {
+    }
+
+    public static void register(StorageFormatRegistry registry) {
+        registry.registerStorageFormat(FDBProtobuf.valueCompression, null, TupleStorageDescription.class, new ValueCompressionStorageFormat());
+    }
+
+    public TupleStorageDescription readProtobuf(Storage pbStorage, HasStorage forObject, TupleStorageDescription storageDescription) {
+        if (storageDescription == null) {
+            storageDescription = new TupleStorageDescription(forObject, TupleStorageFormat.storageFormat);
+        }
+        storageDescription.setValueCompression(pbStorage.getExtension(FDBProtobuf.valueCompression));
+        return storageDescription;
+    }
+
+    /** The value of the <code>compress</code> option in SQL. */
+    public static FDBProtobuf.ValueCompression parseOption(String option) {
+        if ((option != null) && Boolean.valueOf(option)) {
+            return FDBProtobuf.ValueCompression.DICTIONARY_DEFLATE;
+        }
+        else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.types.texpressions;
+
+import com.foundationdb.qp.operator.QueryBindings;
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.row.Row;
+
+/**
+ * A boolean expression evaluated over a block of rows at once, rather than
+ * one row at a time. Operands are loaded into column vectors and compared
+ * in a tight loop over primitives, so the per-row cost is a few array reads
+ * instead of a chain of virtual calls through {@link TEvaluatableExpression}.
+ *
+ * Built by {@link ExpressionCompiler#compileBatch}. Like an evaluation, an
+ * instance holds state and belongs to a single cursor.
+ */
+public abstract class BatchPredicate
+{
+    public abstract void with(QueryContext context);
+
+    public abstract void with(QueryBindings bindings);
+
+    /**
+     * Evaluate the predicate for the first <code>n</code> of <code>rows</code>,
+     * all of which must be of the type it was prepared for. Clears
+     * <code>selected[i]</code> for each row for which the predicate is not
+     * true (false or unknown) and leaves the others alone, so that several
+     * predicates can be applied in turn to the same selection.
+     */
+    public abstract void select(Row[] rows, int n, boolean[] selected);
+}
@@ -0,0 +1,562 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.types.texpressions;
+
+import com.foundationdb.qp.operator.QueryBindings;
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.explain.CompoundExplainer;
+import com.foundationdb.server.explain.ExplainContext;
+import com.foundationdb.server.types.TClass;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.TPreptimeValue;
+import com.foundationdb.server.types.aksql.aktypes.AkBool;
+import com.foundationdb.server.types.common.funcs.BoolLogic;
+import com.foundationdb.server.types.value.UnderlyingType;
+import com.foundationdb.server.types.value.Value;
+import com.foundationdb.server.types.value.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rewrites prepared expressions into forms that are cheaper to evaluate once per row. The only
+ * specialization so far is comparison of integer operands without a collator, which reads
+ * fields straight out of the row instead of copying them into a holder, and compares primitive
+ * longs instead of dispatching through {@link TClass#compare}. Anything not recognized is left
+ * to the interpreter, so compiling is always safe.
+ *
+ * The same comparisons, and conjunctions of them, can also be compiled into a
+ * {@link BatchPredicate}, which loads each operand of a block of rows into a column of longs
+ * and compares the columns in one loop.
+ *
+ * Compiled expressions explain and print the same as the originals.
+ *
+ * Select_HKeyOrdered compiles its predicate, Project_Default its projections, and
+ * RowBasedUnboundExpressions the expressions of index bounds, so a comparison nested anywhere
+ * in those is specialized. Nothing else is: arithmetic, casts, string and temporal functions
+ * are still evaluated by walking the tree, and no classes are generated, so there is nothing
+ * to cache with the plan. Other specializations should follow the same pattern, returning the
+ * original expression whenever the types are not the ones specialized.
+ */
+public final class ExpressionCompiler
+{
+    public static TPreparedExpression compile(TPreparedExpression expression) {
+        if (expression instanceof TComparisonExpression) {
+            TComparisonExpression comparison = (TComparisonExpression)expression;
+            if (comparison.getCollator() == null) {
+                UnderlyingType underlying = integerType(comparison.getLeft(), comparison.getRight());
+                if (underlying != null)
+                    return new CompiledComparison(comparison, underlying);
+            }
+        }
+        else if (expression instanceof TPreparedFunction) {
+            TPreparedFunction function = (TPreparedFunction)expression;
+            List<? extends TPreparedExpression> inputs = function.getInputs();
+            List<TPreparedExpression> compiled = compile(inputs);
+            if (compiled != inputs)
+                return function.withInputs(compiled);
+        }
+        return expression;
+    }
+
+    /**
+     * A predicate that evaluates <code>expression</code> over a block of rows at once, or
+     * <code>null</code> if it is not made only of integer comparisons between fields, literals
+     * and parameters, and conjunctions of them. The result belongs to a single cursor.
+     */
+    public static BatchPredicate compileBatch(TPreparedExpression expression) {
+        expression = compile(expression);
+        if (expression instanceof CompiledComparison) {
+            CompiledComparison comparison = (CompiledComparison)expression;
+            if (isColumnOperand(comparison.original.getLeft()) &&
+                isColumnOperand(comparison.original.getRight()))
+                return comparison.buildBatch();
+        }
+        else if ((expression instanceof TPreparedFunction) &&
+                 (((TPreparedFunction)expression).getOverload().getUnderlying() == BoolLogic.AND)) {
+            List<BatchPredicate> terms = new ArrayList<>();
+            for (TPreparedExpression input : ((TPreparedFunction)expression).getInputs()) {
+                BatchPredicate term = compileBatch(input);
+                if (term == null)
+                    return null;
+                terms.add(term);
+            }
+            return new BatchConjunction(terms);
+        }
+        return null;
+    }
+
+    /**
+     * Whether evaluating <code>expression</code> can neither fail nor have a side effect, so
+     * that it may be evaluated ahead of, or without, the row that asks for it. That is true of
+     * fields, bound fields, literals and nulls, and of compiled comparisons between fields and
+     * literals. Functions, casts and parameters are not, since any of them may raise an error,
+     * warn, or (like NEXTVAL or SLEEP) depend on when and how often it is called.
+     */
+    public static boolean isPureAndTotal(TPreparedExpression expression) {
+        if ((expression instanceof TPreparedField) ||
+            (expression instanceof TPreparedBoundField) ||
+            (expression instanceof TPreparedLiteral) ||
+            (expression instanceof TNullExpression))
+            return true;
+        if (expression instanceof CompiledComparison) {
+            CompiledComparison comparison = (CompiledComparison)expression;
+            return isFieldOrLiteral(comparison.original.getLeft()) &&
+                   isFieldOrLiteral(comparison.original.getRight());
+        }
+        return false;
+    }
+
+    /** Compile each expression; returns the argument itself if nothing changed. */
+    @SuppressWarnings("unchecked")
+    public static <T extends TPreparedExpression> List<TPreparedExpression> compile(List<T> expressions) {
+        List<TPreparedExpression> result = null;
+        for (int i = 0; i < expressions.size(); i++) {
+            TPreparedExpression expression = expressions.get(i);
+            TPreparedExpression compiled = compile(expression);
+            if ((compiled != expression) && (result == null)) {
+                result = new ArrayList<>(expressions.size());
+                result.addAll(expressions.subList(0, i));
+            }
+            if (result != null)
+                result.add(compiled);
+        }
+        return (result != null) ? result : (List<TPreparedExpression>)expressions;
+    }
+
+    private static boolean isColumnOperand(TPreparedExpression expression) {
+        return (expression instanceof TPreparedField) ||
+               (expression instanceof TPreparedLiteral) ||
+               (expression instanceof TPreparedParameter);
+    }
+
+    private static boolean isFieldOrLiteral(TPreparedExpression expression) {
+        return (expression instanceof TPreparedField) ||
+               (expression instanceof TPreparedLiteral);
+    }
+
+    private static UnderlyingType integerType(TPreparedExpression left, TPreparedExpression right) {
+        UnderlyingType leftType = TInstance.underlyingType(left.resultType());
+        UnderlyingType rightType = TInstance.underlyingType(right.resultType());
+        if (leftType != rightType)
+            return null;
+        switch (leftType) {
+        case INT_8:
+        case INT_16:
+        case UINT_16:
+        case INT_32:
+        case INT_64:
+            return leftType;
+        default:
+            return null;
+        }
+    }
+
+    static long getLong(ValueSource source, UnderlyingType underlying) {
+        switch (underlying) {
+        case INT_8:
+            return source.getInt8();
+        case INT_16:
+            return source.getInt16();
+        case UINT_16:
+            return source.getUInt16();
+        case INT_32:
+            return source.getInt32();
+        case INT_64:
+            return source.getInt64();
+        default:
+            throw new AssertionError(underlying);
+        }
+    }
+
+    private ExpressionCompiler() {
+    }
+
+    static final class CompiledComparison implements TPreparedExpression {
+
+        @Override
+        public TPreptimeValue evaluateConstant(QueryContext queryContext) {
+            return original.evaluateConstant(queryContext);
+        }
+
+        @Override
+        public TInstance resultType() {
+            return original.resultType();
+        }
+
+        @Override
+        public TEvaluatableExpression build() {
+            return new Evaluation(operand(original.getLeft()), operand(original.getRight()));
+        }
+
+        @Override
+        public CompoundExplainer getExplainer(ExplainContext context) {
+            return original.getExplainer(context);
+        }
+
+        @Override
+        public String toString() {
+            return original.toString();
+        }
+
+        CompiledComparison(TComparisonExpression original, UnderlyingType underlying) {
+            this.original = original;
+            this.underlying = underlying;
+            Comparison comparison = original.getComparison();
+            this.ifLess = comparison.matchesCompareTo(-1);
+            this.ifEqual = comparison.matchesCompareTo(0);
+            this.ifGreater = comparison.matchesCompareTo(1);
+        }
+
+        BatchPredicate buildBatch() {
+            return new BatchComparison(column(original.getLeft()), column(original.getRight()), build());
+        }
+
+        private ColumnVector column(TPreparedExpression expression) {
+            if (expression instanceof TPreparedField)
+                return new FieldVector(((TPreparedField)expression).getFieldIndex(), underlying);
+            else
+                return new ConstantVector(expression.build(), underlying);
+        }
+
+        private Operand operand(TPreparedExpression expression) {
+            if (expression instanceof TPreparedField)
+                return new FieldOperand(((TPreparedField)expression).getFieldIndex());
+            else
+                return new EvaluatedOperand(expression.build());
+        }
+
+        private final TComparisonExpression original;
+        private final UnderlyingType underlying;
+        private final boolean ifLess, ifEqual, ifGreater;
+
+        private final class Evaluation implements TEvaluatableExpression {
+
+            @Override
+            public ValueSource resultValue() {
+                if (value == null)
+                    throw new IllegalStateException("not evaluated");
+                return value;
+            }
+
+            @Override
+            public void evaluate() {
+                if (value == null)
+                    value = new Value(AkBool.INSTANCE.instance(true));
+                ValueSource leftSource = left.evaluate();
+                if (leftSource.isNull()) {
+                    value.putNull();
+                    return;
+                }
+                ValueSource rightSource = right.evaluate();
+                if (rightSource.isNull()) {
+                    value.putNull();
+                    return;
+                }
+                final int cmp;
+                if (leftSource.hasCacheValue() || rightSource.hasCacheValue()) {
+                    // Let the type decide, exactly as the interpreter would.
+                    cmp = TClass.compare(original.getLeft().resultType(), leftSource,
+                                         original.getRight().resultType(), rightSource);
+                }
+                else {
+                    long leftLong = getLong(leftSource, underlying);
+                    long rightLong = getLong(rightSource, underlying);
+                    cmp = (leftLong < rightLong) ? -1 : (leftLong == rightLong) ? 0 : 1;
+                }
+                value.putBool((cmp < 0) ? ifLess : (cmp == 0) ? ifEqual : ifGreater);
+            }
+
+            @Override
+            public void with(Row row) {
+                left.with(row);
+                right.with(row);
+            }
+
+            @Override
+            public void with(QueryContext context) {
+                left.with(context);
+                right.with(context);
+            }
+
+            @Override
+            public void with(QueryBindings bindings) {
+                left.with(bindings);
+                right.with(bindings);
+            }
+
+            private Evaluation(Operand left, Operand right) {
+                this.left = left;
+                this.right = right;
+            }
+
+            private final Operand left, right;
+            private Value value;
+        }
+
+        private final class BatchComparison extends BatchPredicate {
+
+            @Override
+            public void with(QueryContext context) {
+                left.with(context);
+                right.with(context);
+                scalar.with(context);
+            }
+
+            @Override
+            public void with(QueryBindings bindings) {
+                left.with(bindings);
+                right.with(bindings);
+                scalar.with(bindings);
+            }
+
+            @Override
+            public void select(Row[] rows, int n, boolean[] selected) {
+                if (!left.load(rows, n, selected) || !right.load(rows, n, selected)) {
+                    // Some value needs its type to compare it; go row by row.
+                    for (int i = 0; i < n; i++) {
+                        if (selected[i]) {
+                            scalar.with(rows[i]);
+                            scalar.evaluate();
+                            if (!scalar.resultValue().getBoolean(false))
+                                selected[i] = false;
+                        }
+                    }
+                    return;
+                }
+                long[] leftValues = left.values, rightValues = right.values;
+                boolean[] leftNulls = left.nulls, rightNulls = right.nulls;
+                for (int i = 0; i < n; i++) {
+                    if (leftNulls[i] || rightNulls[i]) {
+                        selected[i] = false;
+                    }
+                    else {
+                        long leftLong = leftValues[i], rightLong = rightValues[i];
+                        if (!((leftLong < rightLong) ? ifLess : (leftLong == rightLong) ? ifEqual : ifGreater))
+                            selected[i] = false;
+                    }
+                }
+            }
+
+            private BatchComparison(ColumnVector left, ColumnVector right, TEvaluatableExpression scalar) {
+                this.left = left;
+                this.right = right;
+                this.scalar = scalar;
+            }
+
+            private final ColumnVector left, right;
+            private final TEvaluatableExpression scalar;
+        }
+    }
+
+    /** Each term narrows the selection left by the ones before it. */
+    static final class BatchConjunction extends BatchPredicate {
+
+        @Override
+        public void with(QueryContext context) {
+            for (BatchPredicate term : terms) {
+                term.with(context);
+            }
+        }
+
+        @Override
+        public void with(QueryBindings bindings) {
+            for (BatchPredicate term : terms) {
+                term.with(bindings);
+            }
+        }
+
+        @Override
+        public void select(Row[] rows, int n, boolean[] selected) {
+            for (BatchPredicate term : terms) {
+                term.select(rows, n, selected);
+            }
+        }
+
+        BatchConjunction(List<BatchPredicate> terms) {
+            this.terms = terms;
+        }
+
+        private final List<BatchPredicate> terms;
+    }
+
+    /**
+     * One operand of a batch comparison, as a column of longs and a null mask. Rows that are
+     * not selected are not read, and load as null.
+     */
+    static abstract class ColumnVector {
+        /** Load the selected rows; false if any value needs its type to compare it. */
+        abstract boolean load(Row[] rows, int n, boolean[] selected);
+
+        void with(QueryContext context) {
+        }
+
+        void with(QueryBindings bindings) {
+        }
+
+        protected void ensureCapacity(int n) {
+            if (values.length < n) {
+                values = new long[n];
+                nulls = new boolean[n];
+            }
+        }
+
+        ColumnVector(UnderlyingType underlying) {
+            this.underlying = underlying;
+        }
+
+        protected final UnderlyingType underlying;
+        long[] values = new long[0];
+        boolean[] nulls = new boolean[0];
+    }
+
+    /** A field of each row. */
+    static final class FieldVector extends ColumnVector {
+        @Override
+        boolean load(Row[] rows, int n, boolean[] selected) {
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                if (!selected[i]) {
+                    nulls[i] = true;
+                    continue;
+                }
+                ValueSource source = rows[i].value(fieldIndex);
+                if (source.isNull()) {
+                    nulls[i] = true;
+                }
+                else if (source.hasCacheValue()) {
+                    return false;
+                }
+                else {
+                    nulls[i] = false;
+                    values[i] = getLong(source, underlying);
+                }
+            }
+            return true;
+        }
+
+        FieldVector(int fieldIndex, UnderlyingType underlying) {
+            super(underlying);
+            this.fieldIndex = fieldIndex;
+        }
+
+        private final int fieldIndex;
+    }
+
+    /** A literal or parameter, evaluated once per batch. */
+    static final class ConstantVector extends ColumnVector {
+        @Override
+        boolean load(Row[] rows, int n, boolean[] selected) {
+            ensureCapacity(n);
+            evaluation.evaluate();
+            ValueSource source = evaluation.resultValue();
+            if (source.isNull()) {
+                Arrays.fill(nulls, 0, n, true);
+            }
+            else if (source.hasCacheValue()) {
+                return false;
+            }
+            else {
+                Arrays.fill(values, 0, n, getLong(source, underlying));
+                Arrays.fill(nulls, 0, n, false);
+            }
+            return true;
+        }
+
+        @Override
+        void with(QueryContext context) {
+            evaluation.with(context);
+        }
+
+        @Override
+        void with(QueryBindings bindings) {
+            evaluation.with(bindings);
+        }
+
+        ConstantVector(TEvaluatableExpression evaluation, UnderlyingType underlying) {
+            super(underlying);
+            this.evaluation = evaluation;
+        }
+
+        private final TEvaluatableExpression evaluation;
+    }
+
+    static abstract class Operand {
+        abstract ValueSource evaluate();
+
+        void with(Row row) {
+        }
+
+        void with(QueryContext context) {
+        }
+
+        void with(QueryBindings bindings) {
+        }
+    }
+
+    /** A field of the current row, read in place rather than copied. */
+    static final class FieldOperand extends Operand {
+        @Override
+        ValueSource evaluate() {
+            return row.value(fieldIndex);
+        }
+
+        @Override
+        void with(Row row) {
+            this.row = row;
+        }
+
+        FieldOperand(int fieldIndex) {
+            this.fieldIndex = fieldIndex;
+        }
+
+        private final int fieldIndex;
+        private Row row;
+    }
+
+    static final class EvaluatedOperand extends Operand {
+        @Override
+        ValueSource evaluate() {
+            evaluation.evaluate();
+            return evaluation.resultValue();
+        }
+
+        @Override
+        void with(Row row) {
+            evaluation.with(row);
+        }
+
+        @Override
+        void with(QueryContext context) {
+            evaluation.with(context);
+        }
+
+        @Override
+        void with(QueryBindings bindings) {
+            evaluation.with(bindings);
+        }
+
+        EvaluatedOperand(TEvaluatableExpression evaluation) {
+            this.evaluation = evaluation;
+        }
+
+        private final TEvaluatableExpression evaluation;
+    }
+}
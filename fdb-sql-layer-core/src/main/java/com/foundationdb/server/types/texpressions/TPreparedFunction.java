@@ -110,6 +110,20 @@ public final class TPreparedFunction implements TPreparedExpression {
         this.preptimeValues = preptimeValues;
     }
 
+    public List<? extends TPreparedExpression> getInputs() {
+        return inputs;
+    }
+
+    /** The overload being applied. */
+    TValidatedScalar getOverload() {
+        return overload;
+    }
+
+    /** The same function applied to other (equivalent) inputs. */
+    TPreparedFunction withInputs(List<? extends TPreparedExpression> inputs) {
+        return new TPreparedFunction(overload, resultType, inputs, preptimeValues);
+    }
+
     private final TValidatedScalar overload;
     private final TInstance resultType;
     private final List<TInstance> inputTypes;
@@ -617,18 +617,23 @@ public class AlterTableDDL {
             TableIndex indexCopy = TableIndex.create(tableCopy, origIndex);
             boolean indexViable = true;
             int pos = 0;
+            int included = 0;
             for(IndexColumn indexColumn : origIndex.getKeyColumns()) {
                 String newName = findNewName(columnChanges, indexColumn.getColumn().getName());
                 if(newName != null) {
                     IndexColumn.create(indexCopy, tableCopy.getColumn(newName), indexColumn, pos++);
+                    if(indexColumn.getPosition() >= origIndex.getUniqueColumnCount()) {
+                        ++included;
+                    }
                 } else if (indexCopy.isSpatial() &&
                            indexColumn.getPosition() >= origIndex.firstSpatialArgument() &&
                            indexColumn.getPosition() <= origIndex.lastSpatialArgument()) {
                     indexViable = false;
                 }
             }
+            indexCopy.setIncludedColumnCount(included);
             // DROP and MODIFY detection for indexes handled downstream
-            if(indexCopy.getKeyColumns().isEmpty()) {
+            if(indexCopy.getUniqueColumnCount() <= 0) {
                 indexViable = false;
             }
             if (!indexViable) {
@@ -34,10 +34,16 @@ public abstract class BasePlannable extends BasePlanNode
     public static class ParameterType {
         private final DataTypeDescriptor sqlType;
         private final TInstance type;
+        private final boolean skewed;
 
         public ParameterType(DataTypeDescriptor sqlType, TInstance type) {
+            this(sqlType, type, false);
+        }
+
+        public ParameterType(DataTypeDescriptor sqlType, TInstance type, boolean skewed) {
             this.sqlType = sqlType;
             this.type = type;
+            this.skewed = skewed;
         }
 
         public DataTypeDescriptor getSQLType() {
@@ -48,6 +54,13 @@ public abstract class BasePlannable extends BasePlanNode
             return type;
         }
 
+        /** Is the parameter compared for equality with an index column
+         * whose values are so unevenly distributed that the best plan
+         * may depend on the actual value? */
+        public boolean isSkewed() {
+            return skewed;
+        }
+
         @Override
         public String toString() {
             if (type != null)
@@ -30,6 +30,7 @@ public class HashJoinNode extends JoinNode
     private List<ExpressionNode> hashColumns, matchColumns;
     private List<TKeyComparable> tKeyComparables;
     private List<AkCollator> collators;
+    private boolean keepInputOrder = true;
 
     public HashJoinNode(Joinable loader, Joinable input, Joinable check, JoinType joinType, 
                         BaseHashTable hashTable, List<ExpressionNode> hashColumns, List<ExpressionNode> matchColumns,
@@ -82,6 +83,17 @@ public class HashJoinNode extends JoinNode
         return collators;
     }
 
+    /**
+     * Whether something after the join relies on the order of the input,
+     * which would otherwise be partitioned like a spilled hash table.
+     */
+    public boolean isKeepInputOrder() {
+        return keepInputOrder;
+    }
+    public void setKeepInputOrder(boolean keepInputOrder) {
+        this.keepInputOrder = keepInputOrder;
+    }
+
     @Override
     public void replaceInput(PlanNode oldInput, PlanNode newInput) {
         if (loader == oldInput) {
@@ -29,6 +29,7 @@ public class UsingHashTable extends UsingLoaderBase
     private List<ExpressionNode> lookupExpressions;
     private List<TKeyComparable> tKeyComparables;
     private List<AkCollator> collators;
+    private boolean keepInputOrder = true;
 
     public UsingHashTable(HashTable hashTable, PlanNode loader, PlanNode input,
                           List<ExpressionNode> lookupExpressions,
@@ -54,6 +55,12 @@ public class UsingHashTable extends UsingLoaderBase
     public List<AkCollator> getCollators() {
         return collators;
     }
+    public boolean isKeepInputOrder() {
+        return keepInputOrder;
+    }
+    public void setKeepInputOrder(boolean keepInputOrder) {
+        this.keepInputOrder = keepInputOrder;
+    }
 
 
     @Override
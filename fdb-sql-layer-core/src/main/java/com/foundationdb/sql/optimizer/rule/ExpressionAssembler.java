@@ -389,6 +389,14 @@ class ExpressionAssembler
             aggregators.add(aggr.getResolved());
             outputInstances.add(aggr.getType());
         }
+        if (aggregateSource.getImplementation() == AggregateSource.Implementation.HASH)
+            return API.aggregate_Hashed(
+                    inputOperator,
+                    rowType,
+                    nkeys,
+                    aggregators,
+                    outputInstances,
+                    aggregateSource.getOptions());
         return API.aggregate_Partial(
                 inputOperator,
                 rowType,
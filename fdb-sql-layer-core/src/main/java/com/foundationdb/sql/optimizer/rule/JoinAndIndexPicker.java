@@ -1002,6 +1002,8 @@ public class JoinAndIndexPicker extends BaseRule
         List<ExpressionNode> hashColumns, matchColumns;
         List<TKeyComparable> tKeyComparables ;
         List<AkCollator> collators;
+        // Whether the query needs an order that the input might provide.
+        boolean orderedQuery = true;
         
         public HashJoinPlan(Plan loader, Plan input, Plan check,
                             JoinType joinType, JoinNode.Implementation joinImplementation,
@@ -1044,6 +1046,7 @@ public class JoinAndIndexPicker extends BaseRule
                                                  joinType, hashTable, hashColumns, matchColumns, tKeyComparables, collators);
             join.setJoinConditions(joinConditions);
             join.setImplementation(joinImplementation);
+            join.setKeepInputOrder(sortAllowed && orderedQuery);
             if (joinType == JoinType.SEMI)
                 InConditionReverser.cleanUpSemiJoin(join, checkJoinable.getJoinable());
             return new JoinableWithConditionsToRemove(join, new ConditionList());
@@ -1451,9 +1454,11 @@ public class JoinAndIndexPicker extends BaseRule
             HashLookupPlan lookupPlan = new HashLookupPlan(costEstimate, hashTable, hashTableColumns);
             costEstimate = picker.getCostEstimator()
                     .costHashJoin(loaderPlan.costEstimate, outerPlan.costEstimate, costEstimate, hashTableColumns.hashColumns.size(), outerColumnCount, innerColumnCount);
-            return new HashJoinPlan(loaderPlan, outerPlan, lookupPlan,
+            HashJoinPlan hashJoinPlan = new HashJoinPlan(loaderPlan, outerPlan, lookupPlan,
                     joinPlan.joinType, JoinNode.Implementation.HASH_TABLE,
                     joins, costEstimate, hashTable, hashTableColumns.hashColumns, hashTableColumns.matchColumns, hashTableColumns.tKeyComparables, hashTableColumns.collators);
+            hashJoinPlan.orderedQuery = picker.queryGoal.needSort(IndexScan.OrderEffectiveness.NONE);
+            return hashJoinPlan;
         }
 
         static class HashLookupPlan extends Plan {
@@ -125,10 +125,12 @@ public class NestedLoopMapper extends BaseRule
                     HashJoinNode hjoin = (HashJoinNode)join;
                     HashTable ht = (HashTable)hjoin.getHashTable();
                     PlanNode loader = hjoin.getLoader();
-                    map = new UsingHashTable(ht, loader, map,
-                                             hjoin.getHashColumns(),
-                                             hjoin.getTKeyComparables(),
-                                             hjoin.getCollators());
+                    UsingHashTable using = new UsingHashTable(ht, loader, map,
+                                                              hjoin.getHashColumns(),
+                                                              hjoin.getTKeyComparables(),
+                                                              hjoin.getCollators());
+                    using.setKeepInputOrder(hjoin.isKeepInputOrder());
+                    map = using;
                 }
                 break;
             default:
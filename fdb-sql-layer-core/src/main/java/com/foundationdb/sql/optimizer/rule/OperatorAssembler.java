@@ -116,11 +116,13 @@ public class OperatorAssembler extends BaseRule
         private final Schema schema;
         private final ExpressionAssembler expressionAssembler;
         private final Set<Table> affectedTables;
+        private final Set<Integer> skewedParameters;
 
         public Assembler(PlanContext planContext) {
             this.planContext = planContext;
             rulesContext = (SchemaRulesContext)planContext.getRulesContext();
             affectedTables = new HashSet<>();
+            skewedParameters = new HashSet<>();
             if (planContext instanceof ExplainPlanContext)
                 explainContext = ((ExplainPlanContext)planContext).getExplainContext();
             else
@@ -604,6 +606,7 @@ public class OperatorAssembler extends BaseRule
                                                         assembleSpatialIndexKeyRange(indexScan, null),
                                                         API.ordering(), // TODO: what ordering?
                                                         selector,
+                                                        rulesContext.getPipelineConfiguration().getIndexScanLookaheadMin(),
                                                         rulesContext.getPipelineConfiguration().getIndexScanLookaheadQuantum());
                 indexRowType = indexRowType.physicalRowType();
                 stream.rowType = indexRowType;
@@ -613,6 +616,7 @@ public class OperatorAssembler extends BaseRule
                                                         assembleIndexKeyRange(indexScan, null),
                                                         assembleIndexOrdering(indexScan, indexRowType),
                                                         selector,
+                                                        rulesContext.getPipelineConfiguration().getIndexScanLookaheadMin(),
                                                         rulesContext.getPipelineConfiguration().getIndexScanLookaheadQuantum());
                 stream.rowType = indexRowType;
             }
@@ -645,6 +649,7 @@ public class OperatorAssembler extends BaseRule
                                                           assembleIndexKeyRange(indexScan, null, rangeSegment),
                                                           assembleIndexOrdering(indexScan, indexRowType),
                                                           selector,
+                                                          rulesContext.getPipelineConfiguration().getIndexScanLookaheadMin(),
                                                           rulesContext.getPipelineConfiguration().getIndexScanLookaheadQuantum());
                     if (stream.operator == null) {
                         stream.operator = scan;
@@ -903,6 +908,7 @@ public class OperatorAssembler extends BaseRule
                                                           inputRowType,
                                                           outputRowTypes,
                                                           flag,
+                                                          groupLookupLookaheadMin(input),
                                                           rulesContext.getPipelineConfiguration().getGroupLookupLookaheadQuantum());
             }
             stream.rowType = null;
@@ -964,6 +970,7 @@ public class OperatorAssembler extends BaseRule
                                                           inputRowType,
                                                           outputRowTypes, 
                                                           flag,
+                                                          groupLookupLookaheadMin(branchLookup.getInput()),
                                                           rulesContext.getPipelineConfiguration().getGroupLookupLookaheadQuantum());
             }
             stream.rowType = null;
@@ -972,6 +979,21 @@ public class OperatorAssembler extends BaseRule
             return stream;
         }
 
+        /** Start a lookup's lookahead with enough for the rows its
+         * input is expected to produce, but no more. */
+        protected int groupLookupLookaheadMin(PlanNode input) {
+            PipelineConfiguration config = rulesContext.getPipelineConfiguration();
+            int min = config.getGroupLookupLookaheadMin();
+            if (input instanceof BaseScan) {
+                CostEstimate costEstimate = ((BaseScan)input).getCostEstimate();
+                if ((costEstimate != null) && (costEstimate.getRowCount() > min)) {
+                    min = (int)Math.min(costEstimate.getRowCount(),
+                                        config.getGroupLookupLookaheadQuantum());
+                }
+            }
+            return min;
+        }
+
         protected static boolean isIndexRowType(RowType rowType) {
             return ((rowType instanceof IndexRowType) ||
                     (rowType instanceof HKeyRowType));
@@ -1143,8 +1165,25 @@ public class OperatorAssembler extends BaseRule
         }
 
         protected RowStream assembleMapJoin(MapJoin mapJoin) {
+            return assembleMapJoin(mapJoin, null, -1);
+        }
+
+        // Given the hash table probed by the inner side, the outer rows
+        // are partitioned the same way, so that a spilled hash table is
+        // read back a partition at a time.
+        protected RowStream assembleMapJoin(MapJoin mapJoin, HashTable hashTable, int tablePos) {
             PlanNode outer = mapJoin.getOuter();
             RowStream ostream = assembleStream(outer);
+            if (hashTable != null) {
+                HashTableLookup lookup = new HashTableLookupFinder(hashTable).find(mapJoin.getInner());
+                if (lookup != null) {
+                    List<TPreparedExpression> tFields = assembleExpressions(lookup.getLookupExpressions(), ostream.fieldOffsets);
+                    ostream.operator = API.partition_HashTable(ostream.operator,
+                                                               ostream.rowType,
+                                                               tFields,
+                                                               tablePos);
+                }
+            }
             int pos = pushBoundRow(ostream.fieldOffsets);
             nestedBindingsDepth++;
             RowStream stream = assembleStream(mapJoin.getInner());
@@ -1248,6 +1287,7 @@ public class OperatorAssembler extends BaseRule
             switch (impl) {
             case PRESORTED:
             case UNGROUPED:
+            case HASH:
                 break;
             case FIRST_FROM_INDEX:
                 {
@@ -1298,6 +1338,10 @@ public class OperatorAssembler extends BaseRule
                         "Can't use Distinct_Partial except following a projection. Try again when types3 is in place"));
                 }
                 break;
+            case HASH:
+                stream.operator = API.distinct_Hashed(stream.operator, stream.rowType,
+                                                      findCollators(distinct.getInput()));
+                break;
             default:
                 assembleSort(stream, stream.rowType.nFields(), distinct.getInput(),
                              API.SortOption.SUPPRESS_DUPLICATES);
@@ -1468,7 +1512,12 @@ public class OperatorAssembler extends BaseRule
             int pos = assignBindingPosition(hashTable);
             RowStream lstream = assembleStream(usingHashTable.getLoader());
             hashTableLoaders.put(hashTable, lstream);
-            RowStream stream = assembleStream(usingHashTable.getInput());
+            RowStream stream;
+            if (!usingHashTable.isKeepInputOrder() &&
+                (usingHashTable.getInput() instanceof MapJoin))
+                stream = assembleMapJoin((MapJoin)usingHashTable.getInput(), hashTable, pos);
+            else
+                stream = assembleStream(usingHashTable.getInput());
             List<ExpressionNode> expressionNodes = usingHashTable.getLookupExpressions();
             List<TPreparedExpression> tFields = assembleExpressions(expressionNodes,lstream.fieldOffsets);
 
@@ -1606,6 +1655,10 @@ public class OperatorAssembler extends BaseRule
                     if (!(comp instanceof IsNullIndexKey)) { // Java null means IS NULL; Null expression wouldn't match.
                         assembleExpressionInto(comp, fieldOffsets, pkeys, kidx);
                     }
+                    if ((comp instanceof ParameterExpression) &&
+                        rulesContext.getCostEstimator().isSkewed(index.getIndex(), kidx)) {
+                        skewedParameters.add(((ParameterExpression)comp).getPosition());
+                    }
                     kidx++;
                 }
             }
@@ -1795,7 +1848,8 @@ public class OperatorAssembler extends BaseRule
                     if (type == null)
                         assert param.isReturnOutputParam() : param;
                     else
-                        result[paramNo] = new BasePlannable.ParameterType(sqlType, type);
+                        result[paramNo] = new BasePlannable.ParameterType(sqlType, type,
+                                                                          skewedParameters.contains(paramNo));
                 }
             }
             return result;
@@ -2187,6 +2241,40 @@ public class OperatorAssembler extends BaseRule
         }
     }
 
+    // Find where the inner side of a hash join probes its hash table.
+    static class HashTableLookupFinder implements PlanVisitor {
+        private final HashTable hashTable;
+        private HashTableLookup result;
+
+        public HashTableLookupFinder(HashTable hashTable) {
+            this.hashTable = hashTable;
+        }
+
+        public HashTableLookup find(PlanNode root) {
+            root.accept(this);
+            return result;
+        }
+
+        @Override
+        public boolean visitEnter(PlanNode n) {
+            return visit(n);
+        }
+
+        @Override
+        public boolean visitLeave(PlanNode n) {
+            return (result == null);
+        }
+
+        @Override
+        public boolean visit(PlanNode n) {
+            if ((n instanceof HashTableLookup) &&
+                (((HashTableLookup)n).getHashTable() == hashTable)) {
+                result = (HashTableLookup)n;
+            }
+            return (result == null);
+        }
+    }
+
     // Struct for multiple value return from assembly.
     static class RowStream {
         Operator operator;
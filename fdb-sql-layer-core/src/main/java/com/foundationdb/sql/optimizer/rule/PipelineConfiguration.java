@@ -23,7 +23,9 @@ public class PipelineConfiguration
 {
     private boolean mapEnabled = false;
     private int indexScanLookaheadQuantum = 1;
+    private int indexScanLookaheadMin = 1;
     private int groupLookupLookaheadQuantum = 1;
+    private int groupLookupLookaheadMin = 1;
     private boolean unionAllOpenBoth = false;
     private boolean selectBloomFilterEnabled = false;
 
@@ -42,10 +44,18 @@ public class PipelineConfiguration
         return indexScanLookaheadQuantum;
     }
 
+    public int getIndexScanLookaheadMin() {
+        return indexScanLookaheadMin;
+    }
+
     public int getGroupLookupLookaheadQuantum() {
         return groupLookupLookaheadQuantum;
     }
 
+    public int getGroupLookupLookaheadMin() {
+        return groupLookupLookaheadMin;
+    }
+
     public boolean isUnionAllOpenBoth() {
         return unionAllOpenBoth;
     }
@@ -61,8 +71,12 @@ public class PipelineConfiguration
                 mapEnabled = Boolean.parseBoolean(val);
             else if ("indexScan.lookaheadQuantum".equals(prop))
                 indexScanLookaheadQuantum = Integer.parseInt(val);
+            else if ("indexScan.lookaheadMin".equals(prop))
+                indexScanLookaheadMin = Integer.parseInt(val);
             else if ("groupLookup.lookaheadQuantum".equals(prop))
                 groupLookupLookaheadQuantum = Integer.parseInt(val);
+            else if ("groupLookup.lookaheadMin".equals(prop))
+                groupLookupLookaheadMin = Integer.parseInt(val);
             else if ("unionAll.openBoth".equals(prop))
                 unionAllOpenBoth = Boolean.parseBoolean(val);
             else if ("selectBloomFilter.enabled".equals(prop))
@@ -169,6 +169,58 @@ public abstract class CostEstimator implements TableRowCounts
             return DEFAULT_MISSING_STATS_SELECTIVITY;
     }
 
+    public static final String HASH_MEMORY_PROPERTY = "cost.hashMemory";
+    protected final long DEFAULT_HASH_MEMORY = 64L * 1024 * 1024;
+
+    /** The memory a hashing operator may use before it spills to
+     * disk. The server fills this in from <code>fdbsql.sort.memory</code>.
+     */
+    protected long hashMemory() {
+        String str = getProperty(HASH_MEMORY_PROPERTY);
+        if (str != null)
+            return Long.valueOf(str);
+        else
+            return DEFAULT_HASH_MEMORY;
+    }
+
+    public static final String SKEW_FACTOR_PROPERTY = "cost.skewFactor";
+    protected final double DEFAULT_SKEW_FACTOR = 10.0;
+
+    /** How many times more often than average the most common value
+     * of a column must occur for the column to count as skewed.
+     */
+    protected double skewFactor() {
+        String str = getProperty(SKEW_FACTOR_PROPERTY);
+        if (str != null)
+            return Double.valueOf(str);
+        else
+            return DEFAULT_SKEW_FACTOR;
+    }
+
+    /** Does the selectivity of equality with the given column of
+     * <code>index</code> depend much on the value? A parameter is
+     * costed with the average selectivity, so a plan that shares one
+     * for all values can be wrong for the common ones.
+     */
+    public boolean isSkewed(Index index, int column) {
+        int nIndexColumns = index.getAllColumns().size();
+        Index[] indexColumnsIndexes = new Index[nIndexColumns];
+        Histogram[] histograms = new Histogram[nIndexColumns];
+        getIndexColumnStatistics(index, indexColumnsIndexes, histograms);
+        Histogram histogram = histograms[column];
+        if ((histogram == null) || histogram.getEntries().isEmpty())
+            return false;
+        long distinct = histogram.totalDistinctCount();
+        if (distinct <= 1)
+            return false;
+        long mostCommon = 0;
+        for (HistogramEntry entry : histogram.getEntries()) {
+            mostCommon = Math.max(mostCommon, entry.getEqualCount());
+        }
+        long sampled = histogram.getIndexStatistics().getSampledCount();
+        return (double)mostCommon * distinct > skewFactor() * sampled;
+    }
+
     protected String getProperty(String key) {
         return properties.getProperty(key);
     }
@@ -194,7 +246,7 @@ public abstract class CostEstimator implements TableRowCounts
                               ExpressionNode highComparand, boolean highInclusive) {
         if (index.isUnique()) {
             if ((equalityComparands != null) &&
-                (equalityComparands.size() >= index.getKeyColumns().size())) {
+                (equalityComparands.size() >= index.getUniqueColumnCount())) {
                 // Exact match from unique index; probably one row.
                 return 1;
             }
@@ -991,6 +1043,20 @@ public abstract class CostEstimator implements TableRowCounts
                                 model.sortWithLimit((int)size, nfields));
     }
 
+    /** Estimate the cost of aggregating rows of the given size with a
+     * hash table, including writing out and reading back the rows that
+     * do not fit in memory. Without an estimate of the number of
+     * groups, each row is assumed to be its own group.
+     */
+    public CostEstimate costHashAggregate(long size, int nGroupBy) {
+        return new CostEstimate(size, model.hashAggregate((int)size, nGroupBy, hashMemory()));
+    }
+
+    /** Is hash aggregation cheaper than sorting for a GROUP BY of the given size? */
+    public boolean preferHashAggregate(long size, int nGroupBy) {
+        return (costHashAggregate(size, nGroupBy).getCost() < costSort(size).getCost());
+    }
+
     /** Estimate cost of scanning the whole group. */
     // TODO: Need to account for tables actually wanted?
     public CostEstimate costGroupScan(Group group) {
@@ -94,6 +94,20 @@ public abstract class CostModel
         return nRows * SORT_LIMIT_PER_ROW * (1 + sortFields * SORT_LIMIT_PER_FIELD_FACTOR);
     }
 
+    public double hashAggregate(int nRows, int nGroupBy, long memoryLimit)
+    {
+        double cost = nRows * (HASH_AGGREGATE_PER_ROW + nGroupBy * HASH_AGGREGATE_PER_FIELD);
+        double memory = (double)nRows * (HASH_AGGREGATE_GROUP_BYTES + nGroupBy * HASH_AGGREGATE_FIELD_BYTES);
+        if (memory > memoryLimit) {
+            // Rows for the groups that did not fit are written out and
+            // read back once for each level of partitioning.
+            double spilled = 1.0 - memoryLimit / memory;
+            double levels = Math.ceil(Math.log(memory / memoryLimit) / Math.log(HASH_SPILL_PARTITIONS));
+            cost += nRows * spilled * levels * HASH_SPILL_PER_ROW;
+        }
+        return cost;
+    }
+
     public double select(int nRows)
     {
         return nRows * (SELECT_PER_ROW + EXPRESSION_PER_FIELD);
@@ -56,5 +56,14 @@ public interface CostModelMeasurements
     final double HASH_TABLE_SCAN_PER_ROW =  .18;
     final double HASH_TABLE_DIFF_PER_JOIN = .144;
     final double HASH_TABLE_COLUMN_COUNT_OFFSET = .0001;
+    // Estimated from Select_HashTableCT load costs plus one aggregator call per row.
+    final double HASH_AGGREGATE_PER_ROW = 1.5;
+    final double HASH_AGGREGATE_PER_FIELD = .144;
+    // Memory per group, matching what Aggregate_Hashed charges against fdbsql.sort.memory.
+    final double HASH_AGGREGATE_GROUP_BYTES = 64;
+    final double HASH_AGGREGATE_FIELD_BYTES = 40;
+    // Writing a row to a spill partition and reading it back costs about what sorting it does.
+    final double HASH_SPILL_PER_ROW = SORT_PER_ROW * SORT_MIXED_MODE_FACTOR;
+    final double HASH_SPILL_PARTITIONS = 16;
 
 }
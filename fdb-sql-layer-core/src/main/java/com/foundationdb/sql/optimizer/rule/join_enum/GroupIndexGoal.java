@@ -1452,7 +1452,7 @@ public class GroupIndexGoal implements Comparator<BaseScan>
             return false;
         int nequals = equalityComparands.size();
         Index index = indexScan.getIndex();
-        if (index.isUnique() && (nequals >= index.getKeyColumns().size()))
+        if (index.isUnique() && (nequals >= index.getUniqueColumnCount()))
             return true;
         if (index.isGroupIndex())
             return false;
@@ -1467,7 +1467,7 @@ public class GroupIndexGoal implements Comparator<BaseScan>
         find_index:             // Find a unique index all of whose columns are equaled.
         for (TableIndex otherIndex : tableIndex.getTable().getIndexes()) {
             if (!otherIndex.isUnique()) continue;
-            for (IndexColumn otherColumn : otherIndex.getKeyColumns()) {
+            for (IndexColumn otherColumn : otherIndex.getKeyColumns().subList(0, otherIndex.getUniqueColumnCount())) {
                 if (!equalityColumns.contains(otherColumn.getColumn()))
                     continue find_index;
             }
@@ -1494,7 +1494,8 @@ public class GroupIndexGoal implements Comparator<BaseScan>
             installConditions(indexScan.getConditions(), conditionSources);
             conditionsToRemove = indexScan.getConditions();
             if (sortAllowed)
-                queryGoal.installOrderEffectiveness(indexScan.getOrderEffectiveness());
+                queryGoal.installOrderEffectiveness(indexScan.getOrderEffectiveness(),
+                                                    scan.getCostEstimate());
         }
         else {
             if (scan instanceof GroupLoopScan) {
@@ -1521,7 +1522,8 @@ public class GroupIndexGoal implements Comparator<BaseScan>
                 conditionsToRemove = new ConditionList();
             }
             if (sortAllowed)
-                queryGoal.installOrderEffectiveness(IndexScan.OrderEffectiveness.NONE);
+                queryGoal.installOrderEffectiveness(IndexScan.OrderEffectiveness.NONE,
+                                                    scan.getCostEstimate());
         }
         return new JoinAndIndexPicker.Plan.JoinableWithConditionsToRemove(result, conditionsToRemove);
     }
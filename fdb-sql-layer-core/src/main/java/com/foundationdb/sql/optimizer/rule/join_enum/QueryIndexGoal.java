@@ -116,8 +116,11 @@ public class QueryIndexGoal
 
     /** Change GROUP BY, and ORDER BY upstream of <code>node</code> as
      * a consequence of <code>orderEffectiveness</code> being used.
+     * <code>inputCost</code>, if known, decides between sorting and
+     * hashing for a GROUP BY or DISTINCT that is not already ordered.
      */
-    public void installOrderEffectiveness(OrderEffectiveness orderEffectiveness) {
+    public void installOrderEffectiveness(OrderEffectiveness orderEffectiveness,
+                                          CostEstimate inputCost) {
         if (grouping != null) {
             AggregateSource.Implementation implementation;
             switch (orderEffectiveness) {
@@ -129,7 +132,12 @@ public class QueryIndexGoal
                 implementation = AggregateSource.Implementation.PREAGGREGATE_RESORT;
                 break;
             default:
-                implementation = AggregateSource.Implementation.SORT;
+                if ((ordering == null) && (inputCost != null) &&
+                    getCostEstimator().preferHashAggregate(inputCost.getRowCount(),
+                                                           grouping.getNGroupBy()))
+                    implementation = AggregateSource.Implementation.HASH;
+                else
+                    implementation = AggregateSource.Implementation.SORT;
                 break;
             }
             grouping.setImplementation(implementation);
@@ -148,7 +156,13 @@ public class QueryIndexGoal
                 implementation = Distinct.Implementation.PRESORTED;
                 break;
             default:
-                implementation = Distinct.Implementation.SORT;
+                // Removing duplicates is the same work as grouping by every column.
+                if ((ordering == null) && (inputCost != null) &&
+                    getCostEstimator().preferHashAggregate(inputCost.getRowCount(),
+                                                           projectDistinct.getFields().size()))
+                    implementation = Distinct.Implementation.HASH;
+                else
+                    implementation = Distinct.Implementation.SORT;
                 break;
             }
             distinct.setImplementation(implementation);
@@ -18,10 +18,13 @@
 package com.foundationdb.sql.server;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class CacheCounters {
     private final AtomicInteger hits = new AtomicInteger(0);
     private final AtomicInteger misses = new AtomicInteger(0);
+    private final AtomicInteger evictions = new AtomicInteger(0);
+    private final AtomicLong weight = new AtomicLong(0);
 
     public void incrementHits() {
         hits.incrementAndGet();
@@ -31,6 +34,14 @@ public class CacheCounters {
         misses.incrementAndGet();
     }
 
+    public void incrementEvictions() {
+        evictions.incrementAndGet();
+    }
+
+    public void addWeight(long delta) {
+        weight.addAndGet(delta);
+    }
+
     public int getHits() {
         return hits.get();
     }
@@ -39,8 +50,18 @@ public class CacheCounters {
         return misses.get();
     }
 
+    public int getEvictions() {
+        return evictions.get();
+    }
+
+    /** Total weight currently held by the caches sharing these counters. */
+    public long getWeight() {
+        return weight.get();
+    }
+
     public void reset() {
         hits.set(0);
         misses.set(0);
+        evictions.set(0);
     }
 }
@@ -0,0 +1,298 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.server;
+
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.common.types.StringAttribute;
+import com.foundationdb.server.types.common.types.TString;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A statement with its literals replaced by parameters, so that ad-hoc
+ * queries differing only in constants can share a plan.
+ *
+ * This is deliberately conservative and works on the text, before
+ * parsing. Only integer and string literals that are the right-hand
+ * side of <code>=</code> or <code>&lt;&gt;</code>, or members of an
+ * <code>IN</code> list, are replaced, and then only when nothing binds
+ * more tightly after them. Range bounds, <code>LIMIT</code>, typed
+ * literals like <code>DATE '...'</code> and everything in the select
+ * list keep their values, since the plan can depend on them: the
+ * optimizer only has average selectivity for a parameter, whereas for a
+ * range it reads the histogram. For the same reason, a plan is not
+ * shared when an equality parameter turns out to be compared with an
+ * index column whose values are skewed.
+ */
+public class NormalizedStatement
+{
+    private static final Set<String> STATEMENTS = new HashSet<>(Arrays.asList(
+        "SELECT", "UPDATE", "DELETE"
+    ));
+    private static final Set<String> FOLLOWING_KEYWORDS = new HashSet<>(Arrays.asList(
+        "AND", "OR", "THEN", "WHERE", "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET",
+        "UNION", "EXCEPT", "INTERSECT", "RETURNING", "FOR"
+    ));
+    private static final String OPERATOR_CHARS = "<>=!";
+    // Longest integer that always fits in a BIGINT.
+    private static final int MAX_INTEGER_DIGITS = 18;
+
+    private final String sql;
+    private final String cacheKey;
+    private final List<String> literals;
+    private final boolean[] numeric;
+
+    /** Parameterize <code>sql</code>, or return <code>null</code> if
+     * it has no literals that can be replaced safely. */
+    public static NormalizedStatement normalize(String sql) {
+        int length = sql.length();
+        StringBuilder normalized = new StringBuilder(length);
+        List<String> literals = new ArrayList<>();
+        StringBuilder kinds = new StringBuilder();
+        // For each open parenthesis, whether it starts an IN list.
+        Deque<Boolean> parens = new ArrayDeque<>();
+        String first = null, prev = null;
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            char ch = sql.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+                continue;
+            }
+            if ((ch == '-') && sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = (end < 0) ? length : end + 1;
+                continue;
+            }
+            if ((ch == '/') && sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) return null;
+                i = end + 2;
+                continue;
+            }
+            int start = i;
+            String token;
+            String literal = null;
+            boolean isNumber = false;
+            if ((ch == '\'') || (ch == '"')) {
+                StringBuilder str = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= length) return null;
+                    char c = sql.charAt(i++);
+                    if (c == ch) {
+                        if ((i < length) && (sql.charAt(i) == ch)) {
+                            str.append(ch);
+                            i++;
+                        }
+                        else
+                            break;
+                    }
+                    else
+                        str.append(c);
+                }
+                token = String.valueOf(ch);
+                if (ch == '\'')
+                    literal = str.toString();
+            }
+            else if (Character.isDigit(ch) ||
+                     ((ch == '.') && (i + 1 < length) && Character.isDigit(sql.charAt(i + 1)))) {
+                while ((i < length) && (Character.isLetterOrDigit(sql.charAt(i)) || (sql.charAt(i) == '.')))
+                    i++;
+                token = sql.substring(start, i);
+                literal = token;
+                isNumber = true;
+            }
+            else if (Character.isLetter(ch) || (ch == '_')) {
+                while ((i < length) && isIdentifierPart(sql.charAt(i)))
+                    i++;
+                token = sql.substring(start, i).toUpperCase();
+            }
+            else if ((ch == '$') || (ch == '?')) {
+                // Already has parameters (or dollar quoting).
+                return null;
+            }
+            else if (ch == ';') {
+                // Only one statement.
+                if (!sql.substring(i + 1).trim().isEmpty()) return null;
+                i++;
+                token = ";";
+            }
+            else if (OPERATOR_CHARS.indexOf(ch) >= 0) {
+                while ((i < length) && (OPERATOR_CHARS.indexOf(sql.charAt(i)) >= 0))
+                    i++;
+                token = sql.substring(start, i);
+            }
+            else {
+                i++;
+                token = String.valueOf(ch);
+            }
+
+            if (first == null) {
+                first = token;
+                if (!STATEMENTS.contains(first)) return null;
+            }
+            if (literal != null) {
+                if (isReplaceable(prev, parens) &&
+                    (!isNumber || isInteger(literal)) &&
+                    isDelimited(sql, i)) {
+                    normalized.append(sql, copied, start).append('$').append(literals.size() + 1);
+                    copied = i;
+                    literals.add(literal);
+                    kinds.append(isNumber ? 'N' : 'S');
+                }
+            }
+            else if (token.equals("(")) {
+                parens.push("IN".equals(prev));
+            }
+            else if (token.equals(")")) {
+                if (parens.isEmpty()) return null;
+                parens.pop();
+            }
+            else if (token.equals("SELECT") && "(".equals(prev) && !parens.isEmpty() && parens.peek()) {
+                // IN (SELECT ...) is a subquery, not a list.
+                parens.pop();
+                parens.push(Boolean.FALSE);
+            }
+            prev = token;
+        }
+        if (literals.isEmpty()) return null;
+        normalized.append(sql, copied, length);
+        return new NormalizedStatement(normalized.toString(), kinds.toString(), literals);
+    }
+
+    private static boolean isIdentifierPart(char ch) {
+        return Character.isLetterOrDigit(ch) || (ch == '_') || (ch == '$');
+    }
+
+    private static boolean isReplaceable(String prev, Deque<Boolean> parens) {
+        if ("=".equals(prev) || "<>".equals(prev) || "!=".equals(prev))
+            return true;
+        return (!parens.isEmpty() && parens.peek() &&
+                ("(".equals(prev) || ",".equals(prev)));
+    }
+
+    private static boolean isInteger(String literal) {
+        if (literal.length() > MAX_INTEGER_DIGITS) return false;
+        for (int i = 0; i < literal.length(); i++) {
+            if (!Character.isDigit(literal.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /** Is the literal ending at <code>i</code> followed by something
+     * that cannot make it part of a bigger expression? */
+    private static boolean isDelimited(String sql, int i) {
+        int length = sql.length();
+        while (i < length) {
+            if (Character.isWhitespace(sql.charAt(i))) {
+                i++;
+            }
+            else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = (end < 0) ? length : end + 1;
+            }
+            else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) return false;
+                i = end + 2;
+            }
+            else
+                break;
+        }
+        if (i >= length) return true;
+        char ch = sql.charAt(i);
+        if ((ch == ',') || (ch == ')') || (ch == ';'))
+            return true;
+        if (Character.isLetter(ch)) {
+            int start = i;
+            while ((i < length) && isIdentifierPart(sql.charAt(i)))
+                i++;
+            return FOLLOWING_KEYWORDS.contains(sql.substring(start, i).toUpperCase());
+        }
+        return false;
+    }
+
+    protected NormalizedStatement(String sql, String kinds, List<String> literals) {
+        this.sql = sql;
+        // Not valid SQL, so never the same as some statement's own text.
+        this.cacheKey = sql + '\0' + kinds;
+        this.literals = literals;
+        this.numeric = new boolean[literals.size()];
+        for (int i = 0; i < numeric.length; i++) {
+            numeric[i] = (kinds.charAt(i) == 'N');
+        }
+    }
+
+    /** The statement with <code>$1</code>, <code>$2</code>, ... in place of literals. */
+    public String getSQL() {
+        return sql;
+    }
+
+    /** Key for the statement cache, which also distinguishes the kinds of literal. */
+    public String getCacheKey() {
+        return cacheKey;
+    }
+
+    public int getParameterCount() {
+        return literals.size();
+    }
+
+    /** The literal's value, as text and without quotes. */
+    public String getLiteral(int index) {
+        return literals.get(index);
+    }
+
+    /** Can the literal be bound to a parameter of the given type
+     * with the same result as comparing the literal itself? */
+    public boolean canBind(int index, TInstance type) {
+        if (type == null)
+            return false;
+        String literal = literals.get(index);
+        if (numeric[index]) {
+            // Only signed types whose range is checked here. The
+            // literal would be converted to a smaller, unsigned or date
+            // / time parameter, and then not compare as the number.
+            if (type.typeClass() == MNumeric.INT)
+                return Long.parseLong(literal) <= Integer.MAX_VALUE;
+            else if (type.typeClass() == MNumeric.BIGINT)
+                return true;    // Never more than MAX_INTEGER_DIGITS.
+            else
+                return false;
+        }
+        else {
+            // Anything else would be cast, and too long a string truncated.
+            return ((type.typeClass() instanceof TString) &&
+                    (literal.length() <= type.attribute(StringAttribute.MAX_LENGTH)));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return sql + " " + literals;
+    }
+}
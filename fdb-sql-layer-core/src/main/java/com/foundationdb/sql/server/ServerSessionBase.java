@@ -20,6 +20,7 @@ package com.foundationdb.sql.server;
 import com.foundationdb.ais.model.ForeignKey;
 import com.foundationdb.qp.operator.QueryContext;
 import com.foundationdb.qp.operator.StoreAdapterHolder;
+import com.foundationdb.qp.util.RowSpillFile;
 import com.foundationdb.server.error.AkibanInternalException;
 import com.foundationdb.server.error.ImplicitlyCommittedException;
 import com.foundationdb.server.error.InvalidOperationException;
@@ -140,6 +141,20 @@ public abstract class ServerSessionBase extends AISBinderContext implements Serv
                 queryTimeoutMilli = (long)(Double.parseDouble(value) * 1000);
             return true;
         }
+        if ("parallelism".equals(key)) {
+            if (value != null) {
+                int parallelism;
+                try {
+                    parallelism = Integer.parseInt(value.trim());
+                }
+                catch (NumberFormatException ex) {
+                    parallelism = 0;
+                }
+                if (parallelism < 1)
+                    throw new InvalidParameterValueException("'" + value + "' for parallelism");
+            }
+            return true;
+        }
         if ("transactionPeriodicallyCommit".equals(key)) {
             transactionPeriodicallyCommit = ServerTransaction.PeriodicallyCommit.fromProperty(value);
             return true;
@@ -199,8 +214,13 @@ public abstract class ServerSessionBase extends AISBinderContext implements Serv
 
     @Override
     public Properties getCompilerProperties() {
-        if (compilerProperties == null)
+        if (compilerProperties == null) {
             compilerProperties = reqs.config().deriveProperties(COMPILER_PROPERTIES_PREFIX);
+            // Cost hashing against the memory the operators will actually get.
+            if (compilerProperties.getProperty(CostEstimator.HASH_MEMORY_PROPERTY) == null)
+                compilerProperties.setProperty(CostEstimator.HASH_MEMORY_PROPERTY,
+                                               reqs.config().getProperty(RowSpillFile.MEMORY_PROPERTY));
+        }
         return compilerProperties;
     }
 
@@ -399,6 +419,9 @@ public abstract class ServerSessionBase extends AISBinderContext implements Serv
             case REQUIRED_WRITE:
                 throw new NoTransactionInProgressException();
             case READ:
+                transaction = new ServerTransaction(this, true, true, transactionDefaultIsolationLevel, ServerTransaction.PeriodicallyCommit.OFF);
+                localTransaction = true;
+                break;
             case NEW:
             case IMPLICIT_COMMIT_AND_NEW:
                 transaction = new ServerTransaction(this, true, transactionDefaultIsolationLevel, ServerTransaction.PeriodicallyCommit.OFF);
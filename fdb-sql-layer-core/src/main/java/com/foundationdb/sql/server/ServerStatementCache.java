@@ -17,50 +17,172 @@
 
 package com.foundationdb.sql.server;
 
-import com.foundationdb.server.util.LRUCacheMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Cache of parsed statements.
+ *
+ * Lookups do not lock: they go straight to a concurrent map and just
+ * mark the entry as referenced. Eviction is approximate LRU (CLOCK):
+ * when a put takes the total weight over capacity, the hand goes
+ * around the entries in insertion order, giving referenced ones
+ * another lap and evicting the first unreferenced one. After two laps,
+ * it evicts what it comes to regardless, so that concurrent lookups
+ * cannot keep it going. Only puts, which follow a miss and so a full
+ * compile, take the lock, and they hold it for time proportional to
+ * what they evict.
+ *
+ * Capacity is in units of {@link Weigher} weight, which is one per
+ * statement unless a weigher says otherwise.
  */
 public class ServerStatementCache<T extends ServerStatement>
 {
+    public interface Weigher<T> {
+        /** A weight, at least one, roughly proportional to memory held. */
+        public int weigh(String sql, T stmt);
+    }
+
+    static final class Entry<T> {
+        final String sql;
+        final T stmt;
+        final int weight;
+        volatile boolean referenced;
+        // Neighbors on the clock, guarded by it.
+        Entry<T> prev, next;
+
+        Entry(String sql, T stmt, int weight) {
+            this.sql = sql;
+            this.stmt = stmt;
+            this.weight = weight;
+        }
+    }
+
     private final CacheCounters counters;
-    private final LRUCacheMap<String,T> cache;
+    private final Weigher<? super T> weigher;
+    private final ConcurrentMap<String,Entry<T>> cache = new ConcurrentHashMap<>();
+    // The clock is a ring of entries in insertion order around this one,
+    // which holds nothing. The ring, and the size and weight of what it
+    // holds, are guarded by it.
+    private final Entry<T> clock = new Entry<>(null, null, 0);
+    private int size;
+    private long weight;
+    private volatile int capacity;
 
     public ServerStatementCache(CacheCounters counters, int size) {
+        this(counters, size, null);
+    }
+
+    public ServerStatementCache(CacheCounters counters, int size, Weigher<? super T> weigher) {
         this.counters = counters;
-        this.cache = new LRUCacheMap<>(size);
+        this.capacity = size;
+        this.weigher = weigher;
+        clock.prev = clock.next = clock;
     }
 
     public int getCapacity() {
-        return cache.getCapacity();
+        return capacity;
     }
 
-    public synchronized void setCapacity(int capacity) {
-        cache.setCapacity(capacity);
-        cache.clear();
+    public void setCapacity(int capacity) {
+        synchronized (clock) {
+            this.capacity = capacity;
+            clear();
+        }
     }
 
-    public synchronized T get(String sql) {
-        T entry = cache.get(sql);
-        if (entry != null)
+    public T get(String sql) {
+        Entry<T> entry = cache.get(sql);
+        if (entry != null) {
+            // Only write when it changes, so hot entries stay shared in every core's cache.
+            if (!entry.referenced)
+                entry.referenced = true;
             counters.incrementHits();
-        else
+            return entry.stmt;
+        }
+        else {
             counters.incrementMisses();
-        return entry;
+            return null;
+        }
     }
 
-    public synchronized void put(String sql, T stmt) {
-        // TODO: Count number of times this is non-null, meaning that
-        // two threads computed the same statement?
-        cache.put(sql, stmt);
+    public void put(String sql, T stmt) {
+        int entryWeight = (weigher == null) ? 1 : Math.max(1, weigher.weigh(sql, stmt));
+        Entry<T> entry = new Entry<>(sql, stmt, entryWeight);
+        synchronized (clock) {
+            if (entryWeight > capacity)
+                return;
+            // TODO: Count number of times this is non-null, meaning that
+            // two threads computed the same statement?
+            Entry<T> old = cache.put(sql, entry);
+            if (old != null) {
+                unlink(old);
+                addWeight(-old.weight);
+            }
+            linkLast(entry);
+            addWeight(entryWeight);
+            int passes = 2 * size;
+            while (weight > capacity) {
+                Entry<T> hand = clock.next;
+                if ((hand == entry) || (hand.referenced && (passes > 0))) {
+                    // Never evict what was just added; the next lap will find something else.
+                    hand.referenced = false;
+                    unlink(hand);
+                    linkLast(hand);
+                    passes--;
+                }
+                else {
+                    unlink(hand);
+                    cache.remove(hand.sql, hand);
+                    addWeight(-hand.weight);
+                    counters.incrementEvictions();
+                }
+            }
+        }
     }
 
-    public synchronized void invalidate() {
-        cache.clear();
+    public void invalidate() {
+        synchronized (clock) {
+            clear();
+        }
     }
 
-    public synchronized void reset() {
+    public void reset() {
+        synchronized (clock) {
+            clear();
+        }
+    }
+
+    public long getWeight() {
+        synchronized (clock) {
+            return weight;
+        }
+    }
+
+    private void clear() {
         cache.clear();
+        clock.prev = clock.next = clock;
+        size = 0;
+        addWeight(-weight);
+    }
+
+    private void linkLast(Entry<T> entry) {
+        entry.prev = clock.prev;
+        entry.next = clock;
+        clock.prev.next = entry;
+        clock.prev = entry;
+        size++;
+    }
+
+    private void unlink(Entry<T> entry) {
+        entry.prev.next = entry.next;
+        entry.next.prev = entry.prev;
+        entry.prev = entry.next = null;
+        size--;
+    }
+
+    private void addWeight(long delta) {
+        weight += delta;
+        counters.addWeight(delta);
     }
 }
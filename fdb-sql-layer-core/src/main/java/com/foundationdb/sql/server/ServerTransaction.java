@@ -55,9 +55,22 @@ public class ServerTransaction
     public ServerTransaction(ServerSession server, 
                              boolean readOnly, IsolationLevel isolationLevel,
                              PeriodicallyCommit periodicallyCommit) {
+        this(server, readOnly, false, isolationLevel, periodicallyCommit);
+    }
+
+    /** Begin a new transaction, which if <code>singleStatement</code> is only
+     * for one read only statement and so need not see the very latest data.
+     */
+    public ServerTransaction(ServerSession server, 
+                             boolean readOnly, boolean singleStatement,
+                             IsolationLevel isolationLevel,
+                             PeriodicallyCommit periodicallyCommit) {
         this.session = server.getSession();
         this.txnService = server.getTransactionService();
-        txnService.beginTransaction(session);
+        if (readOnly && singleStatement)
+            txnService.beginReadOnlyTransaction(session);
+        else
+            txnService.beginTransaction(session);
         this.isolationLevel = txnService.setIsolationLevel(session, isolationLevel);
         this.readOnly = readOnly || txnService.isolationLevelRequiresReadOnly(session, false);
         this.periodicallyCommit = periodicallyCommit;
@@ -40,7 +40,10 @@ import com.foundationdb.server.types.value.ValueSource;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.sql.Types;
 import java.util.Collections;
 import java.io.*;
@@ -48,6 +51,8 @@ import java.io.*;
 /** Decode values from external representation into query bindings. */
 public class ServerValueDecoder
 {
+    private static final LocalDate DATE_2000 = new LocalDate(2000, 1, 1);
+
     private final TypesTranslator typesTranslator;
     private final String encoding;
 
@@ -81,55 +86,7 @@ public class ServerValueDecoder
             }
         }
         else {
-            try {
-                switch (type.getBinaryEncoding()) {
-                case BINARY_OCTAL_TEXT:
-                    source = new Value(MBinary.VARBINARY.instance(false), encoded);
-                    break;
-                case INT_8:
-                case INT_16:
-                case INT_32:
-                case INT_64: // Types.BIGINT
-                    // Go by the length sent rather than the implied type.
-                    source = decodeIntegerType(encoded);
-                    break;
-                case FLOAT_32:
-
-                    source = new Value(MApproximateNumber.FLOAT.instance(false), getDataStream(encoded).readFloat());
-                    break;
-                case FLOAT_64:
-                    source = new Value(MApproximateNumber.DOUBLE.instance(false), getDataStream(encoded).readDouble());
-                    break;
-                case BOOLEAN_C:
-                    source = new Value(AkBool.INSTANCE.instance(false), encoded[0] != 0);
-                    break;
-                case TIMESTAMP_INT64_MICROS_2000_NOTZ: // Types.TIMESTAMP
-                    source = decodeTimestampInt64Micros2000NoTZ(encoded);
-                    break;
-                case UUID:
-                    Value value = new Value(AkGUID.INSTANCE.instance(false));
-                    value.putObject(AkGUID.bytesToUUID(encoded, 0));
-                    source = value;
-                    break;
-                // Note: these types had previous implementations, but I couldn't exercise them in tests to verify
-                // either with jdbc or pg8000. If you run into them, try looking at the log for this file, it most
-                // likely has a correct starting point
-                case STRING_BYTES:
-                case TIMESTAMP_FLOAT64_SECS_2000_NOTZ: // Types.TIMESTAMP
-                case DAYS_2000: // DATE
-                case TIME_FLOAT64_SECS_NOTZ: // TIME
-                case TIME_INT64_MICROS_NOTZ: // TIME
-                case DECIMAL_PG_NUMERIC_VAR:
-                default:
-                    throw new UnknownDataTypeException(type.toString());
-                }
-            }
-            catch (UnsupportedEncodingException ex) {
-                throw new UnsupportedCharsetException(encoding);
-            }
-            catch (IOException ex) {
-                throw new AkibanInternalException("IO error reading from byte array", ex);
-            }
+            source = decodeBinary(encoded, type);
         }
         TCast cast = typesRegistryService.getCastsResolver().cast(source.getType(), targetType);
         TExecutionContext context =
@@ -141,6 +98,60 @@ public class ServerValueDecoder
         bindings.setValue(index, target);
     }
 
+    /** Decode the given binary representation into a value of the
+     * type it naturally has, which may still need a cast to get to
+     * <code>type</code>.
+     */
+    public ValueSource decodeBinary(byte[] encoded, ServerType type) {
+        try {
+            switch (type.getBinaryEncoding()) {
+            case BINARY_OCTAL_TEXT:
+                return new Value(MBinary.VARBINARY.instance(false), encoded);
+            case INT_8:
+            case INT_16:
+            case INT_32:
+            case INT_64: // Types.BIGINT
+                // Go by the length sent rather than the implied type.
+                return decodeIntegerType(encoded);
+            case FLOAT_32:
+                return new Value(MApproximateNumber.FLOAT.instance(false), getDataStream(encoded).readFloat());
+            case FLOAT_64:
+                return new Value(MApproximateNumber.DOUBLE.instance(false), getDataStream(encoded).readDouble());
+            case BOOLEAN_C:
+                return new Value(AkBool.INSTANCE.instance(false), encoded[0] != 0);
+            case TIMESTAMP_INT64_MICROS_2000_NOTZ: // Types.TIMESTAMP
+                return decodeTimestampInt64Micros2000NoTZ(encoded);
+            case UUID:
+                Value value = new Value(AkGUID.INSTANCE.instance(false));
+                value.putObject(AkGUID.bytesToUUID(encoded, 0));
+                return value;
+            // These are the inverses of what ServerValueEncoder sends, so
+            // that what binary COPY TO writes, COPY FROM can read back.
+            case STRING_BYTES:
+                return new Value(MString.varchar(), new String(encoded, encoding));
+            case DAYS_2000: // DATE
+                return decodeDays2000(encoded);
+            case TIME_INT64_MICROS_NOTZ: // TIME
+                return decodeTimeInt64MicrosNoTZ(encoded);
+            case DECIMAL_PG_NUMERIC_VAR:
+                return decodePgNumericVar(encoded);
+            // Note: these types had previous implementations, but I couldn't exercise them in tests to verify
+            // either with jdbc or pg8000. If you run into them, try looking at the log for this file, it most
+            // likely has a correct starting point
+            case TIMESTAMP_FLOAT64_SECS_2000_NOTZ: // Types.TIMESTAMP
+            case TIME_FLOAT64_SECS_NOTZ: // TIME
+            default:
+                throw new UnknownDataTypeException(type.toString());
+            }
+        }
+        catch (UnsupportedEncodingException ex) {
+            throw new UnsupportedCharsetException(encoding);
+        }
+        catch (IOException ex) {
+            throw new AkibanInternalException("IO error reading from byte array", ex);
+        }
+    }
+
     private ValueSource decodeTimestampInt64Micros2000NoTZ(byte[] encoded) throws IOException {
         long micros = getDataStream(encoded).readLong();
         long secs = micros / 1000000;
@@ -151,6 +162,43 @@ public class ServerValueDecoder
         return source;
     }
 
+    private ValueSource decodeDays2000(byte[] encoded) throws IOException {
+        LocalDate date = DATE_2000.plusDays(getDataStream(encoded).readInt());
+        return new Value(MDateAndTime.DATE.instance(false),
+                         MDateAndTime.encodeDate(date.getYear(), date.getMonthOfYear(), date.getDayOfMonth()));
+    }
+
+    private ValueSource decodeTimeInt64MicrosNoTZ(byte[] encoded) throws IOException {
+        long secs = getDataStream(encoded).readLong() / 1000000;
+        return new Value(MDateAndTime.TIME.instance(false),
+                         MDateAndTime.encodeTime(secs / 3600, (secs / 60) % 60, secs % 60, null));
+    }
+
+    private static final int NUMERIC_NEG = 0x4000;
+    private static final int NUMERIC_NAN = 0xC000;
+    private static final BigInteger NUMERIC_BASE = BigInteger.valueOf(10000);
+
+    private ValueSource decodePgNumericVar(byte[] encoded) throws IOException {
+        DataInputStream stream = getDataStream(encoded);
+        int ndigits = stream.readShort();
+        int weight = stream.readShort();
+        int sign = stream.readShort() & 0xFFFF;
+        int dscale = stream.readShort();
+        if (sign == NUMERIC_NAN) {
+            // Let the cast complain in the usual way.
+            return new Value(MString.varchar(), "NaN");
+        }
+        BigInteger unscaled = BigInteger.ZERO;
+        for (int i = 0; i < ndigits; i++) {
+            unscaled = unscaled.multiply(NUMERIC_BASE).add(BigInteger.valueOf(stream.readShort()));
+        }
+        BigDecimal decimal = new BigDecimal(unscaled, (ndigits - 1 - weight) * 4);
+        decimal = decimal.setScale(dscale, RoundingMode.HALF_UP);
+        if (sign == NUMERIC_NEG)
+            decimal = decimal.negate();
+        return new Value(MString.varchar(), decimal.toPlainString());
+    }
+
     public ValueSource decodeIntegerType(byte[] encoded) throws IOException {
         switch (encoded.length) {
         case 1:
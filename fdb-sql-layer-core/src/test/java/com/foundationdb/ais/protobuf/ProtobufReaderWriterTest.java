@@ -445,6 +445,30 @@ public class ProtobufReaderWriterTest {
         assertEquals("v indexed length", INDEXED_LENGTH, table.getIndex("v").getKeyColumns().get(0).getIndexedLength());
     }
 
+    @Test
+    public void indexIncludedColumns() {
+        final String TABLE = "t";
+        AISBuilder builder = new AISBuilder();
+        builder.table(SCHEMA, TABLE);
+        builder.column(SCHEMA, TABLE, "k", 0, typesRegistry().getTypeClass("MCOMPAT", "INT").instance(false), false, null, null);
+        builder.column(SCHEMA, TABLE, "v", 1, typesRegistry().getTypeClass("MCOMPAT", "VARCHAR").instance(32, true), false, null, null);
+        builder.index(SCHEMA, TABLE, "k_v", true, false, new TableName(SCHEMA, "k_v"));
+        builder.indexColumn(SCHEMA, TABLE, "k_v", "k", 0, true, null);
+        builder.indexColumn(SCHEMA, TABLE, "k_v", "v", 1, true, null);
+        builder.akibanInformationSchema().getTable(SCHEMA, TABLE).getIndex("k_v").setIncludedColumnCount(1);
+        builder.createGroup(TABLE, SCHEMA);
+        builder.addTableToGroup(TABLE, SCHEMA, TABLE);
+        builder.basicSchemaIsComplete();
+        builder.groupingIsComplete();
+
+        AkibanInformationSchema outAIS = writeAndRead(builder.akibanInformationSchema());
+        Index index = outAIS.getTable(SCHEMA, TABLE).getIndex("k_v");
+        assertNotNull("has k_v index", index);
+        assertEquals("key columns", 2, index.getKeyColumns().size());
+        assertEquals("included columns", 1, index.getIncludedColumnCount());
+        assertEquals("unique columns", 1, index.getUniqueColumnCount());
+    }
+
     @Test
     public void maxStorageSizeAndPrefixSize() {
         final String TABLE = "t";
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.util.RowSpillFile;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.types.TAggregator;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.mcompat.aggr.MCount;
+import com.foundationdb.server.types.mcompat.aggr.MSum;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import static com.foundationdb.qp.operator.API.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Aggregate_HashedTest {
+
+    private static final List<TAggregator> SUM_COUNT = Arrays.asList(MSum.INSTANCES[2], MCount.INSTANCES[2]);
+    private static final List<TInstance> SUM_COUNT_TYPES = Arrays.asList(MNumeric.BIGINT.instance(true),
+                                                                         MNumeric.BIGINT.instance(false));
+    private static final List<Object> NO_OPTIONS = Arrays.<Object>asList(null, null);
+
+    @Test
+    public void testUnsortedGroups() {
+        Operator input = new TestOperator(new RowsBuilder(OperatorTestHelper.schema(),
+                                                          MString.varchar(), MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true))
+            .row("b", 1L, 1L)
+            .row("a", 2L, 2L)
+            .row("c", 3L, null)
+            .row("a", 4L, 4L)
+            .row("b", 5L, 5L)
+            .row("a", 6L, 6L)
+            .row(null, 7L, 7L)
+            .row(null, 8L, null)
+        );
+        Operator plan = aggregate_Hashed(input, input.rowType(), 1, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+        Map<String,String> actual = groups(OperatorTestHelper.execute(plan));
+        Map<String,String> expected = new TreeMap<>();
+        expected.put("a", "12,3");
+        expected.put("b", "6,2");
+        expected.put("c", "3,0");
+        expected.put("null", "15,1");
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testParallelGroups() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(),
+                                           MString.varchar(), MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true));
+        Map<String,String> expected = new TreeMap<>();
+        for (long i = 0; i < 100; i++) {
+            long sum = 0;
+            for (long j = 0; j < 20; j++) {
+                rows.row("g" + i, j, j);
+                sum += j;
+            }
+            expected.put("g" + i, sum + ",20");
+        }
+        Operator input = new TestOperator(rows);
+        Operator plan = aggregate_Hashed(input, input.rowType(), 1, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+        Map<String,String> settings = new HashMap<>();
+        settings.put(WorkerPool.PARALLELISM_SETTING, "4");
+        Map<String,String> actual = groups(OperatorTestHelper.execute(plan, OperatorTestHelper.contextWithSettings(settings)));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSpilledGroups() {
+        Map<String,String> expected = new TreeMap<>();
+        Operator plan = spillPlan(expected);
+        Map<String,String> actual = groups(OperatorTestHelper.execute(plan, OperatorTestHelper.contextWithSettings(new HashMap<String,String>(), spillProperties())));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testParallelSpilledGroups() {
+        Map<String,String> expected = new TreeMap<>();
+        Operator plan = spillPlan(expected);
+        Map<String,String> settings = new HashMap<>();
+        settings.put(WorkerPool.PARALLELISM_SETTING, "4");
+        Map<String,String> actual = groups(OperatorTestHelper.execute(plan, OperatorTestHelper.contextWithSettings(settings, spillProperties())));
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testNoGroupBy() {
+        Operator input = new TestOperator(new RowsBuilder(OperatorTestHelper.schema(),
+                                                          MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true))
+            .row(1L, 1L)
+            .row(2L, null)
+            .row(3L, 3L)
+        );
+        Operator plan = aggregate_Hashed(input, input.rowType(), 0, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+        List<Row> rows = OperatorTestHelper.execute(plan);
+        assertEquals(1, rows.size());
+        assertEquals(6L, rows.get(0).value(0).getInt64());
+        assertEquals(2L, rows.get(0).value(1).getInt64());
+    }
+
+    @Test
+    public void testEmptyNoGroupBy() {
+        Operator input = new TestOperator(new RowsBuilder(OperatorTestHelper.schema(),
+                                                          MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true)));
+        Operator plan = aggregate_Hashed(input, input.rowType(), 0, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+        List<Row> rows = OperatorTestHelper.execute(plan);
+        assertEquals(1, rows.size());
+        assertTrue(rows.get(0).value(0).isNull());
+        assertEquals(0L, rows.get(0).value(1).getInt64());
+    }
+
+    @Test
+    public void testEmptyGroupBy() {
+        Operator input = new TestOperator(new RowsBuilder(OperatorTestHelper.schema(),
+                                                          MString.varchar(), MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true)));
+        Operator plan = aggregate_Hashed(input, input.rowType(), 1, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+        assertEquals(0, OperatorTestHelper.execute(plan).size());
+    }
+
+    // Groups interleaved, so that rows of most groups arrive after the
+    // memory limit has been reached.
+    private static Operator spillPlan(Map<String,String> expected) {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(),
+                                           MString.varchar(), MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true));
+        for (long j = 0; j < 5; j++) {
+            for (long i = 0; i < 200; i++) {
+                rows.row("g" + i, i + j, j);
+            }
+        }
+        for (long i = 0; i < 200; i++) {
+            expected.put("g" + i, (i * 5 + 10) + ",5");
+        }
+        Operator input = new TestOperator(rows);
+        return aggregate_Hashed(input, input.rowType(), 1, SUM_COUNT, SUM_COUNT_TYPES, NO_OPTIONS);
+    }
+
+    static Map<String,String> spillProperties() {
+        Map<String,String> properties = new HashMap<>();
+        properties.put(RowSpillFile.MEMORY_PROPERTY, "1000");
+        properties.put(RowSpillFile.TMP_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        return properties;
+    }
+
+    private static Map<String,String> groups(List<Row> rows) {
+        Map<String,String> result = new TreeMap<>();
+        for (Row row : rows) {
+            String key = row.value(0).isNull() ? "null" : row.value(0).getString();
+            String sum = row.value(1).isNull() ? "null" : Long.toString(row.value(1).getInt64());
+            assertEquals("duplicate group " + key, null, result.put(key, sum + "," + row.value(2).getInt64()));
+        }
+        return result;
+    }
+}
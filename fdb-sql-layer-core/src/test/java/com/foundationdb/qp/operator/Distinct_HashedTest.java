@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import static com.foundationdb.qp.operator.API.*;
+
+import org.junit.Test;
+
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class Distinct_HashedTest {
+
+    @Test
+    public void testDistinct() {
+        Operator input = new TestOperator(new RowsBuilder(MNumeric.INT.instance(true), MString.varchar(), MNumeric.INT.instance(true))
+            .row(2L,"xyz",0L)
+            .row(1L,"abc",0L)
+            .row(3L,"def",null)
+            .row(2L,"xyz",0L)
+            .row(2L,"abc",0L)
+            .row(1L,"abc",0L)
+            .row(3L,"def",null)
+            .row(2L,"xyz",1L)
+            .row(3L,"def",0L)
+        );
+        Operator plan = distinct_Hashed(input, input.rowType());
+        Deque<Row> expected = new RowsBuilder(MNumeric.INT.instance(true), MString.varchar(), MNumeric.INT.instance(true))
+            .row(2L,"xyz",0L)
+            .row(1L,"abc",0L)
+            .row(3L,"def",null)
+            .row(2L,"abc",0L)
+            .row(2L,"xyz",1L)
+            .row(3L,"def",0L)
+            .rows();
+        OperatorTestHelper.check(plan, expected);
+    }
+
+    @Test
+    public void testAllNull() {
+        Operator input = new TestOperator(new RowsBuilder(MNumeric.INT.instance(true), MString.varchar())
+            .row(null,null)
+            .row(null,null)
+            .row(null,"abc")
+            .row(null,null)
+        );
+        Operator plan = distinct_Hashed(input, input.rowType());
+        Deque<Row> expected = new RowsBuilder(MNumeric.INT.instance(true), MString.varchar())
+            .row(null,null)
+            .row(null,"abc")
+            .rows();
+        OperatorTestHelper.check(plan, expected);
+    }
+
+    @Test
+    public void testSpilled() {
+        RowsBuilder rows = new RowsBuilder(MNumeric.INT.instance(true), MString.varchar());
+        Set<String> expected = new TreeSet<>();
+        for (long j = 0; j < 3; j++) {
+            for (long i = 0; i < 300; i++) {
+                rows.row(i % 100, "s" + (i + j) % 150);
+            }
+        }
+        for (long j = 0; j < 3; j++) {
+            for (long i = 0; i < 300; i++) {
+                expected.add((i % 100) + ",s" + (i + j) % 150);
+            }
+        }
+        Operator input = new TestOperator(rows);
+        Operator plan = distinct_Hashed(input, input.rowType());
+        List<Row> output = OperatorTestHelper.execute(plan, OperatorTestHelper.contextWithSettings(new HashMap<String,String>(),
+                                                                                                   Aggregate_HashedTest.spillProperties()));
+        Set<String> actual = new TreeSet<>();
+        for (Row row : output) {
+            assertTrue("duplicate " + row, actual.add(row.value(0).getInt32() + "," + row.value(1).getString()));
+        }
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testEmpty() {
+        Operator input = new TestOperator(new RowsBuilder(MNumeric.INT.instance(true), MString.varchar()));
+        Operator plan = distinct_Hashed(input, input.rowType());
+        OperatorTestHelper.check(plan, new RowsBuilder(MNumeric.INT.instance(true), MString.varchar()).rows());
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.server.types.aksql.aktypes.AkBool;
+import com.foundationdb.server.types.common.funcs.BoolLogic;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import com.foundationdb.server.types.texpressions.BatchPredicate;
+import com.foundationdb.server.types.texpressions.Comparison;
+import com.foundationdb.server.types.texpressions.ExpressionCompiler;
+import com.foundationdb.server.types.texpressions.TComparisonExpression;
+import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
+import com.foundationdb.server.types.texpressions.TPreparedExpression;
+import com.foundationdb.server.types.texpressions.TPreparedField;
+import com.foundationdb.server.types.texpressions.TPreparedFunction;
+import com.foundationdb.server.types.texpressions.TPreparedLiteral;
+import com.foundationdb.server.types.texpressions.TValidatedScalar;
+import com.foundationdb.server.types.value.ValueSource;
+import com.foundationdb.server.types.value.ValueSources;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionCompilerTest {
+
+    @Test
+    public void testIntegerComparisons() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(),
+                                           MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true));
+        Long[] values = { null, -5L, 0L, 3L, Long.MAX_VALUE };
+        for (Long a : values) {
+            for (Long b : values) {
+                rows.row(a, b);
+            }
+        }
+        RowType rowType = rows.rowType();
+        TPreparedExpression left = new TPreparedField(rowType.typeAt(0), 0);
+        TPreparedExpression right = new TPreparedField(rowType.typeAt(1), 1);
+        TPreparedExpression literal = new TPreparedLiteral(MNumeric.BIGINT.instance(false),
+                                                           ValueSources.valuefromObject(3L, MNumeric.BIGINT.instance(false)));
+        for (Comparison comparison : Comparison.values()) {
+            checkSame(new TComparisonExpression(left, comparison, right), rows);
+            checkSame(new TComparisonExpression(left, comparison, literal), rows);
+        }
+    }
+
+    @Test
+    public void testStringsNotCompiled() {
+        TPreparedExpression field = new TPreparedField(MString.varchar(), 0);
+        TPreparedExpression comparison = new TComparisonExpression(field, Comparison.EQ, field);
+        assertSame(comparison, ExpressionCompiler.compile(comparison));
+    }
+
+    @Test
+    public void testBatchComparisons() {
+        RowsBuilder rows = pairs();
+        RowType rowType = rows.rowType();
+        TPreparedExpression left = new TPreparedField(rowType.typeAt(0), 0);
+        TPreparedExpression right = new TPreparedField(rowType.typeAt(1), 1);
+        TPreparedExpression literal = literal(3L);
+        for (Comparison comparison : Comparison.values()) {
+            checkBatch(new TComparisonExpression(left, comparison, right), rows);
+            checkBatch(new TComparisonExpression(left, comparison, literal), rows);
+            checkBatch(new TComparisonExpression(literal, comparison, right), rows);
+        }
+    }
+
+    @Test
+    public void testBatchConjunction() {
+        RowsBuilder rows = pairs();
+        RowType rowType = rows.rowType();
+        TPreparedExpression left = new TPreparedField(rowType.typeAt(0), 0);
+        TPreparedExpression right = new TPreparedField(rowType.typeAt(1), 1);
+        TPreparedExpression and = and(new TComparisonExpression(left, Comparison.GE, literal(0L)),
+                                      new TComparisonExpression(left, Comparison.LT, right));
+        checkBatch(and, rows);
+    }
+
+    @Test
+    public void testBatchNotCompiled() {
+        TPreparedExpression field = new TPreparedField(MString.varchar(), 0);
+        TPreparedExpression strings = new TComparisonExpression(field, Comparison.EQ, field);
+        assertNull(ExpressionCompiler.compileBatch(strings));
+        TPreparedExpression integer = new TPreparedField(MNumeric.BIGINT.instance(true), 1);
+        TPreparedExpression integers = new TComparisonExpression(integer, Comparison.EQ, literal(1L));
+        assertNotNull(ExpressionCompiler.compileBatch(integers));
+        // A conjunction is only as good as its worst term.
+        assertNull(ExpressionCompiler.compileBatch(and(integers, strings)));
+    }
+
+    @Test
+    public void testPureAndTotal() {
+        TPreparedExpression integer = new TPreparedField(MNumeric.BIGINT.instance(true), 0);
+        assertTrue(ExpressionCompiler.isPureAndTotal(integer));
+        assertTrue(ExpressionCompiler.isPureAndTotal(literal(1L)));
+        TPreparedExpression comparison = new TComparisonExpression(integer, Comparison.LT, literal(1L));
+        assertTrue(ExpressionCompiler.isPureAndTotal(ExpressionCompiler.compile(comparison)));
+        // Only once compiled is a comparison known not to fail.
+        assertFalse(ExpressionCompiler.isPureAndTotal(comparison));
+        // A function may fail or have a side effect, whatever its inputs.
+        assertFalse(ExpressionCompiler.isPureAndTotal(and(comparison, comparison)));
+        TPreparedExpression string = new TPreparedField(MString.varchar(), 1);
+        assertFalse(ExpressionCompiler.isPureAndTotal(new TComparisonExpression(string, Comparison.EQ, string)));
+    }
+
+    private static RowsBuilder pairs() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(),
+                                           MNumeric.BIGINT.instance(true), MNumeric.BIGINT.instance(true));
+        Long[] values = { null, -5L, 0L, 3L, Long.MIN_VALUE, Long.MAX_VALUE };
+        for (Long a : values) {
+            for (Long b : values) {
+                rows.row(a, b);
+            }
+        }
+        return rows;
+    }
+
+    private static TPreparedExpression literal(long value) {
+        return new TPreparedLiteral(MNumeric.BIGINT.instance(false),
+                                    ValueSources.valuefromObject(value, MNumeric.BIGINT.instance(false)));
+    }
+
+    private static TPreparedExpression and(TPreparedExpression left, TPreparedExpression right) {
+        return new TPreparedFunction(new TValidatedScalar(BoolLogic.AND), AkBool.INSTANCE.instance(true),
+                                     Arrays.asList(left, right));
+    }
+
+    // The batch selects exactly the rows for which the interpreter gives true.
+    private static void checkBatch(TPreparedExpression interpreted, RowsBuilder rows) {
+        BatchPredicate batch = ExpressionCompiler.compileBatch(interpreted);
+        assertNotNull(interpreted.toString(), batch);
+        Row[] block = rows.rows().toArray(new Row[0]);
+        boolean[] selected = new boolean[block.length];
+        // Rows already rejected stay rejected.
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = (i % 7) != 0;
+        }
+        batch.select(block, block.length, selected);
+        TEvaluatableExpression expected = interpreted.build();
+        for (int i = 0; i < block.length; i++) {
+            String message = interpreted + " " + block[i];
+            if ((i % 7) == 0) {
+                assertFalse(message, selected[i]);
+            }
+            else {
+                expected.with(block[i]);
+                expected.evaluate();
+                assertEquals(message, expected.resultValue().getBoolean(false), selected[i]);
+            }
+        }
+    }
+
+    private static void checkSame(TPreparedExpression interpreted, RowsBuilder rows) {
+        TPreparedExpression compiled = ExpressionCompiler.compile(interpreted);
+        assertNotSame(interpreted, compiled);
+        assertEquals(interpreted.toString(), compiled.toString());
+        TEvaluatableExpression expected = interpreted.build();
+        TEvaluatableExpression actual = compiled.build();
+        for (Row row : rows.rows()) {
+            expected.with(row);
+            expected.evaluate();
+            actual.with(row);
+            actual.evaluate();
+            ValueSource expectedValue = expected.resultValue();
+            ValueSource actualValue = actual.resultValue();
+            String message = interpreted + " " + row;
+            assertEquals(message, expectedValue.isNull(), actualValue.isNull());
+            if (!expectedValue.isNull())
+                assertEquals(message, expectedValue.getBoolean(), actualValue.getBoolean());
+        }
+    }
+}
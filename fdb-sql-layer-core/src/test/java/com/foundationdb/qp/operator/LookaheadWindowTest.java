@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LookaheadWindowTest {
+
+    @Test
+    public void testGrowsOnStalls() {
+        LookaheadWindow window = new LookaheadWindow(1, 10);
+        assertEquals(1, window.size());
+        window.waited(0);
+        assertEquals(1, window.size());
+        window.waited(LookaheadWindow.STALL_NANOS + 1);
+        assertEquals(2, window.size());
+        window.waited(LookaheadWindow.STALL_NANOS + 1);
+        window.waited(LookaheadWindow.STALL_NANOS + 1);
+        assertEquals(8, window.size());
+        assertTrue(window.isAdapting());
+        window.waited(LookaheadWindow.STALL_NANOS + 1);
+        assertEquals(10, window.size());
+        assertFalse(window.isAdapting());
+    }
+
+    @Test
+    public void testFixed() {
+        LookaheadWindow window = new LookaheadWindow(50, 20);
+        assertEquals(20, window.size());
+        assertFalse(window.isAdapting());
+        assertEquals(1, new LookaheadWindow(0, 0).size());
+    }
+}
@@ -30,6 +30,7 @@ import com.foundationdb.qp.row.Row;
 import com.foundationdb.qp.rowtype.IndexRowType;
 import com.foundationdb.qp.rowtype.RowType;
 import com.foundationdb.qp.rowtype.Schema;
+import com.foundationdb.server.service.config.ConfigurationService;
 import com.foundationdb.server.service.session.Session;
 import com.foundationdb.server.service.tree.KeyCreator;
 import com.foundationdb.server.store.Store;
@@ -43,8 +44,11 @@ import org.junit.Assert;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -102,7 +106,10 @@ public final class OperatorTestHelper {
     }
 
     public static Cursor open(Operator plan) {
-        QueryContext queryContext = new SimpleQueryContext(ADAPTER);
+        return open(plan, new SimpleQueryContext(ADAPTER));
+    }
+
+    public static Cursor open(Operator plan, QueryContext queryContext) {
         QueryBindings queryBindings = queryContext.createBindings();
         QueryBindingsCursor queryBindingsCursor = new SingletonQueryBindingsCursor(queryBindings);
         Cursor result = plan.cursor(queryContext, queryBindingsCursor);
@@ -115,8 +122,12 @@ public final class OperatorTestHelper {
     }
 
     public static List<Row> execute(Operator plan) {
+        return execute(plan, new SimpleQueryContext(ADAPTER));
+    }
+
+    public static List<Row> execute(Operator plan, QueryContext queryContext) {
         List<Row> rows = new ArrayList<>();
-        Cursor cursor = open(plan);
+        Cursor cursor = open(plan, queryContext);
         try {
             for(Row row = cursor.next(); row != null; row = cursor.next()) {
                 rows.add(row);
@@ -127,6 +138,30 @@ public final class OperatorTestHelper {
         }
     }
 
+    /** A context whose session settings are <code>settings</code>. */
+    public static QueryContext contextWithSettings(final Map<String,String> settings) {
+        return new SimpleQueryContext(ADAPTER) {
+                @Override
+                public String getCurrentSetting(String key) {
+                    return settings.get(key);
+                }
+            };
+    }
+
+    /** A context whose session settings are <code>settings</code> and
+     * whose configuration properties are <code>properties</code>, for
+     * example to give an operator a small <code>fdbsql.sort.memory</code>.
+     */
+    public static QueryContext contextWithSettings(final Map<String,String> settings,
+                                                   Map<String,String> properties) {
+        return new SimpleQueryContext(new TestAdapter(new TestConfig(properties))) {
+                @Override
+                public String getCurrentSetting(String key) {
+                    return settings.get(key);
+                }
+            };
+    }
+
     public static Schema schema() {
         return new Schema(new com.foundationdb.ais.model.AkibanInformationSchema());
     }
@@ -245,6 +280,11 @@ public final class OperatorTestHelper {
             super(null, null);
         }
 
+        public TestAdapter(ConfigurationService config)
+        {
+            super(null, config);
+        }
+
         @Override
         public IndexRow newIndexRow(IndexRowType indexRowType) {
             throw new UnsupportedOperationException();
@@ -260,4 +300,51 @@ public final class OperatorTestHelper {
             throw new UnsupportedOperationException();
         }
     }
+
+    private static class TestConfig implements ConfigurationService
+    {
+        private final Map<String,String> properties;
+
+        public TestConfig(Map<String,String> properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public String getProperty(String propertyName) {
+            String value = properties.get(propertyName);
+            if (value == null)
+                throw new IllegalArgumentException(propertyName);
+            return value;
+        }
+
+        @Override
+        public Properties deriveProperties(String withPrefix) {
+            Properties result = new Properties();
+            for (Map.Entry<String,String> entry : properties.entrySet()) {
+                if (entry.getKey().startsWith(withPrefix))
+                    result.setProperty(entry.getKey().substring(withPrefix.length()), entry.getValue());
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String,String> getProperties() {
+            return Collections.unmodifiableMap(properties);
+        }
+
+        @Override
+        public long queryTimeoutMilli() {
+            return -1;
+        }
+
+        @Override
+        public void queryTimeoutMilli(long queryTimeoutMilli) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean testing() {
+            return true;
+        }
+    }
 }
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.operator;
+
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import com.foundationdb.server.types.texpressions.Comparison;
+import com.foundationdb.server.types.texpressions.TComparisonExpression;
+import com.foundationdb.server.types.texpressions.TPreparedExpression;
+import com.foundationdb.server.types.texpressions.TPreparedField;
+import com.foundationdb.server.types.texpressions.TPreparedLiteral;
+import com.foundationdb.server.types.value.ValueSources;
+import static com.foundationdb.qp.operator.API.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RowBatchTest {
+
+    @Test
+    public void testFillFromRows() {
+        Operator input = new TestOperator(rows(5));
+        Cursor cursor = OperatorTestHelper.open(input);
+        RowBatch batch = new RowBatch(3);
+        assertEquals(3, batch.fill(cursor));
+        assertTrue(batch.isFull());
+        batch.clear();
+        assertEquals(2, batch.fill(cursor));
+        assertFalse(batch.isFull());
+        assertEquals(3L, batch.get(0).value(0).getInt64());
+        assertEquals(4L, batch.get(1).value(0).getInt64());
+        cursor.closeTopLevel();
+    }
+
+    @Test
+    public void testProjectBatch() {
+        Operator input = new TestOperator(rows(10));
+        RowType inputType = input.rowType();
+        // Swap the columns, so that every projected value must be evaluated.
+        Operator plan = project_Default(input, inputType,
+                                        Arrays.<TPreparedExpression>asList(new TPreparedField(inputType.typeAt(1), 1),
+                                                                           new TPreparedField(inputType.typeAt(0), 0)));
+        Cursor cursor = OperatorTestHelper.open(plan);
+        RowBatch batch = new RowBatch(4);
+        long n = 0;
+        while (true) {
+            batch.clear();
+            batch.fill(cursor);
+            // Every row in the batch keeps its own values.
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals("r" + n, batch.get(i).value(0).getString());
+                assertEquals(n, batch.get(i).value(1).getInt64());
+                n++;
+            }
+            if (!batch.isFull()) break;
+        }
+        assertEquals(10L, n);
+        cursor.closeTopLevel();
+    }
+
+    @Test
+    public void testFilterBatch() {
+        RowsBuilder other = new RowsBuilder(OperatorTestHelper.schema(), MNumeric.BIGINT.instance(false));
+        Operator input = new TestOperator(rows(7));
+        Operator plan = filter_Default(input, Collections.singleton(other.rowType()));
+        Cursor cursor = OperatorTestHelper.open(plan);
+        RowBatch batch = new RowBatch(4);
+        assertEquals(0, batch.fill(cursor));
+        assertTrue(cursor.isIdle());
+        cursor.closeTopLevel();
+    }
+
+    @Test
+    public void testSelectBatch() {
+        Operator input = new TestOperator(rows(10));
+        RowType inputType = input.rowType();
+        TPreparedExpression predicate =
+            new TComparisonExpression(new TPreparedField(inputType.typeAt(0), 0), Comparison.GE,
+                                      new TPreparedLiteral(MNumeric.BIGINT.instance(false),
+                                                           ValueSources.valuefromObject(3L, MNumeric.BIGINT.instance(false))));
+        Operator plan = select_HKeyOrdered(input, inputType, predicate);
+        Cursor cursor = OperatorTestHelper.open(plan);
+        RowBatch batch = new RowBatch(4);
+        long n = 3;
+        while (true) {
+            batch.clear();
+            batch.fill(cursor);
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(n, batch.get(i).value(0).getInt64());
+                n++;
+            }
+            if (!batch.isFull()) break;
+        }
+        assertEquals(10L, n);
+        assertTrue(cursor.isIdle());
+        cursor.closeTopLevel();
+    }
+
+    private static RowsBuilder rows(int n) {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), MNumeric.BIGINT.instance(false), MString.varchar());
+        for (long i = 0; i < n; i++) {
+            rows.row(i, "r" + i);
+        }
+        return rows;
+    }
+}
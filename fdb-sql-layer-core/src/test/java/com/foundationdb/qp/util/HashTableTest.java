@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.operator.OperatorTestHelper;
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.operator.RowsBuilder;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import com.foundationdb.server.types.texpressions.TEvaluatableExpression;
+import com.foundationdb.server.types.texpressions.TPreparedField;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HashTableTest {
+
+    private static final TInstance BIGINT = MNumeric.BIGINT.instance(true);
+    private static final TInstance INT = MNumeric.INT.instance(true);
+    private static final TInstance VARCHAR = MString.varchar();
+
+    @Test
+    public void testProbe() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), BIGINT, VARCHAR);
+        rows.row(-3L, "a").row(5L, "b").row(-3L, "c").row(null, "d").row(Long.MIN_VALUE, "e");
+        HashTable table = build(rows);
+        assertEquals(Arrays.asList("a", "c"), probe(table, BIGINT, -3L));
+        assertEquals(Arrays.asList("b"), probe(table, BIGINT, 5L));
+        assertEquals(Arrays.asList("e"), probe(table, BIGINT, Long.MIN_VALUE));
+        assertEquals(Collections.<String>emptyList(), probe(table, BIGINT, 4L));
+        // NULL matches nothing, including the NULL key put.
+        assertEquals(Collections.<String>emptyList(), probe(table, BIGINT, null));
+        table.close();
+    }
+
+    @Test
+    public void testMixedWidthKeys() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), INT, VARCHAR);
+        rows.row(-7L, "a").row(Integer.MAX_VALUE, "b").row(Integer.MIN_VALUE, "c");
+        HashTable table = build(rows);
+        // INT keys probed with BIGINT values compare as longs.
+        assertEquals(Arrays.asList("a"), probe(table, BIGINT, -7L));
+        assertEquals(Arrays.asList("b"), probe(table, BIGINT, (long)Integer.MAX_VALUE));
+        assertEquals(Arrays.asList("c"), probe(table, BIGINT, (long)Integer.MIN_VALUE));
+        // Would match the low half of the key if truncated.
+        assertEquals(Collections.<String>emptyList(), probe(table, BIGINT, (1L << 32) - 7));
+        table.close();
+    }
+
+    @Test
+    public void testKeyMismatchConverts() {
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), BIGINT, VARCHAR);
+        for (long i = -100; i < 100; i++) {
+            rows.row(i, "row" + i);
+        }
+        HashTable table = build(rows);
+        // A key that is not an integer moves the table to general keys.
+        assertEquals(Collections.<String>emptyList(), probe(table, VARCHAR, "not an integer key"));
+        for (long i = -100; i < 100; i++) {
+            assertEquals(Arrays.asList("row" + i), probe(table, BIGINT, i));
+        }
+        table.close();
+    }
+
+    @Test
+    public void testReloadSpillsResidentPartitions() {
+        int nrows = 1600;
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), BIGINT, VARCHAR);
+        for (long i = 0; i < nrows; i++) {
+            rows.row(i, "row" + i);
+        }
+        List<TEvaluatableExpression> keys = keys(BIGINT);
+        HashTable table = new HashTable();
+        table.setRowType(rows.rowType());
+        table.setMemoryLimit(spillContext(), 40000);
+        for (Row row : rows.rows()) {
+            table.put(row, keys, null);
+        }
+        long spilledAfterBuild = table.getSpillCount();
+        assertTrue("spilled while building", spilledAfterBuild > 0);
+        RowsBuilder probes = new RowsBuilder(OperatorTestHelper.schema(), BIGINT);
+        for (long i = 0; i < nrows; i++) {
+            probes.row(i);
+        }
+        List<TEvaluatableExpression> probeKeys = keys(BIGINT);
+        for (Row probe : probes.rows()) {
+            long key = probe.value(0).getInt64();
+            List<Row> matches = table.getMatchingRows(probe, probeKeys, null);
+            assertEquals("matches for " + key, 1, matches.size());
+            assertEquals("row" + key, matches.get(0).value(1).getString());
+        }
+        assertTrue("reloaded", table.getReloadCount() > 0);
+        // Room for reloads had to be made by spilling partitions that
+        // stayed in memory during the build.
+        assertTrue("resident partitions spilled", table.getSpillCount() > spilledAfterBuild);
+        table.close();
+    }
+
+    @Test
+    public void testDeferredProbesReadEachPartitionOnce() {
+        int nrows = 1600;
+        RowsBuilder rows = new RowsBuilder(OperatorTestHelper.schema(), BIGINT, VARCHAR);
+        for (long i = 0; i < nrows; i++) {
+            rows.row(i, "row" + i);
+        }
+        List<TEvaluatableExpression> keys = keys(BIGINT);
+        HashTable table = new HashTable();
+        table.setRowType(rows.rowType());
+        table.setMemoryLimit(spillContext(), 40000);
+        for (Row row : rows.rows()) {
+            table.put(row, keys, null);
+        }
+        assertTrue("spilled while building", table.getSpillCount() > 0);
+        RowsBuilder probes = new RowsBuilder(OperatorTestHelper.schema(), BIGINT);
+        for (int pass = 0; pass < 3; pass++) {
+            for (long i = 0; i < nrows; i++) {
+                probes.row(i);
+            }
+        }
+        List<TEvaluatableExpression> probeKeys = keys(BIGINT);
+        HashTable.DeferredProbes deferred = table.newDeferredProbes(probes.rowType(), probeKeys, null);
+        int[] matched = new int[nrows];
+        int held = 0;
+        for (Row probe : probes.rows()) {
+            if (deferred.defer(probe)) {
+                held++;
+            }
+            else {
+                match(table, probe, probeKeys, matched);
+            }
+        }
+        assertTrue("held back", held > 0);
+        assertEquals("nothing read back yet", 0, table.getReloadCount());
+        Row probe;
+        while ((probe = deferred.next()) != null) {
+            match(table, probe, probeKeys, matched);
+            held--;
+        }
+        assertEquals("all held back returned", 0, held);
+        for (int i = 0; i < nrows; i++) {
+            assertEquals("matches for " + i, 3, matched[i]);
+        }
+        // Once per spilled partition, not once per probe that missed.
+        assertTrue("reloaded " + table.getReloadCount(), table.getReloadCount() > 0);
+        assertTrue("reloaded " + table.getReloadCount(), table.getReloadCount() <= table.getSpillCount());
+        deferred.close();
+        table.close();
+    }
+
+    private static void match(HashTable table, Row probe, List<TEvaluatableExpression> probeKeys, int[] matched) {
+        int key = (int)probe.value(0).getInt64();
+        List<Row> matches = table.getMatchingRows(probe, probeKeys, null);
+        assertEquals("matches for " + key, 1, matches.size());
+        assertEquals("row" + key, matches.get(0).value(1).getString());
+        matched[key]++;
+    }
+
+    private static HashTable build(RowsBuilder rows) {
+        List<TEvaluatableExpression> keys = keys(rows.rowType().typeAt(0));
+        HashTable table = new HashTable();
+        table.setRowType(rows.rowType());
+        for (Row row : rows.rows()) {
+            table.put(row, keys, null);
+        }
+        return table;
+    }
+
+    // The second column of each row matching a single column probe.
+    private static List<String> probe(HashTable table, TInstance type, Object key) {
+        Row probe = new RowsBuilder(OperatorTestHelper.schema(), type).row(key).rows().getFirst();
+        HashTable.Probe lookup = table.newProbe();
+        lookup.find(probe, keys(type), null);
+        List<String> result = new ArrayList<>();
+        Row row;
+        while ((row = lookup.next()) != null) {
+            result.add(row.value(1).getString());
+        }
+        return result;
+    }
+
+    static List<TEvaluatableExpression> keys(TInstance type) {
+        return Collections.singletonList(new TPreparedField(type, 0).build());
+    }
+
+    static QueryContext spillContext() {
+        Map<String,String> properties = new HashMap<>();
+        properties.put(RowSpillFile.TMP_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        return OperatorTestHelper.contextWithSettings(new HashMap<String,String>(), properties);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.qp.util;
+
+import com.foundationdb.qp.operator.OperatorTestHelper;
+import com.foundationdb.qp.operator.RowsBuilder;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class LongKeyHashTableTest {
+
+    @Test
+    public void testDuplicateKeysInOrder() {
+        List<Row> rows = rows(6);
+        LongKeyHashTable table = new LongKeyHashTable(1);
+        table.put(key(5), rows.get(0));
+        table.put(key(7), rows.get(1));
+        table.put(key(5), rows.get(2));
+        table.put(key(5), rows.get(3));
+        table.put(key(7), rows.get(4));
+        assertEquals(5, table.getRowCount());
+        assertEquals(Arrays.asList(rows.get(0), rows.get(2), rows.get(3)), matches(table, key(5)));
+        assertEquals(Arrays.asList(rows.get(1), rows.get(4)), matches(table, key(7)));
+        assertEquals(-1, table.first(key(6)));
+    }
+
+    @Test
+    public void testGrowth() {
+        int n = 10000;
+        List<Row> rows = rows(n);
+        LongKeyHashTable table = new LongKeyHashTable(1);
+        // Every key twice, the second time after the table has grown.
+        for (int i = 0; i < n; i++) {
+            table.put(key(i / 2), rows.get(i));
+        }
+        for (int i = 0; i < n; i += 2) {
+            assertEquals(Arrays.asList(rows.get(i), rows.get(i + 1)), matches(table, key(i / 2)));
+        }
+        assertEquals(-1, table.first(key(n)));
+        for (int i = 0; i < n; i++) {
+            assertSame(rows.get(i), table.getRow(i));
+        }
+    }
+
+    @Test
+    public void testCollidingKeys() {
+        // Keys that differ only in their high bits or by multiples of the
+        // table size, so that many land near the same slots.
+        long[] values = new long[512];
+        for (int i = 0; i < 256; i++) {
+            values[i] = (long)i << 40;
+            values[256 + i] = i * 64L;
+        }
+        List<Row> rows = rows(values.length);
+        LongKeyHashTable table = new LongKeyHashTable(1);
+        for (int i = 0; i < values.length; i++) {
+            table.put(key(values[i]), rows.get(i));
+        }
+        for (int i = 0; i < values.length; i++) {
+            List<Row> expected = new ArrayList<>();
+            for (int j = 0; j < values.length; j++) {
+                if (values[j] == values[i]) {
+                    expected.add(rows.get(j));
+                }
+            }
+            assertEquals("key " + values[i], expected, matches(table, key(values[i])));
+        }
+    }
+
+    @Test
+    public void testNegativeKeys() {
+        long[] values = { Long.MIN_VALUE, -1, 0, 1, Long.MAX_VALUE, Integer.MIN_VALUE, -(1L << 32) };
+        List<Row> rows = rows(values.length);
+        LongKeyHashTable table = new LongKeyHashTable(1);
+        for (int i = 0; i < values.length; i++) {
+            table.put(key(values[i]), rows.get(i));
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("key " + values[i], Arrays.asList(rows.get(i)), matches(table, key(values[i])));
+        }
+        assertEquals(-1, table.first(key(Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testMultiColumnKeys() {
+        List<Row> rows = rows(4);
+        LongKeyHashTable table = new LongKeyHashTable(2);
+        table.put(key(1, 2), rows.get(0));
+        table.put(key(2, 1), rows.get(1));
+        table.put(key(-1, Long.MIN_VALUE), rows.get(2));
+        table.put(key(1, 2), rows.get(3));
+        assertEquals(2, table.getKeyCount());
+        assertEquals(Arrays.asList(rows.get(0), rows.get(3)), matches(table, key(1, 2)));
+        assertEquals(Arrays.asList(rows.get(1)), matches(table, key(2, 1)));
+        assertEquals(Arrays.asList(rows.get(2)), matches(table, key(-1, Long.MIN_VALUE)));
+        assertEquals(-1, table.first(key(1, 1)));
+    }
+
+    private static long[] key(long... values) {
+        return values;
+    }
+
+    private static List<Row> matches(LongKeyHashTable table, long[] key) {
+        List<Row> result = new ArrayList<>();
+        for (int i = table.first(key); i >= 0; i = table.next(i)) {
+            result.add(table.getRow(i));
+        }
+        return result;
+    }
+
+    private static List<Row> rows(int n) {
+        RowsBuilder builder = new RowsBuilder(OperatorTestHelper.schema(), MNumeric.BIGINT.instance(false));
+        for (long i = 0; i < n; i++) {
+            builder.row(i);
+        }
+        return new ArrayList<>(builder.rows());
+    }
+}
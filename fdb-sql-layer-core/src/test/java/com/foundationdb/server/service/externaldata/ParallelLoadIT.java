@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.service.externaldata;
+
+import com.foundationdb.ais.model.Table;
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.operator.SimpleQueryContext;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.util.WorkerPool;
+import com.foundationdb.server.error.AkibanInternalException;
+import com.foundationdb.server.service.servicemanager.GuicedServiceManager;
+import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.test.it.ITBase;
+
+import com.google.inject.Inject;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Bulk loads split into batches written by several transactions at once. */
+public class ParallelLoadIT extends ITBase
+{
+    public static final int NROWS = 5000;
+    public static final int COMMIT_FREQUENCY = 100;
+    public static final String PARALLELISM = "4";
+    // Batches started before one fails.
+    public static final int FAIL_AFTER = 20;
+
+    protected FailingExternalDataServiceImpl external;
+    protected CsvFormat format;
+    protected int tableId;
+    protected Table table;
+
+    @Override
+    protected GuicedServiceManager.BindingsConfigurationProvider serviceBindingsProvider() {
+        return super.serviceBindingsProvider()
+                .bindAndRequire(ExternalDataService.class, FailingExternalDataServiceImpl.class);
+    }
+
+    @Before
+    public void createSchema() {
+        external = (FailingExternalDataServiceImpl)serviceManager().getServiceByClass(ExternalDataService.class);
+        external.calls.set(0);
+        external.failAt.set(-1);
+        format = new CsvFormat("UTF-8");
+        tableId = createTable("test", "t", "id INT PRIMARY KEY NOT NULL");
+        table = ais().getTable(tableId);
+    }
+
+    @Test
+    public void parallelLoad() throws Exception {
+        long count = load(0);
+        assertEquals(NROWS, count);
+        checkLoaded(NROWS);
+    }
+
+    @Test
+    public void failureLeavesCommittedPrefix() throws Exception {
+        external.failAt.set(FAIL_AFTER);
+        try {
+            load(0);
+            fail("load did not fail");
+        }
+        catch (AkibanInternalException ex) {
+            assertEquals("injected failure", ex.getMessage());
+        }
+        // Batches commit in order, so whatever committed is a run of
+        // whole batches from the start of the input.
+        int committed = scanAll(tableId).size();
+        assertTrue("committed " + committed, committed < NROWS);
+        assertEquals("whole batches", 0, committed % COMMIT_FREQUENCY);
+        checkLoaded(committed);
+        // Which is what a retry skips.
+        external.failAt.set(-1);
+        assertEquals(NROWS - committed, load(committed));
+        checkLoaded(NROWS);
+    }
+
+    protected long load(long skipRows) throws IOException {
+        ByteArrayOutputStream ostr = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(new OutputStreamWriter(ostr, "UTF-8"));
+        for (int i = 0; i < NROWS; i++) {
+            pw.println(i);
+        }
+        pw.close();
+        Session session = session();
+        QueryContext context = new SimpleQueryContext(newStoreAdapter(session)) {
+                @Override
+                public String getCurrentSetting(String key) {
+                    return WorkerPool.PARALLELISM_SETTING.equals(key) ? PARALLELISM : null;
+                }
+            };
+        return external.loadTableFromCsv(session, new ByteArrayInputStream(ostr.toByteArray()),
+                                         format, skipRows, table, table.getColumns(),
+                                         COMMIT_FREQUENCY, 0, context);
+    }
+
+    // Exactly the ids 0 to n-1 are present.
+    protected void checkLoaded(int n) {
+        List<Row> rows = scanAll(tableId);
+        assertEquals(n, rows.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, rows.get(i).value(0).getInt32());
+        }
+    }
+
+    static class FailingExternalDataServiceImpl extends ExternalDataServiceImpl {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger failAt = new AtomicInteger(-1);
+
+        @Inject
+        public FailingExternalDataServiceImpl(com.foundationdb.server.service.config.ConfigurationService configService,
+                                              com.foundationdb.server.service.dxl.DXLService dxlService,
+                                              com.foundationdb.server.store.Store store,
+                                              com.foundationdb.server.service.transaction.TransactionService transactionService,
+                                              com.foundationdb.server.service.ServiceManager serviceManager) {
+            super(configService, dxlService, store, transactionService, serviceManager);
+        }
+
+        @Override
+        protected void retryHook(Session session, int i, int maxRetries,
+                                 Exception retryException) {
+            int fail = failAt.get();
+            if ((fail >= 0) && (calls.incrementAndGet() == fail)) {
+                // Not a rollback, so it is not retried, and whichever
+                // batch gets it fails the load.
+                throw new AkibanInternalException("injected failure");
+            }
+            super.retryHook(session, i, maxRetries, retryException);
+        }
+    }
+}
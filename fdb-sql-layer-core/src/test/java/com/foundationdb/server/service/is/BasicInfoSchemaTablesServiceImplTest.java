@@ -866,6 +866,11 @@ public class BasicInfoSchemaTablesServiceImplTest {
             throw new UnsupportedOperationException();
         }
 
+        @Override
+        public void joinOnline(Session helper, Session owner) {
+            throw new UnsupportedOperationException();
+        }
+
         @Override
         public void setOnlineDMLError(Session session, int tableID, String message) {
             throw new UnsupportedOperationException();
@@ -71,7 +71,7 @@ public class ServerSchemaTablesServiceIT extends ITBase
     @Test
     public void examine() {
         AkibanInformationSchema ais = ais();
-        assertEquals ("Table count", 13, ServerSchemaTablesServiceImpl.createTablesToRegister(ddl().getTypesTranslator()).getTables().size());
+        assertEquals ("Table count", 14, ServerSchemaTablesServiceImpl.createTablesToRegister(ddl().getTypesTranslator()).getTables().size());
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.ERROR_CODES));
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.ERROR_CODE_CLASSES));
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.SERVER_INSTANCE_SUMMARY));
@@ -85,6 +85,7 @@ public class ServerSchemaTablesServiceIT extends ITBase
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.SERVER_PREPARED_STATEMENTS));
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.SERVER_CURSORS));
         assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.SERVER_USERS));
+        assertNotNull (ais.getTable(ServerSchemaTablesServiceImpl.SERVER_INDEX_BUILDS));
     }
     
     @Test
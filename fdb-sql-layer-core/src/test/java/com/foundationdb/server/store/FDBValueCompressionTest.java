@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store;
+
+import com.foundationdb.tuple.Tuple2;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FDBValueCompressionTest {
+
+    private static List<byte[]> rows(int n, int start) {
+        String[] cities = { "Boston", "Cambridge", "Somerville", "Newton" };
+        List<byte[]> rows = new ArrayList<>();
+        for (int i = start; i < start + n; i++) {
+            rows.add(Tuple2.from(i, "customer" + i + "@example.com",
+                                 cities[i % cities.length], "MA", "United States of America",
+                                 (i % 7) * 100L).pack());
+        }
+        return rows;
+    }
+
+    private static long storedSize(List<byte[]> rows, int id, byte[] dictionary) {
+        long size = 0;
+        for (byte[] row : rows) {
+            byte[] compressed = FDBValueCompression.compress(row, id, dictionary);
+            assertArrayEquals(row, FDBValueCompression.expand(compressed, dictionary));
+            size += compressed.length;
+        }
+        return size;
+    }
+
+    @Test
+    public void incompressible() {
+        byte[] value = { 1, 2, 3 };
+        byte[] compressed = FDBValueCompression.compress(value, 0, null);
+        assertEquals(FDBValueCompression.STORED, compressed[0]);
+        assertEquals(value.length + 1, compressed.length);
+        assertArrayEquals(value, FDBValueCompression.expand(compressed, null));
+    }
+
+    @Test
+    public void deflated() {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            str.append("abcdefgh");
+        }
+        byte[] value = Tuple2.from(str.toString()).pack();
+        byte[] compressed = FDBValueCompression.compress(value, 0, null);
+        assertEquals(FDBValueCompression.DEFLATED, compressed[0]);
+        assertTrue(compressed.length < value.length / 10);
+        assertArrayEquals(value, FDBValueCompression.expand(compressed, null));
+    }
+
+    @Test
+    public void trainedDictionary() {
+        byte[] dictionary = FDBValueCompression.trainDictionary(rows(256, 0), 16384);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= 16384);
+        List<byte[]> rows = rows(100, 1000);
+        long raw = 0;
+        for (byte[] row : rows) {
+            raw += row.length;
+        }
+        long plain = storedSize(rows, 0, null);
+        long trained = storedSize(rows, 300, dictionary);
+        assertTrue("trained " + trained + " vs plain " + plain, trained < plain);
+        assertTrue("trained " + trained + " vs raw " + raw, trained * 2 < raw);
+    }
+
+    @Test
+    public void dictionaryLimit() {
+        byte[] dictionary = FDBValueCompression.trainDictionary(rows(256, 0), 100);
+        assertTrue(dictionary.length <= 100);
+    }
+
+    @Test
+    public void nothingInCommon() {
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            samples.add(Tuple2.from((long)i * 0x0101010101L).pack());
+        }
+        assertEquals(0, FDBValueCompression.trainDictionary(samples, 1000).length);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.foundationdb.server.store;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ReadVersionCacheTest {
+
+    static class TestCache extends ReadVersionCache {
+        long now, nextVersion = 100;
+        RuntimeException error;
+
+        TestCache(long maxStalenessNanos) {
+            super(maxStalenessNanos);
+        }
+
+        @Override
+        protected long fetchReadVersion() {
+            if (error != null) {
+                throw error;
+            }
+            return nextVersion++;
+        }
+
+        @Override
+        protected long nanoTime() {
+            return now;
+        }
+    }
+
+    @Test
+    public void sharedUntilStale() {
+        TestCache cache = new TestCache(10);
+        assertEquals(100, cache.getReadVersion());
+        cache.now = 10;
+        assertEquals(100, cache.getReadVersion());
+        cache.now = 11;
+        assertEquals(101, cache.getReadVersion());
+        assertEquals(101, cache.getReadVersion());
+        assertEquals(2, cache.getFetchCount());
+        assertEquals(2, cache.getSharedCount());
+    }
+
+    @Test
+    public void notOlderThanCommit() {
+        TestCache cache = new TestCache(10);
+        assertEquals(100, cache.getReadVersion());
+        cache.noteCommitted(99);
+        assertEquals(100, cache.getReadVersion());
+        cache.noteCommitted(150);
+        cache.nextVersion = 150;
+        assertEquals(150, cache.getReadVersion());
+        assertEquals(2, cache.getFetchCount());
+    }
+
+    @Test
+    public void readOnlyCommit() {
+        TestCache cache = new TestCache(10);
+        assertEquals(100, cache.getReadVersion());
+        cache.noteCommitted(-1);
+        assertEquals(100, cache.getReadVersion());
+        assertEquals(1, cache.getFetchCount());
+    }
+
+    @Test
+    public void errorNotCached() {
+        TestCache cache = new TestCache(10);
+        cache.error = new IllegalStateException("no database");
+        try {
+            cache.getReadVersion();
+            fail("expected error");
+        }
+        catch (IllegalStateException ex) {
+        }
+        cache.error = null;
+        assertEquals(100, cache.getReadVersion());
+    }
+
+    @Test
+    public void concurrentShareFetch() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ReadVersionCache cache = new ReadVersionCache(0) {
+            @Override
+            protected long fetchReadVersion() {
+                started.countDown();
+                try {
+                    release.await();
+                }
+                catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return 42;
+            }
+        };
+        final AtomicLong total = new AtomicLong();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    total.addAndGet(cache.getReadVersion());
+                }
+            };
+        }
+        threads[0].start();
+        started.await();
+        for (int i = 1; i < threads.length; i++) {
+            threads[i].start();
+        }
+        // Give the others a chance to join the pending fetch.
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(42 * threads.length, total.get());
+        assertEquals(threads.length, cache.getFetchCount() + cache.getSharedCount());
+    }
+}
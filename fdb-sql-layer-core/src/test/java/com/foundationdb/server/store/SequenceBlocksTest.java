@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceBlocksTest {
+
+    @Test
+    public void emptyUntilInstalled() {
+        SequenceBlocks blocks = new SequenceBlocks(1, 10, 100);
+        SequenceBlocks.Stripe stripe = blocks.getStripe();
+        assertEquals(-1, blocks.nextValue(stripe, 5));
+        assertEquals(-1, blocks.getCurrentValue());
+        blocks.install(stripe, SequenceCache.newGlobal(5, SequenceCache.newLocal(1, 10)));
+        assertEquals(-1, blocks.nextValue(stripe, 4));
+        assertEquals(2, blocks.nextValue(stripe, 5));
+        assertEquals(2, blocks.getCurrentValue());
+    }
+
+    @Test
+    public void prefetchedBlock() {
+        SequenceBlocks blocks = new SequenceBlocks(1, 4, 100);
+        SequenceBlocks.Stripe stripe = blocks.getStripe();
+        blocks.install(stripe, SequenceCache.newBlock(1, 1, 4));
+        assertEquals(1, blocks.nextValue(stripe, 1));
+        assertFalse(blocks.startPrefetch(stripe));
+        assertEquals(2, blocks.nextValue(stripe, 1));
+        assertTrue(blocks.startPrefetch(stripe));
+        assertFalse(blocks.startPrefetch(stripe));
+        blocks.finishPrefetch(stripe, SequenceCache.newBlock(2, 5, 4));
+        assertEquals(3, blocks.nextValue(stripe, 1));
+        assertEquals(4, blocks.nextValue(stripe, 1));
+        // Next block is not visible to an older transaction.
+        assertEquals(-1, blocks.nextValue(stripe, 1));
+        assertEquals(5, blocks.nextValue(stripe, 2));
+        // Used up quickly, so grows.
+        assertEquals(8, blocks.getBlockSize());
+    }
+
+    @Test
+    public void stallsGrowToMax() {
+        SequenceBlocks blocks = new SequenceBlocks(1, 10, 30);
+        SequenceBlocks.Stripe stripe = blocks.getStripe();
+        blocks.install(stripe, SequenceCache.newBlock(1, 1, 10));
+        assertEquals(10, blocks.getBlockSize());
+        blocks.install(stripe, SequenceCache.newBlock(1, 11, 10));
+        assertEquals(20, blocks.getBlockSize());
+        blocks.install(stripe, SequenceCache.newBlock(1, 31, 20));
+        assertEquals(30, blocks.getBlockSize());
+    }
+}
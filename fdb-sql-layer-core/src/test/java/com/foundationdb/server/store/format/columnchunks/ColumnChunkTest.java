@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.tuple.Tuple2;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ColumnChunkTest {
+
+    private static Object[] column(Object... values) {
+        return values;
+    }
+
+    private static byte encoding(Object[] column) {
+        byte[] bytes = ColumnChunk.encodeColumn(column);
+        ColumnChunk.Reader reader = new ColumnChunk.Reader(bytes, 0);
+        int nnulls = reader.readVarInt();
+        if (nnulls > 0) {
+            reader.pos += (column.length + 7) / 8;
+        }
+        return reader.readByte();
+    }
+
+    private static Object[] roundTrip(Object[] column) {
+        byte[] bytes = ColumnChunk.encodeColumn(column);
+        return ColumnChunk.decodeColumn(bytes, 0, bytes.length, column.length);
+    }
+
+    @Test
+    public void plain() {
+        Object[] values = column(1L, "a", null, 2.5, new BigDecimal("3.14"), Long.MIN_VALUE);
+        assertEquals(ColumnChunk.PLAIN, encoding(values));
+        Object[] decoded = roundTrip(values);
+        assertEquals(Arrays.asList(values), Arrays.asList(decoded));
+    }
+
+    @Test
+    public void runLength() {
+        Object[] values = new Object[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (i < 40) ? "MA" : (i < 80) ? "NY" : (i == 90) ? null : "CT";
+        }
+        assertEquals(ColumnChunk.RUN_LENGTH, encoding(values));
+        assertEquals(Arrays.asList(values), Arrays.asList(roundTrip(values)));
+    }
+
+    @Test
+    public void dictionary() {
+        Object[] values = new Object[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ((i % 3) == 0) ? "Massachusetts" : ((i % 3) == 1) ? "New York" : "Connecticut";
+        }
+        assertEquals(ColumnChunk.DICTIONARY, encoding(values));
+        assertEquals(Arrays.asList(values), Arrays.asList(roundTrip(values)));
+    }
+
+    @Test
+    public void delta() {
+        Object[] values = new Object[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000000000000L + i * 7 - (i % 2);
+        }
+        assertEquals(ColumnChunk.DELTA, encoding(values));
+        assertEquals(Arrays.asList(values), Arrays.asList(roundTrip(values)));
+    }
+
+    @Test
+    public void deltaOverflow() {
+        Object[] values = column(Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE);
+        assertEquals(ColumnChunk.PLAIN, encoding(values));
+        assertEquals(Arrays.asList(values), Arrays.asList(roundTrip(values)));
+    }
+
+    @Test
+    public void allNull() {
+        Object[] values = column(null, null, null);
+        assertEquals(Arrays.asList(values), Arrays.asList(roundTrip(values)));
+    }
+
+    @Test
+    public void chunk() {
+        List<byte[]> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (long i = 0; i < 50; i++) {
+            keys.add(Tuple2.from(1L, i).pack());
+            rows.add(new Object[] { i, (i < 25) ? "MA" : "NY", (i % 5 == 0) ? null : new byte[] { (byte)i } });
+        }
+        ColumnChunk chunk = new ColumnChunk(ColumnChunk.encode(keys, rows, 3));
+        assertEquals(50, chunk.getRowCount());
+        assertEquals(3, chunk.getColumnCount());
+        for (int i = 0; i < 50; i++) {
+            assertArrayEquals(keys.get(i), chunk.getKey(i));
+            assertEquals(i, chunk.findKey(keys.get(i)));
+        }
+        assertEquals(-1, chunk.findKey(Tuple2.from(0L).pack()));
+        assertEquals(-51, chunk.findKey(Tuple2.from(2L).pack()));
+        assertEquals("NY", chunk.getValue(30, 1));
+        assertNull(chunk.getValue(10, 2));
+        assertArrayEquals(new byte[] { 11 }, (byte[])chunk.getValue(11, 2));
+        assertEquals(12L, chunk.getRow(12)[0]);
+    }
+}
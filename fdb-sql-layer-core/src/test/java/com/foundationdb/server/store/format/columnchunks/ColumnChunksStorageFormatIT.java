@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.store.format.columnchunks;
+
+import com.foundationdb.ais.model.HasStorage;
+import com.foundationdb.ais.model.TableName;
+import com.foundationdb.qp.operator.StoreAdapter;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.qp.rowtype.RowType;
+import com.foundationdb.qp.rowtype.Schema;
+import com.foundationdb.qp.util.SchemaCache;
+import com.foundationdb.server.error.StorageDescriptionInvalidException;
+import com.foundationdb.server.store.FDBTransactionService;
+import com.foundationdb.server.store.FDBTransactionService.TransactionState;
+import com.foundationdb.server.store.format.FDBStorageDescription;
+import com.foundationdb.server.test.it.FDBITBase;
+import com.foundationdb.server.test.it.qp.TestRow;
+import com.foundationdb.KeyValue;
+import com.foundationdb.Range;
+import com.foundationdb.Transaction;
+import com.foundationdb.tuple.Tuple2;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+// Tests the population of storage. Navigation through SQL is tested
+// by test-fdb-column-chunks-format.yaml.
+public class ColumnChunksStorageFormatIT extends FDBITBase
+{
+    private static final String SCHEMA = "test";
+
+    @Test(expected = StorageDescriptionInvalidException.class)
+    public void childNotAllowed() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, name VARCHAR(128)) STORAGE_FORMAT column_chunks;" +
+          "CREATE TABLE t2(id INT PRIMARY KEY NOT NULL, sid INT, GROUPING FOREIGN KEY(sid) REFERENCES t1(id), name VARCHAR(128));");
+    }
+
+    @Test(expected = StorageDescriptionInvalidException.class)
+    public void indexNotAllowed() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, n BIGINT);" +
+          "CREATE INDEX i1 ON t1(n) STORAGE_FORMAT column_chunks;");
+    }
+
+    @Test
+    public void chunks() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, state CHAR(2), amount DECIMAL(6,2)) STORAGE_FORMAT column_chunks(chunk_rows = 3);");
+        int t1 = ddl().getTableId(session(), new TableName(SCHEMA, "t1"));
+
+        Schema schema = SchemaCache.globalSchema(ddl().getAIS(session()));
+        RowType t1Type = schema.tableRowType(getTable(t1));
+        StoreAdapter adapter = newStoreAdapter();
+
+        txnService().beginTransaction(session());
+
+        List<Object[]> rows = new ArrayList<>();
+        for (long i = 1; i <= 7; i++) {
+            Object[] row = { i, (i < 5) ? "MA" : "NY", null };
+            rows.add(row);
+            writeRow(t1, row);
+        }
+
+        // Appends fill one chunk before starting the next.
+        assertEquals(Arrays.<Object>asList(Arrays.asList(1L, 1L),
+                                           Arrays.asList(1L, 4L),
+                                           Arrays.asList(1L, 7L)),
+                     chunkKeys(t1Type.table().getGroup()));
+
+        deleteRow(t1, rows.get(0));
+        deleteRow(t1, rows.get(4));
+        rows.remove(4);
+        rows.remove(0);
+        Object[] r0 = { 0L, "CT", null };
+        rows.add(0, r0);
+        writeRow(t1, r0);
+
+        assertEquals(Arrays.<Object>asList(Arrays.asList(1L, 0L),
+                                           Arrays.asList(1L, 4L),
+                                           Arrays.asList(1L, 7L)),
+                     chunkKeys(t1Type.table().getGroup()));
+
+        Row[] expected = new Row[rows.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new TestRow(t1Type, rows.get(i));
+        }
+        compareRows(expected, adapter.newGroupCursor(t1Type.table().getGroup()));
+        txnService().commitTransaction(session());
+    }
+
+    @Test
+    public void bytesSplit() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, s VARCHAR(2000)) STORAGE_FORMAT column_chunks;");
+        int t1 = ddl().getTableId(session(), new TableName(SCHEMA, "t1"));
+
+        Schema schema = SchemaCache.globalSchema(ddl().getAIS(session()));
+        RowType t1Type = schema.tableRowType(getTable(t1));
+        StoreAdapter adapter = newStoreAdapter();
+
+        txnService().beginTransaction(session());
+
+        // Far fewer rows than chunk_rows, but too many bytes for one chunk.
+        char[] filler = new char[1500];
+        Arrays.fill(filler, 'x');
+        List<Object[]> rows = new ArrayList<>();
+        for (long i = 1; i <= 100; i++) {
+            Object[] row = { i, i + new String(filler) };
+            rows.add(row);
+            writeRow(t1, row);
+        }
+
+        List<Integer> sizes = chunkSizes(t1Type.table().getGroup());
+        assertTrue("split into chunks: " + sizes, sizes.size() > 1);
+        for (int size : sizes) {
+            assertTrue("chunk size " + size, size <= ColumnChunksStorageDescription.MAX_CHUNK_BYTES);
+        }
+
+        Row[] expected = new Row[rows.size()];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = new TestRow(t1Type, rows.get(i));
+        }
+        compareRows(expected, adapter.newGroupCursor(t1Type.table().getGroup()));
+        txnService().commitTransaction(session());
+    }
+
+    protected List<Object> chunkKeys(HasStorage object) {
+        byte[] prefix = ((FDBStorageDescription)object.getStorageDescription()).getPrefixBytes();
+        TransactionState tr = ((FDBTransactionService)txnService()).getTransaction(session());
+        List<Object> result = new ArrayList<>();
+        for (KeyValue kv : tr.getRangeIterator(Range.startsWith(prefix),Transaction.ROW_LIMIT_UNLIMITED )) {
+            byte[] key = kv.getKey();
+            key = Arrays.copyOfRange(key, prefix.length, key.length);
+            result.add(Tuple2.fromBytes(key).getItems());
+        }
+        return result;
+    }
+
+    protected List<Integer> chunkSizes(HasStorage object) {
+        byte[] prefix = ((FDBStorageDescription)object.getStorageDescription()).getPrefixBytes();
+        TransactionState tr = ((FDBTransactionService)txnService()).getTransaction(session());
+        List<Integer> result = new ArrayList<>();
+        for (KeyValue kv : tr.getRangeIterator(Range.startsWith(prefix),Transaction.ROW_LIMIT_UNLIMITED )) {
+            result.add(kv.getValue().length);
+        }
+        return result;
+    }
+
+}
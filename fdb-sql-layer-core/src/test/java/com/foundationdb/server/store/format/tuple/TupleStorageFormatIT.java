@@ -24,11 +24,19 @@ import com.foundationdb.qp.rowtype.RowType;
 import com.foundationdb.qp.rowtype.Schema;
 import com.foundationdb.qp.util.SchemaCache;
 import com.foundationdb.server.error.StorageDescriptionInvalidException;
+import com.foundationdb.server.store.FDBStore;
 import com.foundationdb.server.test.it.FDBITBase;
 import com.foundationdb.server.test.it.qp.TestRow;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class TupleStorageFormatIT  extends FDBITBase
 {
     private static final String SCHEMA = "test";
@@ -108,4 +116,76 @@ public class TupleStorageFormatIT  extends FDBITBase
         txnService().commitTransaction(session());
     }
 
+    @Test(expected = StorageDescriptionInvalidException.class)
+    public void indexNotCompressed() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, s VARCHAR(128));" +
+          "CREATE INDEX i1 ON t1(s) STORAGE_FORMAT tuple(compress = true);");
+    }
+
+    @Test
+    public void compressed() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE parent(id INT PRIMARY KEY NOT NULL, s VARCHAR(128)) STORAGE_FORMAT tuple(key_only = false, compress = true);" +
+          "CREATE TABLE child(id INT PRIMARY KEY NOT NULL, pid INT, GROUPING FOREIGN KEY(pid) REFERENCES parent(id), s VARCHAR(128));");
+        int parent = ddl().getTableId(session(), new TableName(SCHEMA, "parent"));
+        int child = ddl().getTableId(session(), new TableName(SCHEMA, "child"));
+
+        Schema schema = SchemaCache.globalSchema(ddl().getAIS(session()));
+        RowType parentType = schema.tableRowType(getTable(parent)); 
+        RowType childType = schema.tableRowType(getTable(child));
+        StoreAdapter adapter = newStoreAdapter();
+
+        txnService().beginTransaction(session());
+
+        List<Row> expected = new ArrayList<>();
+        for (long i = 1; i <= 10; i++) {
+            Object[] pr = { i, "The quick brown fox jumps over the lazy dog number " + i };
+            Object[] cr = { 100 + i, i, "The quick brown fox jumps over the lazy dog number " + i };
+            writeRow(parent, pr);
+            writeRow(child, cr);
+            expected.add(new TestRow(parentType, pr));
+            expected.add(new TestRow(childType, cr));
+        }
+        compareRows(expected.toArray(new Row[expected.size()]), adapter.newGroupCursor(parentType.table().getGroup()));
+
+        txnService().commitTransaction(session());
+    }
+
+    @Test
+    public void compressionRatio() throws InterruptedException {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE c(id INT PRIMARY KEY NOT NULL, s VARCHAR(128)) STORAGE_FORMAT tuple(key_only = false, compress = true);" +
+          "CREATE TABLE nc(id INT PRIMARY KEY NOT NULL, s VARCHAR(128)) STORAGE_FORMAT tuple(key_only = false);");
+        int c = ddl().getTableId(session(), new TableName(SCHEMA, "c"));
+        int nc = ddl().getTableId(session(), new TableName(SCHEMA, "nc"));
+        FDBStore store = (FDBStore)store();
+
+        // More rows than fdbsql.fdb.value_compression_sample_rows, each
+        // committed, so that a dictionary gets trained.
+        long n = 0;
+        while (n < 300) {
+            n++;
+            writeRow(c, n, sentence(n));
+            writeRow(nc, n, sentence(n));
+        }
+        // Keep going until rows are written with the dictionary.
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((store.getValueCompressionRatio(getTable(c)) <= 1.0) &&
+               (System.currentTimeMillis() < deadline)) {
+            for (int i = 0; i < 10; i++) {
+                n++;
+                writeRow(c, n, sentence(n));
+            }
+            Thread.sleep(100);
+        }
+        double ratio = store.getValueCompressionRatio(getTable(c));
+        assertTrue("compressed " + ratio, ratio > 1.0);
+        assertNull("not compressed", store.getValueCompressionRatio(getTable(nc)));
+        assertEquals(n, scanAll(c).size());
+    }
+
+    private static String sentence(long i) {
+        return "The quick brown fox jumps over the lazy dog number " + i + " of many";
+    }
 }
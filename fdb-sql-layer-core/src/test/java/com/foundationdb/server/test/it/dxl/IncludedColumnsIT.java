@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.test.it.dxl;
+
+import com.foundationdb.ais.model.AkibanInformationSchema;
+import com.foundationdb.ais.model.Column;
+import com.foundationdb.ais.model.IndexColumn;
+import com.foundationdb.ais.model.Table;
+import com.foundationdb.ais.model.TableIndex;
+import com.foundationdb.ais.model.TableName;
+import com.foundationdb.server.error.ErrorCode;
+import com.foundationdb.server.explain.format.DefaultFormatter;
+import com.foundationdb.sql.embedded.EmbeddedJDBCITBase;
+import com.foundationdb.sql.embedded.JDBCConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** UNIQUE(a) INCLUDE(b), set up through the AIS until the parser has INCLUDE. */
+public class IncludedColumnsIT extends EmbeddedJDBCITBase
+{
+    private static final String TABLE = "t";
+    private static final String INDEX = "a_b";
+
+    private int tid;
+
+    @Before
+    public void createTableAndIndex() {
+        tid = createTable(SCHEMA_NAME, TABLE, "id INT NOT NULL PRIMARY KEY, a INT, b INT");
+        AkibanInformationSchema ais = new AkibanInformationSchema();
+        Table curTable = getTable(tid);
+        Table newTable = Table.create(ais, SCHEMA_NAME, TABLE, tid);
+        TableIndex index = TableIndex.create(ais, newTable, INDEX, 0, true, false, new TableName(SCHEMA_NAME, "ukey"));
+        int pos = 0;
+        for(String name : Arrays.asList("a", "b")) {
+            Column col = curTable.getColumn(name);
+            Column refCol = Column.create(newTable, col.getName(), col.getPosition(), col.getType());
+            IndexColumn.create(index, refCol, pos++, true, null);
+        }
+        index.setIncludedColumnCount(1);
+        ddl().createIndexes(session(), Collections.singleton(index));
+        assertEquals("included columns", 1, index().getIncludedColumnCount());
+    }
+
+    @Test
+    public void duplicateWithDifferentIncluded() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, 100)");
+        expectDuplicate("INSERT INTO t VALUES(2, 10, 200)");
+        execute("INSERT INTO t VALUES(3, 20, 100)");
+        assertEquals(Arrays.asList(Arrays.asList(1, 100), Arrays.asList(3, 100)),
+                     sql("SELECT id, b FROM t ORDER BY id"));
+    }
+
+    @Test
+    public void duplicateWithDifferentIncludedInOneStatement() throws Exception {
+        expectDuplicate("INSERT INTO t VALUES(1, 10, 100), (2, 10, 200)");
+        assertEquals(Collections.emptyList(), sql("SELECT id FROM t"));
+    }
+
+    @Test
+    public void duplicateByUpdatingIncluded() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, 100), (2, 20, 200)");
+        // Changing only the included column is not a new key.
+        execute("UPDATE t SET b = 101 WHERE id = 1");
+        expectDuplicate("UPDATE t SET a = 10, b = 102 WHERE id = 2");
+        assertEquals(Arrays.asList(Arrays.asList(1, 10, 101), Arrays.asList(2, 20, 200)),
+                     sql("SELECT id, a, b FROM t ORDER BY id"));
+    }
+
+    @Test
+    public void nullIncludedDoesNotExempt() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, NULL)");
+        expectDuplicate("INSERT INTO t VALUES(2, 10, NULL)");
+        expectDuplicate("INSERT INTO t VALUES(3, 10, 300)");
+        execute("INSERT INTO t VALUES(4, 40, 400)");
+        expectDuplicate("INSERT INTO t VALUES(5, 40, NULL)");
+    }
+
+    @Test
+    public void nullUniqueIsExempt() throws Exception {
+        execute("INSERT INTO t VALUES(1, NULL, 100), (2, NULL, 100), (3, NULL, NULL)");
+        assertEquals(3, scanAllIndex(index()).size());
+        assertEquals(Arrays.asList(Arrays.asList(1, null), Arrays.asList(2, null), Arrays.asList(3, null)),
+                     sql("SELECT id, a FROM t WHERE a IS NULL ORDER BY id"));
+    }
+
+    @Test
+    public void coveringPlan() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, 100), (2, 20, 200)");
+        List<String> plan = explain("SELECT b FROM t WHERE a = 10");
+        boolean usesIndex = false;
+        for(String line : plan) {
+            usesIndex |= line.contains("IndexScan_Default") && line.contains(INDEX);
+            assertFalse("no lookup: " + plan, line.contains("Lookup"));
+        }
+        assertTrue("scans " + INDEX + ": " + plan, usesIndex);
+        assertEquals(Collections.singletonList(Collections.singletonList(100)),
+                     sql("SELECT b FROM t WHERE a = 10"));
+    }
+
+    @Test
+    public void alterKeepsIncluded() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, 100)");
+        execute("ALTER TABLE t ADD COLUMN c INT");
+        assertEquals("included columns", 1, index().getIncludedColumnCount());
+        assertEquals("unique columns", 1, index().getUniqueColumnCount());
+        expectDuplicate("INSERT INTO t VALUES(2, 10, 200, 2000)");
+        execute("INSERT INTO t VALUES(3, 30, 100, 3000)");
+    }
+
+    @Test
+    public void alterDropIncluded() throws Exception {
+        execute("INSERT INTO t VALUES(1, 10, 100)");
+        execute("ALTER TABLE t DROP COLUMN b");
+        assertEquals("key columns", 1, index().getKeyColumns().size());
+        assertEquals("included columns", 0, index().getIncludedColumnCount());
+        expectDuplicate("INSERT INTO t VALUES(2, 10)");
+    }
+
+    private TableIndex index() {
+        return getTable(tid).getIndex(INDEX);
+    }
+
+    private void execute(String sql) throws SQLException {
+        try(Connection conn = getConnection();
+            Statement statement = conn.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private void expectDuplicate(String sql) {
+        try {
+            execute(sql);
+            fail("expected duplicate: " + sql);
+        } catch(SQLException e) {
+            assertEquals(sql, ErrorCode.DUPLICATE_KEY.getFormattedValue(), e.getSQLState());
+        }
+    }
+
+    private List<String> explain(String sql) throws SQLException {
+        try(Connection conn = getConnection()) {
+            // The embedded driver hands out its own connections.
+            JDBCConnection jdbc = (JDBCConnection)conn;
+            return new DefaultFormatter(SCHEMA_NAME).format(jdbc.explain(sql));
+        }
+    }
+}
@@ -294,6 +294,83 @@ public class HashTableLookup_DefaultIT extends OperatorITBase {
         compareRows(expected, cursor(plan, queryContext, queryBindings));
     }
 
+    @Test
+    public void testPartitionedTableRows() {
+        int orderFieldsToCompare[] = {1};
+        int customerFieldsToCompare[] = {0};
+        Operator plan = hashJoinPlan(orderRowType,
+                                     customerRowType,
+                                     filter_Default(
+                                             groupScan_Default(orderRowType.table().getGroup()),
+                                             Collections.singleton(orderRowType)
+                                     ),
+                                     filter_Default(
+                                             groupScan_Default(customerRowType.table().getGroup()),
+                                             Collections.singleton(customerRowType)
+                                     ),
+                                     orderFieldsToCompare,
+                                     customerFieldsToCompare,
+                                     null,
+                                     true);
+        Row[] expected = new Row[]{
+                row(projectRowType, 100L, 1L, "ori","northbridge"),
+                row(projectRowType, 101L, 1L, "ori", "northbridge"),
+                row(projectRowType, 200L, 2L, "david", "foundation"),
+                row(projectRowType, 201L, 2L, "david", "foundation"),
+                row(projectRowType, 300L, 3L, "tom", "matrix"),
+                row(projectRowType, 400L, 4L, "jack", "atlas"),
+                row(projectRowType, 401L, 4L, "jack", "atlas"),
+        };
+        compareRows(expected, cursor(sortedByFirst(plan), queryContext, queryBindings));
+    }
+
+    @Test
+    public void testPartitionedProjectedRows() {
+        List<TPreparedExpression> orderFields = new ArrayList<>();
+        for (int i = 0; i < orderRowType.nFields(); i++) {
+            orderFields.add(new TPreparedField(orderRowType.typeAt(i), i));
+        }
+        Operator orders = project_Default(
+                filter_Default(
+                        groupScan_Default(orderRowType.table().getGroup()),
+                        Collections.singleton(orderRowType)
+                ),
+                orderRowType,
+                orderFields
+        );
+        int orderFieldsToCompare[] = {1};
+        int customerFieldsToCompare[] = {0};
+        Operator plan = hashJoinPlan(orders.rowType(),
+                                     customerRowType,
+                                     orders,
+                                     filter_Default(
+                                             groupScan_Default(customerRowType.table().getGroup()),
+                                             Collections.singleton(customerRowType)
+                                     ),
+                                     orderFieldsToCompare,
+                                     customerFieldsToCompare,
+                                     null,
+                                     true);
+        Row[] expected = new Row[]{
+                row(projectRowType, 100L, 1L, "ori","northbridge"),
+                row(projectRowType, 101L, 1L, "ori", "northbridge"),
+                row(projectRowType, 200L, 2L, "david", "foundation"),
+                row(projectRowType, 201L, 2L, "david", "foundation"),
+                row(projectRowType, 300L, 3L, "tom", "matrix"),
+                row(projectRowType, 400L, 4L, "jack", "atlas"),
+                row(projectRowType, 401L, 4L, "jack", "atlas"),
+        };
+        compareRows(expected, cursor(sortedByFirst(plan), queryContext, queryBindings));
+    }
+
+    // Partitioning the probe side changes the order of the output when
+    // the hash table spills.
+    private Operator sortedByFirst(Operator plan) {
+        Ordering ordering = new Ordering();
+        ordering.append(new TPreparedField(projectRowType.typeAt(0), 0), true);
+        return sort_General(plan, projectRowType, ordering, SortOption.PRESERVE_DUPLICATES);
+    }
+
     private Operator hashJoinPlan( RowType outerRowType,
                                    RowType innerRowType,
                                    int outerJoinFields[],
@@ -322,6 +399,18 @@ public class HashTableLookup_DefaultIT extends OperatorITBase {
                                    int outerJoinFields[],
                                    int innerJoinFields[],
                                    List<AkCollator> collators) {
+        return hashJoinPlan(outerRowType, innerRowType, outerStream, innerStream,
+                            outerJoinFields, innerJoinFields, collators, false);
+    }
+
+    private Operator hashJoinPlan( RowType outerRowType,
+                                   RowType innerRowType,
+                                   Operator outerStream,
+                                   Operator innerStream,
+                                   int outerJoinFields[],
+                                   int innerJoinFields[],
+                                   List<AkCollator> collators,
+                                   boolean partitionProbes) {
 
         List<TPreparedExpression> expressions = new ArrayList<>();
         for( int i = 0; i < outerRowType.nFields(); i++){
@@ -357,6 +446,14 @@ public class HashTableLookup_DefaultIT extends OperatorITBase {
 
         projectRowType = project.rowType();
 
+        if (partitionProbes) {
+            List<TPreparedExpression> probeExpressions = new ArrayList<>();
+            for (int i : outerJoinFields) {
+                probeExpressions.add(new TPreparedField(outerRowType.typeAt(i), i));
+            }
+            outerStream = partition_HashTable(outerStream, outerRowType, probeExpressions, TABLE_BINDING_POSITION);
+        }
+
         return using_HashTable(
                 innerStream,
                 innerRowType,
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.test.it.store;
+
+import com.foundationdb.server.error.DuplicateKeyException;
+import com.foundationdb.server.error.ForeignKeyReferencingViolationException;
+import com.foundationdb.server.test.it.FDBITBase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/** Multi-row inserts go through {@link com.foundationdb.server.store.Store#writeRows}. */
+public class FDBBatchedWriteIT extends FDBITBase
+{
+    int pid;
+    int cid;
+
+    @Before
+    public void setup() {
+        pid = createTable("test", "p",
+                          "id int not null primary key",
+                          "s varchar(10)");
+        cid = createTable("test", "c",
+                          "id int not null primary key",
+                          "pid int",
+                          "FOREIGN KEY(pid) REFERENCES p(id)");
+    }
+
+    @Test
+    public void unique() {
+        writeRows(row(pid, 1L, "fred"),
+                  row(pid, 2L, "wilma"),
+                  row(pid, 3L, "barney"));
+        expectRows(pid,
+                   row(pid, 1L, "fred"),
+                   row(pid, 2L, "wilma"),
+                   row(pid, 3L, "barney"));
+    }
+
+    @Test
+    public void duplicateWithinBatch() {
+        try {
+            writeRows(row(pid, 1L, "fred"),
+                      row(pid, 2L, "wilma"),
+                      row(pid, 1L, "barney"));
+            fail("expected duplicate");
+        }
+        catch(DuplicateKeyException e) {
+            // Expected
+        }
+        expectRows(pid);
+    }
+
+    @Test
+    public void duplicateOfExisting() {
+        writeRow(pid, 2L, "wilma");
+        try {
+            writeRows(row(pid, 1L, "fred"),
+                      row(pid, 2L, "barney"));
+            fail("expected duplicate");
+        }
+        catch(DuplicateKeyException e) {
+            // Expected
+        }
+        expectRows(pid, row(pid, 2L, "wilma"));
+    }
+
+    @Test
+    public void referencing() {
+        writeRows(row(pid, 1L, "fred"),
+                  row(pid, 2L, "wilma"));
+        writeRows(row(cid, 10L, 1L),
+                  row(cid, 11L, 2L),
+                  row(cid, 12L, null));
+        assertEquals(3, scanAll(cid).size());
+    }
+
+    @Test
+    public void notReferencing() {
+        writeRow(pid, 1L, "fred");
+        try {
+            writeRows(row(cid, 10L, 1L),
+                      row(cid, 11L, 5L),
+                      row(cid, 12L, 1L));
+            fail("expected foreign key violation");
+        }
+        catch(ForeignKeyReferencingViolationException e) {
+            // Expected
+        }
+        expectRows(cid);
+    }
+}
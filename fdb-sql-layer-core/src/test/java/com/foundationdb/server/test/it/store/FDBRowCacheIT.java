@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.test.it.store;
+
+import com.foundationdb.ais.model.TableName;
+import com.foundationdb.server.error.FDBNotCommittedException;
+import com.foundationdb.server.error.StorageDescriptionInvalidException;
+import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.store.FDBRowCache;
+import com.foundationdb.server.store.FDBStore;
+import com.foundationdb.server.test.it.FDBITBase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FDBRowCacheIT extends FDBITBase
+{
+    private static final String SCHEMA = "test";
+
+    int tid;
+
+    @Before
+    public void setup() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t1(id INT PRIMARY KEY NOT NULL, s VARCHAR(10)) STORAGE_FORMAT rowdata(cache = true);" +
+          "CREATE INDEX s ON t1(s);");
+        tid = ddl().getTableId(session(), new TableName(SCHEMA, "t1"));
+        writeRows(row(tid, 1L, "us"),
+                  row(tid, 2L, "fr"));
+    }
+
+    private FDBRowCache rowCache() {
+        return ((FDBStore)store()).getRowCache();
+    }
+
+    @Test
+    public void cachedScan() {
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+        long loads = rowCache().getLoadCount();
+        long hits = rowCache().getHitCount();
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+        assertEquals("loads", loads, rowCache().getLoadCount());
+        assertTrue("hits", rowCache().getHitCount() > hits);
+    }
+
+    @Test
+    public void cachedIndexScan() {
+        int iid = getTable(tid).getIndex("s").getIndexId();
+        assertEquals(2, scanAll(tid, iid).size());
+        long loads = rowCache().getLoadCount();
+        assertEquals(2, scanAll(tid, iid).size());
+        assertEquals("loads", loads, rowCache().getLoadCount());
+    }
+
+    @Test
+    public void writeInvalidates() {
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+        writeRow(tid, 3L, "de");
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"), row(tid, 3L, "de"));
+        deleteRow(tid, 1L, "us");
+        expectRows(tid, row(tid, 2L, "fr"), row(tid, 3L, "de"));
+    }
+
+    @Test
+    public void seesOwnWrites() {
+        txnService().beginTransaction(session());
+        try {
+            expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+            writeRow(tid, 3L, "de");
+            expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"), row(tid, 3L, "de"));
+        }
+        finally {
+            txnService().rollbackTransaction(session());
+        }
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+    }
+
+    @Test
+    public void cachedReadConflictsWithGroupWrite() {
+        txnService().beginTransaction(session());
+        try {
+            expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"));
+            try(Session other = createNewSession()) {
+                writeRow(other, tid, 3L, "de");
+            }
+            // A different row, but the read covered the whole group.
+            writeRow(tid, 4L, "it");
+            txnService().commitTransaction(session());
+            fail("expected conflict");
+        }
+        catch(FDBNotCommittedException e) {
+            // Expected
+        }
+        finally {
+            txnService().rollbackTransactionIfOpen(session());
+        }
+        expectRows(tid, row(tid, 1L, "us"), row(tid, 2L, "fr"), row(tid, 3L, "de"));
+    }
+
+    @Test(expected = StorageDescriptionInvalidException.class)
+    public void indexNotCached() {
+        createFromDDL(SCHEMA,
+          "CREATE TABLE t2(id INT PRIMARY KEY NOT NULL, s VARCHAR(10));" +
+          "CREATE INDEX s ON t2(s) STORAGE_FORMAT rowdata(cache = true);");
+    }
+}
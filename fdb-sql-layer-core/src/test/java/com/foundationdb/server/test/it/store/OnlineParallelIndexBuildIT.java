@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.server.test.it.store;
+
+import com.foundationdb.ais.model.TableIndex;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.error.InvalidOperationException;
+import com.foundationdb.server.service.session.Session;
+import com.foundationdb.server.test.it.ITBase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** An online index build over several ranges at once, with DML running alongside. */
+public class OnlineParallelIndexBuildIT extends ITBase
+{
+    private static final String SCHEMA = "test";
+    private static final String TABLE = "t";
+    // Several times OnlineHelper.BUILD_RANGE_ROWS.
+    private static final int ROWS = 23000;
+
+    @Override
+    protected Map<String, String> startupConfigProperties() {
+        Map<String,String> props = new HashMap<>();
+        props.putAll(super.startupConfigProperties());
+        props.putAll(uniqueStartupConfigProperties(getClass()));
+        props.put("fdbsql.online.build_threads", "4");
+        return props;
+    }
+
+    @Test
+    public void indexMatchesTable() throws Exception {
+        final int tid = createTable(SCHEMA, TABLE, "id INT NOT NULL PRIMARY KEY, x INT");
+        List<Row> rows = new ArrayList<>(1000);
+        for(int i = 0; i < ROWS; i++) {
+            rows.add(row(tid, i, i % 100));
+            if(rows.size() == 1000) {
+                writeRows(rows);
+                rows.clear();
+            }
+        }
+
+        DMLThread dml = new DMLThread(tid);
+        dml.start();
+        TableIndex index;
+        try {
+            index = createIndex(SCHEMA, TABLE, "x", "x");
+        } finally {
+            dml.finish();
+        }
+        assertNull("DML failure", dml.failure.get());
+        assertTrue("DML committed while building", dml.committed > 0);
+
+        List<String> expected = new ArrayList<>();
+        for(Row row : scanAll(tid)) {
+            expected.add(entry(row.value(1).isNull() ? null : row.value(1).getInt32(), row.value(0).getInt32()));
+        }
+        Collections.sort(expected);
+        List<String> actual = new ArrayList<>();
+        for(Row row : scanAllIndex(index)) {
+            actual.add(entry(row.value(0).isNull() ? null : row.value(0).getInt32(), row.value(1).getInt32()));
+        }
+        assertEquals("index rows", expected.size(), actual.size());
+        assertEquals("index entries", expected, actual);
+    }
+
+    // Sorts as the index does for the non-negative values used here.
+    private static String entry(Integer x, int id) {
+        return String.format("%s:%08d", (x == null) ? "" : String.format("%08d", x), id);
+    }
+
+    /** Inserts new rows and moves existing ones to a different x until finished. */
+    private class DMLThread extends Thread
+    {
+        private final int tid;
+        private final int[] xs = new int[ROWS];
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private volatile boolean done;
+        private int committed;
+
+        DMLThread(int tid) {
+            super("OnlineParallelIndexBuildIT-DML");
+            this.tid = tid;
+            for(int i = 0; i < ROWS; i++) {
+                xs[i] = i % 100;
+            }
+        }
+
+        @Override
+        public void run() {
+            try(Session session = createNewSession()) {
+                for(int n = 0; !done; n++) {
+                    try {
+                        if((n % 2) == 0) {
+                            writeRow(session, tid, ROWS + n, n % 100);
+                        } else {
+                            int id = (int)((n * 7919L) % ROWS);
+                            int x = xs[id] + 100;
+                            updateRow(session, row(session, tid, id, xs[id]), row(session, tid, id, x));
+                            xs[id] = x;
+                        }
+                        committed++;
+                    } catch(InvalidOperationException e) {
+                        if(!e.getCode().isRollbackClass()) {
+                            throw e;
+                        }
+                    }
+                }
+            } catch(Throwable t) {
+                failure.set(t);
+            }
+        }
+
+        void finish() throws InterruptedException {
+            done = true;
+            join();
+        }
+    }
+}
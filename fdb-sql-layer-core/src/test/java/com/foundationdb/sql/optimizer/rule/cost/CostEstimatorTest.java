@@ -378,4 +378,32 @@ public class CostEstimatorTest
                                                        new byte[] { (byte)0x00, (byte)0x00, (byte)0x80, (byte)0x00 },
                                                        100));
     }
+
+    @Test
+    public void testHashAggregateSpill() throws Exception {
+        // Fits in memory, or spills only a little: hashing wins.
+        assertTrue(costEstimator.preferHashAggregate(1000, 1));
+        assertTrue(costEstimator.preferHashAggregate(1000000, 1));
+        // Nearly every row written out and read back twice: sorting wins.
+        assertFalse(costEstimator.preferHashAggregate(100000000, 1));
+        assertTrue(costEstimator.costHashAggregate(100000000, 1).getCost() >
+                   costEstimator.costHashAggregate(1000000, 1).getCost() * 100);
+        Properties properties = new Properties();
+        properties.setProperty(CostEstimator.HASH_MEMORY_PROPERTY, Long.toString(1L << 40));
+        CostEstimator bigMemory = new TestCostEstimator(ais, new Schema(ais), new File(RESOURCE_DIR, "stats.yaml"), false, properties);
+        assertTrue(bigMemory.preferHashAggregate(100000000, 1));
+    }
+
+    @Test
+    public void testSkewed() throws Exception {
+        // State codes occur between 5 and 15 times each.
+        Index state = index("addresses", "state");
+        assertFalse(costEstimator.isSkewed(state, 0));
+        Properties properties = new Properties();
+        properties.setProperty(CostEstimator.SKEW_FACTOR_PROPERTY, "1.2");
+        CostEstimator sensitive = new TestCostEstimator(ais, new Schema(ais), new File(RESOURCE_DIR, "stats.yaml"), false, properties);
+        assertTrue(sensitive.isSkewed(state, 0));
+        // A primary key never is.
+        assertFalse(sensitive.isSkewed(index("addresses", "PRIMARY"), 0));
+    }
 }
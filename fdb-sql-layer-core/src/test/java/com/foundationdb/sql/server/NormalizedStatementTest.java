@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.server;
+
+import com.foundationdb.server.types.mcompat.mtypes.MDateAndTime;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NormalizedStatementTest {
+
+    @Test
+    public void testEquality() {
+        NormalizedStatement n = NormalizedStatement.normalize("SELECT name FROM t WHERE id = 12345 AND name = 'it''s'");
+        assertEquals("SELECT name FROM t WHERE id = $1 AND name = $2", n.getSQL());
+        assertEquals(2, n.getParameterCount());
+        assertEquals("12345", n.getLiteral(0));
+        assertEquals("it's", n.getLiteral(1));
+    }
+
+    @Test
+    public void testSameShape() {
+        NormalizedStatement n1 = NormalizedStatement.normalize("select * from t where id=1");
+        NormalizedStatement n2 = NormalizedStatement.normalize("select * from t where id=2");
+        NormalizedStatement n3 = NormalizedStatement.normalize("select * from t where id='2'");
+        assertEquals(n1.getCacheKey(), n2.getCacheKey());
+        assertNotEquals(n1.getCacheKey(), n3.getCacheKey());
+    }
+
+    @Test
+    public void testInList() {
+        NormalizedStatement n = NormalizedStatement.normalize("DELETE FROM t WHERE id IN (1, 2, 3)");
+        assertEquals("DELETE FROM t WHERE id IN ($1, $2, $3)", n.getSQL());
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE id IN (SELECT 1 FROM u)"));
+    }
+
+    @Test
+    public void testKeptLiterals() {
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE id > 10 LIMIT 5"));
+        assertNull(NormalizedStatement.normalize("SELECT 1, 'a' FROM t"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE d = DATE '2014-01-01'"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE x = 1.5"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE x = 1 + y"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE x = '1'::int"));
+    }
+
+    @Test
+    public void testNotNormalized() {
+        assertNull(NormalizedStatement.normalize("INSERT INTO t VALUES (1)"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE id = $1"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE id = 1; SELECT 2"));
+        assertNull(NormalizedStatement.normalize("SELECT * FROM t WHERE s = 'unterminated"));
+    }
+
+    @Test
+    public void testCommentsAndQuotes() {
+        NormalizedStatement n = NormalizedStatement.normalize("SELECT \"a = 1\" FROM t /* id = 2 */ WHERE id = 3 -- x = 4\n;");
+        assertEquals("SELECT \"a = 1\" FROM t /* id = 2 */ WHERE id = $1 -- x = 4\n;", n.getSQL());
+    }
+
+    @Test
+    public void testCanBind() {
+        NormalizedStatement n = NormalizedStatement.normalize("SELECT * FROM t WHERE id = 3000000000 AND s = 'abcdef'");
+        assertFalse(n.canBind(0, MNumeric.INT.instance(false)));
+        assertTrue(n.canBind(0, MNumeric.BIGINT.instance(false)));
+        assertFalse(n.canBind(0, MString.varchar()));
+        assertTrue(n.canBind(1, MString.VARCHAR.instance(10, false)));
+        assertFalse(n.canBind(1, MString.VARCHAR.instance(3, false)));
+        assertFalse(n.canBind(1, MNumeric.INT.instance(false)));
+    }
+
+    @Test
+    public void testCanBindIntegerTypes() {
+        NormalizedStatement n = NormalizedStatement.normalize("SELECT * FROM t WHERE id = 100000");
+        assertTrue(n.canBind(0, MNumeric.INT.instance(true)));
+        assertTrue(n.canBind(0, MNumeric.BIGINT.instance(true)));
+        // Same underlying types, but different ranges or meaning.
+        assertFalse(n.canBind(0, MNumeric.MEDIUMINT.instance(false)));
+        assertFalse(n.canBind(0, MNumeric.INT_UNSIGNED.instance(false)));
+        assertFalse(n.canBind(0, MNumeric.BIGINT_UNSIGNED.instance(false)));
+        assertFalse(n.canBind(0, MDateAndTime.DATE.instance(false)));
+        assertFalse(n.canBind(0, MDateAndTime.TIMESTAMP.instance(false)));
+    }
+}
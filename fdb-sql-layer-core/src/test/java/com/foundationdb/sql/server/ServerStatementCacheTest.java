@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ServerStatementCacheTest {
+
+    static class Stmt implements ServerStatement {
+        final int weight;
+
+        Stmt(int weight) {
+            this.weight = weight;
+        }
+
+        @Override
+        public TransactionMode getTransactionMode() {
+            return TransactionMode.ALLOWED;
+        }
+
+        @Override
+        public TransactionAbortedMode getTransactionAbortedMode() {
+            return TransactionAbortedMode.ALLOWED;
+        }
+
+        @Override
+        public AISGenerationMode getAISGenerationMode() {
+            return AISGenerationMode.ALLOWED;
+        }
+    }
+
+    static final ServerStatementCache.Weigher<Stmt> WEIGHER = new ServerStatementCache.Weigher<Stmt>() {
+        @Override
+        public int weigh(String sql, Stmt stmt) {
+            return stmt.weight;
+        }
+    };
+
+    @Test
+    public void testReferencedSurvives() {
+        CacheCounters counters = new CacheCounters();
+        ServerStatementCache<Stmt> cache = new ServerStatementCache<>(counters, 3);
+        Stmt a = new Stmt(1);
+        cache.put("a", a);
+        cache.put("b", new Stmt(1));
+        cache.put("c", new Stmt(1));
+        assertSame(a, cache.get("a"));
+        cache.put("d", new Stmt(1));
+        // b was the oldest not used since it went in.
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertEquals(1, counters.getEvictions());
+        assertEquals(4, counters.getHits());
+        assertEquals(1, counters.getMisses());
+        assertEquals(3, counters.getWeight());
+    }
+
+    @Test
+    public void testWeighted() {
+        CacheCounters counters = new CacheCounters();
+        ServerStatementCache<Stmt> cache = new ServerStatementCache<>(counters, 10, WEIGHER);
+        for (int i = 0; i < 5; i++) {
+            cache.put("s" + i, new Stmt(2));
+        }
+        assertEquals(10, cache.getWeight());
+        cache.put("big", new Stmt(7));
+        assertNotNull(cache.get("big"));
+        assertEquals(9, cache.getWeight());
+        assertEquals(4, counters.getEvictions());
+        cache.put("huge", new Stmt(11));
+        assertNull(cache.get("huge"));
+        cache.invalidate();
+        assertEquals(0, cache.getWeight());
+        assertEquals(0, counters.getWeight());
+    }
+
+    @Test
+    public void testReplace() {
+        CacheCounters counters = new CacheCounters();
+        ServerStatementCache<Stmt> cache = new ServerStatementCache<>(counters, 10, WEIGHER);
+        cache.put("s", new Stmt(3));
+        Stmt again = new Stmt(4);
+        cache.put("s", again);
+        assertSame(again, cache.get("s"));
+        assertEquals(4, cache.getWeight());
+    }
+
+    @Test
+    public void testReplacedKeepsItsPlace() {
+        CacheCounters counters = new CacheCounters();
+        ServerStatementCache<Stmt> cache = new ServerStatementCache<>(counters, 3);
+        cache.put("a", new Stmt(1));
+        cache.put("b", new Stmt(1));
+        cache.put("c", new Stmt(1));
+        cache.put("b", new Stmt(1));
+        cache.put("d", new Stmt(1));
+        cache.put("e", new Stmt(1));
+        // The replaced b went to the back, behind c.
+        assertNull(cache.get("a"));
+        assertNull(cache.get("c"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("d"));
+        assertNotNull(cache.get("e"));
+        assertEquals(3, cache.getWeight());
+    }
+
+    @Test
+    public void testAllReferenced() {
+        CacheCounters counters = new CacheCounters();
+        ServerStatementCache<Stmt> cache = new ServerStatementCache<>(counters, 3);
+        for (String sql : new String[] { "a", "b", "c" }) {
+            cache.put(sql, new Stmt(1));
+            cache.get(sql);
+        }
+        cache.put("d", new Stmt(1));
+        // A lap clears every mark, and then the oldest goes.
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("d"));
+        assertEquals(1, counters.getEvictions());
+    }
+}
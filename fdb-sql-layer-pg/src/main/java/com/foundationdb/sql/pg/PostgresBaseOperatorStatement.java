@@ -17,6 +17,7 @@
 
 package com.foundationdb.sql.pg;
 
+import com.foundationdb.qp.operator.Operator;
 import com.foundationdb.server.error.UnknownDataTypeException;
 import com.foundationdb.server.types.TInstance;
 import com.foundationdb.server.types.common.types.TypesTranslator;
@@ -34,11 +35,22 @@ import java.util.List;
 public abstract class PostgresBaseOperatorStatement extends PostgresDMLStatement
 {
     private PostgresOperatorCompiler compiler;
+    private boolean skewedParameters;
 
     protected PostgresBaseOperatorStatement(PostgresOperatorCompiler compiler) {
         this.compiler = compiler;
     }
 
+    public abstract Operator getResultOperator();
+
+    /** Is some parameter compared with a column whose values are
+     * skewed, so that the plan is only good for some of them?
+     * @see BasePlannable.ParameterType#isSkewed
+     */
+    public boolean hasSkewedParameters() {
+        return skewedParameters;
+    }
+
     @Override
     public PostgresStatement finishGenerating(PostgresServerSession server,
                                               String sql, StatementNode stmt,
@@ -78,6 +90,12 @@ public abstract class PostgresBaseOperatorStatement extends PostgresDMLStatement
                                            (PhysicalSelect)result,
                                            parameterTypes);
         pbos.compiler = null;
+        if (result.getParameterTypes() != null) {
+            for (BasePlannable.ParameterType planType : result.getParameterTypes()) {
+                if ((planType != null) && planType.isSkewed())
+                    pbos.skewedParameters = true;
+            }
+        }
         return pbos;
     }
 
@@ -0,0 +1,380 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The non-blocking side of a {@link PostgresServerConnection}.
+ *
+ * An {@link PostgresIOLoop} reads whatever the client sends into this
+ * channel's buffer. Once a whole message is there, the connection is given
+ * a turn on the server's executor, during which it processes every message
+ * it has. Idle connections therefore hold no thread.
+ *
+ * During a turn the connection reads through {@link #getInputStream}, which
+ * waits for more input if it needs it (as for COPY data or GSS negotiation)
+ * and writes through {@link #getOutputStream}, which waits while the socket
+ * is full.
+ */
+class PostgresChannel implements Runnable
+{
+    /** Stop reading from a client that has this much buffered while its turn is still going. */
+    static final int MAX_BUFFERED = 1024 * 1024;
+
+    private final PostgresServerConnection connection;
+    private final SocketChannel channel;
+    private final PostgresIOLoop loop;
+    private SelectionKey key;
+
+    // Guarded by this.
+    private byte[] buffer = new byte[1024];
+    private int start, end;
+    private boolean eof, scheduled, readPaused;
+
+    private final InputStream inputStream = new Input();
+    private final OutputStream outputStream = new Output();
+    private Selector writeSelector; // Guarded by this.
+
+    public PostgresChannel(PostgresServerConnection connection, SocketChannel channel, PostgresIOLoop loop) {
+        this.connection = connection;
+        this.channel = channel;
+        this.loop = loop;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public PostgresIOLoop getLoop() {
+        return loop;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /* Called from I/O loop */
+
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    SelectionKey getKey() {
+        return key;
+    }
+
+    /** Read what is available from the socket.
+     * @return whether this connection needs a turn.
+     */
+    boolean readAvailable(ByteBuffer readBuffer) {
+        while (true) {
+            readBuffer.clear();
+            int count;
+            try {
+                count = channel.read(readBuffer);
+            }
+            catch (IOException ex) {
+                count = -1;     // Reset by client: same as end of input.
+            }
+            if (count == 0) {
+                break;
+            }
+            synchronized (this) {
+                if (count < 0) {
+                    eof = true;
+                    key.interestOps(0);
+                    notifyAll();
+                    break;
+                }
+                readBuffer.flip();
+                append(readBuffer);
+                notifyAll();
+                if (scheduled && (end - start > MAX_BUFFERED)) {
+                    readPaused = true;
+                    key.interestOps(0);
+                    break;
+                }
+            }
+        }
+        return needsTurn();
+    }
+
+    /** Mark as scheduled if there is a message to process and no turn already. */
+    synchronized boolean needsTurn() {
+        if (scheduled || !hasMessage()) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /** Schedule a turn even without a message, so that the connection can finish closing. */
+    synchronized boolean needsFinalTurn() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /** Does the next turn process statements, as opposed to startup? */
+    boolean needsAdmission() {
+        return connection.isStartupComplete();
+    }
+
+    void resumeReading() {
+        if ((key != null) && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /* Called from worker */
+
+    @Override
+    public void run() {
+        try {
+            connection.processMessages();
+        }
+        finally {
+            boolean again, resume;
+            synchronized (this) {
+                scheduled = false;
+                again = connection.isChannelAttached() && (connection.isStopping() || hasMessage());
+                // Whatever is buffered needs more input to make a message.
+                resume = readPaused && !again;
+                if (resume) {
+                    readPaused = false;
+                }
+            }
+            if (again) {
+                loop.submit(this);
+            }
+            else if (resume) {
+                loop.resumeReading(this);
+            }
+        }
+    }
+
+    /** Is there a whole message in the buffer (or end of input) for the connection to read? */
+    synchronized boolean hasMessage() {
+        if (eof) {
+            return true;
+        }
+        int avail = end - start;
+        int lengthOffset;
+        PostgresMessages type;
+        if (connection.isStartupComplete()) {
+            if (avail < 1) {
+                return false;
+            }
+            int code = buffer[start];
+            if (!PostgresMessages.readTypeCorrect(code)) {
+                return true;    // Let the messenger fail.
+            }
+            type = PostgresMessages.messageType(code);
+            lengthOffset = 1;
+        }
+        else {
+            type = PostgresMessages.STARTUP_MESSAGE_TYPE;
+            lengthOffset = 0;
+        }
+        if (avail < lengthOffset + 4) {
+            return false;
+        }
+        int len = (((buffer[start + lengthOffset] & 0xFF) << 24) |
+                   ((buffer[start + lengthOffset + 1] & 0xFF) << 16) |
+                   ((buffer[start + lengthOffset + 2] & 0xFF) << 8) |
+                   (buffer[start + lengthOffset + 3] & 0xFF));
+        if ((len < 4) || (len > type.maxSize())) {
+            return true;        // Let the messenger fail.
+        }
+        return (avail >= lengthOffset + len);
+    }
+
+    /** Stop selecting and go back to blocking mode, for SSL. */
+    void detach() throws IOException {
+        loop.deregister(this);
+        synchronized (this) {
+            if (start != end) {
+                throw new IOException("Unexpected input before SSL handshake");
+            }
+        }
+        closeWriteSelector();
+        channel.configureBlocking(true);
+    }
+
+    void close() {
+        synchronized (this) {
+            eof = true;
+            notifyAll();
+        }
+        closeWriteSelector();
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+        }
+        loop.wakeup();
+    }
+
+    private void append(ByteBuffer bytes) {
+        int len = bytes.remaining();
+        if (end + len > buffer.length) {
+            int avail = end - start;
+            if (avail + len > buffer.length) {
+                byte[] newBuffer = new byte[Math.max(buffer.length * 2, avail + len)];
+                System.arraycopy(buffer, start, newBuffer, 0, avail);
+                buffer = newBuffer;
+            }
+            else {
+                System.arraycopy(buffer, start, buffer, 0, avail);
+            }
+            start = 0;
+            end = avail;
+        }
+        bytes.get(buffer, end, len);
+        end += len;
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        while (start == end) {
+            if (eof) {
+                return -1;
+            }
+            try {
+                wait();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        int count = Math.min(len, end - start);
+        System.arraycopy(buffer, start, b, off, count);
+        start += count;
+        if (start == end) {
+            start = end = 0;
+        }
+        if (readPaused && (end - start < MAX_BUFFERED / 2)) {
+            readPaused = false;
+            loop.resumeReading(this);
+        }
+        return count;
+    }
+
+    private synchronized int available() {
+        return end - start;
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            if (channel.write(bytes) == 0) {
+                // Socket buffer full: wait until the client has read some.
+                waitWritable();
+            }
+        }
+    }
+
+    private void waitWritable() throws IOException {
+        Selector selector;
+        synchronized (this) {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            selector = writeSelector;
+            if (selector == null) {
+                selector = writeSelector = Selector.open();
+                channel.register(selector, SelectionKey.OP_WRITE);
+            }
+        }
+        try {
+            selector.select();
+            selector.selectedKeys().clear();
+        }
+        catch (ClosedSelectorException ex) {
+            throw new ClosedChannelException();
+        }
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private void closeWriteSelector() {
+        Selector selector;
+        synchronized (this) {
+            selector = writeSelector;
+            writeSelector = null;
+        }
+        if (selector != null) {
+            try {
+                selector.close();
+            }
+            catch (IOException ex) {
+            }
+        }
+    }
+
+    class Input extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int count = PostgresChannel.this.read(b, 0, 1);
+            return (count < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return PostgresChannel.this.read(b, off, len);
+        }
+
+        @Override
+        public int available() {
+            return PostgresChannel.this.available();
+        }
+    }
+
+    class Output extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            PostgresChannel.this.write(ByteBuffer.wrap(new byte[] { (byte)b }));
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            PostgresChannel.this.write(ByteBuffer.wrap(b, off, len));
+        }
+    }
+}
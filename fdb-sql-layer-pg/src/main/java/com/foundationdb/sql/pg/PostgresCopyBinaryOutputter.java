@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.sql.server.ServerValueEncoder;
+
+import com.foundationdb.qp.row.Row;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+/** Write rows in the binary format of COPY, which {@link
+ * PostgresCopyBinaryRowReader} reads.
+ */
+public class PostgresCopyBinaryOutputter extends PostgresOutputter<Row>
+{
+    public PostgresCopyBinaryOutputter(PostgresQueryContext context,
+                                       PostgresDMLStatement statement,
+                                       String encoding) {
+        super(context, statement);
+        encoder = new ServerValueEncoder(context.getTypesTranslator(),
+                                         encoding,
+                                         context.getServer().getFormatOptions());
+    }
+
+    @Override
+    public void output(Row row) throws IOException {
+        messenger.beginMessage(PostgresMessages.COPY_DATA_TYPE.code());
+        output(row, messenger.getRawOutput());
+        messenger.sendMessage();
+    }
+
+    @Override
+    public void beforeData() throws IOException {
+        messenger.beginMessage(PostgresMessages.COPY_OUT_RESPONSE_TYPE.code());
+        messenger.write(1);
+        messenger.writeShort(ncols);
+        for (int i = 0; i < ncols; i++) {
+            messenger.writeShort(1);
+        }
+        messenger.sendMessage();
+        messenger.beginMessage(PostgresMessages.COPY_DATA_TYPE.code());
+        outputHeader(messenger.getRawOutput());
+        messenger.sendMessage();
+    }
+
+    @Override
+    public void afterData() throws IOException {
+        messenger.beginMessage(PostgresMessages.COPY_DATA_TYPE.code());
+        outputTrailer(messenger.getRawOutput());
+        messenger.sendMessage();
+        messenger.beginMessage(PostgresMessages.COPY_DONE_TYPE.code());
+        messenger.sendMessage();
+    }
+
+    public void output(Row row, OutputStream outputStream) 
+            throws IOException {
+        DataOutputStream dataStream = dataStream(outputStream);
+        dataStream.writeShort(ncols);
+        for (int i = 0; i < ncols; i++) {
+            PostgresType type = columnTypes.get(i);
+            ByteArrayOutputStream bytes = encoder.encodeValue(row.value(i), type, true);
+            if (bytes != null) {
+                dataStream.writeInt(bytes.size());
+                bytes.writeTo(dataStream);
+            }
+            else {
+                dataStream.writeInt(-1);
+            }
+        }
+    }
+
+    public void outputHeader(OutputStream outputStream) throws IOException {
+        DataOutputStream dataStream = dataStream(outputStream);
+        dataStream.write(PostgresCopyBinaryRowReader.SIGNATURE);
+        dataStream.writeInt(0); // Flags
+        dataStream.writeInt(0); // Header extension length
+    }
+
+    public void outputTrailer(OutputStream outputStream) throws IOException {
+        DataOutputStream dataStream = dataStream(outputStream);
+        dataStream.writeShort(-1);
+    }
+
+    private static DataOutputStream dataStream(OutputStream outputStream) {
+        if (outputStream instanceof DataOutputStream)
+            return (DataOutputStream)outputStream;
+        else
+            return new DataOutputStream(outputStream);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.sql.server.ServerValueDecoder;
+
+import com.foundationdb.ais.model.Column;
+import com.foundationdb.ais.model.Table;
+import com.foundationdb.qp.operator.QueryContext;
+import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.error.ExternalRowReaderException;
+import com.foundationdb.server.service.externaldata.RowReader;
+import com.foundationdb.server.types.common.types.TypesTranslator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Read rows in the binary format of COPY: a header and then for each
+ * row, a count of fields and each field's length and binary value.
+ */
+public class PostgresCopyBinaryRowReader extends RowReader
+{
+    /** The first bytes of the header, so called. */
+    static final byte[] SIGNATURE = {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0377, '\r', '\n', 0
+    };
+    /** Set in the header flags if rows have OIDs, which we do not accept. */
+    static final int FLAG_OIDS = 1 << 16;
+
+    private final List<PostgresType> types;
+    private final ServerValueDecoder decoder;
+    private boolean headerRead, trailerRead;
+
+    public PostgresCopyBinaryRowReader(Table table, List<Column> columns, 
+                                       InputStream inputStream, String encoding,
+                                       QueryContext queryContext, TypesTranslator typesTranslator) {
+        super(table, columns, inputStream, encoding, new byte[0],
+              queryContext, typesTranslator);
+        this.types = new ArrayList<>(columns.size());
+        for (Column column : columns) {
+            types.add(PostgresType.fromAIS(column));
+        }
+        this.decoder = new ServerValueDecoder(typesTranslator, encoding);
+    }
+
+    @Override
+    public Row nextRow() throws IOException {
+        if (!headerRead) {
+            readHeader();
+            headerRead = true;
+        }
+        if (trailerRead) {
+            return null;
+        }
+        {
+            int b = read();
+            if (b < 0) return null; // Tolerate a missing trailer.
+            unread(b);
+        }
+        int nfields = (short)readShort();
+        if (nfields == -1) {
+            trailerRead = true;
+            return null;
+        }
+        if (nfields != types.size()) {
+            throw new ExternalRowReaderException("row has " + nfields + 
+                                                 " fields instead of " + types.size());
+        }
+        newRow();
+        for (int i = 0; i < nfields; i++) {
+            int length = readInt();
+            if (length == -1) {
+                addField(null);
+                continue;
+            }
+            if (length < 0) {
+                throw new ExternalRowReaderException("invalid field length " + length);
+            }
+            for (int j = 0; j < length; j++) {
+                addToField(readByte());
+            }
+            byte[] encoded = copyField();
+            clearField();
+            addField(decoder.decodeBinary(encoded, types.get(i)));
+        }
+        return finishRow();
+    }
+
+    protected void readHeader() throws IOException {
+        for (int i = 0; i < SIGNATURE.length; i++) {
+            if (readByte() != (SIGNATURE[i] & 0xFF)) {
+                throw new ExternalRowReaderException("COPY file signature not recognized");
+            }
+        }
+        int flags = readInt();
+        if ((flags & FLAG_OIDS) != 0) {
+            throw new ExternalRowReaderException("COPY file with OIDs not supported");
+        }
+        int extensionLength = readInt();
+        for (int i = 0; i < extensionLength; i++) {
+            readByte();
+        }
+    }
+
+    protected int readByte() throws IOException {
+        int b = read();
+        if (b < 0) {
+            throw new ExternalRowReaderException("unexpected EOF in COPY data");
+        }
+        return b;
+    }
+
+    protected int readShort() throws IOException {
+        int b1 = readByte();
+        return (b1 << 8) | readByte();
+    }
+
+    protected int readInt() throws IOException {
+        int s1 = readShort();
+        return (s1 << 16) | readShort();
+    }
+}
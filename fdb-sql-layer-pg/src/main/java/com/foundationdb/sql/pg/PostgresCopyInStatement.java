@@ -25,11 +25,13 @@ import com.foundationdb.sql.parser.StatementNode;
 import com.foundationdb.ais.model.Column;
 import com.foundationdb.ais.model.Table;
 import com.foundationdb.qp.operator.QueryBindings;
+import com.foundationdb.qp.util.WorkerPool;
 import com.foundationdb.server.error.NoSuchColumnException;
 import com.foundationdb.server.error.NoSuchTableException;
 import com.foundationdb.server.error.UnsupportedSQLException;
 import com.foundationdb.server.service.externaldata.CsvFormat;
 import com.foundationdb.server.service.externaldata.ExternalDataService;
+import com.foundationdb.server.service.externaldata.RowReader;
 import com.foundationdb.server.service.monitor.SessionMonitor.StatementTypes;
 import com.foundationdb.server.service.session.Session;
 import com.foundationdb.sql.server.ServerTransaction;
@@ -51,6 +53,7 @@ public class PostgresCopyInStatement extends PostgresBaseStatement
     private List<Column> toColumns;
     private File fromFile;
     private CopyStatementNode.Format format;
+    private boolean binary;
     private String encoding;
     private CsvFormat csvFormat;
     private long skipRows;
@@ -108,23 +111,31 @@ public class PostgresCopyInStatement extends PostgresBaseStatement
         }
         if (copyStmt.getFilename() != null)
             fromFile = new File(copyStmt.getFilename());
-        format = copyStmt.getFormat();
-        if (format == null)
-            format = CopyStatementNode.Format.CSV;
-        switch (format) {
-        case CSV:
-            csvFormat = csvFormat(copyStmt, server);
-            if (copyStmt.isHeader()) {
-                skipRows = 1;
-            }
-            break;
-        case MYSQL_DUMP:
+        if (PostgresCopyStatementGenerator.isBinaryFormat(sql)) {
+            binary = true;
             encoding = copyStmt.getEncoding();
             if (encoding == null)
                 encoding = server.getMessenger().getEncoding();
-            break;
-        default:
-            throw new UnsupportedSQLException("COPY FORMAT " + format);
+        }
+        else {
+            format = copyStmt.getFormat();
+            if (format == null)
+                format = CopyStatementNode.Format.CSV;
+            switch (format) {
+            case CSV:
+                csvFormat = csvFormat(copyStmt, server);
+                if (copyStmt.isHeader()) {
+                    skipRows = 1;
+                }
+                break;
+            case MYSQL_DUMP:
+                encoding = copyStmt.getEncoding();
+                if (encoding == null)
+                    encoding = server.getMessenger().getEncoding();
+                break;
+            default:
+                throw new UnsupportedSQLException("COPY FORMAT " + format);
+            }
         }
         commitFrequency = copyStmt.getCommitFrequency();
         if (commitFrequency == 0) {
@@ -148,28 +159,43 @@ public class PostgresCopyInStatement extends PostgresBaseStatement
             istr = new FileInputStream(fromFile);
         else
             // Always use a stream: we align records and messages, but
-            // this is not a requirement on the client.
+            // this is not a requirement on the client. When loading is
+            // spread over workers anyway, also let the client send
+            // ahead of parsing.
             istr = new PostgresCopyInputStream(server.getMessenger(), 
-                                               toColumns.size());
+                                               toColumns.size(), binary,
+                                               WorkerPool.getParallelism(context) > 1);
         try {
             preExecute(context, DXLFunction.UNSPECIFIED_DML_WRITE);
-            switch (format) {
-            case CSV:
-                nrows = externalData.loadTableFromCsv(session, istr, csvFormat, skipRows,
-                                                      toTable, toColumns,
-                                                      commitFrequency, maxRetries,
-                                                      context);
-                break;
-            case MYSQL_DUMP:
-                nrows = externalData.loadTableFromMysqlDump(session, istr, encoding,
-                                                            toTable, toColumns,
+            if (binary) {
+                RowReader reader = new PostgresCopyBinaryRowReader(toTable, toColumns, 
+                                                                   istr, encoding,
+                                                                   context, context.getTypesTranslator());
+                nrows = externalData.loadTableFromRowReader(session, istr, reader,
                                                             commitFrequency, maxRetries,
                                                             context);
-                break;
+            }
+            else {
+                switch (format) {
+                case CSV:
+                    nrows = externalData.loadTableFromCsv(session, istr, csvFormat, skipRows,
+                                                          toTable, toColumns,
+                                                          commitFrequency, maxRetries,
+                                                          context);
+                    break;
+                case MYSQL_DUMP:
+                    nrows = externalData.loadTableFromMysqlDump(session, istr, encoding,
+                                                                toTable, toColumns,
+                                                                commitFrequency, maxRetries,
+                                                                context);
+                    break;
+                }
             }
         }
         finally {
             postExecute(context, DXLFunction.UNSPECIFIED_DML_WRITE);
+            if ((istr instanceof PostgresCopyInputStream) && session.isCurrentQueryCanceled())
+                ((PostgresCopyInputStream)istr).cancel();
             istr.close();
         }
         {        
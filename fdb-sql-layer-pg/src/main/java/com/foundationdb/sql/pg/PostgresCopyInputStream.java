@@ -17,39 +17,77 @@
 
 package com.foundationdb.sql.pg;
 
+import com.foundationdb.qp.util.WorkerPool;
+
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * The data of COPY ... FROM STDIN, as sent in COPY_DATA messages.
+ *
+ * Optionally, a thread from the I/O pool reads messages ahead into a bounded queue,
+ * so that the client can keep sending while rows are parsed and stored.
+ * Since that thread has to read until the client is finished, {@link
+ * #close} waits for it and throws away whatever was not consumed. It
+ * stops waiting if the statement is canceled or the client stops sending,
+ * which leaves the rest of the COPY unread, so the connection has to end.
+ */
 public class PostgresCopyInputStream extends InputStream
 {
+    /** Data read ahead is queued in chunks of about this size. */
+    static final int READ_AHEAD_CHUNK_SIZE = 64 * 1024;
+    /** And at most this many of them. */
+    static final int READ_AHEAD_CHUNKS = 16;
+    static final long READ_AHEAD_RETRY_MILLIS = 10;
+    /** How long to wait at the end for a client that is sending nothing. */
+    static final long READ_AHEAD_IDLE_MILLIS = 10000;
+
     private PostgresMessenger messenger;
     private byte[] message;
     private int length, pos;
-    private boolean eof;
+    private ReadAhead readAhead;
     
     public PostgresCopyInputStream(PostgresMessenger messenger, int ncols) 
             throws IOException {
+        this(messenger, ncols, false, false);
+    }
+
+    public PostgresCopyInputStream(PostgresMessenger messenger, int ncols,
+                                   boolean binary, boolean readAhead) 
+            throws IOException {
         this.messenger = messenger;
 
         messenger.beginMessage(PostgresMessages.COPY_IN_RESPONSE_TYPE.code());
-        messenger.writeByte(0); // textual
+        messenger.writeByte(binary ? 1 : 0);
         messenger.writeShort((short)ncols);
         for (int i = 0; i < ncols; i++) {
-            messenger.writeShort(0); // text
+            messenger.writeShort(binary ? 1 : 0);
         }
         messenger.sendMessage(true);
+
+        if (readAhead) {
+            this.readAhead = new ReadAhead();
+            this.readAhead.future = WorkerPool.getIOPool().submit(this.readAhead);
+        }
     }
 
     @Override
     public int read() throws IOException {
         while (true) {
             if (pos < length)
-                return message[pos++];
+                return message[pos++] & 0xFF;
             if (!nextMessage())
                 return -1;
         }
     }
-
     @Override
     public int read(byte b[], int off, int len) throws IOException {
         if (len == 0) 
@@ -91,7 +129,30 @@ public class PostgresCopyInputStream extends InputStream
         return (length - pos);
     }
 
+    /** Do not wait at {@link #close} for the client to finish sending. */
+    public void cancel() {
+        if (readAhead != null)
+            readAhead.canceled = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (readAhead != null) {
+            readAhead.finish();
+            readAhead = null;
+        }
+    }
+
     private boolean nextMessage() throws IOException {
+        if (readAhead != null) {
+            byte[] chunk = readAhead.take();
+            if (chunk == null)
+                return false;
+            message = chunk;
+            pos = 0;
+            length = message.length;
+            return true;
+        }
         while (true) {
             switch (messenger.readMessage()) {
             case COPY_DATA_TYPE:
@@ -112,4 +173,139 @@ public class PostgresCopyInputStream extends InputStream
         }
     }
 
+    private static final byte[] END = new byte[0];
+
+    class ReadAhead implements Runnable {
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS);
+        private final ByteArrayOutputStream chunk = new ByteArrayOutputStream(READ_AHEAD_CHUNK_SIZE);
+        private volatile boolean discarding, canceled;
+        private volatile IOException failure;
+        private volatile long lastReadMillis = System.currentTimeMillis();
+        private Future<?> future;
+
+        @Override
+        public void run() {
+            try {
+                readMessages();
+            }
+            catch (IOException ex) {
+                failure = ex;
+            }
+            catch (RuntimeException ex) {
+                failure = new IOException(ex);
+            }
+            catch (InterruptedException ex) {
+                failure = new InterruptedIOException();
+            }
+            try {
+                enqueue(END);
+            }
+            catch (InterruptedException ex) {
+            }
+        }
+
+        private void readMessages() throws IOException, InterruptedException {
+            while (true) {
+                PostgresMessages type = messenger.readDataMessage();
+                lastReadMillis = System.currentTimeMillis();
+                switch (type) {
+                case COPY_DATA_TYPE:
+                    byte[] data = messenger.getRawMessage();
+                    if (discarding)
+                        break;
+                    if ((chunk.size() == 0) && (data.length >= READ_AHEAD_CHUNK_SIZE)) {
+                        enqueue(data);
+                        break;
+                    }
+                    chunk.write(data, 0, data.length);
+                    // Do not hold back what there is when more has not
+                    // yet arrived.
+                    if ((chunk.size() >= READ_AHEAD_CHUNK_SIZE) ||
+                        (messenger.getInputStream().available() == 0))
+                        enqueueChunk();
+                    break;
+                case COPY_DONE_TYPE:
+                    enqueueChunk();
+                    return;
+                case COPY_FAIL_TYPE:
+                    enqueueChunk();
+                    throw new IOException("Copy failed: " + messenger.readString());
+                case FLUSH_TYPE:
+                case SYNC_TYPE:
+                    break;
+                case EOF_TYPE:
+                    throw new IOException("End of input during copy");
+                default:
+                    throw new IOException("Unexpected message type");
+                }
+            }
+        }
+
+        private void enqueueChunk() throws InterruptedException {
+            if (chunk.size() > 0) {
+                enqueue(chunk.toByteArray());
+                chunk.reset();
+            }
+        }
+
+        /** Wait for room in the queue, unless no one is going to take from it. */
+        private void enqueue(byte[] data) throws InterruptedException {
+            while (!discarding) {
+                if (queue.offer(data, READ_AHEAD_RETRY_MILLIS, TimeUnit.MILLISECONDS))
+                    break;
+            }
+        }
+
+        /** Get the next chunk or <code>null</code> at the end. */
+        public byte[] take() throws IOException {
+            byte[] data;
+            try {
+                data = queue.take();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (data == END) {
+                queue.add(END); // For any further read.
+                if (failure != null)
+                    throw failure;
+                return null;
+            }
+            return data;
+        }
+
+        /** Wait for the client to finish sending, ignoring the rest of what it sends. */
+        public void finish() throws IOException {
+            discarding = true;
+            queue.clear();
+            boolean interrupted = false;
+            // The connection cannot read anything else until this
+            // thread is done, but a canceled or stalled COPY should
+            // not hold onto a worker while the client takes its time.
+            while (!future.isDone()) {
+                if (interrupted || canceled ||
+                    (System.currentTimeMillis() - lastReadMillis > READ_AHEAD_IDLE_MILLIS)) {
+                    future.cancel(true);
+                    if (interrupted)
+                        Thread.currentThread().interrupt();
+                    throw new IOException("COPY ended before the client finished sending");
+                }
+                try {
+                    future.get(READ_AHEAD_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                catch (TimeoutException ex) {
+                }
+                catch (ExecutionException ex) {
+                    // run() keeps its own failure.
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
 }
@@ -28,6 +28,7 @@ import com.foundationdb.server.error.SQLParserInternalException;
 import com.foundationdb.server.error.UnsupportedSQLException;
 import com.foundationdb.server.service.externaldata.CsvFormat;
 import com.foundationdb.server.service.monitor.SessionMonitor.StatementTypes;
+import com.foundationdb.sql.server.ServerType.BinaryEncoding;
 
 import static com.foundationdb.sql.pg.PostgresCopyInStatement.csvFormat;
 import static com.foundationdb.server.service.dxl.DXLFunctionsHook.DXLFunction;
@@ -40,6 +41,8 @@ public class PostgresCopyOutStatement extends PostgresOperatorStatement
 {
     private File toFile;
     private CsvFormat csvFormat;
+    private boolean binary;
+    private String encoding;
 
     public PostgresCopyOutStatement(PostgresOperatorCompiler compiler) {
         super(compiler);
@@ -61,6 +64,17 @@ public class PostgresCopyOutStatement extends PostgresOperatorStatement
         assert (pstmt == this);
         if (copyStmt.getFilename() != null)
             toFile = new File(copyStmt.getFilename());
+        if (PostgresCopyStatementGenerator.isBinaryFormat(sql)) {
+            binary = true;
+            encoding = copyStmt.getEncoding();
+            if (encoding == null)
+                encoding = server.getMessenger().getEncoding();
+            for (PostgresType type : getColumnTypes()) {
+                if (type.getBinaryEncoding() == BinaryEncoding.NONE)
+                    throw new UnsupportedSQLException("COPY FORMAT BINARY of " + type.getTypeName());
+            }
+            return this;
+        }
         CopyStatementNode.Format format = copyStmt.getFormat();
         if (format == null)
             format = CopyStatementNode.Format.CSV;
@@ -91,17 +105,30 @@ public class PostgresCopyOutStatement extends PostgresOperatorStatement
             preExecute(context, DXLFunction.UNSPECIFIED_DML_READ);
             cursor = context.startCursor(this, bindings);
             outputStream = new FileOutputStream(toFile);
-            int ncols = getColumnTypes().size();
-            PostgresCopyCsvOutputter outputter = 
-                new PostgresCopyCsvOutputter(context, this, csvFormat);
-            if (csvFormat.getHeadings() != null) {
-                outputter.outputHeadings(outputStream);
-                nrows++;
+            if (binary) {
+                outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+                PostgresCopyBinaryOutputter outputter = 
+                    new PostgresCopyBinaryOutputter(context, this, encoding);
+                outputter.outputHeader(outputStream);
+                Row row;
+                while ((row = cursor.next()) != null) {
+                    outputter.output(row, outputStream);
+                    nrows++;
+                }
+                outputter.outputTrailer(outputStream);
             }
-            Row row;
-            while ((row = cursor.next()) != null) {
-                outputter.output(row, outputStream);
-                nrows++;
+            else {
+                PostgresCopyCsvOutputter outputter = 
+                    new PostgresCopyCsvOutputter(context, this, csvFormat);
+                if (csvFormat.getHeadings() != null) {
+                    outputter.outputHeadings(outputStream);
+                    nrows++;
+                }
+                Row row;
+                while ((row = cursor.next()) != null) {
+                    outputter.output(row, outputStream);
+                    nrows++;
+                }
             }
         }
         finally {
@@ -121,6 +148,8 @@ public class PostgresCopyOutStatement extends PostgresOperatorStatement
 
     @Override
     protected PostgresOutputter<Row> getRowOutputter(PostgresQueryContext context) {
+        if (binary)
+            return new PostgresCopyBinaryOutputter(context, this, encoding);
         return new PostgresCopyCsvOutputter(context, this, csvFormat);
     }
     
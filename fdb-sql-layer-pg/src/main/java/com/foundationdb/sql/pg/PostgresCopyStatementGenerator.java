@@ -23,12 +23,32 @@ import com.foundationdb.sql.parser.ParameterNode;
 import com.foundationdb.sql.parser.StatementNode;
 
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-/** COPY statement. */
+/** COPY statement.
+ * 
+ * The binary format is not something the parser knows about, so it is
+ * recognized here from the text of the statement, leaving aside comments,
+ * quoted strings and any other statements in the same query. The parser
+ * instead sees the same statement with that option turned into CSV or
+ * blanked out, without anything else moving.
+ */
 public class PostgresCopyStatementGenerator extends PostgresBaseStatementGenerator
 {
     private PostgresOperatorCompiler compiler;
 
+    // Each of these applies to the text of one statement, with comments
+    // and quoted text masked out.
+    private static final Pattern COPY_START = 
+        Pattern.compile("^\\s*COPY\\b", Pattern.CASE_INSENSITIVE);
+    // (FORMAT binary) or (FORMAT 'binary')
+    private static final Pattern FORMAT_BINARY = 
+        Pattern.compile("\\bFORMAT\\s+('?)BINARY\\1", Pattern.CASE_INSENSITIVE);
+    // Older WITH BINARY, as the last option.
+    private static final Pattern WITH_BINARY = 
+        Pattern.compile("\\s((WITH\\s+)?BINARY)\\s*$", Pattern.CASE_INSENSITIVE);
+
     public PostgresCopyStatementGenerator(PostgresServerSession server) {
         compiler = (PostgresOperatorCompiler)server.getAttribute("compiler");
     }
@@ -48,4 +68,182 @@ public class PostgresCopyStatementGenerator extends PostgresBaseStatementGenerat
         }
         return null;
     }
+
+    /** Get the text of <code>stmt</code>, one of several parsed from
+     * <code>sql</code>. For a COPY, that runs to the end of the statement,
+     * including a trailing binary option that the parser did not see.
+     */
+    public static String statementSQL(String sql, StatementNode stmt) {
+        int begin = stmt.getBeginOffset();
+        int end = stmt.getEndOffset() + 1;
+        if (stmt.getNodeType() == NodeTypes.COPY_STATEMENT_NODE) {
+            int semi = maskedSQL(sql).indexOf(';', end);
+            end = (semi < 0) ? sql.length() : semi;
+        }
+        return sql.substring(begin, end);
+    }
+
+    /** Is <code>sql</code>, the text of one statement, a COPY in the binary format? */
+    public static boolean isBinaryFormat(String sql) {
+        return (binaryAsCSV(sql) != null);
+    }
+
+    /** Get what the parser should see of <code>sql</code>, which is
+     * the same length, so that offsets into it still apply.
+     */
+    public static String parseableSQL(String sql) {
+        if (!mayHaveCopy(sql))
+            return sql;
+        String parseable = binaryAsCSV(sql);
+        return (parseable != null) ? parseable : sql;
+    }
+
+    /** Rule out a COPY in <code>sql</code> without masking all of it,
+     * since nearly every statement is something else. Only text that does
+     * not start with COPY but might hold more than one statement gets
+     * searched, and then just for the word.
+     */
+    static boolean mayHaveCopy(String sql) {
+        int start = skipSpaceAndComments(sql);
+        if (sql.regionMatches(true, start, "COPY", 0, 4))
+            return true;
+        if (sql.indexOf(';', start) < 0)
+            return false;
+        for (int i = sql.length() - 4; i > start; i--) {
+            if (sql.regionMatches(true, i, "COPY", 0, 4))
+                return true;
+        }
+        return false;
+    }
+
+    /** The offset of the first character of <code>sql</code> that is not
+     * whitespace or in a comment.
+     */
+    private static int skipSpaceAndComments(String sql) {
+        int len = sql.length();
+        int i = 0;
+        while (i < len) {
+            char ch = sql.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                i++;
+            }
+            else if ((ch == '-') && sql.startsWith("--", i)) {
+                int eol = sql.indexOf('\n', i);
+                i = (eol < 0) ? len : eol + 1;
+            }
+            else if ((ch == '/') && sql.startsWith("/*", i)) {
+                int depth = 0;
+                do {
+                    if (sql.startsWith("/*", i)) {
+                        depth++;
+                        i += 2;
+                    }
+                    else if (sql.startsWith("*/", i)) {
+                        depth--;
+                        i += 2;
+                    }
+                    else {
+                        i++;
+                    }
+                } while ((depth > 0) && (i < len));
+            }
+            else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /** Turn the binary format option of each COPY in <code>sql</code>
+     * into CSV or blanks, or return <code>null</code> if there are none.
+     */
+    private static String binaryAsCSV(String sql) {
+        String masked = maskedSQL(sql);
+        StringBuilder str = null;
+        int start = 0;
+        while (start < masked.length()) {
+            int end = masked.indexOf(';', start);
+            if (end < 0)
+                end = masked.length();
+            String stmt = masked.substring(start, end);
+            if (COPY_START.matcher(stmt).find()) {
+                Matcher matcher = FORMAT_BINARY.matcher(stmt);
+                while (matcher.find()) {
+                    if (str == null)
+                        str = new StringBuilder(sql);
+                    String quote = matcher.group(1);
+                    String csv = quote + "CSV" + quote;
+                    for (int i = matcher.start(1); i < matcher.end(); i++) {
+                        int j = i - matcher.start(1);
+                        str.setCharAt(start + i, (j < csv.length()) ? csv.charAt(j) : ' ');
+                    }
+                }
+                matcher = WITH_BINARY.matcher(stmt);
+                if (matcher.find()) {
+                    if (str == null)
+                        str = new StringBuilder(sql);
+                    for (int i = matcher.start(1); i < matcher.end(1); i++) {
+                        str.setCharAt(start + i, ' ');
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return (str == null) ? null : str.toString();
+    }
+
+    /** Blank out comments and the inside of quoted strings and
+     * identifiers, except for a <code>'binary'</code> literal, so that
+     * only the statements' own words match, at the same offsets.
+     */
+    static String maskedSQL(String sql) {
+        char[] chars = sql.toCharArray();
+        int len = chars.length;
+        int i = 0;
+        while (i < len) {
+            char ch = chars[i];
+            if ((ch == '-') && (i + 1 < len) && (chars[i+1] == '-')) {
+                while ((i < len) && (chars[i] != '\n')) {
+                    chars[i++] = ' ';
+                }
+            }
+            else if ((ch == '/') && (i + 1 < len) && (chars[i+1] == '*')) {
+                int depth = 0;
+                do {
+                    if ((chars[i] == '/') && (i + 1 < len) && (chars[i+1] == '*')) {
+                        depth++;
+                        chars[i++] = ' ';
+                    }
+                    else if ((chars[i] == '*') && (i + 1 < len) && (chars[i+1] == '/')) {
+                        depth--;
+                        chars[i++] = ' ';
+                    }
+                    chars[i++] = ' ';
+                } while ((depth > 0) && (i < len));
+            }
+            else if ((ch == '\'') || (ch == '"')) {
+                int start = ++i;
+                while (i < len) {
+                    if (chars[i] == ch) {
+                        if ((i + 1 < len) && (chars[i+1] == ch)) {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                if ((ch == '"') || !"binary".equalsIgnoreCase(sql.substring(start, i))) {
+                    for (int j = start; j < i; j++) {
+                        chars[j] = '_';
+                    }
+                }
+                i++;            // Closing quote.
+            }
+            else {
+                i++;
+            }
+        }
+        return new String(chars);
+    }
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.qp.util.WorkerPool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread that selects on many {@link PostgresChannel}s, reading their
+ * input and handing them to the statement executor when they have a
+ * message.
+ *
+ * When the executor is saturated (all its threads busy and its queue
+ * full), channels wait here and are retried, rather than failing. That
+ * limits how many statements run and wait at once no matter how many
+ * connections are open.
+ *
+ * Turns that come before a connection's first statement (its startup,
+ * SSL or cancel request) are not admitted that way. They are short and
+ * a cancel in particular has to get through while every worker is busy
+ * with the statements it is meant to stop.
+ */
+class PostgresIOLoop implements Runnable
+{
+    private static final Logger logger = LoggerFactory.getLogger(PostgresIOLoop.class);
+
+    /** How often to retry channels the executor could not take. */
+    static final long RETRY_MILLIS = 10;
+    static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Executor executor;
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<PostgresChannel> deferred = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private Thread thread;
+
+    public PostgresIOLoop(String name, Executor executor) throws IOException {
+        this.name = name;
+        this.executor = executor;
+        this.selector = Selector.open();
+    }
+
+    public void start() {
+        running = true;
+        thread = new Thread(this, name);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if (thread != null) {
+            try {
+                thread.join(500);
+                if (thread.isAlive())
+                    logger.warn("{} still running.", name);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /** Start selecting on <code>channel</code>, which must already be non-blocking. */
+    public void register(final PostgresChannel channel) {
+        addTask(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        channel.setKey(channel.getChannel().register(selector, SelectionKey.OP_READ, channel));
+                    }
+                    catch (ClosedChannelException ex) {
+                        // Stopped before it started: still needs its final turn.
+                        if (channel.needsFinalTurn())
+                            submit(channel);
+                    }
+                }
+            });
+    }
+
+    /** Stop selecting on <code>channel</code> and wait until the loop has
+     * let go of it, so that it can be put back into blocking mode.
+     */
+    public void deregister(final PostgresChannel channel) throws IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+        addTask(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        SelectionKey key = channel.getKey();
+                        if (key != null) {
+                            key.cancel();
+                            // Actually remove it from the selector.
+                            selector.selectNow();
+                        }
+                    }
+                    catch (IOException ex) {
+                        logger.warn("Error deregistering channel", ex);
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+        try {
+            while (!done.await(RETRY_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running)
+                    throw new ClosedChannelException();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    /** Select on <code>channel</code> again after it was paused for having too much input. */
+    public void resumeReading(final PostgresChannel channel) {
+        addTask(new Runnable() {
+                @Override
+                public void run() {
+                    channel.resumeReading();
+                }
+            });
+    }
+
+    /** Give <code>channel</code>, already marked as scheduled, a turn. */
+    public void submit(PostgresChannel channel) {
+        try {
+            execute(channel);
+        }
+        catch (RejectedExecutionException ex) {
+            deferred.add(channel);
+            selector.wakeup();
+        }
+    }
+
+    /** Run a statement turn on the executor and any other turn right away.
+     * There is at most one of the latter per connection that has not started up.
+     */
+    protected void execute(PostgresChannel channel) {
+        if (channel.needsAdmission())
+            executor.execute(channel);
+        else
+            WorkerPool.getIOPool().execute(channel);
+    }
+
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                if (deferred.isEmpty())
+                    selector.select();
+                else
+                    selector.select(RETRY_MILLIS);
+                runTasks();
+                retryDeferred();
+                Iterator<SelectionKey> iter = selector.selectedKeys().iterator();
+                while (iter.hasNext()) {
+                    SelectionKey key = iter.next();
+                    iter.remove();
+                    if (!key.isValid() || !key.isReadable())
+                        continue;
+                    PostgresChannel channel = (PostgresChannel)key.attachment();
+                    if (channel.readAvailable(readBuffer))
+                        submit(channel);
+                }
+            }
+        }
+        catch (Exception ex) {
+            if (running)
+                logger.error("Error in " + name, ex);
+        }
+        finally {
+            try {
+                selector.close();
+            }
+            catch (IOException ex) {
+            }
+        }
+    }
+
+    protected void addTask(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    protected void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    protected void retryDeferred() {
+        PostgresChannel channel;
+        while ((channel = deferred.peek()) != null) {
+            try {
+                execute(channel);
+            }
+            catch (RejectedExecutionException ex) {
+                if (!running)
+                    deferred.clear();
+                break;
+            }
+            deferred.remove();
+        }
+    }
+}
@@ -38,6 +38,9 @@ public interface PostgresMXBean {
     void setStatementCacheCapacity(int capacity);
     int getStatementCacheHits();
     int getStatementCacheMisses();
+    int getStatementCacheEvictions();
+    /** Total weight of cached statements, where a simple statement weighs one. */
+    long getStatementCacheWeight();
     void resetStatementCache();
     
     Set<Integer> getCurrentSessions();
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A growable buffer for an outgoing message, reused from one message to
+ * the next. Unlike <code>ByteArrayOutputStream</code>, it lets lengths be
+ * filled in after what they measure has been written and can be sent
+ * without copying it out first.
+ */
+class PostgresMessageBuffer extends OutputStream
+{
+    static final int INITIAL_SIZE = 1024;
+    /** Do not hang onto the space used by an unusually large message. */
+    static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int count;
+
+    public int size() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+        if (buf.length > MAX_RETAINED_SIZE)
+            buf = new byte[INITIAL_SIZE];
+    }
+
+    public int getByte(int pos) {
+        return buf[pos];
+    }
+
+    /** Overwrite the four bytes at <code>pos</code>. */
+    public void putInt(int pos, int v) {
+        buf[pos] = (byte)(v >>> 24);
+        buf[pos+1] = (byte)(v >>> 16);
+        buf[pos+2] = (byte)(v >>> 8);
+        buf[pos+3] = (byte)v;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte)b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    public void writeShort(int v) {
+        ensureCapacity(count + 2);
+        buf[count++] = (byte)(v >>> 8);
+        buf[count++] = (byte)v;
+    }
+
+    public void writeInt(int v) {
+        ensureCapacity(count + 4);
+        putInt(count, v);
+        count += 4;
+    }
+
+    public void writeLong(long v) {
+        writeInt((int)(v >>> 32));
+        writeInt((int)v);
+    }
+
+    /** Write <code>v</code> as ASCII decimal digits. */
+    public void writeDecimal(long v) {
+        if (v == Long.MIN_VALUE) {
+            write(MIN_LONG, 0, MIN_LONG.length);
+            return;
+        }
+        ensureCapacity(count + 20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int start = count;
+        do {
+            buf[count++] = (byte)('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
+    }
+
+    /** Write <code>s</code> encoded as UTF-8, the same as
+     * <code>getBytes("UTF-8")</code> would.
+     */
+    public void writeUTF8(String s) {
+        int len = s.length();
+        ensureCapacity(count + len * 3);
+        for (int i = 0; i < len; i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                buf[count++] = (byte)ch;
+            }
+            else if (ch < 0x800) {
+                buf[count++] = (byte)(0xC0 | (ch >> 6));
+                buf[count++] = (byte)(0x80 | (ch & 0x3F));
+            }
+            else if (Character.isSurrogate(ch)) {
+                if (Character.isHighSurrogate(ch) && (i + 1 < len) &&
+                    Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(ch, s.charAt(++i));
+                    buf[count++] = (byte)(0xF0 | (cp >> 18));
+                    buf[count++] = (byte)(0x80 | ((cp >> 12) & 0x3F));
+                    buf[count++] = (byte)(0x80 | ((cp >> 6) & 0x3F));
+                    buf[count++] = (byte)(0x80 | (cp & 0x3F));
+                }
+                else {
+                    buf[count++] = '?'; // Malformed, as the encoder replaces it.
+                }
+            }
+            else {
+                buf[count++] = (byte)(0xE0 | (ch >> 12));
+                buf[count++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+                buf[count++] = (byte)(0x80 | (ch & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > buf.length) {
+            byte[] newBuf = new byte[Math.max(buf.length * 2, size)];
+            System.arraycopy(buf, 0, newBuf, 0, count);
+            buf = newBuf;
+        }
+    }
+}
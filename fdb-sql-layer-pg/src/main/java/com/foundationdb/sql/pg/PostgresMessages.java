@@ -57,7 +57,7 @@ public enum PostgresMessages {
     READY_FOR_QUERY_TYPE    ('Z', 5, false, true), // (B)
     ROW_DESCRIPTION_TYPE    ('T', Integer.MAX_VALUE, false, true), // (B)
     STARTUP_MESSAGE_TYPE    (0,   Integer.MAX_VALUE, true, false, ErrorMode.FATAL), // (F)
-    SYNC_TYPE               ('S', 4, true, false), // (F)
+    SYNC_TYPE               ('S', 4, true, false, ErrorMode.SIMPLE), // (F) - commits Executes since the last one
     TERMINATE_TYPE          ('X', 4, true, false); // (F)
     
     // ErrorMode determines how server errors are recovered from when they occur. 
@@ -17,6 +17,7 @@
 
 package com.foundationdb.sql.pg;
 
+import com.foundationdb.qp.util.WorkerPool;
 import com.foundationdb.server.error.InvalidParameterValueException;
 
 import com.foundationdb.util.tap.InOutTap;
@@ -25,6 +26,11 @@ import com.foundationdb.util.tap.Tap;
 import java.net.*;
 import java.io.*;
 import java.nio.charset.Charset;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Basic implementation of Postgres wire protocol for SQL integration.
@@ -51,6 +57,30 @@ public class PostgresMessenger implements DataInput, DataOutput
     private final static InOutTap xmitTap = Tap.createTimer("sql: msg: xmit");
 
     private static final int IDLE_INTERVAL = 100;
+    /** Enough for many small messages, such as data rows, to go out in one write. */
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+    /** Messages that have waited in the buffer this long go out, with the
+     * next one sent or on their own if none is, so that the rows of a slow
+     * query reach the client while it runs rather than all at the end. */
+    static final long MAX_FLUSH_DELAY_NANOS = 100 * 1000000L;
+
+    private static class FlushTimerHolder {
+        // Only decides when to flush; the flush itself, which can block on
+        // a client that is not reading, goes to the I/O pool.
+        static final ScheduledExecutorService TIMER;
+        static {
+            ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "fdbsql-pg-flush");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            timer.setRemoveOnCancelPolicy(true);
+            TIMER = timer;
+        }
+    }
 
     private final Socket socket;
     private final InputStream inputStream;
@@ -58,19 +88,46 @@ public class PostgresMessenger implements DataInput, DataOutput
     private final DataInputStream dataInput;
     private byte[] rawMessageInput;
     private DataInputStream messageInput;
-    private ByteArrayOutputStream byteOutput;
-    private DataOutputStream messageOutput;
+    private PostgresMessageBuffer byteOutput = new PostgresMessageBuffer();
+    private DataOutputStream messageOutput = new DataOutputStream(byteOutput);
     private String encoding = "UTF-8";
+    private volatile long unflushedSince = -1;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable flushCheck = new Runnable() {
+            @Override
+            public void run() {
+                checkFlush();
+            }
+        };
+    private final Runnable delayedFlush = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    unflushedSince = -1;
+                    outputStream.flush();
+                }
+                catch (IOException ex) {
+                    // The connection's own thread gets this on its next write.
+                }
+            }
+        };
 
     public PostgresMessenger(Socket socket) throws SocketException, IOException {
+        this(socket, socket.getInputStream(), socket.getOutputStream());
+    }
+
+    /** Talk over <code>socket</code> but through the given streams, such as
+     * those of a non-blocking {@link PostgresChannel}.
+     */
+    public PostgresMessenger(Socket socket, InputStream inputStream, OutputStream outputStream) throws SocketException, IOException {
         this.socket = socket;
         // We flush() when we mean it. 
         // So, turn off kernel delay, but wrap a buffer so every
         // message isn't its own packet.
         socket.setTcpNoDelay(true);
-        inputStream = socket.getInputStream();
+        this.inputStream = inputStream;
         dataInput = new DataInputStream(inputStream);
-        outputStream = new BufferedOutputStream(socket.getOutputStream());
+        this.outputStream = new BufferedOutputStream(outputStream, OUTPUT_BUFFER_SIZE);
     }
 
     InputStream getInputStream() {
@@ -141,6 +198,25 @@ public class PostgresMessenger implements DataInput, DataOutput
         if (code < 0) 
             return PostgresMessages.EOF_TYPE;                            // EOF
 
+        return readMessageBody(type, code);
+    }
+
+    /** Read the next message of an exchange that is already under way,
+     * such as COPY data. Waiting for it does not make the connection
+     * idle, so this can be called from a thread other than the
+     * connection's own while that thread is busy elsewhere.
+     */
+    protected PostgresMessages readDataMessage() throws IOException {
+        int code = dataInput.read();
+        if (code < 0)
+            return PostgresMessages.EOF_TYPE;
+        if (!PostgresMessages.readTypeCorrect(code)) {
+            throw new IOException ("Bad protocol read message: " + (char)code);
+        }
+        return readMessageBody(PostgresMessages.messageType(code), code);
+    }
+
+    private PostgresMessages readMessageBody(PostgresMessages type, int code) throws IOException {
         recvTap.in();
         try {
             int count = 0;
@@ -167,27 +243,49 @@ public class PostgresMessenger implements DataInput, DataOutput
 
     /** Begin outgoing message of given type. */
     protected void beginMessage(int type) throws IOException {
-        byteOutput = new ByteArrayOutputStream();
-        messageOutput = new DataOutputStream(byteOutput);
-        messageOutput.write(type);
-        messageOutput.writeInt(0);
+        byteOutput.reset();
+        byteOutput.write(type);
+        byteOutput.writeInt(0);
     }
 
     /** Send outgoing message. */
     protected void sendMessage() throws IOException {
-        messageOutput.flush();
-        byte[] msg = byteOutput.toByteArray();
-        
         // check we're writing an allowed message. 
-        assert PostgresMessages.writeTypeCorrect((int)msg[0]) : "Invalid write message: " + (char)msg[0];
+        assert PostgresMessages.writeTypeCorrect(byteOutput.getByte(0)) : "Invalid write message: " + (char)byteOutput.getByte(0);
         
-        int len = msg.length - 1;
-        msg[1] = (byte)(len >> 24);
-        msg[2] = (byte)(len >> 16);
-        msg[3] = (byte)(len >> 8);
-        msg[4] = (byte)len;
-        outputStream.write(msg);
+        int len = byteOutput.size() - 1;
+        byteOutput.putInt(1, len);
+        byteOutput.writeTo(outputStream);
         bytesWritten(len + 1);
+        long now = System.nanoTime();
+        if (unflushedSince < 0) {
+            unflushedSince = now;
+            scheduleFlush(MAX_FLUSH_DELAY_NANOS);
+        }
+        else if (now - unflushedSince > MAX_FLUSH_DELAY_NANOS)
+            flush();
+    }
+
+    /** Check back in <code>delay</code> for messages that are still
+     * waiting, as when a slow query has sent one row and not the next.
+     * The buffered stream is synchronized, so the flush cannot come in
+     * the middle of a message.
+     */
+    private void scheduleFlush(long delay) {
+        if (flushScheduled.compareAndSet(false, true))
+            FlushTimerHolder.TIMER.schedule(flushCheck, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void checkFlush() {
+        flushScheduled.set(false);
+        long since = unflushedSince;
+        if (since < 0)
+            return;
+        long remaining = MAX_FLUSH_DELAY_NANOS - (System.nanoTime() - since);
+        if (remaining > 0)
+            scheduleFlush(remaining);
+        else
+            WorkerPool.getIOPool().execute(delayedFlush);
     }
 
     /** Send outgoing message and optionally flush stream. */
@@ -200,6 +298,7 @@ public class PostgresMessenger implements DataInput, DataOutput
     protected void flush() throws IOException {
         try {
             xmitTap.in();
+            unflushedSince = -1;
             outputStream.flush();
         }
         finally {
@@ -210,13 +309,15 @@ public class PostgresMessenger implements DataInput, DataOutput
     /** Save whatever portion of the current message there is so that
      * something asynchronous can be sent. */
     protected Object suspendMessage() throws IOException {
-        messageOutput.flush();
-        return byteOutput;
+        PostgresMessageBuffer state = byteOutput;
+        byteOutput = new PostgresMessageBuffer();
+        messageOutput = new DataOutputStream(byteOutput);
+        return state;
     }
 
     /** Restore the state from {@link #suspendMessage}. */
     protected void resumeMessage(Object state) throws IOException {
-        byteOutput = (ByteArrayOutputStream)state;
+        byteOutput = (PostgresMessageBuffer)state;
         messageOutput = new DataOutputStream(byteOutput);
     }
 
@@ -251,7 +352,31 @@ public class PostgresMessenger implements DataInput, DataOutput
 
     /** Write the raw contents of the given byte stream's buffer. */
     public void writeByteStream(ByteArrayOutputStream s) throws IOException {
-        s.writeTo(messageOutput);
+        s.writeTo(byteOutput);
+    }
+
+    /** Write a placeholder for the length of a value that follows.
+     * @return the position to pass to {@link #endValue}.
+     */
+    public int beginValue() {
+        int pos = byteOutput.size();
+        byteOutput.writeInt(0);
+        return pos;
+    }
+
+    /** Fill in the length of the value begun at <code>pos</code>. */
+    public void endValue(int pos) {
+        byteOutput.putInt(pos, byteOutput.size() - pos - 4);
+    }
+
+    /** Write <code>v</code> as decimal digits, as for an integer in text format. */
+    public void writeDecimal(long v) {
+        byteOutput.writeDecimal(v);
+    }
+
+    /** Write <code>s</code> as UTF-8, without any terminator. */
+    public void writeUTF8(String s) {
+        byteOutput.writeUTF8(s);
     }
 
     /*** DataInput ***/
@@ -334,13 +459,13 @@ public class PostgresMessenger implements DataInput, DataOutput
         messageOutput.writeFloat(v);
     }
     public void writeInt(int v) throws IOException {
-        messageOutput.writeInt(v);
+        byteOutput.writeInt(v);
     }
     public void writeLong(long v) throws IOException {
-        messageOutput.writeLong(v);
+        byteOutput.writeLong(v);
     }
     public void writeShort(int v) throws IOException {
-        messageOutput.writeShort(v);
+        byteOutput.writeShort(v);
     }
     public void writeUTF(String s) throws IOException {
         messageOutput.writeUTF(s);
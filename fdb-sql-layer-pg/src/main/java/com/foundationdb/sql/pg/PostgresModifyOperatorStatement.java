@@ -87,6 +87,11 @@ public class PostgresModifyOperatorStatement extends PostgresBaseOperatorStateme
         this.putInCache = putInCache;
     }
 
+    @Override
+    public Operator getResultOperator() {
+        return resultOperator;
+    }
+
     public boolean isInsert() {
         return "INSERT".equals(statementType);
     }
@@ -63,6 +63,11 @@ public class PostgresOperatorStatement extends PostgresBaseOperatorStatement
         this.resultOperator = resultOperator;
         this.costEstimate = costEstimate;
     }
+
+    @Override
+    public Operator getResultOperator() {
+        return resultOperator;
+    }
     
     @Override
     public TransactionMode getTransactionMode() {
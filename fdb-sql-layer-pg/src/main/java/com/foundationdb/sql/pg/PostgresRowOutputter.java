@@ -18,6 +18,12 @@
 package com.foundationdb.sql.pg;
 
 import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.types.TClass;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.aksql.AkCategory;
+import com.foundationdb.server.types.common.types.TString;
+import com.foundationdb.server.types.common.types.TypesTranslator;
+import com.foundationdb.server.types.value.ValueSource;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -29,19 +35,36 @@ public class PostgresRowOutputter extends PostgresOutputter<Row>
 {
     private static final Logger logger = LoggerFactory.getLogger(PostgresRowOutputter.class);
 
+    /** Columns whose values can be written straight into the message,
+     * without going through the encoder's byte stream. */
+    enum DirectEncoding {
+        NONE, TEXT_INTEGER, STRING_UTF8,
+        BINARY_INT_8, BINARY_INT_16, BINARY_INT_32, BINARY_INT_64,
+        BINARY_FLOAT_32, BINARY_FLOAT_64, BINARY_BOOLEAN
+    }
+
+    private final TypesTranslator typesTranslator;
+    private DirectEncoding[] directEncodings;
+
     public PostgresRowOutputter(PostgresQueryContext context,
                                 PostgresDMLStatement statement) {
         super(context, statement);
+        typesTranslator = context.getTypesTranslator();
     }
 
     @Override
     public void output(Row row) throws IOException {
+        if (directEncodings == null)
+            directEncodings = directEncodings();
         messenger.beginMessage(PostgresMessages.DATA_ROW_TYPE.code());
         messenger.writeShort(ncols);
         for (int i = 0; i < ncols; i++) {
+            ValueSource value = row.value(i);
+            if (writeDirect(messenger, typesTranslator, value, directEncodings[i]))
+                continue;
             PostgresType type = columnTypes.get(i);
             boolean binary = context.isColumnBinary(i);
-            ByteArrayOutputStream bytes = encoder.encodeValue(row.value(i), type, binary);
+            ByteArrayOutputStream bytes = encoder.encodeValue(value, type, binary);
             if (bytes == null) {
                 messenger.writeInt(-1);
             }
@@ -54,4 +77,123 @@ public class PostgresRowOutputter extends PostgresOutputter<Row>
         messenger.sendMessage();
     }
 
+    protected DirectEncoding[] directEncodings() {
+        boolean utf8 = "UTF-8".equals(encoder.getEncoding());
+        DirectEncoding[] result = new DirectEncoding[ncols];
+        for (int i = 0; i < ncols; i++) {
+            result[i] = directEncoding(columnTypes.get(i), context.isColumnBinary(i), utf8);
+        }
+        return result;
+    }
+
+    /** Get the direct encoding for a column, which must give the same
+     * bytes as <code>ServerValueEncoder</code> would.
+     */
+    static DirectEncoding directEncoding(PostgresType type, boolean binary, boolean utf8) {
+        TInstance tinstance = type.getType();
+        if (tinstance == null)
+            return DirectEncoding.NONE;
+        TClass tclass = tinstance.typeClass();
+        switch (type.getBinaryEncoding()) {
+        case INT_8:
+        case INT_16:
+        case INT_32:
+        case INT_64:
+            if (binary) {
+                switch (type.getBinaryEncoding()) {
+                case INT_8:
+                    return DirectEncoding.BINARY_INT_8;
+                case INT_16:
+                    return DirectEncoding.BINARY_INT_16;
+                case INT_32:
+                    return DirectEncoding.BINARY_INT_32;
+                default:
+                    return DirectEncoding.BINARY_INT_64;
+                }
+            }
+            // Only plain integers format as just their digits (not YEAR, say).
+            if (AkCategory.INTEGER.name().equals(tclass.name().categoryName()))
+                return DirectEncoding.TEXT_INTEGER;
+            break;
+        case FLOAT_32:
+            if (binary)
+                return DirectEncoding.BINARY_FLOAT_32;
+            break;
+        case FLOAT_64:
+            if (binary)
+                return DirectEncoding.BINARY_FLOAT_64;
+            break;
+        case BOOLEAN_C:
+            if (binary)
+                return DirectEncoding.BINARY_BOOLEAN;
+            break;
+        case STRING_BYTES:
+            // Text and binary are both the string's bytes.
+            if (utf8 && (tclass instanceof TString))
+                return DirectEncoding.STRING_UTF8;
+            break;
+        }
+        return DirectEncoding.NONE;
+    }
+
+    /** Write <code>value</code> with its length, if it can be done directly. */
+    static boolean writeDirect(PostgresMessenger messenger, TypesTranslator typesTranslator,
+                               ValueSource value, DirectEncoding direct) throws IOException {
+        if (direct == DirectEncoding.NONE)
+            return false;
+        if (value.isNull()) {
+            messenger.writeInt(-1);
+            return true;
+        }
+        switch (direct) {
+        case TEXT_INTEGER:
+            {
+                int pos = messenger.beginValue();
+                messenger.writeDecimal(typesTranslator.getIntegerValue(value));
+                messenger.endValue(pos);
+            }
+            break;
+        case STRING_UTF8:
+            {
+                if (value.hasCacheValue() && !(value.getObject() instanceof String))
+                    return false; // Encoder may be able to copy the bytes.
+                int pos = messenger.beginValue();
+                messenger.writeUTF8(value.getString());
+                messenger.endValue(pos);
+            }
+            break;
+        case BINARY_INT_8:
+            messenger.writeInt(1);
+            messenger.write((byte)typesTranslator.getIntegerValue(value));
+            break;
+        case BINARY_INT_16:
+            messenger.writeInt(2);
+            messenger.writeShort((short)typesTranslator.getIntegerValue(value));
+            break;
+        case BINARY_INT_32:
+            messenger.writeInt(4);
+            messenger.writeInt((int)typesTranslator.getIntegerValue(value));
+            break;
+        case BINARY_INT_64:
+            messenger.writeInt(8);
+            messenger.writeLong(typesTranslator.getIntegerValue(value));
+            break;
+        case BINARY_FLOAT_32:
+            messenger.writeInt(4);
+            messenger.writeFloat(value.getFloat());
+            break;
+        case BINARY_FLOAT_64:
+            messenger.writeInt(8);
+            messenger.writeDouble(value.getDouble());
+            break;
+        case BINARY_BOOLEAN:
+            messenger.writeInt(1);
+            messenger.write(value.getBoolean() ? 1 : 0);
+            break;
+        default:
+            return false;
+        }
+        return true;
+    }
+
 }
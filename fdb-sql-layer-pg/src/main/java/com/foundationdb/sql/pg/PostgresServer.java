@@ -17,6 +17,7 @@
 
 package com.foundationdb.sql.pg;
 
+import com.foundationdb.qp.operator.Operator;
 import com.foundationdb.sql.server.CacheCounters;
 import com.foundationdb.sql.server.ServerServiceRequirements;
 import com.foundationdb.sql.server.ServerStatementCache;
@@ -32,8 +33,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
@@ -44,14 +47,24 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 
 /** The PostgreSQL server.
- * Listens of a given port and spawns <code>PostgresServerConnection</code> threads
- * to process requests.
+ * Listens of a given port and creates a <code>PostgresServerConnection</code>
+ * for each client.
+ * Connections are read by a few <code>PostgresIOLoop</code> threads and their
+ * statements run on a bounded executor: at most <code>max_executing_statements</code>
+ * at once, with up to <code>statement_queue_length</code> more waiting; beyond that,
+ * connections wait in their I/O loop. Startup and cancel requests do not wait. With <code>io_threads</code> of zero, each
+ * connection gets a thread of its own instead.
  * Also keeps global state for shutdown and inter-connection communication like cancel.
 */
 public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
@@ -59,6 +72,8 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
     public static final String SERVER_PROPERTIES_PREFIX = "fdbsql.postgres.";
     protected static final String SERVER_TYPE = "Postgres";
     private static final String THREAD_NAME_PREFIX = "PostgresServer_Accept-"; // Port is appended
+    private static final String IO_THREAD_NAME_PREFIX = "PostgresServer_IO-"; // Number is appended
+    private static final String WORKER_THREAD_NAME_PREFIX = "PostgresServer_Worker-"; // Number is appended
     private static final String BYTES_IN_METRIC_NAME = "PostgresBytesIn";
     private static final String BYTES_OUT_METRIC_NAME = "PostgresBytesOut";
 
@@ -80,6 +95,7 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
     private Thread thread;
     // AIS-dependent state
     private volatile int statementCacheCapacity;
+    private final boolean normalizeLiterals;
     private final Map<ObjectLongPair,ServerStatementCache<PostgresStatement>> statementCaches =
         new HashMap<>(); // key and aisGeneration
     // end AIS-dependent state
@@ -89,9 +105,41 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
     private Subject gssLogin;
     private final int slowLimit;
     private final int hardLimit;
+    private final int ioThreads;
+    private final int maxExecutingStatements;
+    private final int statementQueueLength;
+    private ThreadPoolExecutor executor;
+    private PostgresIOLoop[] ioLoops;
+    private int nextIOLoop;
 
     private static final Logger logger = LoggerFactory.getLogger(PostgresServer.class);
 
+    /** Number of plan operators that weigh as much as one simple statement. */
+    static final int OPERATORS_PER_CACHE_UNIT = 8;
+
+    /** Weigh statements by the size of their plan, so that a big
+     * plan counts as several simple ones against the cache capacity. */
+    static final ServerStatementCache.Weigher<PostgresStatement> STATEMENT_WEIGHER =
+        new ServerStatementCache.Weigher<PostgresStatement>() {
+            @Override
+            public int weigh(String sql, PostgresStatement stmt) {
+                if (!(stmt instanceof PostgresBaseOperatorStatement))
+                    return 1;
+                Operator plan = ((PostgresBaseOperatorStatement)stmt).getResultOperator();
+                if (plan == null)
+                    return 1;
+                return (countOperators(plan) + OPERATORS_PER_CACHE_UNIT - 1) / OPERATORS_PER_CACHE_UNIT;
+            }
+        };
+
+    static int countOperators(Operator operator) {
+        int count = 1;
+        for (Operator input : operator.getInputOperators()) {
+            count += countOperators(input);
+        }
+        return count;
+    }
+
     public PostgresServer(ServerServiceRequirements reqs) {
         this.reqs = reqs;
         properties = reqs.config().deriveProperties(COMMON_PROPERTIES_PREFIX);
@@ -105,9 +153,13 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
         
         String capacityString = properties.getProperty("statementCacheCapacity");
         statementCacheCapacity = Integer.parseInt(capacityString);
+        normalizeLiterals = Boolean.parseBoolean(properties.getProperty("normalizeLiterals", "false"));
         
         slowLimit = Integer.parseInt(properties.getProperty("connection_slow_limit", "250"));
         hardLimit = Integer.parseInt(properties.getProperty("connection_hard_limit", "500"));
+        ioThreads = Integer.parseInt(properties.getProperty("io_threads", "2"));
+        maxExecutingStatements = Integer.parseInt(properties.getProperty("max_executing_statements", "64"));
+        statementQueueLength = Integer.parseInt(properties.getProperty("statement_queue_length", "1024"));
     }
 
     public Properties getProperties() {
@@ -122,6 +174,11 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
         return host;
     }
 
+    /** Should simple queries with literals share a plan by parameterizing them? */
+    public boolean isNormalizeLiterals() {
+        return normalizeLiterals;
+    }
+
     /** Called from the (Main's) main thread to start a server
         running in its own thread. */
     public void start() {
@@ -158,6 +215,8 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
             connection.stop();
         }
 
+        stopIOLoops();
+
         if (thread != null) {
             try {
                 // Wait a bit, but don't hang up shutdown if thread is wedged.
@@ -184,7 +243,15 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
             synchronized(this) {
                 if (!running) return;
                 // 50 here was taken from the shorter new ServerSocket(port)
-                socket = new ServerSocket(port, 50, InetAddress.getByName(host));
+                if (ioThreads > 0) {
+                    // Accepted sockets need a channel to be selected on.
+                    socket = ServerSocketChannel.open().socket();
+                    socket.bind(new InetSocketAddress(InetAddress.getByName(host), port), 50);
+                    startIOLoops();
+                }
+                else {
+                    socket = new ServerSocket(port, 50, InetAddress.getByName(host));
+                }
                 listening = true;
             }
             while (running) {
@@ -238,6 +305,60 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
         }
     }
 
+    protected synchronized void startIOLoops() throws IOException {
+        final AtomicInteger workerCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxExecutingStatements, maxExecutingStatements,
+                                          0, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<Runnable>(Math.max(statementQueueLength, 1)),
+                                          new ThreadFactory() {
+                                              @Override
+                                              public Thread newThread(Runnable r) {
+                                                  return new Thread(r, WORKER_THREAD_NAME_PREFIX + workerCount.incrementAndGet());
+                                              }
+                                          });
+        ioLoops = new PostgresIOLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            ioLoops[i] = new PostgresIOLoop(IO_THREAD_NAME_PREFIX + (i + 1), executor);
+            ioLoops[i].start();
+        }
+    }
+
+    protected void stopIOLoops() {
+        PostgresIOLoop[] loops;
+        ThreadPoolExecutor executor;
+        synchronized (this) {
+            loops = this.ioLoops;
+            executor = this.executor;
+            this.ioLoops = null;
+            this.executor = null;
+        }
+        if (loops != null) {
+            for (PostgresIOLoop loop : loops) {
+                loop.stop();
+            }
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                // Let connections finish cleaning up, but don't hang up shutdown.
+                if (!executor.awaitTermination(500, TimeUnit.MILLISECONDS))
+                    logger.warn("Server still executing statements.");
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** The I/O loop for a new connection, or <code>null</code> if it should have its own thread. */
+    synchronized PostgresIOLoop nextIOLoop() {
+        if (ioLoops == null)
+            return null;
+        PostgresIOLoop loop = ioLoops[nextIOLoop];
+        nextIOLoop = (nextIOLoop + 1) % ioLoops.length;
+        return loop;
+    }
+
     public synchronized boolean isListening() {
         return listening;
     }
@@ -304,7 +425,7 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
             if (statementCache == null) {
                 // No cache => recent DDL, reasonable time to do a little cleaning
                 cleanStatementCaches(aisGeneration);
-                statementCache = new ServerStatementCache<>(cacheCounters, statementCacheCapacity);
+                statementCache = new ServerStatementCache<>(cacheCounters, statementCacheCapacity, STATEMENT_WEIGHER);
                 statementCaches.put(fullKey, statementCache);
             }
         }
@@ -338,6 +459,16 @@ public class PostgresServer implements Runnable, PostgresMXBean, ServerMonitor {
     public int getStatementCacheMisses() {
         return cacheCounters.getMisses();
     }
+
+    @Override
+    public int getStatementCacheEvictions() {
+        return cacheCounters.getEvictions();
+    }
+
+    @Override
+    public long getStatementCacheWeight() {
+        return cacheCounters.getWeight();
+    }
     
     @Override
     public void resetStatementCache() {
@@ -18,6 +18,7 @@
 package com.foundationdb.sql.pg;
 
 import com.foundationdb.ais.model.AkibanInformationSchema;
+import com.foundationdb.sql.server.NormalizedStatement;
 import com.foundationdb.sql.server.ServerServiceRequirements;
 import com.foundationdb.sql.server.ServerSessionBase;
 import com.foundationdb.sql.server.ServerSessionMonitor;
@@ -34,6 +35,7 @@ import com.foundationdb.qp.operator.QueryContext;
 import com.foundationdb.server.api.DDLFunctions;
 import com.foundationdb.server.error.*;
 import com.foundationdb.server.service.metrics.LongMetric;
+import com.foundationdb.server.util.LRUCacheMap;
 import com.foundationdb.server.service.monitor.CursorMonitor;
 import com.foundationdb.server.service.monitor.MonitorStage;
 import com.foundationdb.server.service.monitor.PreparedStatementMonitor;
@@ -63,7 +65,10 @@ import java.util.*;
 
 /**
  * Connection to a Postgres server client.
- * Runs in its own thread; has its own Main Session.
+ * Has its own Main Session. Normally it does not have a thread of its own:
+ * its {@link PostgresChannel} is given turns on the server's executor when
+ * messages arrive. With no I/O threads configured, or once switched to SSL,
+ * it runs in its own thread instead.
  *
  */
 public class PostgresServerConnection extends ServerSessionBase
@@ -75,10 +80,17 @@ public class PostgresServerConnection extends ServerSessionBase
     private static final String THREAD_NAME_PREFIX = "PostgresServer_Session-"; // Session ID appended
     private static final String MD5_SALT = "MD5_SALT";
     private static final ErrorCode[] slowErrors = {ErrorCode.FDB_PAST_VERSION, ErrorCode.QUERY_TIMEOUT};
+    private static final int UNNORMALIZABLE_CAPACITY = 100;
 
     private final PostgresServer server;
-    private boolean running = false, ignoreUntilSync = false;
+    private volatile boolean running = false, startupComplete = false;
+    private boolean ignoreUntilSync = false, cleanedUp = false;
+    // The transaction of autocommit Executes, left open until Sync.
+    private boolean pipelineTransaction = false;
+    // The batch outgrew one transaction: the rest of it commits per Execute.
+    private boolean pipelineOverflow = false;
     private Socket socket;
+    private PostgresChannel channel;
     private PostgresMessenger messenger;
     private ServerValueEncoder valueEncoder;
     private ServerValueDecoder valueDecoder;
@@ -91,9 +103,12 @@ public class PostgresServerConnection extends ServerSessionBase
         new HashMap<>();
 
     private ServerStatementCache<PostgresStatement> statementCache;
+    // Normalized statements whose parameters turned out not to bind like their literals.
+    private Map<String,Boolean> unnormalizable = new LRUCacheMap<>(UNNORMALIZABLE_CAPACITY);
     private PostgresStatementParser[] unparsedGenerators;
     private PostgresStatementGenerator[] parsedGenerators;
     private Thread thread;
+    private final Object threadLock = new Object();
     private final LongMetric bytesInMetric, bytesOutMetric;
 
     private volatile String cancelForKillReason, cancelByUser;
@@ -139,12 +154,38 @@ public class PostgresServerConnection extends ServerSessionBase
 
     public void start() {
         running = true;
-        thread = new Thread(this, THREAD_NAME_PREFIX + sessionId);
-        thread.start();
+        PostgresIOLoop loop = server.nextIOLoop();
+        if ((loop != null) && (socket.getChannel() != null)) {
+            try {
+                socket.getChannel().configureBlocking(false);
+                channel = new PostgresChannel(this, socket.getChannel(), loop);
+                loop.register(channel);
+                return;
+            }
+            catch (IOException ex) {
+                logger.warn("Could not make connection non-blocking", ex);
+            }
+        }
+        startThread();
+    }
+
+    protected void startThread() {
+        synchronized (threadLock) {
+            thread = new Thread(this, THREAD_NAME_PREFIX + sessionId);
+            thread.start();
+        }
     }
 
     public void stop() {
         running = false;
+        PostgresChannel channel = this.channel;
+        if (channel != null) {
+            // Wakes up any turn waiting on input; otherwise it needs one to clean up.
+            channel.close();
+            if (channel.needsFinalTurn())
+                channel.getLoop().submit(channel);
+            return;
+        }
         // Can only wake up stream read by closing down socket.
         try {
             socket.close();
@@ -187,7 +228,17 @@ public class PostgresServerConnection extends ServerSessionBase
     }
 
     protected void createMessenger() throws IOException {
-        messenger = new PostgresMessenger(socket) {
+        InputStream inputStream;
+        OutputStream outputStream;
+        if (channel != null) {
+            inputStream = channel.getInputStream();
+            outputStream = channel.getOutputStream();
+        }
+        else {
+            inputStream = socket.getInputStream();
+            outputStream = socket.getOutputStream();
+        }
+        messenger = new PostgresMessenger(socket, inputStream, outputStream) {
                 @Override
                 public void beforeIdle() throws IOException {
                     super.beforeIdle();
@@ -226,154 +277,236 @@ public class PostgresServerConnection extends ServerSessionBase
 
     protected void topLevel() throws IOException, Exception {
         logger.debug("Connect from {}" + socket.getRemoteSocketAddress());
-        boolean startupComplete = false;
         try {
             while (running) {
-                READ_MESSAGE.in();
-                PostgresMessages type;
-                try {
-                    type = messenger.readMessage(startupComplete);
-                } catch (ConnectionTerminatedException ex) {
-                    logger.debug("About to terminate", ex);
-                    notifyClient(QueryContext.NotificationLevel.WARNING,
-                                 ex.getCode(), ex.getShortMessage());
-                    stop();
-                    continue;
-                } finally {
-                    READ_MESSAGE.out();
-                }
-                PROCESS_MESSAGE.in();
-                if (ignoreUntilSync) {
-                    if ((type != PostgresMessages.EOF_TYPE) && (type != PostgresMessages.SYNC_TYPE))
-                        continue;
-                    ignoreUntilSync = false;
+                processMessage();
+            }
+        }
+        finally {
+            cleanup();
+        }
+    }
+
+    /** Process the connection's messages that have arrived, which is a turn
+     * of the server's executor.
+     */
+    protected void processMessages() {
+        synchronized (threadLock) {
+            thread = Thread.currentThread();
+        }
+        try {
+            if (running && (messenger == null))
+                createMessenger();
+            boolean admitted = startupComplete;
+            while (running && (channel != null) && channel.hasMessage()) {
+                processMessage();
+                if (!admitted && startupComplete)
+                    break;      // Statements wait for a turn on the executor.
+            }
+        }
+        catch (Exception ex) {
+            if (running)
+                logger.warn("Error in server", ex);
+            running = false;
+        } catch (Throwable ex) {
+            logger.error("Error in server {}", ex);
+            running = false;
+        }
+        finally {
+            synchronized (threadLock) {
+                thread = null;
+                // Do not leave a cancel's interrupt for the next turn of a pooled thread.
+                Thread.interrupted();
+            }
+        }
+        if (channel == null) {
+            // Switched to SSL: carry on in a thread of its own.
+            if (running) {
+                startThread();
+                return;
+            }
+            try {
+                socket.close();
+            }
+            catch (IOException ex) {
+            }
+            cleanup();
+        }
+        else if (!running) {
+            channel.close();
+            cleanup();
+        }
+    }
+
+    /* Called by channel */
+
+    boolean isStartupComplete() {
+        return startupComplete;
+    }
+
+    boolean isChannelAttached() {
+        return (channel != null);
+    }
+
+    /** Stopped but not yet cleaned up. */
+    boolean isStopping() {
+        return !running && !cleanedUp;
+    }
+
+    protected void processMessage() throws IOException, Exception {
+        READ_MESSAGE.in();
+        PostgresMessages type;
+        try {
+            type = messenger.readMessage(startupComplete);
+        } catch (ConnectionTerminatedException ex) {
+            logger.debug("About to terminate", ex);
+            notifyClient(QueryContext.NotificationLevel.WARNING,
+                         ex.getCode(), ex.getShortMessage());
+            stop();
+            return;
+        } finally {
+            READ_MESSAGE.out();
+        }
+        PROCESS_MESSAGE.in();
+        if (ignoreUntilSync) {
+            if ((type != PostgresMessages.EOF_TYPE) && (type != PostgresMessages.SYNC_TYPE))
+                return;
+            ignoreUntilSync = false;
+        }
+        long startNsec = System.nanoTime();
+        try {
+            if (!continuesPipeline(type)) {
+                if (pipelineTransaction) {
+                    endPipelineTransaction((type != PostgresMessages.EOF_TYPE) &&
+                                           (type != PostgresMessages.TERMINATE_TYPE));
                 }
-                long startNsec = System.nanoTime();
-                try {
-                    switch (type) {
-                    case EOF_TYPE: // EOF
-                        stop();
-                        break;
-                    case SYNC_TYPE:
-                        readyForQuery();
-                        break;
-                    case STARTUP_MESSAGE_TYPE:
-                        startupComplete = processStartupMessage();
-                        break;
-                    case PASSWORD_MESSAGE_TYPE:
-                        processPasswordMessage();
-                        break;
-                    case QUERY_TYPE:
-                        processQuery();
-                        break;
-                    case PARSE_TYPE:
-                        processParse();
-                        break;
-                    case BIND_TYPE:
-                        processBind();
-                        break;
-                    case DESCRIBE_TYPE:
-                        processDescribe();
-                        break;
-                    case EXECUTE_TYPE:
-                        processExecute();
-                        break;
-                    case FLUSH_TYPE:
-                        processFlush();
-                        break;
-                    case CLOSE_TYPE:
-                        processClose();
-                        break;
-                    case TERMINATE_TYPE:
-                        processTerminate();
-                        break;
-                    }
-                } catch (QueryCanceledException ex) {
-                    InvalidOperationException nex = ex;
-                    boolean forKill = false;
-                    if (cancelForKillReason != null) {
-                        nex = new ConnectionTerminatedException(cancelForKillReason);
-                        nex.initCause(ex);
-                        cancelForKillReason = null;
-                        forKill = true;
-                    }
-                    logError(ErrorLogLevel.INFO, "Query {} canceled", nex);
-                    String msg = nex.getShortMessage();
-                    if (cancelByUser != null) {
-                        if (!forKill) msg = "Query canceled";
-                        msg += " by " + cancelByUser;
-                        cancelByUser = null;
-                    }
-                    sendErrorResponse(type, nex, nex.getCode(), msg);
-                    if (forKill) stop();
-                } catch (ConnectionTerminatedException ex) {
-                    logError(ErrorLogLevel.DEBUG, "Query {} terminated self", ex);
-                    sendErrorResponse(type, ex, ex.getCode(), ex.getShortMessage());
-                    stop();
-                } catch (InvalidOperationException ex) {
-                    // Most likely a user error, not a system error.
-                    String fmt = logger.isDebugEnabled() ?
-                        "Error in query {}" : // Include stack trace
-                        "Error in query {} => {}"; // Just summarize error
-                    logError(ErrorLogLevel.WARN, fmt, ex);
-                    sendErrorResponse(type, ex, ex.getCode(), ex.getShortMessage());
-                } catch (MultipleCauseException ex) {
-                    int count = 1;
-                    int length = ex.getCauses().size();
-                    for(Throwable throwable : ex.getCauses()) {
-                        if (throwable instanceof InvalidOperationException){
-                            if(count == length){
-                                logError(ErrorLogLevel.WARN, "Error in query {}", ex);
-                                sendErrorResponse(type,
-                                                  ((InvalidOperationException) throwable),
-                                                  ((InvalidOperationException) throwable).getCode(),
-                                                  ((InvalidOperationException) throwable).getShortMessage());
-                            } else {
-                                notifyClient(QueryContext.NotificationLevel.WARNING,
-                                        ((InvalidOperationException) throwable).getCode(),
-                                        ((InvalidOperationException) throwable).getShortMessage());
-                            }
-                        } else {
-                            if(count == length){
-                                logError(ErrorLogLevel.WARN, "Unexpected runtime exception in query {}", ex);
-                                sendErrorResponse(type,
-                                                  (RuntimeException)throwable,
-                                                  ErrorCode.UNEXPECTED_EXCEPTION,
-                                                  ex.getMessage());
-                            } else {
-                                notifyClient(QueryContext.NotificationLevel.WARNING,
-                                        ErrorCode.UNEXPECTED_EXCEPTION,
-                                        ex.getMessage());
-                            }
-                        }
-                        count++;
+                pipelineOverflow = false;
+            }
+            switch (type) {
+            case EOF_TYPE: // EOF
+                stop();
+                break;
+            case SYNC_TYPE:
+                readyForQuery();
+                break;
+            case STARTUP_MESSAGE_TYPE:
+                startupComplete = processStartupMessage();
+                break;
+            case PASSWORD_MESSAGE_TYPE:
+                processPasswordMessage();
+                break;
+            case QUERY_TYPE:
+                processQuery();
+                break;
+            case PARSE_TYPE:
+                processParse();
+                break;
+            case BIND_TYPE:
+                processBind();
+                break;
+            case DESCRIBE_TYPE:
+                processDescribe();
+                break;
+            case EXECUTE_TYPE:
+                processExecute();
+                break;
+            case FLUSH_TYPE:
+                processFlush();
+                break;
+            case CLOSE_TYPE:
+                processClose();
+                break;
+            case TERMINATE_TYPE:
+                processTerminate();
+                break;
+            }
+        } catch (QueryCanceledException ex) {
+            InvalidOperationException nex = ex;
+            boolean forKill = false;
+            if (cancelForKillReason != null) {
+                nex = new ConnectionTerminatedException(cancelForKillReason);
+                nex.initCause(ex);
+                cancelForKillReason = null;
+                forKill = true;
+            }
+            logError(ErrorLogLevel.INFO, "Query {} canceled", nex);
+            String msg = nex.getShortMessage();
+            if (cancelByUser != null) {
+                if (!forKill) msg = "Query canceled";
+                msg += " by " + cancelByUser;
+                cancelByUser = null;
+            }
+            sendErrorResponse(type, nex, nex.getCode(), msg);
+            if (forKill) stop();
+        } catch (ConnectionTerminatedException ex) {
+            logError(ErrorLogLevel.DEBUG, "Query {} terminated self", ex);
+            sendErrorResponse(type, ex, ex.getCode(), ex.getShortMessage());
+            stop();
+        } catch (InvalidOperationException ex) {
+            // Most likely a user error, not a system error.
+            String fmt = logger.isDebugEnabled() ?
+                "Error in query {}" : // Include stack trace
+                "Error in query {} => {}"; // Just summarize error
+            logError(ErrorLogLevel.WARN, fmt, ex);
+            sendErrorResponse(type, ex, ex.getCode(), ex.getShortMessage());
+        } catch (MultipleCauseException ex) {
+            int count = 1;
+            int length = ex.getCauses().size();
+            for(Throwable throwable : ex.getCauses()) {
+                if (throwable instanceof InvalidOperationException){
+                    if(count == length){
+                        logError(ErrorLogLevel.WARN, "Error in query {}", ex);
+                        sendErrorResponse(type,
+                                          ((InvalidOperationException) throwable),
+                                          ((InvalidOperationException) throwable).getCode(),
+                                          ((InvalidOperationException) throwable).getShortMessage());
+                    } else {
+                        notifyClient(QueryContext.NotificationLevel.WARNING,
+                                ((InvalidOperationException) throwable).getCode(),
+                                ((InvalidOperationException) throwable).getShortMessage());
                     }
-                } catch (Exception ex) {
-                    logError(ErrorLogLevel.WARN, "Unexpected error in query {}", ex);
-                    String message = (ex.getMessage() == null ? ex.getClass().toString() : ex.getMessage());
-                    sendErrorResponse(type, ex, ErrorCode.UNEXPECTED_EXCEPTION, message);
-                } catch (AssertionError ex) {
-                    logError(ErrorLogLevel.WARN, "Assertion in query {}", ex);
-                    throw ex;
-                }
-                finally {
-                    long stopNsec = System.nanoTime();
-                    if (logger.isTraceEnabled()) {
-                        logger.trace("Executed {}: {} usec", type, (stopNsec - startNsec) / 1000);
+                } else {
+                    if(count == length){
+                        logError(ErrorLogLevel.WARN, "Unexpected runtime exception in query {}", ex);
+                        sendErrorResponse(type,
+                                          (RuntimeException)throwable,
+                                          ErrorCode.UNEXPECTED_EXCEPTION,
+                                          ex.getMessage());
+                    } else {
+                        notifyClient(QueryContext.NotificationLevel.WARNING,
+                                ErrorCode.UNEXPECTED_EXCEPTION,
+                                ex.getMessage());
                     }
                 }
-                PROCESS_MESSAGE.out();
+                count++;
             }
+        } catch (Exception ex) {
+            logError(ErrorLogLevel.WARN, "Unexpected error in query {}", ex);
+            String message = (ex.getMessage() == null ? ex.getClass().toString() : ex.getMessage());
+            sendErrorResponse(type, ex, ErrorCode.UNEXPECTED_EXCEPTION, message);
+        } catch (AssertionError ex) {
+            logError(ErrorLogLevel.WARN, "Assertion in query {}", ex);
+            throw ex;
         }
         finally {
-            if (transaction != null) {
-                transaction.abort();
-                transaction = null;
+            long stopNsec = System.nanoTime();
+            if (logger.isTraceEnabled()) {
+                logger.trace("Executed {}: {} usec", type, (stopNsec - startNsec) / 1000);
             }
-            server.removeConnection(sessionId);
-            reqs.monitor().deregisterSessionMonitor(sessionMonitor, session);
-            logger.debug("Disconnect");
         }
+        PROCESS_MESSAGE.out();
+    }
+
+    protected void cleanup() {
+        if (cleanedUp) return;
+        cleanedUp = true;
+        if (transaction != null) {
+            transaction.abort();
+            transaction = null;
+        }
+        server.removeConnection(sessionId);
+        reqs.monitor().deregisterSessionMonitor(sessionMonitor, session);
+        logger.debug("Disconnect");
     }
 
     private enum ErrorLogLevel { WARN, INFO, DEBUG };
@@ -452,6 +585,10 @@ public class PostgresServerConnection extends ServerSessionBase
             stop();
             break;
         case EXTENDED:
+            if (pipelineTransaction) {
+                // Nothing done since the last Sync happens after all.
+                endPipelineTransaction(false);
+            }
             ignoreUntilSync = true;
             break;
         default:
@@ -556,6 +693,13 @@ public class PostgresServerConnection extends ServerSessionBase
             // Someone seems to have configured for SSL. Wrap the
             // socket and start server mode negotiation. Client should
             // then use SSL socket to start regular server protocol.
+            if (channel != null) {
+                // The handshake needs a blocking socket. Detach before
+                // replying so that the loop does not read any of it.
+                channel.detach();
+                channel = null;
+                raw = socket.getOutputStream();
+            }
             raw.write('S');
             raw.flush();
             SSLSocketFactory sslFactory = (SSLSocketFactory)SSLSocketFactory.getDefault();
@@ -695,11 +839,18 @@ public class PostgresServerConnection extends ServerSessionBase
         updateAIS(context);
         
         PostgresStatement pstmt = null;
-        if (statementCache != null) 
-            pstmt = statementCache.get(sql);
-        if (pstmt != null) {
-            sessionMonitor.countEvent(StatementTypes.FROM_CACHE);
-        } else {
+        if ((statementCache != null) && server.isNormalizeLiterals()) {
+            NormalizedStatement normalized = NormalizedStatement.normalize(sql);
+            if (normalized != null)
+                pstmt = normalizedStatement(context, sql, normalized, bindings);
+        }
+        if (pstmt == null) {
+            if (statementCache != null)
+                pstmt = statementCache.get(sql);
+            if (pstmt != null)
+                sessionMonitor.countEvent(StatementTypes.FROM_CACHE);
+        }
+        if (pstmt == null) {
             for (PostgresStatementParser parser : unparsedGenerators) {
                 // Try special recognition first; only allowed to turn
                 // into one statement.
@@ -720,7 +871,7 @@ public class PostgresServerConnection extends ServerSessionBase
             List<StatementNode> stmts;
             try {
                 sessionMonitor.enterStage(MonitorStage.PARSE);
-                stmts = parser.parseStatements(sql);
+                stmts = parser.parseStatements(PostgresCopyStatementGenerator.parseableSQL(sql));
             } 
             catch (SQLParserException ex) {
                 throw new SQLParseException(ex);
@@ -737,8 +888,7 @@ public class PostgresServerConnection extends ServerSessionBase
                 if (singleStmt)
                     stmtSQL = sql;
                 else
-                    stmtSQL = sql.substring(stmt.getBeginOffset(),
-                                            stmt.getEndOffset() + 1);
+                    stmtSQL = PostgresCopyStatementGenerator.statementSQL(sql, stmt);
                 pstmt = generateStatementStub(stmtSQL, stmt, null, null);
                 boolean local = beforeExecute(pstmt);
                 boolean success = false;
@@ -762,6 +912,106 @@ public class PostgresServerConnection extends ServerSessionBase
         }
     }
 
+    /** Get a plan shared by all queries differing only in the normalized
+     * literals, and bind them. Returns <code>null</code> if the query must be
+     * planned with its literals after all. */
+    protected PostgresStatement normalizedStatement(PostgresQueryContext context, String sql,
+                                                    NormalizedStatement normalized,
+                                                    QueryBindings bindings) {
+        String key = normalized.getCacheKey();
+        if (unnormalizable.containsKey(key))
+            return null;
+        PostgresStatement pstmt = statementCache.get(key);
+        if (pstmt != null) {
+            sessionMonitor.countEvent(StatementTypes.FROM_CACHE);
+        }
+        else {
+            for (PostgresStatementParser parser : unparsedGenerators) {
+                // Special recognition works on the original text.
+                if (parser.parse(this, sql, null) != null) {
+                    unnormalizable.put(key, Boolean.TRUE);
+                    return null;
+                }
+            }
+            String nsql = normalized.getSQL();
+            StatementNode stmt;
+            List<ParameterNode> params;
+            try {
+                sessionMonitor.enterStage(MonitorStage.PARSE);
+                stmt = parser.parseStatement(nsql);
+                params = parser.getParameterList();
+            } 
+            catch (SQLParserException | StandardException ex) {
+                unnormalizable.put(key, Boolean.TRUE);
+                return null;
+            }
+            finally {
+                sessionMonitor.leaveStage();
+            }
+            pstmt = generateStatementStub(nsql, stmt, params, null);
+            if (!(pstmt instanceof PostgresBaseOperatorStatement) ||
+                (params.size() != normalized.getParameterCount())) {
+                unnormalizable.put(key, Boolean.TRUE);
+                return null;
+            }
+            boolean local = beforeExecute(pstmt);
+            boolean success = false;
+            try {
+                pstmt = finishGenerating(context, nsql, stmt, params, null);
+                success = true;
+            }
+            catch (InvalidOperationException ex) {
+                // Probably a parameter whose type could not be inferred; if the
+                // error is real, planning with the literals will report it.
+                logger.debug("Cannot plan normalized {}: {}", nsql, ex.toString());
+            }
+            finally {
+                afterExecute(pstmt, local, success, false);
+            }
+            if (!success || !canBind(pstmt, normalized)) {
+                unnormalizable.put(key, Boolean.TRUE);
+                return null;
+            }
+            if (pstmt.putInCache())
+                statementCache.put(key, pstmt);
+        }
+        // This particular value may still not fit, e.g. a string longer than the column.
+        if (!canBind(pstmt, normalized))
+            return null;
+        if (valueDecoder == null)
+            valueDecoder = new ServerValueDecoder(typesTranslator(),
+                                                  messenger.getEncoding());
+        PostgresType[] parameterTypes = ((PostgresDMLStatement)pstmt).getParameterTypes();
+        for (int i = 0; i < normalized.getParameterCount(); i++) {
+            byte[] encoded;
+            try {
+                encoded = normalized.getLiteral(i).getBytes(messenger.getEncoding());
+            }
+            catch (UnsupportedEncodingException ex) {
+                throw new UnsupportedCharsetException(messenger.getEncoding());
+            }
+            valueDecoder.decodeValue(encoded, parameterTypes[i], false, bindings, i, context, typesRegistryService());
+        }
+        return pstmt;
+    }
+
+    protected static boolean canBind(PostgresStatement pstmt, NormalizedStatement normalized) {
+        if (!(pstmt instanceof PostgresDMLStatement))
+            return false;
+        if ((pstmt instanceof PostgresBaseOperatorStatement) &&
+            ((PostgresBaseOperatorStatement)pstmt).hasSkewedParameters())
+            // The plan chosen for the average value is not good for all of them.
+            return false;
+        PostgresType[] parameterTypes = ((PostgresDMLStatement)pstmt).getParameterTypes();
+        if ((parameterTypes == null) || (parameterTypes.length != normalized.getParameterCount()))
+            return false;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if ((parameterTypes[i] == null) || !normalized.canBind(i, parameterTypes[i].getType()))
+                return false;
+        }
+        return true;
+    }
+
     protected void processParse() throws IOException {
         String stmtName = messenger.readString();
         String sql = messenger.readString();
@@ -808,7 +1058,7 @@ public class PostgresServerConnection extends ServerSessionBase
             List<ParameterNode> params;
             try {
                 sessionMonitor.enterStage(MonitorStage.PARSE);
-                stmt = parser.parseStatement(sql);
+                stmt = parser.parseStatement(PostgresCopyStatementGenerator.parseableSQL(sql));
                 params = parser.getParameterList();
             } 
             catch (SQLParserException ex) {
@@ -966,7 +1216,7 @@ public class PostgresServerConnection extends ServerSessionBase
         QueryBindings bindings = context.getBindings();
         PostgresPreparedStatement pstmt = context.getStatement();
         sessionMonitor.startStatement(pstmt.getSQL(), pstmt.getName(), startTime);
-        int rowsProcessed = executeStatementWithAutoTxn(pstmt.getStatement(), context, bindings, maxrows);
+        int rowsProcessed = executeStatementInPipeline(pstmt.getStatement(), context, bindings, maxrows);
         sessionMonitor.endStatement(rowsProcessed);
         logger.debug("Execute complete: {} rows", rowsProcessed);
         if (reqs.monitor().isQueryLogEnabled()) {
@@ -1008,8 +1258,10 @@ public class PostgresServerConnection extends ServerSessionBase
         if (session != null) {
             session.cancelCurrentQuery(true);
         }
-        if (thread != null) {
-            thread.interrupt();
+        synchronized (threadLock) {
+            if (thread != null) {
+                thread.interrupt();
+            }
         }
     }
 
@@ -1083,6 +1335,7 @@ public class PostgresServerConnection extends ServerSessionBase
         };
 
         statementCache = getStatementCache();
+        unnormalizable.clear();
     }
 
     protected ServerStatementCache<PostgresStatement>  getStatementCache() {
@@ -1104,6 +1357,7 @@ public class PostgresServerConnection extends ServerSessionBase
             generator.sessionChanged(this);
         }
         statementCache = getStatementCache();
+        unnormalizable.clear();
     }
 
     protected PostgresStatement generateStatementStub(String sql, StatementNode stmt,
@@ -1158,6 +1412,80 @@ public class PostgresServerConnection extends ServerSessionBase
         return rowsProcessed;
     }
 
+    /**
+     * Execute a statement for an Execute message. Like the simple query
+     * protocol, each statement gets its own transaction if there isn't
+     * already one. But the transaction of a statement that writes is not
+     * committed until Sync. So a batch of pipelined inserts, which clients
+     * send as many Bind / Execute pairs before one Sync, costs one
+     * transaction instead of one per row. As in Postgres, an error
+     * anywhere before the Sync rolls back all of them.
+     *
+     * A batch too big or too slow for one transaction (by the periodic
+     * commit thresholds) cannot keep that promise. So it commits what it
+     * has done so far, and each of its remaining Executes commits on its
+     * own, as they all did before batches shared a transaction. An error
+     * then leaves exactly the Executes before it committed.
+     */
+    protected int executeStatementInPipeline(PostgresStatement pstmt, PostgresQueryContext context, QueryBindings bindings, int maxrows)
+            throws IOException {
+        ServerStatement.TransactionMode transactionMode = pstmt.getTransactionMode();
+        boolean joinsPipeline = ((transactionMode == ServerStatement.TransactionMode.WRITE) ||
+                                 (transactionMode == ServerStatement.TransactionMode.READ));
+        if (pipelineTransaction && !joinsPipeline) {
+            endPipelineTransaction(true);
+        }
+        boolean localTransaction = beforeExecute(pstmt);
+        if (localTransaction && !pipelineOverflow &&
+            (transactionMode == ServerStatement.TransactionMode.WRITE)) {
+            pipelineTransaction = true;
+            localTransaction = false;
+        }
+        int rowsProcessed;
+        boolean success = false;
+        try {
+            rowsProcessed = executeStatement(pstmt, context, bindings, maxrows);
+            success = true;
+        }
+        finally {
+            afterExecute(pstmt, localTransaction, success, true);
+            sessionMonitor.leaveStage();
+        }
+        if (pipelineTransaction && (transaction != null) &&
+            !transaction.isRollbackPending() && transaction.shouldPeriodicallyCommit()) {
+            endPipelineTransaction(true);
+            pipelineOverflow = true;
+        }
+        return rowsProcessed;
+    }
+
+    /** Can <code>type</code> come in the middle of a pipelined batch? */
+    protected static boolean continuesPipeline(PostgresMessages type) {
+        switch (type) {
+        case PARSE_TYPE:
+        case BIND_TYPE:
+        case DESCRIBE_TYPE:
+        case EXECUTE_TYPE:
+        case CLOSE_TYPE:
+        case FLUSH_TYPE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    protected void endPipelineTransaction(boolean commit) {
+        pipelineTransaction = false;
+        if (transaction == null) {
+            // Already ended, as by periodic commit.
+            return;
+        }
+        if (commit)
+            commitTransaction();
+        else
+            rollbackTransaction();
+    }
+
     protected int executeStatement(PostgresStatement pstmt, PostgresQueryContext context, QueryBindings bindings, int maxrows)
             throws IOException {
         int rowsProcessed;
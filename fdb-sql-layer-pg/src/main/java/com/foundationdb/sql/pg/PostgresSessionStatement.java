@@ -69,7 +69,7 @@ public class PostgresSessionStatement implements PostgresStatement
         // Optimization. (Dummy for testing of statement cache.)
         "optimizerDummySetting",
         // Execution.
-        "constraintCheckTime", "queryTimeoutSec", "transactionPeriodicallyCommit",
+        "constraintCheckTime", "queryTimeoutSec", "transactionPeriodicallyCommit", "parallelism",
         // Compatible that actually does something.
         "client_encoding",
         // Compatible but ignored.
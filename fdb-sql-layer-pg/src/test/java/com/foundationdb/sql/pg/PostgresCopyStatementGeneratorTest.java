@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PostgresCopyStatementGeneratorTest
+{
+    @Test
+    public void formatBinary() {
+        checkBinary("COPY t TO STDOUT WITH (FORMAT binary)",
+                    "COPY t TO STDOUT WITH (FORMAT CSV   )");
+        checkBinary("copy t from stdin with (format 'BINARY', encoding 'UTF-8')",
+                    "copy t from stdin with (format 'CSV'   , encoding 'UTF-8')");
+    }
+
+    @Test
+    public void withBinary() {
+        checkBinary("COPY t TO STDOUT WITH BINARY",
+                    "COPY t TO STDOUT            ");
+        checkBinary("COPY t FROM STDIN BINARY;",
+                    "COPY t FROM STDIN       ;");
+    }
+
+    @Test
+    public void leadingComments() {
+        checkBinary("-- FORMAT binary\nCOPY t TO STDOUT WITH (FORMAT binary)",
+                    "-- FORMAT binary\nCOPY t TO STDOUT WITH (FORMAT CSV   )");
+        checkBinary("/* a /* nested */ comment */ COPY t TO STDOUT BINARY",
+                    "/* a /* nested */ comment */ COPY t TO STDOUT       ");
+    }
+
+    @Test
+    public void notBinary() {
+        checkNotBinary("COPY t TO STDOUT WITH (FORMAT csv)");
+        checkNotBinary("COPY t TO STDOUT -- WITH BINARY");
+        checkNotBinary("COPY t TO STDOUT /* FORMAT binary */");
+        checkNotBinary("COPY t TO STDOUT WITH (FORMAT csv, DELIMITER 'x') /* (FORMAT binary) */");
+        checkNotBinary("COPY (SELECT 'FORMAT binary' FROM t) TO STDOUT");
+        checkNotBinary("COPY t(\"binary\") TO STDOUT");
+        checkNotBinary("COPY (SELECT 'it''s WITH BINARY') TO STDOUT");
+        checkNotBinary("SELECT * FROM t WHERE s = 'COPY t TO STDOUT BINARY'");
+        checkNotBinary("SELECT 1 AS binary");
+    }
+
+    @Test
+    public void multipleStatements() {
+        checkBinary("SELECT 'FORMAT binary'; COPY t TO STDOUT WITH (FORMAT binary); SELECT 1",
+                    "SELECT 'FORMAT binary'; COPY t TO STDOUT WITH (FORMAT CSV   ); SELECT 1");
+        checkBinary("COPY t TO STDOUT BINARY; COPY u TO STDOUT",
+                    "COPY t TO STDOUT       ; COPY u TO STDOUT");
+        checkBinary("SELECT ';'; COPY t TO STDOUT WITH BINARY",
+                    "SELECT ';'; COPY t TO STDOUT            ");
+        checkNotBinary("COPY t TO STDOUT; SELECT 1 AS binary");
+        checkNotBinary("DELETE FROM t; SELECT 'COPY t TO STDOUT WITH (FORMAT binary)'");
+    }
+
+    @Test
+    public void copyRuledOut() {
+        assertTrue(PostgresCopyStatementGenerator.mayHaveCopy("  copy t TO STDOUT"));
+        assertTrue(PostgresCopyStatementGenerator.mayHaveCopy("-- c\n/* a /* b */ */COPY t TO STDOUT"));
+        assertTrue(PostgresCopyStatementGenerator.mayHaveCopy("SELECT 1; COPY t TO STDOUT"));
+        assertFalse(PostgresCopyStatementGenerator.mayHaveCopy("INSERT INTO t VALUES(1, 'COPY t TO STDOUT BINARY')"));
+        assertFalse(PostgresCopyStatementGenerator.mayHaveCopy("/* COPY */ SELECT 1; SELECT 2"));
+        assertFalse(PostgresCopyStatementGenerator.mayHaveCopy("-- COPY t TO STDOUT BINARY"));
+        assertFalse(PostgresCopyStatementGenerator.mayHaveCopy(""));
+    }
+
+    @Test
+    public void masked() {
+        assertEquals("SELECT '_____', \"___\"     \n  FROM t",
+                     PostgresCopyStatementGenerator.maskedSQL("SELECT 'a''b;', \"x\"\"\" -- c\n  FROM t"));
+        assertEquals("FORMAT 'binary' ''",
+                     PostgresCopyStatementGenerator.maskedSQL("FORMAT 'binary' ''"));
+        assertEquals("x '___",
+                     PostgresCopyStatementGenerator.maskedSQL("x 'ab;"));
+    }
+
+    private static void checkBinary(String sql, String parseable) {
+        assertTrue(sql, PostgresCopyStatementGenerator.isBinaryFormat(sql));
+        assertEquals(sql, parseable, PostgresCopyStatementGenerator.parseableSQL(sql));
+    }
+
+    private static void checkNotBinary(String sql) {
+        assertFalse(sql, PostgresCopyStatementGenerator.isBinaryFormat(sql));
+        assertEquals(sql, sql, PostgresCopyStatementGenerator.parseableSQL(sql));
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PostgresMessageBufferTest
+{
+    @Test
+    public void decimal() throws Exception {
+        long[] values = {
+            0, 1, -1, 9, 10, -10, 99, 100, 12345, -67890,
+            Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Long.MAX_VALUE, Long.MIN_VALUE, Long.MIN_VALUE + 1
+        };
+        for (long v : values) {
+            PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+            buffer.writeDecimal(v);
+            assertEquals(Long.toString(v), new String(bytes(buffer), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void decimalsAppend() throws Exception {
+        PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+        buffer.write('x');
+        buffer.writeDecimal(Long.MIN_VALUE);
+        buffer.writeDecimal(42);
+        buffer.writeDecimal(-7);
+        assertEquals("x" + Long.MIN_VALUE + "42-7", new String(bytes(buffer), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void utf8() throws Exception {
+        String[] values = {
+            "",
+            "plain ASCII",
+            "caf\u00e9 \u00fcber",                      // Two bytes
+            "\u20ac \u4e2d\u6587 \uffff",               // Three bytes
+            "\ud83d\ude00 and \ud834\udd1e",            // Surrogate pairs: four bytes
+            "\udbff\udfff",                             // Highest code point
+        };
+        for (String s : values) {
+            checkUTF8(s);
+        }
+    }
+
+    @Test
+    public void utf8LoneSurrogates() throws Exception {
+        String[] values = {
+            "\ud83d",                                   // High at the end
+            "a\ud83db",                                 // High before non-surrogate
+            "a\ude00b",                                 // Low on its own
+            "\ude00\ud83d",                             // Low then high
+            "\ud83d\ud83d\ude00",                       // High then pair
+        };
+        for (String s : values) {
+            checkUTF8(s);
+        }
+    }
+
+    @Test
+    public void utf8Grows() throws Exception {
+        StringBuilder str = new StringBuilder();
+        while (str.length() < PostgresMessageBuffer.INITIAL_SIZE * 3) {
+            str.append("\u4e2d\ud83d\ude00x");
+        }
+        checkUTF8(str.toString());
+    }
+
+    @Test
+    public void lengthBackpatch() throws Exception {
+        PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+        buffer.write('D');
+        buffer.writeInt(0);
+        buffer.writeShort(1);
+        int pos = buffer.size();
+        buffer.writeInt(0);
+        buffer.writeUTF8("\u00e9t\u00e9");
+        buffer.putInt(pos, buffer.size() - pos - 4);
+        buffer.putInt(1, buffer.size() - 1);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write('D');
+        expected.write(new byte[] { 0, 0, 0, 15 });
+        expected.write(new byte[] { 0, 1 });
+        expected.write(new byte[] { 0, 0, 0, 5 });
+        expected.write("\u00e9t\u00e9".getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected.toByteArray(), bytes(buffer));
+    }
+
+    @Test
+    public void putIntNegative() throws Exception {
+        PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+        buffer.writeInt(0);
+        buffer.putInt(0, -1);
+        assertArrayEquals(new byte[] { -1, -1, -1, -1 }, bytes(buffer));
+    }
+
+    @Test
+    public void resetDropsLargeBuffer() throws Exception {
+        PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+        buffer.write(new byte[PostgresMessageBuffer.MAX_RETAINED_SIZE + 1], 0, PostgresMessageBuffer.MAX_RETAINED_SIZE + 1);
+        buffer.reset();
+        assertEquals(0, buffer.size());
+        buffer.writeLong(0x0102030405060708L);
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 }, bytes(buffer));
+    }
+
+    private static void checkUTF8(String s) throws Exception {
+        PostgresMessageBuffer buffer = new PostgresMessageBuffer();
+        buffer.writeUTF8(s);
+        assertArrayEquals(s, s.getBytes("UTF-8"), bytes(buffer));
+    }
+
+    private static byte[] bytes(PostgresMessageBuffer buffer) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        return out.toByteArray();
+    }
+}
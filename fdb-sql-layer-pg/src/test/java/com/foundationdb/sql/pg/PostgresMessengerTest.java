@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Messages wait in the output buffer for at most <code>MAX_FLUSH_DELAY_NANOS</code>. */
+public class PostgresMessengerTest
+{
+    private static final long WAIT_MILLIS = 10000;
+    // Type, length and one byte.
+    private static final int MESSAGE_SIZE = 6;
+
+    @Test
+    public void flushedAfterDelay() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Socket socket = new Socket()) {
+            PostgresMessenger messenger = messenger(socket, out);
+            long start = System.nanoTime();
+            send(messenger, false);
+            assertEquals("buffered", 0, out.size());
+            long elapsed = waitForSize(out, MESSAGE_SIZE, start);
+            assertTrue("waited " + elapsed, elapsed >= PostgresMessenger.MAX_FLUSH_DELAY_NANOS);
+            // The next one waits again, rather than going out at once.
+            start = System.nanoTime();
+            send(messenger, false);
+            assertEquals("buffered again", MESSAGE_SIZE, out.size());
+            elapsed = waitForSize(out, MESSAGE_SIZE * 2, start);
+            assertTrue("waited " + elapsed, elapsed >= PostgresMessenger.MAX_FLUSH_DELAY_NANOS);
+        }
+    }
+
+    @Test
+    public void explicitFlush() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Socket socket = new Socket()) {
+            PostgresMessenger messenger = messenger(socket, out);
+            send(messenger, false);
+            send(messenger, true);
+            assertEquals("flushed", MESSAGE_SIZE * 2, out.size());
+            Thread.sleep(PostgresMessenger.MAX_FLUSH_DELAY_NANOS * 2 / 1000000);
+            assertEquals("nothing more", MESSAGE_SIZE * 2, out.size());
+        }
+    }
+
+    private static PostgresMessenger messenger(Socket socket, ByteArrayOutputStream out) throws Exception {
+        return new PostgresMessenger(socket, new ByteArrayInputStream(new byte[0]), out);
+    }
+
+    private static void send(PostgresMessenger messenger, boolean flush) throws Exception {
+        messenger.beginMessage(PostgresMessages.DATA_ROW_TYPE.code());
+        messenger.write('x');
+        messenger.sendMessage(flush);
+    }
+
+    /** Nanoseconds from <code>start</code> until <code>out</code> has <code>size</code> bytes. */
+    private static long waitForSize(ByteArrayOutputStream out, int size, long start) throws Exception {
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while ((out.size() < size) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }
+        assertEquals("flushed", size, out.size());
+        return System.nanoTime() - start;
+    }
+}
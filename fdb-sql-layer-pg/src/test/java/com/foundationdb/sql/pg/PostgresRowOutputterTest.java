@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.server.types.FormatOptions;
+import com.foundationdb.server.types.TInstance;
+import com.foundationdb.server.types.aksql.aktypes.AkBool;
+import com.foundationdb.server.types.common.types.TypesTranslator;
+import com.foundationdb.server.types.mcompat.mtypes.MApproximateNumber;
+import com.foundationdb.server.types.mcompat.mtypes.MNumeric;
+import com.foundationdb.server.types.mcompat.mtypes.MString;
+import com.foundationdb.server.types.mcompat.mtypes.MTypesTranslator;
+import com.foundationdb.server.types.value.Value;
+import com.foundationdb.sql.pg.PostgresRowOutputter.DirectEncoding;
+import com.foundationdb.sql.server.ServerValueEncoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** Each direct encoding gives the same bytes as <code>ServerValueEncoder</code>. */
+public class PostgresRowOutputterTest
+{
+    private static final TypesTranslator TYPES_TRANSLATOR = MTypesTranslator.INSTANCE;
+    private static final String UTF8 = "UTF-8";
+
+    @Test
+    public void textIntegers() throws Exception {
+        TInstance type = MNumeric.INT.instance(true);
+        check(type, false, DirectEncoding.TEXT_INTEGER,
+              new Value(type, 0), new Value(type, 7), new Value(type, -42),
+              new Value(type, Integer.MAX_VALUE), new Value(type, Integer.MIN_VALUE));
+        type = MNumeric.BIGINT.instance(true);
+        check(type, false, DirectEncoding.TEXT_INTEGER,
+              new Value(type, 0L), new Value(type, 1234567890123L),
+              new Value(type, Long.MAX_VALUE), new Value(type, Long.MIN_VALUE));
+        type = MNumeric.SMALLINT.instance(true);
+        check(type, false, DirectEncoding.TEXT_INTEGER,
+              new Value(type, (short)-1), new Value(type, Short.MAX_VALUE), new Value(type, Short.MIN_VALUE));
+    }
+
+    @Test
+    public void binaryIntegers() throws Exception {
+        TInstance type = MNumeric.SMALLINT.instance(true);
+        check(type, true, DirectEncoding.BINARY_INT_16,
+              new Value(type, (short)0), new Value(type, (short)-300),
+              new Value(type, Short.MAX_VALUE), new Value(type, Short.MIN_VALUE));
+        type = MNumeric.INT.instance(true);
+        check(type, true, DirectEncoding.BINARY_INT_32,
+              new Value(type, 0), new Value(type, -70000),
+              new Value(type, Integer.MAX_VALUE), new Value(type, Integer.MIN_VALUE));
+        type = MNumeric.BIGINT.instance(true);
+        check(type, true, DirectEncoding.BINARY_INT_64,
+              new Value(type, 0L), new Value(type, -5000000000L),
+              new Value(type, Long.MAX_VALUE), new Value(type, Long.MIN_VALUE));
+    }
+
+    @Test
+    public void binaryFloats() throws Exception {
+        TInstance type = MApproximateNumber.FLOAT.instance(true);
+        check(type, true, DirectEncoding.BINARY_FLOAT_32,
+              new Value(type, 0.0f), new Value(type, -1.5f), new Value(type, Float.MIN_VALUE),
+              new Value(type, Float.MAX_VALUE), new Value(type, Float.NaN));
+        type = MApproximateNumber.DOUBLE.instance(true);
+        check(type, true, DirectEncoding.BINARY_FLOAT_64,
+              new Value(type, 0.0), new Value(type, Math.PI), new Value(type, -Double.MAX_VALUE),
+              new Value(type, Double.NEGATIVE_INFINITY), new Value(type, Double.NaN));
+    }
+
+    @Test
+    public void binaryBooleans() throws Exception {
+        TInstance type = AkBool.INSTANCE.instance(true);
+        check(type, true, DirectEncoding.BINARY_BOOLEAN,
+              new Value(type, true), new Value(type, false));
+    }
+
+    @Test
+    public void strings() throws Exception {
+        TInstance type = MString.VARCHAR.instance(255, true);
+        Value[] values = {
+            new Value(type, ""), new Value(type, "abc"),
+            new Value(type, "caf\u00e9 \u4e2d\u6587"), new Value(type, "\ud83d\ude00"),
+            new Value(type, "lone \ud83d")
+        };
+        check(type, false, DirectEncoding.STRING_UTF8, values);
+        check(type, true, DirectEncoding.STRING_UTF8, values);
+    }
+
+    @Test
+    public void encoderOnly() throws Exception {
+        // Text formatting of these is the encoder's business.
+        assertEquals(DirectEncoding.NONE, directEncoding(MApproximateNumber.DOUBLE.instance(true), false));
+        assertEquals(DirectEncoding.NONE, directEncoding(MApproximateNumber.FLOAT.instance(true), false));
+        assertEquals(DirectEncoding.NONE, directEncoding(AkBool.INSTANCE.instance(true), false));
+        assertEquals(DirectEncoding.NONE, directEncoding(MNumeric.DECIMAL.instance(10, 2, true), false));
+        assertEquals(DirectEncoding.NONE,
+                     PostgresRowOutputter.directEncoding(PostgresType.fromTInstance(MString.VARCHAR.instance(255, true)),
+                                                         false, false));
+    }
+
+    private static DirectEncoding directEncoding(TInstance tinstance, boolean binary) {
+        return PostgresRowOutputter.directEncoding(PostgresType.fromTInstance(tinstance), binary, true);
+    }
+
+    private static void check(TInstance tinstance, boolean binary, DirectEncoding expected, Value... values) throws Exception {
+        PostgresType type = PostgresType.fromTInstance(tinstance);
+        DirectEncoding direct = PostgresRowOutputter.directEncoding(type, binary, true);
+        assertEquals(tinstance.toString(), expected, direct);
+        ServerValueEncoder encoder = new ServerValueEncoder(TYPES_TRANSLATOR, UTF8, new FormatOptions());
+        Value nullValue = new Value(tinstance);
+        nullValue.putNull();
+        values = Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = nullValue;
+        for (Value value : values) {
+            assertArrayEquals(value.toString(), encoded(encoder, value, type, binary), written(value, direct));
+        }
+    }
+
+    /** The length and bytes that go through the encoder. */
+    private static byte[] encoded(ServerValueEncoder encoder, Value value, PostgresType type, boolean binary) throws Exception {
+        ByteArrayOutputStream bytes = encoder.encodeValue(value, type, binary);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(result);
+        if (bytes == null) {
+            data.writeInt(-1);
+        }
+        else {
+            data.writeInt(bytes.size());
+            bytes.writeTo(data);
+        }
+        data.flush();
+        return result.toByteArray();
+    }
+
+    /** The length and bytes written directly, without the message header. */
+    private static byte[] written(Value value, DirectEncoding direct) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (Socket socket = new Socket()) {
+            PostgresMessenger messenger = new PostgresMessenger(socket, new ByteArrayInputStream(new byte[0]), out);
+            messenger.beginMessage(PostgresMessages.DATA_ROW_TYPE.code());
+            assertTrue("written directly", PostgresRowOutputter.writeDirect(messenger, TYPES_TRANSLATOR, value, direct));
+            messenger.sendMessage(true);
+        }
+        byte[] message = out.toByteArray();
+        // Type and length.
+        assertEquals(message.length - 1, ((message[1] & 0xFF) << 24) | ((message[2] & 0xFF) << 16) |
+                                         ((message[3] & 0xFF) << 8) | (message[4] & 0xFF));
+        return Arrays.copyOfRange(message, 5, message.length);
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/** Batches of autocommit inserts, which share a transaction up to Sync. */
+public class PostgresServerBatchIT extends PostgresServerITBase
+{
+    private static final int NROWS = 500;
+    // More than the 10MB that one transaction can write.
+    private static final int WIDE_ROWS = 12000;
+    private static final int WIDE_LENGTH = 1000;
+
+    @Before
+    public void createTable() throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("CREATE TABLE t(id INT PRIMARY KEY NOT NULL, s VARCHAR(16))");
+        stmt.close();
+    }
+
+    @Test
+    public void batchInsert() throws Exception {
+        assertTrue(getConnection().getAutoCommit());
+        PreparedStatement stmt = getConnection().prepareStatement("INSERT INTO t VALUES(?, ?)");
+        for (int i = 0; i < NROWS; i++) {
+            stmt.setInt(1, i);
+            stmt.setString(2, "row " + i);
+            stmt.addBatch();
+        }
+        int[] counts = stmt.executeBatch();
+        assertEquals(NROWS, counts.length);
+        for (int count : counts) {
+            assertEquals(1, count);
+        }
+        stmt.close();
+        assertEquals(NROWS, countFromOtherConnection());
+    }
+
+    @Test
+    public void failedBatchRollsBack() throws Exception {
+        PreparedStatement stmt = getConnection().prepareStatement("INSERT INTO t VALUES(?, ?)");
+        for (int i = 0; i < NROWS; i++) {
+            stmt.setInt(1, (i == NROWS / 2) ? 0 : i); // Duplicate key half way through.
+            stmt.setString(2, "row " + i);
+            stmt.addBatch();
+        }
+        try {
+            stmt.executeBatch();
+            fail("Duplicate key not detected");
+        }
+        catch (BatchUpdateException ex) {
+        }
+        assertEquals(0, countFromOtherConnection());
+        // Not left in a transaction.
+        stmt.setInt(1, 1);
+        stmt.setString(2, "one");
+        stmt.executeUpdate();
+        stmt.close();
+        assertEquals(1, countFromOtherConnection());
+    }
+
+    @Test
+    public void batchLargerThanTransaction() throws Exception {
+        String wide = createWideTable();
+        PreparedStatement stmt = getConnection().prepareStatement("INSERT INTO w VALUES(?, ?)");
+        for (int i = 0; i < WIDE_ROWS; i++) {
+            stmt.setInt(1, i);
+            stmt.setString(2, wide);
+            stmt.addBatch();
+        }
+        int[] counts = stmt.executeBatch();
+        assertEquals(WIDE_ROWS, counts.length);
+        stmt.close();
+        Statement query = getConnection().createStatement();
+        ResultSet rs = query.executeQuery("SELECT COUNT(*), MIN(id), MAX(id) FROM w WHERE s = '" + wide + "'");
+        rs.next();
+        assertEquals(WIDE_ROWS, rs.getInt(1));
+        assertEquals(0, rs.getInt(2));
+        assertEquals(WIDE_ROWS - 1, rs.getInt(3));
+        rs.close();
+        query.close();
+    }
+
+    @Test
+    public void failedBatchLargerThanTransaction() throws Exception {
+        String wide = createWideTable();
+        PreparedStatement stmt = getConnection().prepareStatement("INSERT INTO w VALUES(?, ?)");
+        for (int i = 0; i < WIDE_ROWS; i++) {
+            stmt.setInt(1, (i == WIDE_ROWS - 1) ? 0 : i); // Duplicate key at the very end.
+            stmt.setString(2, wide);
+            stmt.addBatch();
+        }
+        try {
+            stmt.executeBatch();
+            fail("Duplicate key not detected");
+        }
+        catch (BatchUpdateException ex) {
+        }
+        stmt.close();
+        // Once the batch outgrew its transaction, each Execute committed
+        // on its own, so everything up to the failure is there.
+        Statement query = getConnection().createStatement();
+        ResultSet rs = query.executeQuery("SELECT COUNT(*), MAX(id) FROM w");
+        rs.next();
+        assertEquals(WIDE_ROWS - 1, rs.getInt(1));
+        assertEquals(WIDE_ROWS - 2, rs.getInt(2));
+        rs.close();
+        query.close();
+    }
+
+    protected String createWideTable() throws Exception {
+        Statement create = getConnection().createStatement();
+        create.execute("CREATE TABLE w(id INT PRIMARY KEY NOT NULL, s VARCHAR(" + WIDE_LENGTH + "))");
+        create.close();
+        StringBuilder str = new StringBuilder(WIDE_LENGTH);
+        while (str.length() < WIDE_LENGTH) {
+            str.append("0123456789");
+        }
+        return str.toString();
+    }
+
+    protected int countFromOtherConnection() throws Exception {
+        Connection conn = openConnection();
+        try {
+            Statement stmt = conn.createStatement();
+            ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t");
+            rs.next();
+            int count = rs.getInt(1);
+            rs.close();
+            stmt.close();
+            return count;
+        }
+        finally {
+            closeConnection(conn);
+        }
+    }
+}
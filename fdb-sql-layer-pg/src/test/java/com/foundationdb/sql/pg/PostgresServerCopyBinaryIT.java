@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.sql.jdbc.copy.CopyManager;
+import com.foundationdb.sql.jdbc.core.BaseConnection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/** COPY in the binary format, out and back in again. */
+public class PostgresServerCopyBinaryIT extends PostgresServerITBase
+{
+    private static final int NROWS = 1000;
+
+    @Before
+    public void createTable() throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("CREATE TABLE t(id INT PRIMARY KEY NOT NULL, s VARCHAR(32), n DECIMAL(10,3), f DOUBLE, d DATE, ts TIMESTAMP)");
+        for (int i = 0; i < NROWS; i++) {
+            stmt.execute(String.format("INSERT INTO t VALUES(%d, %s, %s, %s, %s, %s)", i,
+                                       (i % 7 == 0) ? "NULL" : "'row ''" + i + "'''",
+                                       (i % 5 == 0) ? "NULL" : "-" + i + ".125",
+                                       i * 0.5,
+                                       (i % 3 == 0) ? "NULL" : "'2013-01-" + (1 + i % 28) + "'",
+                                       "'2013-06-01 12:34:" + (10 + i % 50) + "'"));
+        }
+        stmt.close();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        checkRoundTrip("1");
+    }
+
+    @Test
+    public void roundTripReadAhead() throws Exception {
+        checkRoundTrip("4");
+    }
+
+    @Test
+    public void leadingComment() throws Exception {
+        List<List<?>> expected = sql("SELECT * FROM t ORDER BY id");
+        CopyManager copy = new CopyManager((BaseConnection)getConnection());
+        ByteArrayOutputStream ostr = new ByteArrayOutputStream();
+        assertEquals(NROWS, copy.copyOut("-- Save (FORMAT csv)\nCOPY t TO STDOUT WITH (FORMAT binary)", ostr));
+        byte[] data = ostr.toByteArray();
+        assertArrayEquals(PostgresCopyBinaryRowReader.SIGNATURE,
+                          Arrays.copyOf(data, PostgresCopyBinaryRowReader.SIGNATURE.length));
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("DELETE FROM t");
+        stmt.close();
+        assertEquals(NROWS, copy.copyIn("/* Restore */ COPY t FROM STDIN WITH BINARY",
+                                        new ByteArrayInputStream(data)));
+        assertEquals(expected, sql("SELECT * FROM t ORDER BY id"));
+    }
+
+    @Test
+    public void binaryOnlyInComment() throws Exception {
+        CopyManager copy = new CopyManager((BaseConnection)getConnection());
+        ByteArrayOutputStream ostr = new ByteArrayOutputStream();
+        assertEquals(NROWS, copy.copyOut("COPY t TO STDOUT /* WITH (FORMAT binary) */", ostr));
+        // Row 0 has NULLs for s and n.
+        assertTrue("CSV", ostr.toString("UTF-8").startsWith("0,,,"));
+    }
+
+    // What PostgreSQL itself writes for the rows of k below.
+    private static final byte[] KNOWN_PGCOPY = {
+        'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xFF, '\r', '\n', 0,
+        0, 0, 0, 0,                                     // Flags
+        0, 0, 0, 0,                                     // Header extension
+        0, 3,                                           // (1, 'one', NULL)
+        0, 0, 0, 4,  0, 0, 0, 1,
+        0, 0, 0, 3,  'o', 'n', 'e',
+        -1, -1, -1, -1,
+        0, 3,                                           // (2, NULL, -2)
+        0, 0, 0, 4,  0, 0, 0, 2,
+        -1, -1, -1, -1,
+        0, 0, 0, 8,  -1, -1, -1, -1, -1, -1, -1, -2,
+        -1, -1                                          // Trailer
+    };
+
+    @Test
+    public void knownBytes() throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("CREATE TABLE k(id INT PRIMARY KEY NOT NULL, s VARCHAR(16), n BIGINT)");
+        stmt.close();
+        CopyManager copy = new CopyManager((BaseConnection)getConnection());
+        assertEquals(2, copy.copyIn("COPY k FROM STDIN WITH (FORMAT binary)",
+                                    new ByteArrayInputStream(KNOWN_PGCOPY)));
+        assertEquals(Arrays.asList(Arrays.asList(1, "one", null), Arrays.asList(2, null, -2L)),
+                     sql("SELECT id, s, n FROM k ORDER BY id"));
+        ByteArrayOutputStream ostr = new ByteArrayOutputStream();
+        assertEquals(2, copy.copyOut("COPY k TO STDOUT WITH (FORMAT binary)", ostr));
+        assertArrayEquals(KNOWN_PGCOPY, ostr.toByteArray());
+    }
+
+    protected void checkRoundTrip(String parallelism) throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("SET parallelism TO '" + parallelism + "'");
+        List<List<?>> expected = sql("SELECT * FROM t ORDER BY id");
+        CopyManager copy = new CopyManager((BaseConnection)getConnection());
+        ByteArrayOutputStream ostr = new ByteArrayOutputStream();
+        assertEquals(NROWS, copy.copyOut("COPY t TO STDOUT WITH (FORMAT binary)", ostr));
+        byte[] data = ostr.toByteArray();
+        assertArrayEquals(PostgresCopyBinaryRowReader.SIGNATURE,
+                          Arrays.copyOf(data, PostgresCopyBinaryRowReader.SIGNATURE.length));
+        stmt.execute("DELETE FROM t");
+        assertEquals(NROWS, copy.copyIn("COPY t FROM STDIN WITH (FORMAT binary)", 
+                                        new ByteArrayInputStream(data)));
+        assertEquals(expected, sql("SELECT * FROM t ORDER BY id"));
+        stmt.close();
+    }
+}
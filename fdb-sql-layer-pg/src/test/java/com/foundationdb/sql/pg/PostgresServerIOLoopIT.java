@@ -0,0 +1,308 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.sql.pg;
+
+import com.foundationdb.server.error.ErrorCode;
+import com.foundationdb.sql.jdbc.copy.CopyIn;
+import com.foundationdb.sql.jdbc.copy.CopyManager;
+import com.foundationdb.sql.jdbc.core.BaseConnection;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Many more connections than statement workers, all of which get served. */
+public class PostgresServerIOLoopIT extends PostgresServerITBase
+{
+    private static final int CONNECTIONS = 20;
+    private static final int QUERIES = 50;
+    private static final int MAX_EXECUTING = 2;
+    private static final int QUEUE_LENGTH = 1;
+    private static final int SLEEP_MILLIS = 60000;
+    private static final long WAIT_MILLIS = 20000;
+    private static final String KEYSTORE_PASSWORD = "iolooptest";
+
+    private static File keyStore;
+
+    @Override
+    protected Map<String, String> startupConfigProperties() {
+        Map<String,String> map = new HashMap<>(super.startupConfigProperties());
+        map.put("fdbsql.postgres.io_threads", "1");
+        map.put("fdbsql.postgres.max_executing_statements", Integer.toString(MAX_EXECUTING));
+        map.put("fdbsql.postgres.statement_queue_length", Integer.toString(QUEUE_LENGTH));
+        return map;
+    }
+
+    /** A self-signed key for the server, so that it accepts SSL requests. */
+    @BeforeClass
+    public static void createKeyStore() throws Exception {
+        keyStore = File.createTempFile("iolooptest", ".jks");
+        keyStore.delete();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "server",
+                                             "-keyalg", "RSA", "-keysize", "2048",
+                                             "-dname", "CN=localhost", "-validity", "1",
+                                             "-keystore", keyStore.getPath(),
+                                             "-storepass", KEYSTORE_PASSWORD,
+                                             "-keypass", KEYSTORE_PASSWORD)
+            .redirectErrorStream(true)
+            .start();
+        process.getInputStream().close();
+        assertEquals("keytool exit status", 0, process.waitFor());
+        System.setProperty("javax.net.ssl.keyStore", keyStore.getPath());
+        System.setProperty("javax.net.ssl.keyStorePassword", KEYSTORE_PASSWORD);
+    }
+
+    @AfterClass
+    public static void deleteKeyStore() {
+        System.clearProperty("javax.net.ssl.keyStore");
+        System.clearProperty("javax.net.ssl.keyStorePassword");
+        if (keyStore != null) {
+            keyStore.delete();
+            keyStore = null;
+        }
+    }
+
+    @Before
+    public void createTable() throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("CREATE TABLE t(id INT PRIMARY KEY NOT NULL)");
+        stmt.execute("INSERT INTO t VALUES(1),(2),(3)");
+        stmt.close();
+    }
+
+    @Test
+    public void manyConnections() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        final List<Exception> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            Thread thread = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            Connection conn = openConnection();
+                            try {
+                                Statement stmt = conn.createStatement();
+                                for (int j = 0; j < QUERIES; j++) {
+                                    ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t");
+                                    rs.next();
+                                    count.addAndGet(rs.getInt(1));
+                                    rs.close();
+                                }
+                                stmt.close();
+                            }
+                            finally {
+                                closeConnection(conn);
+                            }
+                        }
+                        catch (Exception ex) {
+                            synchronized (errors) {
+                                errors.add(ex);
+                            }
+                        }
+                    }
+                };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(errors.isEmpty() ? null : errors.get(0));
+        assertEquals(CONNECTIONS * QUERIES * 3, count.get());
+    }
+
+    @Test
+    public void cancelWhenSaturated() throws Exception {
+        // One for each worker and one for the queue; the cancels come on top.
+        List<SleepThread> threads = new ArrayList<>();
+        for (int i = 0; i < MAX_EXECUTING + QUEUE_LENGTH; i++) {
+            SleepThread thread = new SleepThread(openConnection());
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(500);
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        for (SleepThread thread : threads) {
+            // The queued statement only starts once a running one is canceled.
+            while (thread.isAlive() && (System.currentTimeMillis() < deadline)) {
+                thread.stmt.cancel();
+                thread.join(200);
+            }
+            assertFalse("statement still running after cancel", thread.isAlive());
+        }
+        for (SleepThread thread : threads) {
+            closeConnection(thread.conn);
+            assertNotNull("statement was canceled", thread.error);
+            assertEquals(ErrorCode.QUERY_CANCELED.getFormattedValue(), thread.error.getSQLState());
+        }
+    }
+
+    @Test
+    public void sslAfterDetach() throws Exception {
+        try (Socket socket = new Socket(getPostgresService().getHost(), getPostgresService().getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(8);
+            out.writeInt(PostgresMessenger.VERSION_SSL);
+            out.flush();
+            assertEquals("SSL accepted", 'S', socket.getInputStream().read());
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { new TrustAll() }, null);
+            SSLSocket sslSocket = (SSLSocket)context.getSocketFactory()
+                .createSocket(socket, socket.getInetAddress().getHostAddress(), socket.getPort(), true);
+            sslSocket.setUseClientMode(true);
+            sslSocket.startHandshake();
+            out = new DataOutputStream(sslSocket.getOutputStream());
+            DataInputStream in = new DataInputStream(sslSocket.getInputStream());
+            byte[] params = ("user\0" + USER_NAME + "\0database\0" + SCHEMA_NAME + "\0\0").getBytes(StandardCharsets.UTF_8);
+            out.writeInt(8 + params.length);
+            out.writeInt(3 << 16);
+            out.write(params);
+            out.flush();
+            readUntilReady(in);
+            byte[] query = "SELECT COUNT(*) FROM t\0".getBytes(StandardCharsets.UTF_8);
+            out.writeByte('Q');
+            out.writeInt(4 + query.length);
+            out.write(query);
+            out.flush();
+            List<Character> types = readUntilReady(in);
+            assertTrue("data row: " + types, types.contains('D'));
+            out.writeByte('X');
+            out.writeInt(4);
+            out.flush();
+        }
+    }
+
+    @Test
+    public void copyWithWorkerHeld() throws Exception {
+        Statement stmt = getConnection().createStatement();
+        stmt.execute("CREATE TABLE c(id INT PRIMARY KEY NOT NULL, s VARCHAR(64))");
+        stmt.close();
+        SleepThread sleeper = new SleepThread(openConnection());
+        sleeper.start();
+        Connection conn = openConnection();
+        try {
+            Thread.sleep(500);
+            CopyIn copy = new CopyManager((BaseConnection)conn).copyIn("COPY c FROM STDIN");
+            // More than the channel buffers, so that reading pauses and resumes
+            // while this turn waits for input on the one free worker.
+            int nrows = 0;
+            StringBuilder str = new StringBuilder();
+            while (nrows < 40000) {
+                str.setLength(0);
+                for (int i = 0; i < 1000; i++, nrows++) {
+                    str.append(nrows).append("\tcopied row number ").append(nrows).append('\n');
+                }
+                byte[] bytes = str.toString().getBytes(StandardCharsets.UTF_8);
+                copy.writeToCopy(bytes, 0, bytes.length);
+            }
+            assertEquals(nrows, copy.endCopy());
+            ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM c");
+            rs.next();
+            assertEquals(nrows, rs.getInt(1));
+            rs.close();
+            assertTrue("still sleeping", sleeper.isAlive());
+        }
+        finally {
+            closeConnection(conn);
+            sleeper.stmt.cancel();
+            sleeper.join(WAIT_MILLIS);
+            closeConnection(sleeper.conn);
+        }
+    }
+
+    /** Read backend messages up to ReadyForQuery, failing on ErrorResponse. */
+    private static List<Character> readUntilReady(DataInputStream in) throws IOException {
+        List<Character> types = new ArrayList<>();
+        while (true) {
+            char type = (char)in.readUnsignedByte();
+            byte[] body = new byte[in.readInt() - 4];
+            in.readFully(body);
+            assertFalse("error: " + new String(body, StandardCharsets.UTF_8), type == 'E');
+            types.add(type);
+            if (type == 'Z')
+                return types;
+        }
+    }
+
+    /** Holds a statement worker until canceled. */
+    private static class SleepThread extends Thread {
+        private final Connection conn;
+        private final Statement stmt;
+        private volatile SQLException error;
+
+        public SleepThread(Connection conn) throws SQLException {
+            this.conn = conn;
+            this.stmt = conn.createStatement();
+        }
+
+        @Override
+        public void run() {
+            try {
+                stmt.executeQuery("SELECT SLEEP(" + SLEEP_MILLIS + ")").close();
+            }
+            catch (SQLException ex) {
+                error = ex;
+            }
+        }
+    }
+
+    private static class TrustAll implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
@@ -409,7 +409,7 @@ public class RestDMLServiceImpl implements Service, RestDMLService {
         while(results) {
             beginResultSetArray(appender, first, nresults++);
             first = false;
-            collectResults((JDBCResultSet) call.getResultSet(), appender, options);
+            collectResults((JDBCResultSet) call.getResultSet(), writer, appender, options);
             endResultSetArray(appender);
             results = call.getMoreResults();
         }
@@ -497,7 +497,7 @@ public class RestDMLServiceImpl implements Service, RestDMLService {
             int updateCount = s.getUpdateCount();
             
             if (results != null && !results.isClosed()) {
-                collectResults(results, appender, options);
+                collectResults(results, writer, appender, options);
                 // Force close the result set here because if you execute "SELECT...;INSERT..." 
                 // the call to s.getResultSet() returns the (now empty) SELECT result set
                 // giving bad results
@@ -508,7 +508,7 @@ public class RestDMLServiceImpl implements Service, RestDMLService {
                 results = (JDBCResultSet) s.getGeneratedKeys();
                 if (results != null) {
                     appender.append(",\n\"returning\":[");
-                    collectResults(results, appender, options);
+                    collectResults(results, writer, appender, options);
                     appender.append("]\n");
                 }
                 appender.append("}\n");
@@ -539,11 +539,11 @@ public class RestDMLServiceImpl implements Service, RestDMLService {
         appender.append(']');
     }
 
-    private static void collectResults(JDBCResultSet resultSet, AkibanAppender appender, FormatOptions opt) throws SQLException {
-        SQLOutputCursor cursor = new SQLOutputCursor(resultSet, opt);
+    private static void collectResults(JDBCResultSet resultSet, PrintWriter writer, AkibanAppender appender, FormatOptions opt) throws SQLException {
+        SQLOutputCursor cursor = new SQLOutputCursor(resultSet, writer, opt);
         try {
             JsonRowWriter jsonRowWriter = new JsonRowWriter(cursor);
-            if (jsonRowWriter.writeRowsFromOpenCursor(cursor, appender, "\n", cursor, opt)) {
+            if (jsonRowWriter.writeRowsFromOpenCursor(cursor, cursor.getAppender(), "\n", cursor, opt)) {
                 appender.append('\n');
             }
         } finally {
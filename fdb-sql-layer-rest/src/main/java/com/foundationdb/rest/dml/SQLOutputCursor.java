@@ -20,6 +20,7 @@ package com.foundationdb.rest.dml;
 import com.foundationdb.qp.operator.RowCursor;
 import com.foundationdb.qp.row.DelegateRow;
 import com.foundationdb.qp.row.Row;
+import com.foundationdb.server.error.ConnectionTerminatedException;
 import com.foundationdb.server.api.dml.ColumnSelector;
 import com.foundationdb.server.service.externaldata.GenericRowTracker;
 import com.foundationdb.server.service.externaldata.JsonRowWriter;
@@ -29,18 +30,48 @@ import com.foundationdb.sql.embedded.JDBCResultSet;
 import com.foundationdb.sql.embedded.JDBCResultSetMetaData;
 import com.foundationdb.util.AkibanAppender;
 
+import java.io.PrintWriter;
 import java.sql.SQLException;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+/**
+ * Rows of a result set, fetched as they are written to <code>output</code>.
+ *
+ * Nothing is collected: each row is formatted as soon as it is fetched, and
+ * the query only goes as fast as the client reads. So that a query that is
+ * slow to find its rows still shows progress, what has been written is
+ * flushed when it has waited for {@link #MAX_FLUSH_DELAY_NANOS}. Once the
+ * client has gone away, the query is stopped.
+ *
+ * A flush commits the response's status, after which an error can only cut
+ * the JSON short. So nothing is flushed early until there is more output
+ * than {@link #MIN_FLUSH_CHARS}, by when the container has committed the
+ * response itself and an error could not have replaced it anyway.
+ */
 public class SQLOutputCursor extends GenericRowTracker implements RowCursor, JsonRowWriter.WriteRow {
+    static final long MAX_FLUSH_DELAY_NANOS = 100 * 1000000L;
+    /** More than Jersey's 8K content length buffer and Jetty's 32K response buffer together. */
+    static final long MIN_FLUSH_CHARS = 64 * 1024;
+
     private final Deque<ResultSetHolder> holderStack = new ArrayDeque<>();
+    private final CountingWriter output;
+    private final AkibanAppender appender;
     private ResultSetHolder currentHolder;
     private FormatOptions options;
+    private long lastFlush;
 
-    public SQLOutputCursor(JDBCResultSet rs, FormatOptions options) throws SQLException {
+    public SQLOutputCursor(JDBCResultSet rs, PrintWriter output, FormatOptions options) throws SQLException {
         currentHolder = new ResultSetHolder(rs, null, 0);
+        this.output = new CountingWriter(output);
+        this.appender = AkibanAppender.of(this.output);
         this.options = options;
+        this.lastFlush = System.nanoTime();
+    }
+
+    /** Where the rows go, so that they are counted toward {@link #MIN_FLUSH_CHARS}. */
+    public AkibanAppender getAppender() {
+        return appender;
     }
 
     //
@@ -66,6 +97,7 @@ public class SQLOutputCursor extends GenericRowTracker implements RowCursor, Jso
             assert holderStack.isEmpty();
             return null;
         }
+        checkFlush();
         try {
             Row row = null;
             if(!holderStack.isEmpty() && holderStack.peek().depth > currentHolder.depth) {
@@ -117,6 +149,18 @@ public class SQLOutputCursor extends GenericRowTracker implements RowCursor, Jso
         throw new UnsupportedOperationException();
     }
 
+    /** Called before each row is fetched, and so after the previous one was written. */
+    protected void checkFlush() {
+        long now = System.nanoTime();
+        if ((output.count >= MIN_FLUSH_CHARS) && (now - lastFlush > MAX_FLUSH_DELAY_NANOS)) {
+            output.flush();
+            if (output.checkError()) {
+                throw new ConnectionTerminatedException("client disconnect");
+            }
+            lastFlush = now;
+        }
+    }
+
     //
     // JsonRowWriter.WriteRow
     //
@@ -169,6 +213,34 @@ public class SQLOutputCursor extends GenericRowTracker implements RowCursor, Jso
         }
     }
 
+    /** Counts what goes through to the response's writer, whose errors
+     * {@link PrintWriter#checkError} also reports. */
+    private static class CountingWriter extends PrintWriter {
+        private long count;
+
+        public CountingWriter(PrintWriter output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+            super.write(c);
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) {
+            count += len;
+            super.write(buf, off, len);
+        }
+
+        @Override
+        public void write(String s, int off, int len) {
+            count += len;
+            super.write(s, off, len);
+        }
+    }
+
     private static class RowHolder extends DelegateRow {
         public final ResultSetHolder rsHolder;
 
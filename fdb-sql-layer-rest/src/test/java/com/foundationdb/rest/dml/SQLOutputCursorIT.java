@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2009-2013 FoundationDB, LLC
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.foundationdb.rest.dml;
+
+import com.foundationdb.http.HttpConductor;
+import com.foundationdb.rest.RestService;
+import com.foundationdb.server.service.monitor.MonitorService;
+import com.foundationdb.server.service.monitor.SessionMonitor;
+import com.foundationdb.server.service.servicemanager.GuicedServiceManager;
+import com.foundationdb.server.test.it.ITBase;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.foundationdb.util.JsonUtils.readTree;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/** Rows of a slow /sql/query reach the client while it runs, and stop when it goes away. */
+public class SQLOutputCursorIT extends ITBase {
+    private static final String SCHEMA = "test";
+    private static final String TABLE = "r";
+    private static final int ROWS = 1000;
+    // Well past MIN_FLUSH_CHARS of output comes before the first slow row.
+    private static final int SLOW_FROM = 900;
+    // Two slow rows, so that the one before the last is written after a flush delay.
+    private static final int FLUSH_SLOW_FROM = ROWS - 3;
+    // A little more than SQLOutputCursor.MAX_FLUSH_DELAY_NANOS.
+    private static final int SLOW_MILLIS = 150;
+    private static final int LAST_MILLIS = 1500;
+    private static final long WAIT_MILLIS = 10000;
+
+    @Override
+    protected GuicedServiceManager.BindingsConfigurationProvider serviceBindingsProvider() {
+        return super.serviceBindingsProvider()
+                .require(RestService.class);
+    }
+
+    @Override
+    protected Map<String,String> startupConfigProperties() {
+        Map<String,String> config = new HashMap<>(super.startupConfigProperties());
+        config.put("fdbsql.http.csrf_protection.type", "none");
+        return config;
+    }
+
+    @Before
+    public void createRows() {
+        int tid = createTable(SCHEMA, TABLE, "id INT NOT NULL PRIMARY KEY, s VARCHAR(128)");
+        StringBuilder str = new StringBuilder();
+        for(int i = 0; i < 100; i++) {
+            str.append('x');
+        }
+        for(int i = 0; i < ROWS; i++) {
+            writeRow(tid, i, str.toString());
+        }
+    }
+
+    @Test
+    public void flushedWhileRunning() throws Exception {
+        String sql = String.format("SELECT id, s, SLEEP(CASE WHEN id = %d THEN %d WHEN id >= %d THEN %d ELSE 0 END) AS z FROM %s.%s",
+                                   ROWS - 1, LAST_MILLIS, FLUSH_SLOW_FROM, SLOW_MILLIS, SCHEMA, TABLE);
+        try(Socket socket = post(sql)) {
+            InputStream input = socket.getInputStream();
+            StringBuilder response = new StringBuilder();
+            String beforeLast = String.format("\"id\":%d,", ROWS - 2);
+            long seenAt = -1;
+            byte[] buffer = new byte[8192];
+            int len;
+            while((len = input.read(buffer)) > 0) {
+                response.append(new String(buffer, 0, len, StandardCharsets.UTF_8));
+                if((seenAt < 0) && (response.indexOf(beforeLast) >= 0)) {
+                    seenAt = System.currentTimeMillis();
+                }
+            }
+            long endAt = System.currentTimeMillis();
+            assertTrue("next to last row: " + response, seenAt > 0);
+            assertTrue("next to last row came " + (endAt - seenAt) + "ms before the end",
+                       endAt - seenAt > LAST_MILLIS / 2);
+            int split = response.indexOf("\r\n\r\n");
+            assertTrue("status: " + response, response.substring(0, response.indexOf("\r\n")).contains(" 200 "));
+            JsonNode rows = readTree(response.substring(split + 4));
+            assertEquals("rows", ROWS, rows.size());
+            assertEquals("last row", ROWS - 1, rows.get(ROWS - 1).get("id").asInt());
+        }
+    }
+
+    @Test
+    public void stoppedWhenClientGoesAway() throws Exception {
+        // All of the slow rows together would take twice WAIT_MILLIS.
+        int slowMillis = (int)(WAIT_MILLIS * 2 / (ROWS - SLOW_FROM));
+        String sql = String.format("SELECT id, s, SLEEP(CASE WHEN id >= %d THEN %d ELSE 0 END) AS z FROM %s.%s",
+                                   SLOW_FROM, slowMillis, SCHEMA, TABLE);
+        Socket socket = post(sql);
+        try {
+            InputStream input = socket.getInputStream();
+            StringBuilder response = new StringBuilder();
+            String firstSlow = String.format("\"id\":%d,", SLOW_FROM);
+            byte[] buffer = new byte[8192];
+            int len;
+            while((response.indexOf(firstSlow) < 0) && ((len = input.read(buffer)) > 0)) {
+                response.append(new String(buffer, 0, len, StandardCharsets.UTF_8));
+            }
+            assertTrue("first slow row: " + response, response.indexOf(firstSlow) >= 0);
+            assertTrue("query running", isRunning(sql));
+        }
+        finally {
+            socket.close();
+        }
+        long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while(isRunning(sql) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(100);
+        }
+        assertFalse("query still running after client disconnect", isRunning(sql));
+    }
+
+    /** Send the query and return the socket on which its response comes back. */
+    private Socket post(String sql) throws Exception {
+        int port = serviceManager().getServiceByClass(HttpConductor.class).getPort();
+        String path = serviceManager().getServiceByClass(RestService.class).getContextPath() + "/sql/query";
+        byte[] body = ("{\"q\":\"" + sql + "\"}").getBytes(StandardCharsets.UTF_8);
+        String head = "POST " + path + " HTTP/1.0\r\n" +
+                      "Host: localhost\r\n" +
+                      "Content-Type: application/json\r\n" +
+                      "Content-Length: " + body.length + "\r\n" +
+                      "\r\n";
+        Socket socket = new Socket("localhost", port);
+        OutputStream output = socket.getOutputStream();
+        output.write(head.getBytes(StandardCharsets.US_ASCII));
+        output.write(body);
+        output.flush();
+        return socket;
+    }
+
+    /** The request's connection, and so its monitor, lasts as long as the query. */
+    private boolean isRunning(String sql) {
+        for(SessionMonitor monitor : serviceManager().getServiceByClass(MonitorService.class).getSessionMonitors()) {
+            if(sql.equals(monitor.getCurrentStatement())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}